@@ -0,0 +1,254 @@
+package net.osmand.benchmarks;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.protobuf.ByteString;
+
+import crosby.binary.Osmformat;
+import crosby.binary.file.BlockOutputStream;
+import crosby.binary.file.FileBlock;
+import net.osmand.IProgress;
+import net.osmand.PlatformUtil;
+import net.osmand.obf.preparation.DBDialect;
+import net.osmand.obf.preparation.OsmDbCreator;
+import net.osmand.osm.io.OsmBaseStoragePbf;
+
+/**
+ * Fixtures shared by benchmarks. By default small synthetic pbf is generated (grid of streets with pois),
+ * real extract could be passed with -Dosmand.benchmark.pbf=file.osm.pbf.
+ */
+public class BenchmarkFixtures {
+
+	public static final String PBF_PROPERTY = "osmand.benchmark.pbf";
+
+	// grid of GRID x GRID nodes, each row is split into streets of STREET_LENGTH nodes
+	private static final int GRID = 300;
+	private static final int STREET_LENGTH = 20;
+	private static final int POI_EACH_NODE = 17;
+	private static final int BLOCK_SIZE = 8000;
+	private static final double LAT = 52.3;
+	private static final double LON = 4.8;
+	private static final double STEP = 0.0005;
+
+	private static final String[] HIGHWAYS = { "residential", "primary", "secondary", "tertiary", "footway", "service",
+			"cycleway", "track" };
+	private static final String[][] POI_TAGS = { { "amenity", "cafe" }, { "shop", "supermarket" },
+			{ "amenity", "parking" }, { "tourism", "hotel" }, { "amenity", "bench" } };
+
+	private static File pbfFile;
+
+	public static synchronized File getPbfFile() throws IOException {
+		if (pbfFile == null) {
+			String path = System.getProperty(PBF_PROPERTY);
+			if (path != null) {
+				pbfFile = new File(path);
+			} else {
+				pbfFile = File.createTempFile("benchmark", ".osm.pbf");
+				pbfFile.deleteOnExit();
+				writeSyntheticPbf(pbfFile);
+			}
+		}
+		return pbfFile;
+	}
+
+	public static File createTempDir(String prefix) throws IOException {
+		File dir = File.createTempFile(prefix, "");
+		dir.delete();
+		dir.mkdirs();
+		return dir;
+	}
+
+	public static void deleteDir(File dir) {
+		File[] files = dir.listFiles();
+		if (files != null) {
+			for (File f : files) {
+				deleteDir(f);
+			}
+		}
+		dir.delete();
+	}
+
+	/**
+	 * Loads pbf into sqlite nodes db the same way as IndexCreator does (without filters of index creators).
+	 */
+	public static Connection createNodesDb(File dbFile) throws IOException, SQLException {
+		Connection conn = DBDialect.SQLITE.getDatabaseConnection(dbFile.getAbsolutePath(),
+				PlatformUtil.getLog(BenchmarkFixtures.class));
+		OsmDbCreator dbCreator = new OsmDbCreator();
+		dbCreator.initDatabase(DBDialect.SQLITE, conn, true, null);
+		OsmBaseStoragePbf storage = new OsmBaseStoragePbf();
+		storage.getFilters().add(dbCreator);
+		InputStream is = new BufferedInputStream(new FileInputStream(getPbfFile()), 8192 * 4);
+		try {
+			storage.parseOSMPbf(is, IProgress.EMPTY_PROGRESS, false);
+		} finally {
+			is.close();
+		}
+		dbCreator.finishLoading();
+		DBDialect.SQLITE.commitDatabase(conn);
+		return conn;
+	}
+
+	/**
+	 * Tags of generated ways and pois (used by tag transformation benchmark)
+	 */
+	public static List<Map<String, String>> getSampleTags() {
+		List<Map<String, String>> res = new ArrayList<Map<String, String>>();
+		for (int i = 0; i < HIGHWAYS.length * 4; i++) {
+			res.add(streetTags(i));
+		}
+		for (int i = 0; i < POI_TAGS.length * 4; i++) {
+			res.add(poiTags(i));
+		}
+		return res;
+	}
+
+	private static Map<String, String> streetTags(int ind) {
+		Map<String, String> tags = new LinkedHashMap<String, String>();
+		tags.put("highway", HIGHWAYS[ind % HIGHWAYS.length]);
+		tags.put("name", "Street " + ind);
+		if (ind % 3 == 0) {
+			tags.put("maxspeed", "50");
+			tags.put("surface", "asphalt");
+		}
+		if (ind % 4 == 0) {
+			tags.put("oneway", "yes");
+			tags.put("lanes", "2");
+			tags.put("name:en", "Street " + ind);
+		}
+		if (ind % 5 == 0) {
+			tags.put("bicycle", "designated");
+			tags.put("lit", "yes");
+		}
+		return tags;
+	}
+
+	private static Map<String, String> poiTags(int ind) {
+		Map<String, String> tags = new LinkedHashMap<String, String>();
+		String[] tg = POI_TAGS[ind % POI_TAGS.length];
+		tags.put(tg[0], tg[1]);
+		tags.put("name", "Poi " + ind);
+		if (ind % 2 == 0) {
+			tags.put("opening_hours", "Mo-Fr 08:00-18:00");
+			tags.put("website", "https://example.com/" + ind);
+		}
+		return tags;
+	}
+
+	private static long nodeId(int row, int col) {
+		return (long) row * GRID + col + 1;
+	}
+
+	public static void writeSyntheticPbf(File file) throws IOException {
+		BlockOutputStream out = new BlockOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		try {
+			Osmformat.HeaderBlock header = Osmformat.HeaderBlock.newBuilder()
+					.addRequiredFeatures("OsmSchema-V0.6").addRequiredFeatures("DenseNodes")
+					.setWritingprogram("OsmAndBenchmarks").build();
+			out.write(FileBlock.newInstance("OSMHeader", header.toByteString(), null));
+			// nodes
+			BlockBuilder block = new BlockBuilder();
+			Osmformat.DenseNodes.Builder dense = Osmformat.DenseNodes.newBuilder();
+			long pid = 0, plat = 0, plon = 0;
+			int count = 0;
+			for (int row = 0; row < GRID; row++) {
+				for (int col = 0; col < GRID; col++) {
+					long id = nodeId(row, col);
+					long lat = Math.round((LAT + row * STEP) * 1e7);
+					long lon = Math.round((LON + col * STEP) * 1e7);
+					dense.addId(id - pid).addLat(lat - plat).addLon(lon - plon);
+					pid = id;
+					plat = lat;
+					plon = lon;
+					if (id % POI_EACH_NODE == 0) {
+						for (Map.Entry<String, String> e : poiTags((int) (id / POI_EACH_NODE)).entrySet()) {
+							dense.addKeysVals(block.string(e.getKey())).addKeysVals(block.string(e.getValue()));
+						}
+					}
+					dense.addKeysVals(0);
+					if (++count == BLOCK_SIZE) {
+						block.write(out, Osmformat.PrimitiveGroup.newBuilder().setDense(dense));
+						block = new BlockBuilder();
+						dense = Osmformat.DenseNodes.newBuilder();
+						pid = plat = plon = count = 0;
+					}
+				}
+			}
+			if (count > 0) {
+				block.write(out, Osmformat.PrimitiveGroup.newBuilder().setDense(dense));
+			}
+			// ways
+			block = new BlockBuilder();
+			Osmformat.PrimitiveGroup.Builder group = Osmformat.PrimitiveGroup.newBuilder();
+			count = 0;
+			long wayId = 1;
+			for (int row = 0; row < GRID; row++) {
+				for (int col = 0; col + 1 < GRID; col += STREET_LENGTH - 1) {
+					Osmformat.Way.Builder way = Osmformat.Way.newBuilder().setId(wayId);
+					for (Map.Entry<String, String> e : streetTags((int) wayId).entrySet()) {
+						way.addKeys(block.string(e.getKey())).addVals(block.string(e.getValue()));
+					}
+					long pref = 0;
+					for (int c = col; c < Math.min(GRID, col + STREET_LENGTH); c++) {
+						long ref = nodeId(row, c);
+						way.addRefs(ref - pref);
+						pref = ref;
+					}
+					group.addWays(way);
+					wayId++;
+					if (++count == BLOCK_SIZE) {
+						block.write(out, group);
+						block = new BlockBuilder();
+						group = Osmformat.PrimitiveGroup.newBuilder();
+						count = 0;
+					}
+				}
+			}
+			if (count > 0) {
+				block.write(out, group);
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	private static class BlockBuilder {
+		private final Map<String, Integer> strings = new LinkedHashMap<String, Integer>();
+
+		BlockBuilder() {
+			// 0 is reserved as delimiter
+			strings.put("", 0);
+		}
+
+		int string(String s) {
+			Integer ind = strings.get(s);
+			if (ind == null) {
+				ind = strings.size();
+				strings.put(s, ind);
+			}
+			return ind;
+		}
+
+		void write(BlockOutputStream out, Osmformat.PrimitiveGroup.Builder group) throws IOException {
+			Osmformat.StringTable.Builder st = Osmformat.StringTable.newBuilder();
+			for (String s : strings.keySet()) {
+				st.addS(ByteString.copyFromUtf8(s));
+			}
+			Osmformat.PrimitiveBlock block = Osmformat.PrimitiveBlock.newBuilder().setStringtable(st)
+					.addPrimitivegroup(group).build();
+			out.write(FileBlock.newInstance("OSMData", block.toByteString(), null));
+		}
+	}
+}
@@ -0,0 +1,179 @@
+package net.osmand.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import net.osmand.binary.OsmandOdb.MapData;
+import net.osmand.binary.OsmandOdb.MapDataBlock;
+import net.osmand.binary.OsmandOdb.OsmAndRoutingIndex.RouteDataBlock;
+import net.osmand.binary.OsmandOdb.RouteData;
+import net.osmand.obf.preparation.BinaryFileReference;
+import net.osmand.obf.preparation.BinaryMapIndexWriter;
+import net.osmand.obf.preparation.BinaryMapIndexWriter.RoutePointToWrite;
+import net.osmand.obf.preparation.IndexPoiCreator.PoiAdditionalType;
+import net.osmand.obf.preparation.IndexPoiCreator.PoiCreatorCategories;
+import net.osmand.osm.MapRoutingTypes.MapPointName;
+import net.osmand.osm.MapRoutingTypes.MapRouteType;
+import net.osmand.util.Algorithms;
+import net.osmand.util.MapUtils;
+
+/**
+ * Encoding of map and route data blocks and writing of poi data box, same calls as index creators do
+ * for one block of ways / pois.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BinaryMapIndexWriterBenchmark {
+
+	private static final int WAY_POINTS = 40;
+	private static final String[][] POI_TYPES = { { "sustenance", "cafe" }, { "shop", "supermarket" },
+			{ "transportation", "parking" }, { "tourism", "hotel" } };
+
+	@Param({ "1000" })
+	public int objects;
+
+	private int left;
+	private int top;
+	private byte[][] coordinates;
+	private int[][] types;
+	private RoutePointToWrite[][] routePoints;
+	private int[] poiX;
+	private int[] poiY;
+	private List<Map<PoiAdditionalType, String>> poiNames;
+	private PoiAdditionalType nameType;
+	private BinaryMapIndexWriter encoder;
+	private File poiFile;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		Random rnd = new Random(11);
+		left = MapUtils.get31TileNumberX(4.8);
+		top = MapUtils.get31TileNumberY(52.4);
+		coordinates = new byte[objects][];
+		types = new int[objects][];
+		routePoints = new RoutePointToWrite[objects][];
+		for (int i = 0; i < objects; i++) {
+			int x = left + rnd.nextInt(1 << 20);
+			int y = top + rnd.nextInt(1 << 20);
+			coordinates[i] = new byte[WAY_POINTS * 8];
+			routePoints[i] = new RoutePointToWrite[WAY_POINTS];
+			for (int p = 0; p < WAY_POINTS; p++) {
+				x += rnd.nextInt(1 << 10) - (1 << 9);
+				y += rnd.nextInt(1 << 10) - (1 << 9);
+				Algorithms.putIntToBytes(coordinates[i], 8 * p, x);
+				Algorithms.putIntToBytes(coordinates[i], 8 * p + 4, y);
+				RoutePointToWrite rp = new RoutePointToWrite();
+				rp.x = x;
+				rp.y = y;
+				if (p % 10 == 5) {
+					rp.types.add(rnd.nextInt(50));
+				}
+				routePoints[i][p] = rp;
+			}
+			types[i] = new int[] { rnd.nextInt(500), rnd.nextInt(500) };
+		}
+		nameType = new PoiAdditionalType(0, "name", null, true);
+		poiX = new int[objects];
+		poiY = new int[objects];
+		poiNames = new ArrayList<Map<PoiAdditionalType, String>>();
+		for (int i = 0; i < objects; i++) {
+			poiX[i] = left + rnd.nextInt(1 << 16);
+			poiY[i] = top + rnd.nextInt(1 << 16);
+			Map<PoiAdditionalType, String> names = new LinkedHashMap<PoiAdditionalType, String>();
+			names.put(nameType, "Poi " + i);
+			poiNames.add(names);
+		}
+		encoder = BinaryMapIndexWriter.createMapDataEncoder();
+		poiFile = File.createTempFile("poi", ".obf");
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		poiFile.delete();
+	}
+
+	@Benchmark
+	public MapDataBlock encodeMapBlock() throws IOException {
+		MapDataBlock.Builder dataBlock = encoder.createWriteMapDataBlock(0);
+		Map<String, Integer> stringTable = new LinkedHashMap<String, Integer>();
+		for (int i = 0; i < objects; i++) {
+			MapData mapData = encoder.writeMapData(i, left, top, false, coordinates[i], null, types[i], null, null,
+					new byte[0], null, stringTable, dataBlock, true);
+			if (mapData != null) {
+				dataBlock.addDataObjects(mapData);
+			}
+		}
+		return dataBlock.build();
+	}
+
+	@Benchmark
+	public RouteDataBlock encodeRouteBlock() throws IOException {
+		RouteDataBlock.Builder dataBlock = RouteDataBlock.newBuilder();
+		Map<String, Integer> stringTable = new LinkedHashMap<String, Integer>();
+		Map<MapRouteType, String> names = Collections.emptyMap();
+		List<MapPointName> pointNames = Collections.emptyList();
+		for (int i = 0; i < objects; i++) {
+			RouteData routeData = encoder.writeRouteData(i, left, top, types[i], routePoints[i], names, stringTable,
+					pointNames, dataBlock, true, false);
+			if (routeData != null) {
+				dataBlock.addDataObjects(routeData);
+			}
+		}
+		return dataBlock.build();
+	}
+
+	@Benchmark
+	public long writePoiBox() throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(poiFile, "rw");
+		try {
+			raf.setLength(0);
+			BinaryMapIndexWriter writer = new BinaryMapIndexWriter(raf, 0);
+			PoiCreatorCategories categories = new PoiCreatorCategories();
+			for (int i = 0; i < objects; i++) {
+				String[] tp = POI_TYPES[i % POI_TYPES.length];
+				categories.addCategory(tp[0], tp[1], poiNames.get(i));
+			}
+			int zoom = 14;
+			int tx = left >> (31 - zoom);
+			int ty = top >> (31 - zoom);
+			writer.startWritePoiIndex("benchmark", left, left + (1 << 16), top + (1 << 16), top);
+			writer.writePoiCategoriesTable(categories);
+			writer.writePoiSubtypesTable(categories);
+			writer.startWritePoiData(zoom, tx, ty, Collections.<BinaryFileReference>emptyList());
+			for (int i = 0; i < objects; i++) {
+				String[] tp = POI_TYPES[i % POI_TYPES.length];
+				int x24shift = (poiX[i] >> 7) - (tx << (24 - zoom));
+				int y24shift = (poiY[i] >> 7) - (ty << (24 - zoom));
+				int precisionXY = MapUtils.calculateFromBaseZoomPrecisionXY(24, 27, (poiX[i] >> 4), (poiY[i] >> 4));
+				writer.writePoiDataAtom(i, x24shift, y24shift, tp[0], tp[1], poiNames.get(i), categories, -1,
+						precisionXY);
+			}
+			writer.endWritePoiData();
+			writer.endWritePoiIndex();
+			writer.flush();
+			return raf.length();
+		} finally {
+			raf.close();
+		}
+	}
+}
@@ -0,0 +1,70 @@
+package net.osmand.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import net.osmand.IProgress;
+import net.osmand.obf.preparation.DBDialect;
+import net.osmand.obf.preparation.OsmDbAccessor;
+import net.osmand.obf.preparation.OsmDbAccessor.OsmDbVisitor;
+import net.osmand.obf.preparation.OsmDbAccessorContext;
+import net.osmand.osm.edit.Entity;
+import net.osmand.osm.edit.Entity.EntityType;
+
+/**
+ * Iteration over entities of nodes db (generated from benchmark pbf), as done by every index creator.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class OsmDbIterationBenchmark {
+
+	@Param({ "NODE", "WAY" })
+	public EntityType type;
+
+	private File dir;
+	private Connection conn;
+	private OsmDbAccessor accessor;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException, SQLException {
+		dir = BenchmarkFixtures.createTempDir("nodesdb");
+		conn = BenchmarkFixtures.createNodesDb(new File(dir, "benchmark.db"));
+		accessor = new OsmDbAccessor();
+		accessor.setDbConn(conn, DBDialect.SQLITE);
+		accessor.initDatabase();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws SQLException {
+		accessor.closeReadingConnection();
+		DBDialect.SQLITE.closeDatabase(conn);
+		BenchmarkFixtures.deleteDir(dir);
+	}
+
+	@Benchmark
+	public int iterate(final Blackhole bh) throws SQLException, InterruptedException {
+		return accessor.iterateOverEntities(IProgress.EMPTY_PROGRESS, type, new OsmDbVisitor() {
+
+			@Override
+			public void iterateEntity(Entity e, OsmDbAccessorContext ctx) throws SQLException {
+				bh.consume(e);
+			}
+		});
+	}
+}
@@ -0,0 +1,61 @@
+package net.osmand.benchmarks;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import net.osmand.IProgress;
+import net.osmand.osm.edit.Entity;
+import net.osmand.osm.edit.Entity.EntityId;
+import net.osmand.osm.io.IOsmStorageFilter;
+import net.osmand.osm.io.OsmBaseStorage;
+import net.osmand.osm.io.OsmBaseStoragePbf;
+
+/**
+ * Decoding of pbf blocks into entities. Entities are passed to filter and not kept in storage,
+ * same as nodes db creator does.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PbfParseBenchmark {
+
+	private File pbf;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		pbf = BenchmarkFixtures.getPbfFile();
+	}
+
+	@Benchmark
+	public void parsePbf(final Blackhole bh) throws IOException {
+		OsmBaseStoragePbf storage = new OsmBaseStoragePbf();
+		storage.getFilters().add(new IOsmStorageFilter() {
+
+			@Override
+			public boolean acceptEntityToLoad(OsmBaseStorage storage, EntityId entityId, Entity entity) {
+				bh.consume(entity);
+				return false;
+			}
+		});
+		InputStream is = new BufferedInputStream(new FileInputStream(pbf), 8192 * 4);
+		try {
+			storage.parseOSMPbf(is, IProgress.EMPTY_PROGRESS, false);
+		} finally {
+			is.close();
+		}
+	}
+}
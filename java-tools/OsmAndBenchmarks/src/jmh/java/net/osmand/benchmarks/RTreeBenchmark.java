@@ -0,0 +1,91 @@
+package net.osmand.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import net.osmand.obf.preparation.AbstractIndexPartCreator;
+import rtree.LeafElement;
+import rtree.RTree;
+import rtree.RTreeException;
+import rtree.Rect;
+
+/**
+ * Insertion of way bounding boxes into file rtree and packing of it (as done for map and route indexes).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class RTreeBenchmark {
+
+	@Param({ "10000", "100000" })
+	public int elements;
+
+	private Rect[] rects;
+	private File dir;
+	private int fileIndex;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		Random rnd = new Random(7);
+		rects = new Rect[elements];
+		for (int i = 0; i < elements; i++) {
+			// ways of regional extract, 31 bit coordinates
+			int x = (1 << 30) + rnd.nextInt(1 << 24);
+			int y = (1 << 29) + rnd.nextInt(1 << 24);
+			rects[i] = new Rect(x, y, x + rnd.nextInt(1 << 12), y + rnd.nextInt(1 << 12));
+		}
+		dir = BenchmarkFixtures.createTempDir("rtree");
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		RTree.clearCache();
+		BenchmarkFixtures.deleteDir(dir);
+	}
+
+	private RTree insertAll(String fileName) throws RTreeException {
+		RTree tree = new RTree(fileName);
+		for (int i = 0; i < rects.length; i++) {
+			tree.insert(new LeafElement(rects[i], i));
+		}
+		return tree;
+	}
+
+	private String nextFile() {
+		return new File(dir, "tree" + (fileIndex++)).getAbsolutePath();
+	}
+
+	@Benchmark
+	public RTree insert() throws RTreeException, IOException {
+		String fileName = nextFile();
+		RTree tree = insertAll(fileName);
+		tree.flush();
+		tree.getFileHdr().getFile().close();
+		new File(fileName).delete();
+		return tree;
+	}
+
+	@Benchmark
+	public RTree insertAndPack() throws RTreeException, IOException {
+		String fileName = nextFile();
+		String packFileName = fileName + ".pck";
+		RTree tree = AbstractIndexPartCreator.packRtreeFile(insertAll(fileName), fileName, packFileName);
+		tree.getFileHdr().getFile().close();
+		new File(fileName).delete();
+		new File(packFileName).delete();
+		return tree;
+	}
+}
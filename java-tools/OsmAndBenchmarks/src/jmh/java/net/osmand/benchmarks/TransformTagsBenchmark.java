@@ -0,0 +1,52 @@
+package net.osmand.benchmarks;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import net.osmand.osm.MapRenderingTypesEncoder;
+import net.osmand.osm.MapRenderingTypesEncoder.EntityConvertApplyType;
+import net.osmand.osm.edit.Entity.EntityType;
+
+/**
+ * Tag transformation with default rendering types, called for every entity of every index.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TransformTagsBenchmark {
+
+	@Param({ "MAP", "ROUTING", "POI" })
+	public EntityConvertApplyType appType;
+
+	private MapRenderingTypesEncoder encoder;
+	private List<Map<String, String>> tags;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		encoder = new MapRenderingTypesEncoder("benchmark");
+		tags = BenchmarkFixtures.getSampleTags();
+		// initialize rules outside of measurement
+		encoder.transformTags(new LinkedHashMap<String, String>(tags.get(0)), EntityType.WAY, appType);
+	}
+
+	@Benchmark
+	public void transformTags(Blackhole bh) {
+		for (Map<String, String> t : tags) {
+			// transformation could modify tags
+			bh.consume(encoder.transformTags(new LinkedHashMap<String, String>(t), EntityType.WAY, appType));
+		}
+	}
+}
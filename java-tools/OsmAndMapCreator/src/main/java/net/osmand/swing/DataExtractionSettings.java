@@ -233,6 +233,14 @@ public class DataExtractionSettings {
 		preferences.putBoolean("use_internet", b);
 	}
 
+	public int getTileLoadingThreads(){
+		return preferences.getInt("tile_loading_threads", Math.max(2, Math.min(8, Runtime.getRuntime().availableProcessors())));
+	}
+
+	public void setTileLoadingThreads(int threads){
+		preferences.putInt("tile_loading_threads", threads);
+	}
+
 
 	public String getSearchLocale(){
 		return preferences.get("searchLocale", "");
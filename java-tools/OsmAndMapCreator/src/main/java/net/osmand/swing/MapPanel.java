@@ -22,7 +22,6 @@ import java.awt.event.MouseEvent;
 import java.awt.event.MouseWheelEvent;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
-import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -30,7 +29,6 @@ import java.net.HttpURLConnection;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.IdentityHashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -59,6 +57,7 @@ import javax.swing.JPopupMenu;
 import javax.swing.JRadioButton;
 import javax.swing.JTextField;
 import javax.swing.KeyStroke;
+import javax.swing.SwingUtilities;
 import javax.swing.UIManager;
 
 import org.apache.commons.logging.Log;
@@ -85,6 +84,7 @@ import net.osmand.osm.edit.Entity;
 import net.osmand.osm.io.NetworkUtils;
 import net.osmand.router.RouteColorize.ColorizationType;
 import net.osmand.swing.MapPanelSelector.MapSelectionArea;
+import net.osmand.swing.MapTileScheduler.TileKey;
 import net.osmand.util.Algorithms;
 import net.osmand.util.MapUtils;
 
@@ -97,6 +97,7 @@ public class MapPanel extends JPanel implements IMapDownloaderCallback {
 
 	protected static final Log log = PlatformUtil.getLog(MapPanel.class);
 	public static final int divNonLoadedImage = 16;
+	private static final int MAX_CACHED_TILES = 200;
 
 
 
@@ -174,9 +175,28 @@ public class MapPanel extends JPanel implements IMapDownloaderCallback {
 	private Image[][] images;
 	private int xStartingImage = 0;
 	private int yStartingImage = 0;
+	private int imagesLeftTile;
+	private int imagesTopTile;
+	private int imagesZoom;
+	private volatile boolean loadTilesFromInternet;
 
 	private MapTileDownloader downloader = MapTileDownloader.getInstance(MapCreatorVersion.APP_MAP_CREATOR_VERSION); // FIXME no commit
-	Map<String, Image> cache = new HashMap<String, Image>();
+	private final MapTileScheduler tileScheduler = new MapTileScheduler(new MapTileScheduler.TileRenderer() {
+		@Override
+		public Image loadTile(TileKey key) throws IOException {
+			return loadTileImage(key);
+		}
+	}, new MapTileScheduler.TileListener() {
+		@Override
+		public void tileLoaded(final TileKey key, final Image image) {
+			SwingUtilities.invokeLater(new Runnable() {
+				@Override
+				public void run() {
+					updateLoadedTile(key, image);
+				}
+			});
+		}
+	}, DataExtractionSettings.getSettings().getTileLoadingThreads(), MAX_CACHED_TILES);
 
 	private final JPopupMenu popupMenu;
 	private Point popupMenuPoint;
@@ -663,7 +683,7 @@ public class MapPanel extends JPanel implements IMapDownloaderCallback {
 
 	public void setTilesLocation(File tilesLocation) {
 		this.tilesLocation = tilesLocation;
-		cache.clear();
+		tileScheduler.clearCache();
 		prepareImage();
 	}
 
@@ -671,10 +691,7 @@ public class MapPanel extends JPanel implements IMapDownloaderCallback {
 		return map.getName() +"/"+zoom+"/"+(x) +"/"+y+ext+".tile"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
 	}
 
-	public Image getImageFor(int x, int y, int zoom, boolean loadIfNeeded) throws IOException {
-		if (map == null) {
-			return null;
-		}
+	private TileKey getTileKey(int x, int y, int zoom) {
 		long pz = (long) MapUtils.getPowZoom(zoom );
 		while (x < 0) {
 			x += pz;
@@ -688,70 +705,87 @@ public class MapPanel extends JPanel implements IMapDownloaderCallback {
 		while (y >= pz) {
 			y -= pz;
 		}
-		String file = getFileForImage(x, y, zoom, map.getTileFormat());
-		if (cache.get(file) == null) {
-			File en = new File(tilesLocation, file);
-			if (cache.size() > 100) {
-				ArrayList<String> list = new ArrayList<String>(cache.keySet());
-				for (int i = 0; i < list.size(); i += 2) {
-					Image remove = cache.remove(list.get(i));
-					if (remove != null) {
-						remove.flush();
-					}
-				}
-				if (log.isInfoEnabled()) {
-					log.info("Before running gc on map tiles. Total Memory : " + (Runtime.getRuntime().totalMemory() >> 20) + " Mb. Used memory : " //$NON-NLS-1$ //$NON-NLS-2$
-							+ ((Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory()) >> 20) + " Mb"); //$NON-NLS-1$
-				}
-				System.gc();
-				if (log.isInfoEnabled()) {
-					log.info("After running gc on map tiles. Total Memory : " + (Runtime.getRuntime().totalMemory() >> 20) + " Mb. Used memory : " //$NON-NLS-1$ //$NON-NLS-2$
-							+ ((Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory()) >> 20) + " Mb"); //$NON-NLS-1$
+		return new TileKey(zoom, x, y, map.getName());
+	}
+
+	// called from tile loader threads
+	private Image loadTileImage(TileKey key) throws IOException {
+		ITileSource map = this.map;
+		if (map == null || !map.getName().equals(key.style)) {
+			return null;
+		}
+		File en = new File(tilesLocation, getFileForImage(key.x, key.y, key.zoom, map.getTileFormat()));
+		if (downloader.isFileCurrentlyDownloaded(en)) {
+			return null;
+		}
+		if (en.exists()) {
+			try {
+				Image img = ImageIO.read(en);
+				if (img != null) {
+					return img;
 				}
+			} catch (IIOException e) {
+				log.error("Eror reading png " + key.x + " " + key.y + " zoom : " + key.zoom, e); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
 			}
-			if (!downloader.isFileCurrentlyDownloaded(en)) {
-				if (en.exists()) {
-					// long time = System.currentTimeMillis();
-					try {
-						cache.put(file, ImageIO.read(en));
-						// if (log.isDebugEnabled()) {
-						// log.debug("Loaded file : " + file + " " + (System.currentTimeMillis() - time) + " ms");
-						// }
-					} catch (IIOException e) {
-						log.error("Eror reading png " + x + " " + y + " zoom : " + zoom, e); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
-					}
-				}
-				if (loadIfNeeded && cache.get(file) == null) {
-					String urlToLoad = map.getUrlToLoad(x, y, zoom);
-					if (urlToLoad != null) {
-						downloader.requestToDownload(new DownloadRequest(urlToLoad, en, null, x, y, zoom));
-					}
-				}
+		}
+		if (loadTilesFromInternet) {
+			String urlToLoad = map.getUrlToLoad(key.x, key.y, key.zoom);
+			if (urlToLoad != null) {
+				downloader.requestToDownload(new DownloadRequest(urlToLoad, en, null, key.x, key.y, key.zoom));
 			}
 		}
-
-		return cache.get(file);
+		return null;
 	}
 
-	@Override
-	public void tileDownloaded(DownloadRequest request) {
-		if(request == null){
-			prepareRasterImage(false);
+	private void updateLoadedTile(TileKey key, Image image) {
+		if (images == null || map == null || key.zoom != imagesZoom || nativeLibRendering != null) {
 			return;
 		}
-		double tileSize = getTileSize();
-		double xTileLeft = getXTile() - getSize().width / (2.0d * tileSize);
-		double yTileUp = getYTile() - getSize().height / (2.0d * tileSize);
-		int i = request.xTile - (int)xTileLeft;
-		int j = request.yTile - (int)yTileUp;
-		if (request.zoom == this.zoom && (i >= 0 && i < images.length) && (j >= 0 && j < images[i].length)) {
-			try {
-				images[i][j] = getImageFor(request.xTile, request.yTile, zoom, false);
-				repaint();
-			} catch (IOException e) {
-				log.error("Eror reading png " + request.xTile + " " + request.yTile + " zoom : " + zoom, e); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		boolean updated = false;
+		for (int i = 0; i < images.length; i++) {
+			for (int j = 0; j < images[i].length; j++) {
+				if (images[i][j] == null && key.equals(getTileKey(imagesLeftTile + i, imagesTopTile + j, imagesZoom))) {
+					images[i][j] = image;
+					updated = true;
+				}
 			}
+		}
+		if (updated) {
+			repaint();
+		}
+	}
 
+	@Override
+	public void tileDownloaded(final DownloadRequest request) {
+		if (request == null) {
+			SwingUtilities.invokeLater(new Runnable() {
+				@Override
+				public void run() {
+					prepareRasterImage(false);
+				}
+			});
+			return;
+		}
+		ITileSource map = this.map;
+		if (map == null || nativeLibRendering != null) {
+			return;
+		}
+		// called from downloader thread: only downloaded tile is read and painted, viewport is not changed
+		final TileKey key = getTileKey(request.xTile, request.yTile, request.zoom);
+		final Image image;
+		try {
+			image = ImageIO.read(request.fileToSave);
+		} catch (IOException e) {
+			log.error("Eror reading png " + request.xTile + " " + request.yTile + " zoom : " + request.zoom, e); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			return;
+		}
+		if (image != null) {
+			SwingUtilities.invokeLater(new Runnable() {
+				@Override
+				public void run() {
+					updateLoadedTile(key, image);
+				}
+			});
 		}
 	}
 
@@ -778,47 +812,47 @@ public class MapPanel extends JPanel implements IMapDownloaderCallback {
 
 
 	private void prepareRasterImage(boolean loadNecessaryImages){
-		try {
-			double tileSize = getTileSize();
-			if (images != null) {
-				for (int i = 0; i < images.length; i++) {
-					for (int j = 0; j < images[i].length; j++) {
-						// dispose
-					}
-				}
-			}
-			double xTileLeft = getXTile() - getCenterPointX() / tileSize;
-			double xTileRight = getXTile() + getCenterPointX() / tileSize;
-			double yTileUp = getYTile() - getCenterPointY() / tileSize;
-			double yTileDown = getYTile() + getCenterPointY() / tileSize;
-			int ixTileLeft = (int) Math.floor(xTileLeft);
-			int iyTileUp = (int) Math.floor(yTileUp);
-			int ixTileRight = (int) Math.ceil(xTileRight);
-			int iyTileDown = (int) Math.ceil(yTileDown);
-
-			xStartingImage = -(int) ((xTileLeft - ixTileLeft) * tileSize);
-			yStartingImage = -(int) ((yTileUp - iyTileUp) * tileSize);
-			if (loadNecessaryImages) {
-				downloader.refuseAllPreviousRequests();
-			}
-			int tileXCount = ixTileRight - ixTileLeft;
-			int tileYCount = iyTileDown - iyTileUp;
-			images = new BufferedImage[tileXCount][tileYCount];
+		double tileSize = getTileSize();
+		double xTileLeft = getXTile() - getCenterPointX() / tileSize;
+		double xTileRight = getXTile() + getCenterPointX() / tileSize;
+		double yTileUp = getYTile() - getCenterPointY() / tileSize;
+		double yTileDown = getYTile() + getCenterPointY() / tileSize;
+		int ixTileLeft = (int) Math.floor(xTileLeft);
+		int iyTileUp = (int) Math.floor(yTileUp);
+		int ixTileRight = (int) Math.ceil(xTileRight);
+		int iyTileDown = (int) Math.ceil(yTileDown);
+
+		xStartingImage = -(int) ((xTileLeft - ixTileLeft) * tileSize);
+		yStartingImage = -(int) ((yTileUp - iyTileUp) * tileSize);
+		if (loadNecessaryImages) {
+			downloader.refuseAllPreviousRequests();
+		}
+		loadTilesFromInternet = loadNecessaryImages;
+		int tileXCount = ixTileRight - ixTileLeft;
+		int tileYCount = iyTileDown - iyTileUp;
+		images = new Image[tileXCount][tileYCount];
+		imagesLeftTile = ixTileLeft;
+		imagesTopTile = iyTileUp;
+		imagesZoom = zoom;
+		List<TileKey> visible = new ArrayList<TileKey>();
+		if (map != null) {
 			for (int i = 0; i < images.length; i++) {
 				for (int j = 0; j < images[i].length; j++) {
-					int x = ixTileLeft + i;
-					int y = iyTileUp + j;
-					images[i][j] = getImageFor(x, y, zoom, loadNecessaryImages);
+					TileKey key = getTileKey(ixTileLeft + i, iyTileUp + j, zoom);
+					images[i][j] = tileScheduler.getCachedTile(key);
+					if (images[i][j] == null) {
+						visible.add(key);
+					}
 				}
 			}
+		}
+		// tiles closer to the center are loaded first, tiles out of view are cancelled
+		tileScheduler.setViewport(visible, getXTile(), getYTile());
 
-			for (MapPanelLayer l : layers) {
-				l.prepareToDraw();
-			}
-			repaint();
-		} catch (IOException e) {
-			log.error("Eror reading png preparing images"); //$NON-NLS-1$
+		for (MapPanelLayer l : layers) {
+			l.prepareToDraw();
 		}
+		repaint();
 	}
 
 
@@ -0,0 +1,223 @@
+package net.osmand.swing;
+
+import java.awt.Image;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+
+import net.osmand.PlatformUtil;
+
+/**
+ * Loads map tiles on a pool of workers. Tiles closer to the center of current viewport are loaded first,
+ * pending tiles which left the viewport are cancelled. Loaded images are kept in a bounded LRU cache.
+ */
+public class MapTileScheduler {
+
+	private static final Log log = PlatformUtil.getLog(MapTileScheduler.class);
+
+	public interface TileRenderer {
+
+		/**
+		 * Called from worker thread
+		 * @return image or null if tile is not available (yet)
+		 */
+		Image loadTile(TileKey key) throws IOException;
+	}
+
+	public interface TileListener {
+
+		/**
+		 * Called from worker thread when tile is loaded
+		 */
+		void tileLoaded(TileKey key, Image image);
+	}
+
+	public static class TileKey {
+		public final int zoom;
+		public final int x;
+		public final int y;
+		public final String style;
+
+		public TileKey(int zoom, int x, int y, String style) {
+			this.zoom = zoom;
+			this.x = x;
+			this.y = y;
+			this.style = style;
+		}
+
+		@Override
+		public int hashCode() {
+			int result = 31 * zoom + x;
+			result = 31 * result + y;
+			return 31 * result + (style == null ? 0 : style.hashCode());
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof TileKey)) {
+				return false;
+			}
+			TileKey o = (TileKey) obj;
+			return zoom == o.zoom && x == o.x && y == o.y
+					&& (style == null ? o.style == null : style.equals(o.style));
+		}
+
+		@Override
+		public String toString() {
+			return style + "/" + zoom + "/" + x + "/" + y;
+		}
+	}
+
+	private class TileTask implements Runnable, Comparable<TileTask> {
+		private final TileKey key;
+		private final double distance;
+		private final long order;
+		private volatile boolean cancelled;
+
+		TileTask(TileKey key, double distance, long order) {
+			this.key = key;
+			this.distance = distance;
+			this.order = order;
+		}
+
+		@Override
+		public int compareTo(TileTask o) {
+			int c = Double.compare(distance, o.distance);
+			return c != 0 ? c : Long.compare(order, o.order);
+		}
+
+		@Override
+		public void run() {
+			Image img = null;
+			if (!cancelled) {
+				try {
+					img = renderer.loadTile(key);
+				} catch (IOException | RuntimeException e) {
+					log.error("Error loading tile " + key + ": " + e.getMessage(), e); //$NON-NLS-1$ //$NON-NLS-2$
+				}
+			}
+			if (img != null) {
+				synchronized (MapTileScheduler.this) {
+					cache.put(key, img);
+				}
+				if (!cancelled) {
+					listener.tileLoaded(key, img);
+				}
+			}
+			synchronized (MapTileScheduler.this) {
+				if (pending.get(key) == this) {
+					pending.remove(key);
+				}
+			}
+		}
+	}
+
+	private final TileRenderer renderer;
+	private final TileListener listener;
+	private final ThreadPoolExecutor executor;
+	private final Map<TileKey, TileTask> pending = new HashMap<TileKey, TileTask>();
+	private final Map<TileKey, Image> cache;
+	private long order;
+
+	public MapTileScheduler(TileRenderer renderer, TileListener listener, int threads, final int cacheSize) {
+		this.renderer = renderer;
+		this.listener = listener;
+		this.cache = new LinkedHashMap<TileKey, Image>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<TileKey, Image> eldest) {
+				if (size() > cacheSize) {
+					eldest.getValue().flush();
+					return true;
+				}
+				return false;
+			}
+		};
+		final AtomicInteger threadId = new AtomicInteger();
+		executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+				new PriorityBlockingQueue<Runnable>(), new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r, "Map tile loader " + threadId.incrementAndGet()); //$NON-NLS-1$
+						t.setDaemon(true);
+						return t;
+					}
+				});
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * @return cached image or null
+	 */
+	public synchronized Image getCachedTile(TileKey key) {
+		return cache.get(key);
+	}
+
+	/**
+	 * Schedules loading of visible tiles which are not cached, ordered by distance to the center (in tiles).
+	 * Pending tiles which are not visible anymore are cancelled.
+	 */
+	public synchronized void setViewport(Collection<TileKey> visible, double centerX, double centerY) {
+		Set<TileKey> visibleSet = new HashSet<TileKey>(visible);
+		Iterator<Map.Entry<TileKey, TileTask>> it = pending.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<TileKey, TileTask> e = it.next();
+			if (!visibleSet.contains(e.getKey())) {
+				e.getValue().cancelled = true;
+				executor.remove(e.getValue());
+				it.remove();
+			}
+		}
+		List<TileTask> tasks = new ArrayList<TileTask>();
+		for (TileKey key : visible) {
+			if (!cache.containsKey(key) && !pending.containsKey(key)) {
+				double dx = key.x + 0.5 - centerX;
+				double dy = key.y + 0.5 - centerY;
+				TileTask task = new TileTask(key, dx * dx + dy * dy, order++);
+				pending.put(key, task);
+				tasks.add(task);
+			}
+		}
+		for (TileTask task : tasks) {
+			executor.execute(task);
+		}
+	}
+
+	public synchronized void clearCache() {
+		for (TileTask t : pending.values()) {
+			t.cancelled = true;
+			executor.remove(t);
+		}
+		pending.clear();
+		for (Image img : cache.values()) {
+			img.flush();
+		}
+		cache.clear();
+	}
+
+	public synchronized int getPendingCount() {
+		return pending.size();
+	}
+
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+}
@@ -0,0 +1,124 @@
+package net.osmand.swing;
+
+import static org.junit.Assert.*;
+
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import net.osmand.swing.MapTileScheduler.TileKey;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MapTileSchedulerTest {
+
+	private static final String STYLE = "test";
+
+	private final List<TileKey> loaded = Collections.synchronizedList(new ArrayList<TileKey>());
+	private final List<TileKey> notified = Collections.synchronizedList(new ArrayList<TileKey>());
+	private final TileKey gate = new TileKey(10, 100, 100, STYLE);
+	private final CountDownLatch gateStarted = new CountDownLatch(1);
+	private final CountDownLatch gateOpened = new CountDownLatch(1);
+	private MapTileScheduler scheduler;
+
+	@Before
+	public void setUp() {
+		// single worker is blocked by gate tile, so the queue order could be checked
+		scheduler = new MapTileScheduler(new MapTileScheduler.TileRenderer() {
+			@Override
+			public Image loadTile(TileKey key) {
+				if (key.equals(gate)) {
+					gateStarted.countDown();
+					try {
+						gateOpened.await(10, TimeUnit.SECONDS);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+				loaded.add(key);
+				return new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
+			}
+		}, new MapTileScheduler.TileListener() {
+			@Override
+			public void tileLoaded(TileKey key, Image image) {
+				notified.add(key);
+			}
+		}, 1, 5);
+	}
+
+	@After
+	public void tearDown() {
+		scheduler.shutdown();
+	}
+
+	private void blockWorker() throws InterruptedException {
+		scheduler.setViewport(Collections.singletonList(gate), 100.5, 100.5);
+		assertTrue(gateStarted.await(10, TimeUnit.SECONDS));
+	}
+
+	private void waitForPending() throws InterruptedException {
+		long end = System.currentTimeMillis() + 10000;
+		while (scheduler.getPendingCount() > 0 && System.currentTimeMillis() < end) {
+			Thread.sleep(10);
+		}
+		assertEquals(0, scheduler.getPendingCount());
+	}
+
+	private static TileKey tile(int x, int y) {
+		return new TileKey(10, x, y, STYLE);
+	}
+
+	@Test
+	public void testCenterTilesFirst() throws InterruptedException {
+		blockWorker();
+		List<TileKey> visible = Arrays.asList(gate, tile(0, 0), tile(2, 2), tile(1, 1), tile(0, 1), tile(3, 3));
+		scheduler.setViewport(visible, 1.5, 1.5);
+		gateOpened.countDown();
+		waitForPending();
+		assertEquals(Arrays.asList(gate, tile(1, 1), tile(0, 1), tile(0, 0), tile(2, 2), tile(3, 3)), loaded);
+	}
+
+	@Test
+	public void testCancelTilesOutOfView() throws InterruptedException {
+		blockWorker();
+		scheduler.setViewport(Arrays.asList(gate, tile(0, 0), tile(1, 1), tile(2, 2)), 1.5, 1.5);
+		// moved away, gate is not visible anymore and shouldn't be reported
+		scheduler.setViewport(Arrays.asList(tile(2, 2), tile(3, 3)), 3, 3);
+		gateOpened.countDown();
+		waitForPending();
+		assertEquals(Arrays.asList(gate, tile(2, 2), tile(3, 3)), loaded);
+		assertEquals(Arrays.asList(tile(2, 2), tile(3, 3)), notified);
+		assertNotNull(scheduler.getCachedTile(tile(2, 2)));
+		assertNull(scheduler.getCachedTile(tile(1, 1)));
+	}
+
+	@Test
+	public void testCacheIsBounded() throws InterruptedException {
+		gateOpened.countDown();
+		List<TileKey> visible = new ArrayList<TileKey>();
+		for (int i = 0; i < 8; i++) {
+			visible.add(tile(i, 0));
+		}
+		scheduler.setViewport(visible, 0.5, 0.5);
+		waitForPending();
+		int cached = 0;
+		for (TileKey k : visible) {
+			if (scheduler.getCachedTile(k) != null) {
+				cached++;
+			}
+		}
+		assertEquals(5, cached);
+		// cached tiles are not loaded again
+		loaded.clear();
+		scheduler.setViewport(visible.subList(5, 8), 0.5, 0.5);
+		waitForPending();
+		assertTrue(loaded.isEmpty());
+	}
+}
@@ -230,6 +230,9 @@ public class MainUtilities {
 			} else if (s.equals("--ram-process")) {
 				settings.processInRam = true;
 				it.remove();
+			} else if (s.equals("--run-report")) {
+				settings.writeRunReport = true;
+				it.remove();
 			} else if (s.startsWith("--max-height-tiles-in-ram=")) {
 				settings.maxHeightTilesInRam = Integer.parseInt(s.substring(s.indexOf('=') + 1));
 				it.remove();
@@ -282,13 +285,39 @@ public class MainUtilities {
 		if (settings.maxHeightTilesInRam > 0) {
 			IndexHeightData.MAXIMUM_LOADED_DATA = settings.maxHeightTilesInRam;
 		}
+		List<File> changeFiles = new ArrayList<>();
+		boolean keepNodesDb = false;
+		for (String arg : subArgs) {
+			if (arg.equals("--keep-nodes-db")) {
+				keepNodesDb = true;
+			} else if (arg.startsWith("--osm-change=")) {
+				for (String f : arg.substring("--osm-change=".length()).split(",")) {
+					changeFiles.add(new File(f));
+				}
+			}
+		}
 		IndexCreator ic = new IndexCreator(new File("."), settings);
 		ic.setDialects(settings.processInRam ? DBDialect.SQLITE_IN_MEMORY : DBDialect.SQLITE,
 				settings.processInRam ? DBDialect.SQLITE_IN_MEMORY : DBDialect.SQLITE);
-		ic.setLastModifiedDate(fileToGen.lastModified());
 		String regionName = fileToGen.getName();
 		MapRenderingTypesEncoder types = new MapRenderingTypesEncoder(settings.renderingTypesFile, regionName);
-		File res = ic.generateIndexes(fileToGen, new ConsoleProgressImplementation(), null, MapZooms.getDefault(), types, log);
+		File res;
+		if (!changeFiles.isEmpty()) {
+			// nodes db from previous generation of the same file (--keep-nodes-db) is updated
+			long lastModified = fileToGen.lastModified();
+			for (File f : changeFiles) {
+				lastModified = Math.max(lastModified, f.lastModified());
+			}
+			ic.setLastModifiedDate(lastModified);
+			int i = regionName.indexOf('.');
+			ic.setRegionName(Algorithms.capitalizeFirstLetterAndLowercase(i > -1 ? regionName.substring(0, i) : regionName));
+			res = ic.updateIndexes(changeFiles.toArray(new File[0]), new ConsoleProgressImplementation(), null,
+					MapZooms.getDefault(), types, log);
+		} else {
+			ic.setLastModifiedDate(fileToGen.lastModified());
+			ic.setDeleteOsmDB(!keepNodesDb);
+			res = ic.generateIndexes(fileToGen, new ConsoleProgressImplementation(), null, MapZooms.getDefault(), types, log);
+		}
 		for(int i = 1; i < subArgs.size(); i++) {
 			String arg = subArgs.get(i);
 			if (arg.equals("--upload") && i < subArgs.size() - 1) {
@@ -343,7 +372,9 @@ public class MainUtilities {
 		System.out.println("This utility provides access to all other console utilities of OsmAnd,");
 		System.out.println("each utility has own argument list and own synopsys. Here is the list:");
 		System.out.println("\t\t generate-obf <path to osm file> <--srtm=opt-folder-with-srtm-data>: simple way to generate obf file in place. "
-				+ "\t\t\t	Another supported options generate-map, generate-address, generate-poi, generate-roads (generate obf partially)");
+				+ "\t\t\t	Another supported options generate-map, generate-address, generate-poi, generate-roads (generate obf partially). "
+				+ "\t\t\t	--keep-nodes-db keeps nodes db for updates, --osm-change=<osc files> applies changes to kept nodes db and regenerates obf, "
+				+ "--run-report writes json with generation phase metrics next to obf");
 		System.out.println("\t\t inspector <params>: powerful tool to inspect obf files and convert them to osm");
 		System.out.println("\t\t check-ocean-tile <lat> <lon> <zoom=11>: checks ocean or land tile is in bz2 list");
 		System.out.println("\t\t generate-ocean-tile <coastline osm file> <optional output file>: creates ocean tiles 12 zoom");
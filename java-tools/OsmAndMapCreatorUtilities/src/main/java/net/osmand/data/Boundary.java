@@ -12,21 +12,48 @@ public class Boundary {
 	private long adminCenterId;
 	private CityType cityType;
 	private Multipolygon multipolygon;
+	private boolean prepareContainment;
+	private volatile PreparedBoundary preparedBoundary;
 
 	public Boundary(MultipolygonBuilder m) {
 		multipolygon = m.build();
 	}
 
 	public boolean containsPoint(double latitude, double longitude) {
+		if (prepareContainment) {
+			return getPreparedBoundary().containsPoint(latitude, longitude);
+		}
 		return multipolygon.containsPoint(latitude, longitude);
 	}
 
-	public void mergeWith(Boundary boundary) {
+	public synchronized void mergeWith(Boundary boundary) {
 		multipolygon.mergeWith(boundary.multipolygon);
+		preparedBoundary = null;
 	}
 
 	public boolean containsPoint(LatLon location) {
-		return multipolygon.containsPoint(location);
+		return containsPoint(location.getLatitude(), location.getLongitude());
+	}
+
+	/**
+	 * Boundary is tested many times, grid index is built on the first test
+	 */
+	public void prepareContainment() {
+		prepareContainment = true;
+	}
+
+	private PreparedBoundary getPreparedBoundary() {
+		PreparedBoundary p = preparedBoundary;
+		if (p == null) {
+			synchronized (this) {
+				p = preparedBoundary;
+				if (p == null) {
+					p = new PreparedBoundary(multipolygon);
+					preparedBoundary = p;
+				}
+			}
+		}
+		return p;
 	}
 
 	public long getBoundaryId() {
@@ -0,0 +1,238 @@
+package net.osmand.data;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import gnu.trove.list.array.TIntArrayList;
+import net.osmand.osm.edit.Node;
+
+/**
+ * Grid over multipolygon bbox to speed up point containment. Cells which are not crossed by ring segments are entirely
+ * inside or outside and answered from grid. For points of border cells rings are crossed by ray using only segments
+ * of grid row.
+ *
+ * Result for a set of rings containing a point is taken from {@link Multipolygon#containsPoint(double, double)} on
+ * cell centers, so nested rings are resolved exactly as by multipolygon.
+ */
+public class PreparedBoundary {
+
+	private static final byte OUTSIDE = 0;
+	private static final byte INSIDE = 1;
+	private static final byte BORDER = 2;
+
+	private static final int MIN_GRID_SIZE = 4;
+	private static final int MAX_GRID_SIZE = 512;
+	// segments are widened by margin, so cells without segments are not touched by rings
+	private static final double MARGIN = 1e-7;
+
+	private final Multipolygon multipolygon;
+	private double bottom;
+	private double top;
+	private double left;
+	private double right;
+	private int gridSize;
+	private double cellLat;
+	private double cellLon;
+	private byte[] cells;
+
+	private int segments;
+	private double[] lat1;
+	private double[] lon1;
+	private double[] lat2;
+	private double[] lon2;
+	private int[] segmentRing;
+	// row -> segments crossing row
+	private int[][] rowSegments;
+	// rings containing point -> is inside multipolygon
+	private final Map<BitSet, Boolean> ringsInside = new HashMap<BitSet, Boolean>();
+
+	public PreparedBoundary(Multipolygon multipolygon) {
+		this.multipolygon = multipolygon;
+		List<List<Node>> rings = new ArrayList<List<Node>>();
+		for (Ring r : multipolygon.getOuterRings()) {
+			rings.add(r.getBorder());
+		}
+		for (Ring r : multipolygon.getInnerRings()) {
+			rings.add(r.getBorder());
+		}
+		initSegments(rings);
+		if (segments > 0) {
+			initGrid();
+			classifyCells();
+		}
+	}
+
+	private void initSegments(List<List<Node>> rings) {
+		for (List<Node> border : rings) {
+			segments += border.size();
+		}
+		lat1 = new double[segments];
+		lon1 = new double[segments];
+		lat2 = new double[segments];
+		lon2 = new double[segments];
+		segmentRing = new int[segments];
+		bottom = Double.POSITIVE_INFINITY;
+		top = Double.NEGATIVE_INFINITY;
+		left = Double.POSITIVE_INFINITY;
+		right = Double.NEGATIVE_INFINITY;
+		int s = 0;
+		for (int ring = 0; ring < rings.size(); ring++) {
+			List<Node> border = rings.get(ring);
+			for (int i = 0; i < border.size(); i++) {
+				// last segment closes ring
+				Node a = border.get(i);
+				Node b = border.get(i == border.size() - 1 ? 0 : i + 1);
+				lat1[s] = a.getLatitude();
+				lon1[s] = a.getLongitude();
+				lat2[s] = b.getLatitude();
+				lon2[s] = b.getLongitude();
+				segmentRing[s] = ring;
+				bottom = Math.min(bottom, lat1[s]);
+				top = Math.max(top, lat1[s]);
+				left = Math.min(left, lon1[s]);
+				right = Math.max(right, lon1[s]);
+				s++;
+			}
+		}
+		bottom -= MARGIN;
+		top += MARGIN;
+		left -= MARGIN;
+		right += MARGIN;
+	}
+
+	private void initGrid() {
+		gridSize = Math.max(MIN_GRID_SIZE, Math.min(MAX_GRID_SIZE, 2 * (int) Math.sqrt(segments)));
+		cellLat = (top - bottom) / gridSize;
+		cellLon = (right - left) / gridSize;
+		cells = new byte[gridSize * gridSize];
+		TIntArrayList[] rows = new TIntArrayList[gridSize];
+		for (int r = 0; r < gridSize; r++) {
+			rows[r] = new TIntArrayList();
+		}
+		for (int s = 0; s < segments; s++) {
+			double minLat = Math.min(lat1[s], lat2[s]) - MARGIN;
+			double maxLat = Math.max(lat1[s], lat2[s]) + MARGIN;
+			int rowFrom = getRow(minLat);
+			int rowTo = getRow(maxLat);
+			for (int r = rowFrom; r <= rowTo; r++) {
+				rows[r].add(s);
+				// part of segment within row
+				double bandBottom = Math.max(minLat, bottom + r * cellLat - MARGIN);
+				double bandTop = Math.min(maxLat, bottom + (r + 1) * cellLat + MARGIN);
+				boolean horizontal = lat1[s] == lat2[s];
+				double lonA = horizontal ? lon1[s] : getLongitude(s, bandBottom);
+				double lonB = horizontal ? lon2[s] : getLongitude(s, bandTop);
+				int colFrom = getColumn(Math.min(lonA, lonB) - MARGIN);
+				int colTo = getColumn(Math.max(lonA, lonB) + MARGIN);
+				for (int c = colFrom; c <= colTo; c++) {
+					cells[r * gridSize + c] = BORDER;
+				}
+			}
+		}
+		rowSegments = new int[gridSize][];
+		for (int r = 0; r < gridSize; r++) {
+			rowSegments[r] = rows[r].toArray();
+		}
+	}
+
+	private void classifyCells() {
+		for (int r = 0; r < gridSize; r++) {
+			double lat = bottom + (r + 0.5) * cellLat;
+			// crossings of row center line sorted by longitude
+			int[] row = rowSegments[r];
+			TIntArrayList crossing = new TIntArrayList();
+			for (int s : row) {
+				if (crosses(s, lat)) {
+					crossing.add(s);
+				}
+			}
+			int[] sorted = crossing.toArray();
+			double[] crossingLon = new double[sorted.length];
+			for (int i = 0; i < sorted.length; i++) {
+				crossingLon[i] = getLongitude(sorted[i], lat);
+			}
+			sortByLongitude(sorted, crossingLon);
+			BitSet rings = new BitSet();
+			int next = 0;
+			for (int c = 0; c < gridSize; c++) {
+				double lon = left + (c + 0.5) * cellLon;
+				while (next < sorted.length && crossingLon[next] < lon) {
+					rings.flip(segmentRing[sorted[next]]);
+					next++;
+				}
+				if (cells[r * gridSize + c] != BORDER) {
+					Boolean inside = ringsInside.get(rings);
+					if (inside == null) {
+						inside = multipolygon.containsPoint(lat, lon);
+						ringsInside.put((BitSet) rings.clone(), inside);
+					}
+					cells[r * gridSize + c] = inside ? INSIDE : OUTSIDE;
+				}
+			}
+		}
+	}
+
+	private static void sortByLongitude(int[] segments, double[] lons) {
+		// insertion sort, row has few crossings
+		for (int i = 1; i < lons.length; i++) {
+			double lon = lons[i];
+			int s = segments[i];
+			int j = i - 1;
+			while (j >= 0 && lons[j] > lon) {
+				lons[j + 1] = lons[j];
+				segments[j + 1] = segments[j];
+				j--;
+			}
+			lons[j + 1] = lon;
+			segments[j + 1] = s;
+		}
+	}
+
+	public boolean containsPoint(LatLon location) {
+		return containsPoint(location.getLatitude(), location.getLongitude());
+	}
+
+	public boolean containsPoint(double latitude, double longitude) {
+		if (segments == 0 || latitude < bottom || latitude > top || longitude < left || longitude > right) {
+			return false;
+		}
+		int r = getRow(latitude);
+		byte cell = cells[r * gridSize + getColumn(longitude)];
+		if (cell != BORDER) {
+			return cell == INSIDE;
+		}
+		BitSet rings = new BitSet();
+		for (int s : rowSegments[r]) {
+			if (crosses(s, latitude) && getLongitude(s, latitude) < longitude) {
+				rings.flip(segmentRing[s]);
+			}
+		}
+		Boolean inside = ringsInside.get(rings);
+		if (inside == null) {
+			// rings combination is not met on cell centers (small hole)
+			return multipolygon.containsPoint(latitude, longitude);
+		}
+		return inside;
+	}
+
+	private boolean crosses(int s, double lat) {
+		return (lat1[s] > lat) != (lat2[s] > lat);
+	}
+
+	// segment is not horizontal
+	private double getLongitude(int s, double lat) {
+		double lat0 = Math.max(Math.min(lat, Math.max(lat1[s], lat2[s])), Math.min(lat1[s], lat2[s]));
+		return lon1[s] + (lat0 - lat1[s]) * (lon2[s] - lon1[s]) / (lat2[s] - lat1[s]);
+	}
+
+	private int getRow(double lat) {
+		return Math.max(0, Math.min(gridSize - 1, (int) ((lat - bottom) / cellLat)));
+	}
+
+	private int getColumn(double lon) {
+		return Math.max(0, Math.min(gridSize - 1, (int) ((lon - left) / cellLon)));
+	}
+}
@@ -290,6 +290,8 @@ public class BinaryInspector {
 						println("\n" + extracted.size() + " parts were successfully extracted to " + args[1]);
 					}
 				}
+			} else if (f.equals("-stats")) {
+				printStats(args);
 			} else if (f.startsWith("-v") || f.startsWith("-osm") || f.startsWith("-zoom")) {
 				if (args.length < 2) {
 					printUsage("Missing file parameter");
@@ -307,6 +309,26 @@ public class BinaryInspector {
 		}
 	}
 
+	private void printStats(String[] args) throws IOException {
+		int threads = Math.max(1, Runtime.getRuntime().availableProcessors());
+		File out = null;
+		File target = null;
+		for (int i = 1; i < args.length; i++) {
+			if (args[i].startsWith("-threads=")) {
+				threads = Integer.parseInt(args[i].substring("-threads=".length()));
+			} else if (args[i].startsWith("-out=")) {
+				out = new File(args[i].substring("-out=".length()));
+			} else {
+				target = new File(args[i]);
+			}
+		}
+		if (target == null || !target.exists()) {
+			printUsage("Missing file or directory parameter");
+			return;
+		}
+		new ObfStatsCollector(threads).printStats(target, out);
+	}
+
 	public static final void writeInt(CodedOutputStream ous, int v) throws IOException {
 		ous.writeRawByte((v >>> 24) & 0xFF);
 		ous.writeRawByte((v >>> 16) & 0xFF);
@@ -1449,6 +1471,8 @@ public class BinaryInspector {
 		System.out.println("\nUsage for print info : inspector [-vaddress] [-vcitynames] [-vstreetgroups] [-vstreets] [-vbuildings] [-vintersections] [-vmap] [-vstats] [-vmapobjects] [-vmapcoordinates] [-osm] [-vpoi] [-vrouting] [-vtransport] [-zoom=Zoom] [-bbox=LeftLon,TopLat,RightLon,BottomLat] [file]");
 		System.out.println("  Prints information about [file] binary index of OsmAnd.");
 		System.out.println("  -v.. more verbose output (like all cities and their streets or all map objects with tags/values and coordinates)");
+		System.out.println("\nUsage for statistics : inspector -stats [-threads=N] [-out=file.json] [file or directory]");
+		System.out.println("  Prints json with size per section / zoom / tag, object counts and bounds, all obf files of directory are processed concurrently.");
 		System.out.println("\nUsage for combining indexes : inspector -c file_to_create (file_from_extract ((+|-)parts_to_extract)? )*");
 		System.out.println("\tCreate new file of extracted parts from input file. [parts_to_extract] could be parts to include or exclude.");
 		System.out.println("  Example : inspector -c output_file input_file +1,2,3\n\tExtracts 1, 2, 3 parts (could be find in print info)");
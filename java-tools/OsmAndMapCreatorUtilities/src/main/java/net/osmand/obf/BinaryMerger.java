@@ -18,12 +18,21 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
@@ -67,9 +76,16 @@ public class BinaryMerger {
 
 	public static final int BUFFER_SIZE = 1 << 20;
 	private final static Log log = PlatformUtil.getLog(BinaryMerger.class);
-	public static final String helpMessage = "output_file.obf [--address] [--poi] [input_file.obf] ...: merges all obf files and merges poi & address structure into 1";
+	public static final String helpMessage = "output_file.obf [--address] [--poi] [--threads=N] [input_file.obf] ...: merges all obf files and merges poi & address structure into 1";
+	// cities (with streets and buildings) loaded ahead of writer per thread
+	private static final int CITIES_WINDOW_PER_THREAD = 4;
+	// amenities buffered per input file (POI_BUFFERED_BATCHES * POI_BATCH_SIZE)
+	private static final int POI_BATCH_SIZE = 1000;
+	private static final int POI_BUFFERED_BATCHES = 16;
 	private static final Map<String, Integer> COMBINE_ARGS = new HashMap<String, Integer>();
 	private BinaryMapIndexReader.OsmAndOwner osmAndOwner;
+	// threads to decode input files (1 to merge sequentially)
+	private int threads = new IndexCreatorSettings().threadsCount;
 
 	static {
 		COMBINE_ARGS.put("--address", OsmandOdb.OsmAndStructure.ADDRESSINDEX_FIELD_NUMBER);
@@ -387,11 +403,16 @@ public class BinaryMerger {
 
 	private void preloadStreetsAndBuildings(BinaryMapIndexReader rindex, City city,
 			Map<City, Map<Street, List<Node>>> namesakesStreetNodes) throws IOException {
-		rindex.preloadStreets(city, null);
 		Map<Street, List<Node>> streetNodes = new LinkedHashMap<Street, List<Node>>();
 		Map<String, List<Node>> streetNodesN = new LinkedHashMap<String, List<Node>>();
+		// reader is not thread safe, cities of the same file are loaded one by one
+		synchronized (rindex) {
+			rindex.preloadStreets(city, null);
+			for (Street street : city.getStreets()) {
+				rindex.preloadBuildings(street, null);
+			}
+		}
 		for (Street street : city.getStreets()) {
-			rindex.preloadBuildings(street, null);
 			ArrayList<Node> nns = new ArrayList<Node>();
 			for (Street is : street.getIntersectedStreets()) {
 				List<Node> list = streetNodesN.get(is.getName());
@@ -431,8 +452,69 @@ public class BinaryMerger {
 		namesakesStreetNodes.put(city, streetNodes);
 	}
 
-	private void combineAddressIndex(String name, BinaryMapIndexWriter writer, AddressRegion[] addressRegions, BinaryMapIndexReader[] indexes)
-			throws IOException {
+	private Map<City, Map<Street, List<Node>>> loadCityStreets(City city, List<City> namesakes,
+			Map<City, BinaryMapIndexReader> cityMap) throws IOException {
+		Map<City, Map<Street, List<Node>>> namesakesStreetNodes = new HashMap<City, Map<Street, List<Node>>>();
+		preloadStreetsAndBuildings(cityMap.get(city), city, namesakesStreetNodes);
+		if (namesakes != null) {
+			for (City namesake : namesakes) {
+				preloadStreetsAndBuildings(cityMap.get(namesake), namesake, namesakesStreetNodes);
+			}
+		}
+		return namesakesStreetNodes;
+	}
+
+	private List<City> readCities(AddressRegion region, BinaryMapIndexReader index, int type) throws IOException {
+		List<City> cities = index.getCities(region, null, type);
+		String country = extractCountryName(index);
+		for (City city : cities) {
+			normalizePostcode(city, country);
+		}
+		return cities;
+	}
+
+	private List<List<City>> readCities(final AddressRegion[] addressRegions, final BinaryMapIndexReader[] indexes,
+			final int type, ExecutorService executor) throws IOException {
+		List<List<City>> res = new ArrayList<List<City>>();
+		if (executor == null) {
+			for (int i = 0; i < addressRegions.length; i++) {
+				res.add(readCities(addressRegions[i], indexes[i], type));
+			}
+			return res;
+		}
+		List<Future<List<City>>> futures = new ArrayList<Future<List<City>>>();
+		for (int i = 0; i < addressRegions.length; i++) {
+			final int ind = i;
+			futures.add(executor.submit(new Callable<List<City>>() {
+				@Override
+				public List<City> call() throws IOException {
+					return readCities(addressRegions[ind], indexes[ind], type);
+				}
+			}));
+		}
+		for (Future<List<City>> f : futures) {
+			res.add(getResult(f));
+		}
+		return res;
+	}
+
+	private static <T> T getResult(Future<T> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			throw new IOException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			} else if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		}
+	}
+
+	private void combineAddressIndex(String name, BinaryMapIndexWriter writer, AddressRegion[] addressRegions,
+			BinaryMapIndexReader[] indexes, ExecutorService executor) throws IOException {
 		IndexCreatorSettings settings = new IndexCreatorSettings();
 		Set<String> attributeTagsTableSet = new TreeSet<String>();
 		for (int i = 0; i != addressRegions.length; i++) {
@@ -451,11 +533,11 @@ public class BinaryMerger {
 		for (int type : BinaryMapAddressReaderAdapter.CITY_TYPES) {
 			Map<City, BinaryMapIndexReader> cityMap = new HashMap<City, BinaryMapIndexReader>();
 			Map<Long, City> cityIds = new HashMap<Long, City>();
+			// files are decoded in parallel, but merged in the order of input files
+			List<List<City>> fileCities = readCities(addressRegions, indexes, type, executor);
 			for (int i = 0; i < addressRegions.length; i++) {
-				AddressRegion region = addressRegions[i];
 				final BinaryMapIndexReader index = indexes[i];
-				for (City city : index.getCities(region, null, type)) {
-					normalizePostcode(city, extractCountryName(index));
+				for (City city : fileCities.get(i)) {
 					// weird code cause city ids can overlap
 					// probably code to merge cities below is not needed (it called mostly for postcodes)
 					if(cityIds.containsKey(city.getId())) {
@@ -473,29 +555,47 @@ public class BinaryMerger {
 					}
 				}
 			}
+			fileCities = null;
 			List<City> cities = new ArrayList<City>(cityMap.keySet());
 			Map<City, List<City>> mergeCityGroup = new HashMap<City, List<City>>();
 			Collections.sort(cities, MapObject.BY_NAME_COMPARATOR);
 			mergeCitiesByNameDistance(cities, mergeCityGroup, cityMap, type == BinaryMapAddressReaderAdapter.CITY_TOWN_TYPE);
-			List<BinaryFileReference> refs = new ArrayList<BinaryFileReference>();
 			// 1. write cities
 			writer.startCityBlockIndex(type);
-			Map<City, Map<Street, List<Node>>> namesakesStreetNodes = new HashMap<City, Map<Street, List<Node>>>();
+			// streets and buildings are loaded by workers ahead (bounded window to limit memory),
+			// but cities are merged and serialized strictly in order
+			LinkedList<Future<Map<City, Map<Street, List<Node>>>>> queue = new LinkedList<Future<Map<City, Map<Street, List<Node>>>>>();
+			int submitted = 0;
+			int window = CITIES_WINDOW_PER_THREAD * threads;
 			for (int i = 0; i < cities.size(); i++) {
 				City city = cities.get(i);
-				BinaryMapIndexReader rindex = cityMap.get(city);
-				preloadStreetsAndBuildings(rindex, city, namesakesStreetNodes);
 				List<City> namesakes = mergeCityGroup.get(city);
+				Map<City, Map<Street, List<Node>>> namesakesStreetNodes;
+				if (executor != null) {
+					while (submitted < cities.size() && submitted < i + window) {
+						final City c = cities.get(submitted);
+						final List<City> cnamesakes = mergeCityGroup.get(c);
+						final Map<City, BinaryMapIndexReader> fcityMap = cityMap;
+						queue.add(executor.submit(new Callable<Map<City, Map<Street, List<Node>>>>() {
+							@Override
+							public Map<City, Map<Street, List<Node>>> call() throws IOException {
+								return loadCityStreets(c, cnamesakes, fcityMap);
+							}
+						}));
+						submitted++;
+					}
+					namesakesStreetNodes = getResult(queue.poll());
+				} else {
+					namesakesStreetNodes = loadCityStreets(city, namesakes, cityMap);
+				}
 				if (namesakes != null) {
 					for (City namesake : namesakes) {
-						preloadStreetsAndBuildings(cityMap.get(namesake), namesake, namesakesStreetNodes);
 						city = mergeCities(city, namesake, namesakesStreetNodes);
 					}
 				}
 
 				int cityType = city.isPostcode() ? -1 : city.getType().ordinal();
 				BinaryFileReference ref = writer.writeCityHeader(city, cityType, tagRules);
-				refs.add(ref);
 				writer.writeCityIndex(city, city.getStreets(), namesakesStreetNodes.get(city), ref, tagRules);
 				IndexAddressCreator.putNamedMapObject(namesIndex, city, ref.getStartPointer(), settings);
 				if (!city.isPostcode()) {
@@ -519,73 +619,205 @@ public class BinaryMerger {
 		return ((long) MapUtils.get31TileNumberX(loc.getLongitude()) << 31 | (long) MapUtils.get31TileNumberY(loc.getLatitude()));
 	}
 
-	private void combinePoiIndex(String name, BinaryMapIndexWriter writer, long dateCreated, PoiRegion[] poiRegions, BinaryMapIndexReader[] indexes)
-			throws IOException, SQLException {
-		final int[] writtenPoiCount = {0};
+	private static class PoiMerger {
+		final IndexPoiCreator indexPoiCreator;
+		final Map<Long, List<Amenity>> amenityRelations = new HashMap<Long, List<Amenity>>();
+		// ids of previously merged files
+		final TLongHashSet set = new TLongHashSet();
+		TLongHashSet file = new TLongHashSet();
+		long generatedRelationId = -1;
+		int writtenPoiCount = 0;
+
+		PoiMerger(IndexPoiCreator indexPoiCreator) {
+			this.indexPoiCreator = indexPoiCreator;
+		}
+
+		void addAmenity(Amenity amenity) throws SQLException {
+			boolean isRelation = amenity.getId() < 0;
+			if (isRelation) {
+				long j = latlon(amenity);
+				List<Amenity> list;
+				if (!amenityRelations.containsKey(j)) {
+					list = new ArrayList<Amenity>(1);
+					amenityRelations.put(j, list);
+				} else {
+					list = amenityRelations.get(j);
+				}
+				boolean unique = true;
+				for (Amenity a : list) {
+					if (a.getType() == amenity.getType() &&
+							Algorithms.objectEquals(a.getSubType(), amenity.getSubType())) {
+						unique = false;
+						break;
+					}
+				}
+				if (unique) {
+					amenity.setId(generatedRelationId--);
+					amenityRelations.get(j).add(amenity);
+					indexPoiCreator.insertAmenityIntoPoi(amenity);
+					writtenPoiCount++;
+				}
+			} else {
+				if (!set.contains(amenity.getId())) {
+					file.add(amenity.getId());
+					indexPoiCreator.insertAmenityIntoPoi(amenity);
+					writtenPoiCount++;
+				}
+			}
+		}
+
+		void finishFile() {
+			set.addAll(file);
+			file = new TLongHashSet();
+		}
+	}
+
+	/**
+	 * Decodes poi of one file on worker thread into bounded queue of batches,
+	 * so amenities could be merged in the order of input files.
+	 */
+	private static class PoiFileReader implements Runnable {
+		private static final List<Amenity> END = new ArrayList<Amenity>(0);
+
+		private final BinaryMapIndexReader index;
+		private final BlockingQueue<List<Amenity>> queue = new ArrayBlockingQueue<List<Amenity>>(POI_BUFFERED_BATCHES);
+		private List<Amenity> batch = new ArrayList<Amenity>(POI_BATCH_SIZE);
+		private volatile boolean cancelled;
+		private volatile Exception error;
+
+		PoiFileReader(BinaryMapIndexReader index) {
+			this.index = index;
+		}
+
+		@Override
+		public void run() {
+			try {
+				index.searchPoi(BinaryMapIndexReader.buildSearchPoiRequest(
+						0, Integer.MAX_VALUE, 0, Integer.MAX_VALUE, -1,
+						BinaryMapIndexReader.ACCEPT_ALL_POI_TYPE_FILTER,
+						new ResultMatcher<Amenity>() {
+							@Override
+							public boolean publish(Amenity amenity) {
+								batch.add(amenity);
+								if (batch.size() >= POI_BATCH_SIZE) {
+									put(batch);
+									batch = new ArrayList<Amenity>(POI_BATCH_SIZE);
+								}
+								return false;
+							}
+
+							@Override
+							public boolean isCancelled() {
+								return cancelled;
+							}
+						}));
+				if (!batch.isEmpty()) {
+					put(batch);
+				}
+			} catch (IOException | RuntimeException e) {
+				error = e;
+			} finally {
+				put(END);
+			}
+		}
+
+		private void put(List<Amenity> list) {
+			try {
+				while (!cancelled) {
+					if (queue.offer(list, 100, TimeUnit.MILLISECONDS)) {
+						return;
+					}
+				}
+			} catch (InterruptedException e) {
+				cancelled = true;
+			}
+		}
+
+		/**
+		 * @return next batch or null if file is read
+		 */
+		List<Amenity> take() throws IOException {
+			List<Amenity> list;
+			try {
+				list = queue.take();
+			} catch (InterruptedException e) {
+				throw new IOException(e);
+			}
+			if (list == END) {
+				if (error != null) {
+					throw new IOException("Error reading poi: " + error.getMessage(), error);
+				}
+				return null;
+			}
+			return list;
+		}
+
+		void cancel() {
+			cancelled = true;
+			queue.clear();
+		}
+	}
+
+	private void combinePoiIndex(String name, BinaryMapIndexWriter writer, long dateCreated, PoiRegion[] poiRegions,
+			BinaryMapIndexReader[] indexes, ExecutorService executor) throws IOException, SQLException {
 		MapRenderingTypesEncoder renderingTypes = new MapRenderingTypesEncoder(null, name);
 		IndexCreatorSettings settings = new IndexCreatorSettings();
 		settings.indexPOI = true;
 		
 		final IndexPoiCreator indexPoiCreator = new IndexPoiCreator(settings, renderingTypes);
 		indexPoiCreator.createDatabaseStructure(new File(new File(System.getProperty("user.dir")), IndexCreator.getPoiFileName(name)));
-		final Map<Long, List<Amenity>> amenityRelations = new HashMap<Long, List<Amenity>>();
-		final TLongHashSet set = new TLongHashSet();
-		final long[] generatedRelationId = {-1};
-		for (int i = 0; i < poiRegions.length; i++) {
-			BinaryMapIndexReader index = indexes[i];
-			final TLongHashSet file = new TLongHashSet();
-			log.info("Region: " + extractRegionName(index));
-			index.searchPoi(BinaryMapIndexReader.buildSearchPoiRequest(
-					0, Integer.MAX_VALUE, 0, Integer.MAX_VALUE, -1,
-					BinaryMapIndexReader.ACCEPT_ALL_POI_TYPE_FILTER,
-					new ResultMatcher<Amenity>() {
-						@Override
-						public boolean publish(Amenity amenity) {
-							try {
-								boolean isRelation = amenity.getId() < 0;
-								if (isRelation) {
-									long j = latlon(amenity);
-									List<Amenity> list;
-									if (!amenityRelations.containsKey(j)) {
-										list = new ArrayList<Amenity>(1);
-										amenityRelations.put(j, list);
-									} else {
-										list = amenityRelations.get(j);
-									}
-									boolean unique = true;
-									for (Amenity a : list) {
-										if (a.getType() == amenity.getType() &&
-												Algorithms.objectEquals(a.getSubType(), amenity.getSubType())) {
-											unique = false;
-											break;
-										}
-									}
-									if (unique) {
-										amenity.setId(generatedRelationId[0]--);
-										amenityRelations.get(j).add(amenity);
-										indexPoiCreator.insertAmenityIntoPoi(amenity);
-										writtenPoiCount[0]++;
-									}
-								} else {
-									if (!set.contains(amenity.getId())) {
-										file.add(amenity.getId());
-										indexPoiCreator.insertAmenityIntoPoi(amenity);
-										writtenPoiCount[0]++;
-									}
+		final PoiMerger merger = new PoiMerger(indexPoiCreator);
+		if (executor == null) {
+			for (int i = 0; i < poiRegions.length; i++) {
+				BinaryMapIndexReader index = indexes[i];
+				log.info("Region: " + extractRegionName(index));
+				index.searchPoi(BinaryMapIndexReader.buildSearchPoiRequest(
+						0, Integer.MAX_VALUE, 0, Integer.MAX_VALUE, -1,
+						BinaryMapIndexReader.ACCEPT_ALL_POI_TYPE_FILTER,
+						new ResultMatcher<Amenity>() {
+							@Override
+							public boolean publish(Amenity amenity) {
+								try {
+									merger.addAmenity(amenity);
+									return false;
+								} catch (SQLException e) {
+									throw new RuntimeException(e);
 								}
-								return false;
-							} catch (SQLException e) {
-								throw new RuntimeException(e);
 							}
 
+							@Override
+							public boolean isCancelled() {
+								return false;
+							}
+						}));
+				merger.finishFile();
+			}
+		} else {
+			// files are decoded concurrently (amenities are kept in bounded queues and spilled to poi db),
+			// merged and inserted on this thread in the order of input files
+			List<PoiFileReader> readers = new ArrayList<PoiFileReader>();
+			try {
+				for (int i = 0; i < poiRegions.length; i++) {
+					PoiFileReader reader = new PoiFileReader(indexes[i]);
+					readers.add(reader);
+					executor.execute(reader);
+				}
+				for (int i = 0; i < poiRegions.length; i++) {
+					log.info("Region: " + extractRegionName(indexes[i]));
+					PoiFileReader reader = readers.get(i);
+					List<Amenity> batch;
+					while ((batch = reader.take()) != null) {
+						for (Amenity amenity : batch) {
+							merger.addAmenity(amenity);
 						}
-
-						@Override
-						public boolean isCancelled() {
-							return false;
-						}
-					}));
-			set.addAll(file);
+					}
+					merger.finishFile();
+				}
+			} finally {
+				for (PoiFileReader reader : readers) {
+					reader.cancel();
+				}
+			}
 		}
 		indexPoiCreator.writeBinaryPoiIndex(writer, name, null);
 		indexPoiCreator.commitAndClosePoiFile(dateCreated);
@@ -593,7 +825,7 @@ public class BinaryMerger {
 		if (REMOVE_POI_DB) {
 			indexPoiCreator.removePoiFile();
 		}
-		log.info("Written " + writtenPoiCount[0] + " POI.");
+		log.info("Written " + merger.writtenPoiCount + " POI.");
 	}
 
 	public static void copyBinaryPart(CodedOutputStream ous, byte[] BUFFER, RandomAccessFile raf, long fp, int length)
@@ -688,11 +920,18 @@ public class BinaryMerger {
 		if (i > 0) {
 			nm = nm.substring(0, i);
 		}
-		if (combineParts.contains(OsmandOdb.OsmAndStructure.ADDRESSINDEX_FIELD_NUMBER)) {
-			combineAddressIndex(nm, writer, addressRegions, indexes);
-		}
-		if (combineParts.contains(OsmandOdb.OsmAndStructure.POIINDEX_FIELD_NUMBER)) {
-			combinePoiIndex(nm, writer, dateCreated, poiRegions, indexes);
+		ExecutorService executor = threads > 1 && indexes.length > 1 ? Executors.newFixedThreadPool(threads) : null;
+		try {
+			if (combineParts.contains(OsmandOdb.OsmAndStructure.ADDRESSINDEX_FIELD_NUMBER)) {
+				combineAddressIndex(nm, writer, addressRegions, indexes, executor);
+			}
+			if (combineParts.contains(OsmandOdb.OsmAndStructure.POIINDEX_FIELD_NUMBER)) {
+				combinePoiIndex(nm, writer, dateCreated, poiRegions, indexes, executor);
+			}
+		} finally {
+			if (executor != null) {
+				executor.shutdownNow();
+			}
 		}
 		if (combineParts.contains(OsmandOdb.OsmAndStructure.OWNER_FIELD_NUMBER) && osmAndOwner != null) {
 			writer.writeOsmAndOwner(osmAndOwner);
@@ -711,7 +950,9 @@ public class BinaryMerger {
 		List<File> toDelete = new ArrayList<File>();
 		Set<Integer> combineParts = new HashSet<Integer>();
 		for (int i = 0; i < args.length; i++) {
-			if (args[i].startsWith("--")) {
+			if (args[i].startsWith("--threads=")) {
+				threads = Math.max(1, Integer.parseInt(args[i].substring("--threads=".length())));
+			} else if (args[i].startsWith("--")) {
 				combineParts.add(COMBINE_ARGS.get(args[i]));
 			} else if (outputFile == null) {
 				outputFile = new File(args[i]);
@@ -0,0 +1,498 @@
+package net.osmand.obf;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import gnu.trove.list.array.TIntArrayList;
+import net.osmand.ResultMatcher;
+import net.osmand.binary.BinaryIndexPart;
+import net.osmand.binary.BinaryMapAddressReaderAdapter.AddressRegion;
+import net.osmand.binary.BinaryMapAddressReaderAdapter.CitiesBlock;
+import net.osmand.binary.BinaryMapDataObject;
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.binary.BinaryMapIndexReader.MapIndex;
+import net.osmand.binary.BinaryMapIndexReader.MapObjectStat;
+import net.osmand.binary.BinaryMapIndexReader.MapRoot;
+import net.osmand.binary.BinaryMapIndexReader.SearchFilter;
+import net.osmand.binary.BinaryMapIndexReader.SearchRequest;
+import net.osmand.binary.BinaryMapIndexReader.TagValuePair;
+import net.osmand.binary.BinaryMapPoiReaderAdapter.PoiRegion;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteRegion;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteSubregion;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteTypeRule;
+import net.osmand.binary.BinaryMapTransportReaderAdapter.TransportIndex;
+import net.osmand.binary.RouteDataObject;
+import net.osmand.data.Amenity;
+import net.osmand.data.City;
+import net.osmand.util.MapUtils;
+
+/**
+ * Collects statistics of obf files (size per section / zoom / tag, object counts and bounds) for inspector -stats.
+ * Every section (every map level) is processed by a worker with its own reader over the same file,
+ * so many files and sections are processed concurrently. Output json doesn't depend on processing order.
+ */
+public class ObfStatsCollector {
+
+	public static class Bounds {
+		public double left;
+		public double right;
+		public double top;
+		public double bottom;
+
+		static Bounds of31(int left, int right, int top, int bottom) {
+			Bounds b = new Bounds();
+			b.left = MapUtils.get31LongitudeX(left);
+			b.right = MapUtils.get31LongitudeX(right);
+			b.top = MapUtils.get31LatitudeY(top);
+			b.bottom = MapUtils.get31LatitudeY(bottom);
+			return b;
+		}
+	}
+
+	public static class TagStats {
+		public long count;
+		public long coordinates;
+		// encoded size in bytes (available only for map sections)
+		public Long size;
+	}
+
+	public static class PartStats {
+		public String name;
+		public Long size;
+		public long objects;
+		public long coordinates;
+		public Bounds bounds;
+		public Map<String, TagStats> tags;
+		public Map<String, Long> counts;
+
+		private transient int left = Integer.MAX_VALUE;
+		private transient int right = Integer.MIN_VALUE;
+		private transient int top = Integer.MAX_VALUE;
+		private transient int bottom = Integer.MIN_VALUE;
+
+		void addPoint(int x31, int y31) {
+			left = Math.min(left, x31);
+			right = Math.max(right, x31);
+			top = Math.min(top, y31);
+			bottom = Math.max(bottom, y31);
+		}
+
+		TagStats tag(String tag) {
+			if (tags == null) {
+				tags = new TreeMap<String, TagStats>();
+			}
+			TagStats ts = tags.get(tag);
+			if (ts == null) {
+				ts = new TagStats();
+				tags.put(tag, ts);
+			}
+			return ts;
+		}
+
+		void count(String key, long value) {
+			if (counts == null) {
+				counts = new TreeMap<String, Long>();
+			}
+			Long l = counts.get(key);
+			counts.put(key, l == null ? value : l + value);
+		}
+
+		void finish() {
+			if (left <= right) {
+				bounds = Bounds.of31(left, right, top, bottom);
+			}
+		}
+	}
+
+	public static class SectionStats {
+		public int index;
+		public String type;
+		public String name;
+		public long size;
+		public Bounds bounds;
+		public long objects;
+		public long coordinates;
+		public List<PartStats> parts = new ArrayList<PartStats>();
+	}
+
+	public static class FileStats {
+		public String file;
+		public long size;
+		public int version;
+		public long dateCreated;
+		public List<SectionStats> sections = new ArrayList<SectionStats>();
+	}
+
+	public static class DirectoryStats {
+		public int filesCount;
+		public long size;
+		public List<FileStats> files = new ArrayList<FileStats>();
+	}
+
+	private interface ReaderTask {
+		void run(BinaryMapIndexReader reader) throws IOException;
+	}
+
+	private final int threads;
+
+	public ObfStatsCollector(int threads) {
+		this.threads = Math.max(1, threads);
+	}
+
+	public static List<File> listObfFiles(File dir) {
+		List<File> res = new ArrayList<File>();
+		File[] files = dir.listFiles();
+		if (files != null) {
+			for (File f : files) {
+				if (f.isFile() && f.getName().endsWith(".obf")) {
+					res.add(f);
+				}
+			}
+		}
+		res.sort(new Comparator<File>() {
+			@Override
+			public int compare(File o1, File o2) {
+				return o1.getName().compareTo(o2.getName());
+			}
+		});
+		return res;
+	}
+
+	/**
+	 * Prints stats of file (or all obf files of directory) as json to out file or to System.out
+	 */
+	public void printStats(File fileOrDir, File out) throws IOException {
+		Object stats;
+		if (fileOrDir.isDirectory()) {
+			DirectoryStats ds = new DirectoryStats();
+			ds.files = collect(listObfFiles(fileOrDir));
+			ds.filesCount = ds.files.size();
+			for (FileStats fs : ds.files) {
+				ds.size += fs.size;
+			}
+			stats = ds;
+		} else {
+			stats = collect(Arrays.asList(fileOrDir)).get(0);
+		}
+		Gson gson = new GsonBuilder().setPrettyPrinting().create();
+		if (out == null) {
+			System.out.println(gson.toJson(stats));
+		} else {
+			Writer writer = new OutputStreamWriter(new FileOutputStream(out), StandardCharsets.UTF_8);
+			try {
+				gson.toJson(stats, writer);
+			} finally {
+				writer.close();
+			}
+		}
+	}
+
+	public List<FileStats> collect(List<File> files) throws IOException {
+		boolean readStats = BinaryMapIndexReader.READ_STATS;
+		BinaryMapIndexReader.READ_STATS = true;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<FileStats> result = new ArrayList<FileStats>();
+			List<Future<?>> tasks = new ArrayList<Future<?>>();
+			// tasks of all files share one pool and don't wait for each other
+			for (File file : files) {
+				result.add(submitFile(file, executor, tasks));
+			}
+			for (Future<?> f : tasks) {
+				getResult(f);
+			}
+			for (FileStats fs : result) {
+				for (SectionStats s : fs.sections) {
+					for (PartStats p : s.parts) {
+						p.finish();
+						s.objects += p.objects;
+						s.coordinates += p.coordinates;
+					}
+				}
+			}
+			return result;
+		} finally {
+			executor.shutdownNow();
+			BinaryMapIndexReader.READ_STATS = readStats;
+		}
+	}
+
+	private FileStats submitFile(final File file, ExecutorService executor, List<Future<?>> tasks) throws IOException {
+		FileStats fs = new FileStats();
+		fs.file = file.getName();
+		fs.size = file.length();
+		RandomAccessFile raf = new RandomAccessFile(file.getAbsolutePath(), "r");
+		final BinaryMapIndexReader index = new BinaryMapIndexReader(raf, file);
+		try {
+			fs.version = index.getVersion();
+			fs.dateCreated = index.getDateCreated();
+			int i = 1;
+			for (BinaryIndexPart p : index.getIndexes()) {
+				SectionStats s = new SectionStats();
+				s.index = i++;
+				s.name = p.getName();
+				s.size = p.getLength();
+				fs.sections.add(s);
+				if (p instanceof MapIndex) {
+					s.type = "map";
+					submitMapIndex(file, index, (MapIndex) p, s, executor, tasks);
+				} else if (p instanceof RouteRegion) {
+					s.type = "route";
+					RouteRegion rr = (RouteRegion) p;
+					s.bounds = new Bounds();
+					s.bounds.left = rr.getLeftLongitude();
+					s.bounds.right = rr.getRightLongitude();
+					s.bounds.top = rr.getTopLatitude();
+					s.bounds.bottom = rr.getBottomLatitude();
+					submitRouteRegion(file, index, rr, s, true, executor, tasks);
+					submitRouteRegion(file, index, rr, s, false, executor, tasks);
+				} else if (p instanceof PoiRegion) {
+					s.type = "poi";
+					PoiRegion pr = (PoiRegion) p;
+					s.bounds = Bounds.of31(pr.getLeft31(), pr.getRight31(), pr.getTop31(), pr.getBottom31());
+					submitPoiRegion(file, index, pr, s, executor, tasks);
+				} else if (p instanceof AddressRegion) {
+					s.type = "address";
+					for (CitiesBlock c : ((AddressRegion) p).getCities()) {
+						submitCitiesBlock(file, index, (AddressRegion) p, c, s, executor, tasks);
+					}
+				} else if (p instanceof TransportIndex) {
+					s.type = "transport";
+					TransportIndex ti = (TransportIndex) p;
+					int sh = (31 - BinaryMapIndexReader.TRANSPORT_STOP_ZOOM);
+					s.bounds = Bounds.of31(ti.getLeft() << sh, ti.getRight() << sh, ti.getTop() << sh,
+							ti.getBottom() << sh);
+				} else {
+					s.type = "other";
+				}
+			}
+		} finally {
+			// parsed structure is kept, workers open own readers
+			index.close();
+		}
+		return fs;
+	}
+
+	private void submit(final File file, final BinaryMapIndexReader index, final ReaderTask task,
+			ExecutorService executor, List<Future<?>> tasks) {
+		tasks.add(executor.submit(new Callable<Void>() {
+			@Override
+			public Void call() throws IOException {
+				RandomAccessFile raf = new RandomAccessFile(file.getAbsolutePath(), "r");
+				BinaryMapIndexReader reader = new BinaryMapIndexReader(raf, index);
+				try {
+					task.run(reader);
+				} finally {
+					reader.close();
+				}
+				return null;
+			}
+		}));
+	}
+
+	private void submitMapIndex(File file, BinaryMapIndexReader index, final MapIndex mapIndex, SectionStats s,
+			ExecutorService executor, List<Future<?>> tasks) {
+		int left = Integer.MAX_VALUE, right = Integer.MIN_VALUE, top = Integer.MAX_VALUE, bottom = Integer.MIN_VALUE;
+		for (final MapRoot root : mapIndex.getRoots()) {
+			left = Math.min(left, root.getLeft());
+			right = Math.max(right, root.getRight());
+			top = Math.min(top, root.getTop());
+			bottom = Math.max(bottom, root.getBottom());
+			final PartStats part = new PartStats();
+			part.name = "zoom " + root.getMinZoom() + "-" + root.getMaxZoom();
+			part.size = (long) root.getLength();
+			s.parts.add(part);
+			submit(file, index, new ReaderTask() {
+				@Override
+				public void run(BinaryMapIndexReader reader) throws IOException {
+					collectMapRoot(reader, mapIndex, root, part);
+				}
+			}, executor, tasks);
+		}
+		if (left <= right) {
+			s.bounds = Bounds.of31(left, right, top, bottom);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void collectMapRoot(BinaryMapIndexReader reader, MapIndex mapIndex, MapRoot root, final PartStats part)
+			throws IOException {
+		final SearchRequest<BinaryMapDataObject>[] req = new SearchRequest[1];
+		req[0] = BinaryMapIndexReader.buildSearchRequest(0, Integer.MAX_VALUE, 0, Integer.MAX_VALUE,
+				root.getMinZoom(), new SearchFilter() {
+					@Override
+					public boolean accept(TIntArrayList types, MapIndex index) {
+						return true;
+					}
+				}, new ResultMatcher<BinaryMapDataObject>() {
+					@Override
+					public boolean publish(BinaryMapDataObject obj) {
+						MapObjectStat st = req[0].getStat();
+						// same as inspector -vstats: names are read separately without coordinates
+						boolean names = st.lastObjectCoordinates == 0;
+						int cnt = obj.getPointsLength();
+						if (obj.getPolygonInnerCoordinates() != null) {
+							for (int[] inner : obj.getPolygonInnerCoordinates()) {
+								cnt += inner.length / 2;
+							}
+						}
+						part.objects++;
+						part.coordinates += cnt;
+						for (int i = 0; i < obj.getPointsLength(); i++) {
+							part.addPoint(obj.getPoint31XTile(i), obj.getPoint31YTile(i));
+						}
+						for (int i = 0; i < obj.getTypes().length; i++) {
+							TagValuePair pair = obj.getMapIndex().decodeType(obj.getTypes()[i]);
+							if (pair == null) {
+								continue;
+							}
+							TagStats ts = part.tag(pair.toSimpleString());
+							ts.count++;
+							ts.coordinates += cnt;
+							if (!names) {
+								ts.size = (ts.size == null ? 0 : ts.size) + st.lastObjectSize;
+							}
+						}
+						st.clearObjectStats();
+						st.lastObjectSize = 0;
+						return false;
+					}
+
+					@Override
+					public boolean isCancelled() {
+						return false;
+					}
+				});
+		reader.searchMapIndex(req[0], mapIndex);
+	}
+
+	private void submitRouteRegion(File file, BinaryMapIndexReader index, final RouteRegion region, SectionStats s,
+			final boolean base, ExecutorService executor, List<Future<?>> tasks) {
+		final PartStats part = new PartStats();
+		part.name = base ? "base" : "detailed";
+		s.parts.add(part);
+		submit(file, index, new ReaderTask() {
+			@Override
+			public void run(BinaryMapIndexReader reader) throws IOException {
+				List<RouteSubregion> regions = reader.searchRouteIndexTree(
+						BinaryMapIndexReader.buildSearchRequest(0, Integer.MAX_VALUE, 0, Integer.MAX_VALUE,
+								base ? 10 : 15, null),
+						base ? region.getBaseSubregions() : region.getSubregions());
+				reader.loadRouteIndexData(regions, new ResultMatcher<RouteDataObject>() {
+					@Override
+					public boolean publish(RouteDataObject obj) {
+						part.objects++;
+						part.coordinates += obj.getPointsLength();
+						for (int i = 0; i < obj.getPointsLength(); i++) {
+							part.addPoint(obj.getPoint31XTile(i), obj.getPoint31YTile(i));
+						}
+						for (int i = 0; i < obj.getTypes().length; i++) {
+							RouteTypeRule rr = obj.region.quickGetEncodingRule(obj.getTypes()[i]);
+							TagStats ts = part.tag(rr.getTag() + "=" + rr.getValue());
+							ts.count++;
+							ts.coordinates += obj.getPointsLength();
+						}
+						return false;
+					}
+
+					@Override
+					public boolean isCancelled() {
+						return false;
+					}
+				});
+			}
+		}, executor, tasks);
+	}
+
+	private void submitPoiRegion(File file, BinaryMapIndexReader index, final PoiRegion region, SectionStats s,
+			ExecutorService executor, List<Future<?>> tasks) {
+		final PartStats part = new PartStats();
+		part.name = "poi";
+		s.parts.add(part);
+		submit(file, index, new ReaderTask() {
+			@Override
+			public void run(BinaryMapIndexReader reader) throws IOException {
+				SearchRequest<Amenity> req = BinaryMapIndexReader.buildSearchPoiRequest(0, Integer.MAX_VALUE, 0,
+						Integer.MAX_VALUE, -1, BinaryMapIndexReader.ACCEPT_ALL_POI_TYPE_FILTER,
+						new ResultMatcher<Amenity>() {
+							@Override
+							public boolean publish(Amenity object) {
+								part.objects++;
+								part.coordinates++;
+								part.addPoint(MapUtils.get31TileNumberX(object.getLocation().getLongitude()),
+										MapUtils.get31TileNumberY(object.getLocation().getLatitude()));
+								String type = object.getType() == null ? "" : object.getType().getKeyName();
+								TagStats ts = part.tag(type + "=" + object.getSubType());
+								ts.count++;
+								ts.coordinates++;
+								return false;
+							}
+
+							@Override
+							public boolean isCancelled() {
+								return false;
+							}
+						});
+				reader.initCategories(region);
+				reader.searchPoi(region, req);
+			}
+		}, executor, tasks);
+	}
+
+	private void submitCitiesBlock(File file, BinaryMapIndexReader index, final AddressRegion region,
+			final CitiesBlock block, SectionStats s, ExecutorService executor, List<Future<?>> tasks) {
+		final PartStats part = new PartStats();
+		part.name = "cities type " + block.getType();
+		part.size = (long) block.getLength();
+		s.parts.add(part);
+		submit(file, index, new ReaderTask() {
+			@Override
+			public void run(BinaryMapIndexReader reader) throws IOException {
+				List<City> cities = reader.getCities(region, null, block.getType());
+				for (City c : cities) {
+					part.objects++;
+					part.coordinates++;
+					part.addPoint(MapUtils.get31TileNumberX(c.getLocation().getLongitude()),
+							MapUtils.get31TileNumberY(c.getLocation().getLatitude()));
+					reader.preloadStreets(c, null);
+					part.count("streets", c.getStreets().size());
+				}
+				part.count("cities", cities.size());
+			}
+		}, executor, tasks);
+	}
+
+	private static void getResult(Future<?> future) throws IOException {
+		try {
+			future.get();
+		} catch (InterruptedException e) {
+			throw new IOException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			} else if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		}
+	}
+}
@@ -30,6 +30,7 @@ import java.util.zip.GZIPOutputStream;
 import org.xmlpull.v1.XmlPullParserException;
 import org.xmlpull.v1.XmlSerializer;
 
+import gnu.trove.list.array.TLongArrayList;
 import net.osmand.IProgress;
 import net.osmand.PlatformUtil;
 import net.osmand.binary.MapZooms;
@@ -43,8 +44,13 @@ import net.osmand.gpx.GPXUtilities.WptPt;
 import net.osmand.obf.preparation.IndexCreator;
 import net.osmand.obf.preparation.IndexCreatorSettings;
 import net.osmand.obf.preparation.IndexHeightData;
+import net.osmand.obf.preparation.OsmEntitySource;
+import net.osmand.obf.preparation.OsmEntitySource.OsmEntityConsumer;
 import net.osmand.osm.MapRenderingTypesEncoder;
 import net.osmand.osm.RouteActivityType;
+import net.osmand.osm.edit.Entity;
+import net.osmand.osm.edit.Node;
+import net.osmand.osm.edit.Way;
 import net.osmand.util.Algorithms;
 import net.osmand.util.MapAlgorithms;
 import net.osmand.util.MapUtils;
@@ -59,6 +65,7 @@ public class OsmGpxWriteContext {
 
 	XmlSerializer serializer = null;
 	OutputStream outputStream = null;
+	OsmEntityConsumer entityConsumer = null;
 
 	public OsmGpxWriteContext(QueryParams qp) {
 		this.qp = qp;
@@ -84,6 +91,13 @@ public class OsmGpxWriteContext {
 		return true;
 	}
 
+	/**
+	 * Entities are passed to consumer (i.e. directly to IndexCreator) in addition to osm file if it's specified
+	 */
+	public void setEntityConsumer(OsmEntityConsumer entityConsumer) {
+		this.entityConsumer = entityConsumer;
+	}
+
 	public void startDocument() throws IllegalArgumentException, IllegalStateException, IOException {
 		if (qp.osmFile != null) {
 			outputStream = new FileOutputStream(qp.osmFile);
@@ -118,20 +132,16 @@ public class OsmGpxWriteContext {
 				}
 			}
 			if (validTrack) {
-				serializer.startTag(null, "node");
-				serializer.attribute(null, "id", id-- + "");
-				serializer.attribute(null, "action", "modify");
-				serializer.attribute(null, "version", "1");
-				serializer.attribute(null, "lat", latLonFormat.format(gpxFile.findPointToShow().lat));
-				serializer.attribute(null, "lon", latLonFormat.format(gpxFile.findPointToShow().lon));
-				tagValue(serializer, "route", "segment");
-				tagValue(serializer, "route_type", "track");
-				tagValue(serializer, "route_radius", gpxFile.getOuterRadius());
+				WptPt pointToShow = gpxFile.findPointToShow();
+				Node node = new Node(pointToShow.lat, pointToShow.lon, id--);
+				tagValue(node, "route", "segment");
+				tagValue(node, "route_type", "track");
+				tagValue(node, "route_radius", gpxFile.getOuterRadius());
 				addGenericTags(gpxTrackTags, null);
 				addGpxInfoTags(gpxTrackTags, gpxInfo, routeIdPrefix);
 				addAnalysisTags(gpxTrackTags, analysis);
-				seraizeTags(extraTrackTags, gpxTrackTags);
-				serializer.endTag(null, "node");
+				seraizeTags(node, extraTrackTags, gpxTrackTags);
+				writeEntity(node);
 			}
 		} else {
 			for (Track t : gpxFile.tracks) {
@@ -153,27 +163,21 @@ public class OsmGpxWriteContext {
 						writePoint(nid, p, null, null, null);
 					}
 					long endid = id;
-					serializer.startTag(null, "way");
-					serializer.attribute(null, "id", id-- + "");
-					serializer.attribute(null, "action", "modify");
-					serializer.attribute(null, "version", "1");
-
+					Way way = new Way(id--);
 					for (long nid = idStart; nid > endid; nid--) {
-						serializer.startTag(null, "nd");
-						serializer.attribute(null, "ref", nid + "");
-						serializer.endTag(null, "nd");
+						way.addNode(nid);
 					}
-					tagValue(serializer, "route", "segment");
-					tagValue(serializer, "route_type", "track");
+					tagValue(way, "route", "segment");
+					tagValue(way, "route_type", "track");
 					int radius = (int) MapUtils.getDistance(qr.bottom, qr.left, qr.top, qr.right);
-					tagValue(serializer, "route_radius", MapUtils.convertDistToChar(radius, GPXUtilities.TRAVEL_GPX_CONVERT_FIRST_LETTER, GPXUtilities.TRAVEL_GPX_CONVERT_FIRST_DIST,
+					tagValue(way, "route_radius", MapUtils.convertDistToChar(radius, GPXUtilities.TRAVEL_GPX_CONVERT_FIRST_LETTER, GPXUtilities.TRAVEL_GPX_CONVERT_FIRST_DIST,
 							GPXUtilities.TRAVEL_GPX_CONVERT_MULT_1, GPXUtilities.TRAVEL_GPX_CONVERT_MULT_2));
 					addGenericTags(gpxTrackTags, t);
 					addGpxInfoTags(gpxTrackTags, gpxInfo, routeIdPrefix);
 					addAnalysisTags(gpxTrackTags, analysis);
 					addElevationTags(gpxTrackTags, s);
-					seraizeTags(extraTrackTags, gpxTrackTags);
-					serializer.endTag(null, "way");
+					seraizeTags(way, extraTrackTags, gpxTrackTags);
+					writeEntity(way);
 				}
 			}
 
@@ -207,15 +211,49 @@ public class OsmGpxWriteContext {
 		}
 	}
 
-	private void seraizeTags(Map<String, String> extraTrackTags, Map<String, String> gpxTrackTags) throws IOException {
+	private void seraizeTags(Entity entity, Map<String, String> extraTrackTags, Map<String, String> gpxTrackTags) {
 		if (extraTrackTags != null) {
 			gpxTrackTags.putAll(extraTrackTags);
 		}
 		Iterator<Entry<String, String>> it = gpxTrackTags.entrySet().iterator();
 		while (it.hasNext()) {
 			Entry<String, String> e = it.next();
-			tagValue(serializer, e.getKey(), e.getValue());
+			tagValue(entity, e.getKey(), e.getValue());
+		}
+	}
+
+	private void writeEntity(Entity entity) throws IOException {
+		if (entityConsumer != null) {
+			entityConsumer.acceptEntity(entity);
+		}
+		if (serializer == null) {
+			return;
+		}
+		if (entity instanceof Node) {
+			serializer.startTag(null, "node");
+			serializer.attribute(null, "lat", latLonFormat.format(((Node) entity).getLatitude()));
+			serializer.attribute(null, "lon", latLonFormat.format(((Node) entity).getLongitude()));
+		} else {
+			serializer.startTag(null, "way");
+		}
+		serializer.attribute(null, "id", entity.getId() + "");
+		serializer.attribute(null, "action", "modify");
+		serializer.attribute(null, "version", "1");
+		if (entity instanceof Way) {
+			TLongArrayList nodeIds = ((Way) entity).getNodeIds();
+			for (int i = 0; i < nodeIds.size(); i++) {
+				serializer.startTag(null, "nd");
+				serializer.attribute(null, "ref", nodeIds.get(i) + "");
+				serializer.endTag(null, "nd");
+			}
 		}
+		for (Entry<String, String> e : entity.getTags().entrySet()) {
+			serializer.startTag(null, "tag");
+			serializer.attribute(null, "k", e.getKey());
+			serializer.attribute(null, "v", e.getValue());
+			serializer.endTag(null, "tag");
+		}
+		serializer.endTag(null, entity instanceof Node ? "node" : "way");
 	}
 
 	public void endDocument() throws IOException {
@@ -291,85 +329,90 @@ public class OsmGpxWriteContext {
 	}
 	
 	private void writePoint(long id, WptPt p, String routeType, String routeId, String routeName) throws IOException {
-		serializer.startTag(null, "node");
-		serializer.attribute(null, "lat", latLonFormat.format(p.lat));
-		serializer.attribute(null, "lon", latLonFormat.format(p.lon));
-		serializer.attribute(null, "id", id + "");
-		serializer.attribute(null, "action", "modify");
-		serializer.attribute(null, "version", "1");
+		Node node = new Node(p.lat, p.lon, id);
 		if (routeType != null) {
-			tagValue(serializer, "route", routeType);
-			tagValue(serializer, "route_type", "track_point");
-			tagValue(serializer, "route_id", routeId);
-			tagValue(serializer, "route_name", routeName);
+			tagValue(node, "route", routeType);
+			tagValue(node, "route_type", "track_point");
+			tagValue(node, "route_id", routeId);
+			tagValue(node, "route_name", routeName);
 		}
 		if (!Algorithms.isEmpty(p.name)) {
-			tagValue(serializer, "name", p.name);
+			tagValue(node, "name", p.name);
 		}
 		if (!Algorithms.isEmpty(p.desc)) {
-			tagValue(serializer, "description", p.desc);
+			tagValue(node, "description", p.desc);
 		}
 		if (!Algorithms.isEmpty(p.category)) {
-			tagValue(serializer, "category", p.category);
+			tagValue(node, "category", p.category);
 		}
 		if (!Algorithms.isEmpty(p.comment)) {
-			tagValue(serializer, "note", p.comment);
+			tagValue(node, "note", p.comment);
 		}
 		if (!Algorithms.isEmpty(p.link)) {
-			tagValue(serializer, "url", p.link);
+			tagValue(node, "url", p.link);
 		}
 		if (!Algorithms.isEmpty(p.getIconName())) {
-			tagValue(serializer, "gpx_icon", p.getIconName());
+			tagValue(node, "gpx_icon", p.getIconName());
 		}
 		if (!Algorithms.isEmpty(p.getBackgroundType())) {
-			tagValue(serializer, "gpx_bg", p.getBackgroundType());
+			tagValue(node, "gpx_bg", p.getBackgroundType());
 		}
 		int color = p.getColor(0);
 		if(color != 0) {
-			tagValue(serializer, "colour", MapRenderingTypesEncoder.formatColorToPalette(Algorithms.colorToString(color), false));
-			tagValue(serializer, "colour_int", Algorithms.colorToString(color));
+			tagValue(node, "colour", MapRenderingTypesEncoder.formatColorToPalette(Algorithms.colorToString(color), false));
+			tagValue(node, "colour_int", Algorithms.colorToString(color));
 		}
 		if (qp.details >= QueryParams.DETAILS_ELE_SPEED) {
 			if (!Double.isNaN(p.ele)) {
-				tagValue(serializer, "ele", latLonFormat.format(p.ele));
+				tagValue(node, "ele", latLonFormat.format(p.ele));
 			}
 			if (!Double.isNaN(p.speed) && p.speed > 0) {
-				tagValue(serializer, "speed", latLonFormat.format(p.speed));
+				tagValue(node, "speed", latLonFormat.format(p.speed));
 			}
 			if (!Double.isNaN(p.hdop)) {
-				tagValue(serializer, "hdop", latLonFormat.format(p.hdop));
+				tagValue(node, "hdop", latLonFormat.format(p.hdop));
 			}
 		}
-		serializer.endTag(null, "node");
+		writeEntity(node);
 	}
 
-	private void tagValue(XmlSerializer serializer, String tag, String value) throws IOException {
+	private void tagValue(Entity entity, String tag, String value) {
 		if (Algorithms.isEmpty(value)) {
 			return;
 		}
-		serializer.startTag(null, "tag");
-		serializer.attribute(null, "k", tag);
-		serializer.attribute(null, "v", value);
-		serializer.endTag(null, "tag");
+		entity.putTag(tag, value);
 	}
 	
-	public File writeObf(Map<String, GPXFile> gpxFiles, List<File> files, File tmpFolder, String fileName, File targetObf) throws IOException,
-			SQLException, InterruptedException, XmlPullParserException {
-		
-		startDocument();
-		if (gpxFiles != null) {
-			for (Entry<String, GPXFile> entry : gpxFiles.entrySet()) {
-				GPXFile gpxFile = entry.getValue();
-				writeFile(gpxFile, entry.getKey());
-			}
-		} else if (files != null) {
-			for (File gf : files) {
-				GPXFile gpxFile = GPXUtilities.loadGPXFile(gf, null, false);
-				writeFile(gpxFile, gf.getName());
+	public File writeObf(final Map<String, GPXFile> gpxFiles, final List<File> files, File tmpFolder, String fileName,
+			File targetObf) throws IOException, SQLException, InterruptedException, XmlPullParserException {
+		return writeObf(new OsmEntitySource() {
+
+			@Override
+			public void produceEntities(OsmEntityConsumer consumer) throws IOException, SQLException {
+				setEntityConsumer(consumer);
+				startDocument();
+				if (gpxFiles != null) {
+					for (Entry<String, GPXFile> entry : gpxFiles.entrySet()) {
+						GPXFile gpxFile = entry.getValue();
+						writeFile(gpxFile, entry.getKey());
+					}
+				} else if (files != null) {
+					for (File gf : files) {
+						GPXFile gpxFile = GPXUtilities.loadGPXFile(gf, null, false);
+						writeFile(gpxFile, gf.getName());
+					}
+				}
+				endDocument();
+				setEntityConsumer(null);
 			}
-		}
-		endDocument();
-		
+		}, tmpFolder, fileName, targetObf);
+	}
+
+	/**
+	 * Generates obf directly from entities produced by source (osm file is still written if qp.osmFile is specified)
+	 */
+	public File writeObf(OsmEntitySource source, File tmpFolder, String fileName, File targetObf) throws IOException,
+			SQLException, InterruptedException, XmlPullParserException {
 		IndexCreatorSettings settings = new IndexCreatorSettings();
 		settings.indexMap = true;
 		settings.indexAddress = false;
@@ -382,10 +425,12 @@ public class OsmGpxWriteContext {
 			IndexCreator ic = new IndexCreator(tmpFolder, settings);
 			MapRenderingTypesEncoder types = new MapRenderingTypesEncoder(null, fileName);
 			ic.setMapFileName(fileName);
+			// same region name as obf generated from osm file
+			ic.setRegionName(IndexCreator.getRegionName(qp.osmFile != null ? qp.osmFile.getName() : fileName + ".osm"));
 			// IProgress.EMPTY_PROGRESS
 			IProgress prog = IProgress.EMPTY_PROGRESS;
 			// prog = new ConsoleProgressImplementation();
-			ic.generateIndexes(qp.osmFile, prog, null, MapZooms.getDefault(), types, null);
+			ic.generateIndexes(source, prog, null, MapZooms.getDefault(), types, null);
 			new File(tmpFolder, ic.getMapFileName()).renameTo(targetObf);
 		} finally {
 			Algorithms.removeAllFiles(tmpFolder);
@@ -414,7 +459,6 @@ public class OsmGpxWriteContext {
 			File file = new File(subArgs.get(0));
 			if (file.isDirectory() || file.getName().endsWith(GPX_FILE_EXT) || file.getName().endsWith(".gpx.gz")) {
 				OsmGpxWriteContext.QueryParams qp = new OsmGpxWriteContext.QueryParams();
-				qp.osmFile = File.createTempFile(Algorithms.getFileNameWithoutExtension(file), ".osm");
 				OsmGpxWriteContext ctx = new OsmGpxWriteContext(qp);
 				File tmpFolder = new File(file.getParentFile(), String.valueOf(System.currentTimeMillis()));
 				String path = file.isDirectory() ? file.getAbsolutePath() : file.getParentFile().getPath();
@@ -428,9 +472,6 @@ public class OsmGpxWriteContext {
 				if (!files.isEmpty()) {
 					ctx.writeObf(null, files, tmpFolder, Algorithms.getFileNameWithoutExtension(file), targetObf);
 				}
-				if (!qp.osmFile.delete()) {
-					qp.osmFile.deleteOnExit();
-				}
 			}
 		}
 	}
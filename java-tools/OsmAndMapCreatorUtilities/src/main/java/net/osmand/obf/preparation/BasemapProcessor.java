@@ -21,6 +21,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 import javax.xml.stream.XMLStreamException;
 
@@ -95,6 +98,7 @@ public class BasemapProcessor {
     private final MapRenderingTypesEncoder renderingTypes;
     private final MapZooms mapZooms;
     private final Log logMapDataWarn;
+    private final int threadsCount;
     private SimplisticQuadTree[] quadTrees;
     private static int MOST_DETAILED_APPROXIMATION = 9;
 
@@ -185,18 +189,32 @@ public class BasemapProcessor {
         zoomWaySmoothness = 0;
         renderingTypes = null;
         mapZooms = null;
+        threadsCount = 1;
     }
 
     public BasemapProcessor(Log logMapDataWarn, MapZooms mapZooms, MapRenderingTypesEncoder renderingTypes, int zoomWaySmoothness) {
+        this(logMapDataWarn, mapZooms, renderingTypes, zoomWaySmoothness, 1);
+    }
+
+    public BasemapProcessor(Log logMapDataWarn, MapZooms mapZooms, MapRenderingTypesEncoder renderingTypes, int zoomWaySmoothness,
+                            int threadsCount) {
         this.logMapDataWarn = logMapDataWarn;
         this.mapZooms = mapZooms;
         this.renderingTypes = renderingTypes;
         this.zoomWaySmoothness = zoomWaySmoothness;
+        this.threadsCount = Math.max(1, threadsCount);
         constructBitSetInfo(null);
         quadTrees = new SimplisticQuadTree[mapZooms.getLevels().size()];
-        for (int i = 0; i < mapZooms.getLevels().size(); i++) {
-            MapZoomPair p = mapZooms.getLevels().get(i);
-            quadTrees[i] = constructTilesQuadTree(Math.min(p.getMaxZoom(), 11));
+        ForkJoinPool pool = this.threadsCount > 1 ? new ForkJoinPool(this.threadsCount) : null;
+        try {
+            for (int i = 0; i < mapZooms.getLevels().size(); i++) {
+                MapZoomPair p = mapZooms.getLevels().get(i);
+                quadTrees[i] = constructTilesQuadTree(Math.min(p.getMaxZoom(), 11), pool);
+            }
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
+            }
         }
     }
 
@@ -322,10 +340,14 @@ public class BasemapProcessor {
     }
 
     public SimplisticQuadTree constructTilesQuadTree(int maxZoom) {
+        return constructTilesQuadTree(maxZoom, null);
+    }
+
+    private SimplisticQuadTree constructTilesQuadTree(final int maxZoom, ForkJoinPool pool) {
         SimplisticQuadTree rootTree = new SimplisticQuadTree(0, 0, 0);
 
 
-        int baseZoom = 2;
+        final int baseZoom = 2;
         int tiles = 1 << baseZoom;
         LinkedList<SimplisticQuadTree> toVisit = new LinkedList<SimplisticQuadTree>();
         for (int x = 0; x < tiles; x++) {
@@ -333,7 +355,19 @@ public class BasemapProcessor {
                 toVisit.add(rootTree.getOrCreateSubTree(x, y, baseZoom));
             }
         }
-        initializeQuadTree(rootTree, baseZoom, maxZoom, toVisit);
+        if (pool == null) {
+            initializeQuadTree(rootTree, baseZoom, maxZoom, toVisit);
+        } else {
+            // base subtrees don't share nodes, so each of them is initialized in separate task
+            List<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>();
+            for (final SimplisticQuadTree subtree : toVisit) {
+                tasks.add(pool.submit(() -> initializeQuadTree(subtree, baseZoom, maxZoom,
+                        new LinkedList<SimplisticQuadTree>(Collections.singletonList(subtree)))));
+            }
+            for (ForkJoinTask<?> task : tasks) {
+                task.join();
+            }
+        }
         return rootTree;
 
     }
@@ -379,45 +413,88 @@ public class BasemapProcessor {
 
     }
 
+    private static class EncodedMapBlock {
+        final MapDataBlock.Builder dataBlock = MapDataBlock.newBuilder();
+        final Map<String, Integer> stringTable = new LinkedHashMap<String, Integer>();
+    }
+
     private void writeBinaryMapBlock(SimplisticQuadTree simplisticQuadTree, BinaryMapIndexWriter writer,
                                      Map<SimplisticQuadTree, BinaryFileReference> refs, MapZoomPair level) throws IOException {
-        Iterator<Entry<SimplisticQuadTree, BinaryFileReference>> it = refs.entrySet().iterator();
-
-        while (it.hasNext()) {
-            Entry<SimplisticQuadTree, BinaryFileReference> e = it.next();
-            MapDataBlock.Builder dataBlock = MapDataBlock.newBuilder();
-            SimplisticQuadTree quad = e.getKey();
-            Map<String, Integer> stringTable = new LinkedHashMap<String, Integer>();
-            long baseId = 0;
-            for (SimplisticBinaryData w : quad.getData(level)) {
-            	baseId = Math.min(w.id, baseId);
+        if (threadsCount <= 1) {
+            Iterator<Entry<SimplisticQuadTree, BinaryFileReference>> it = refs.entrySet().iterator();
+            while (it.hasNext()) {
+                Entry<SimplisticQuadTree, BinaryFileReference> e = it.next();
+                EncodedMapBlock block = encodeMapBlock(e.getKey(), writer, level);
+                writer.writeMapDataBlock(block.dataBlock, block.stringTable, e.getValue());
             }
-            dataBlock.setBaseId(baseId);
-            for (SimplisticBinaryData w : quad.getData(level)) {
-                int[] wts = null;
-                int[] wats = null;
-                if (w.types != null) {
-                    wts = new int[w.types.length];
-                    for (int j = 0; j < w.types.length; j++) {
-                        wts[j] = renderingTypes.getTypeByInternalId(w.types[j]).getTargetId();
-                    }
+            return;
+        }
+        // blocks (data and string tables) are encoded in parallel but written in the same order as sequentially
+        final ThreadLocal<BinaryMapIndexWriter> encoders = ThreadLocal.withInitial(BinaryMapIndexWriter::createMapDataEncoder);
+        List<Entry<SimplisticQuadTree, BinaryFileReference>> entries = new ArrayList<Entry<SimplisticQuadTree, BinaryFileReference>>(
+                refs.entrySet());
+        LinkedList<ForkJoinTask<EncodedMapBlock>> queue = new LinkedList<ForkJoinTask<EncodedMapBlock>>();
+        int window = threadsCount * 16;
+        int submitted = 0;
+        ForkJoinPool pool = new ForkJoinPool(threadsCount);
+        try {
+            for (int i = 0; i < entries.size(); i++) {
+                while (submitted < entries.size() && submitted < i + window) {
+                    final SimplisticQuadTree quad = entries.get(submitted).getKey();
+                    queue.add(pool.submit(() -> encodeMapBlock(quad, encoders.get(), level)));
+                    submitted++;
                 }
-                if (w.addTypes != null) {
-                    wats = new int[w.addTypes.length];
-                    for (int j = 0; j < w.addTypes.length; j++) {
-                        wats[j] = renderingTypes.getTypeByInternalId(w.addTypes[j]).getTargetId();
+                EncodedMapBlock block;
+                try {
+                    block = queue.poll().get();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof IOException) {
+                        throw (IOException) e.getCause();
                     }
+                    throw new IllegalStateException(e.getCause());
                 }
-                MapData mapData = writer.writeMapData(w.id - baseId,
-                        quad.x << (31 - quad.zoom), quad.y << (31 - quad.zoom), false,
-                        w.coordinates, w.innerCoordinates, wts, wats, w.names, new byte[0], null, stringTable, dataBlock, level.getMaxZoom() > 15); //TODO check
-                if (mapData != null) {
-                    dataBlock.addDataObjects(mapData);
-                }
+                writer.writeMapDataBlock(block.dataBlock, block.stringTable, entries.get(i).getValue());
             }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
 
-            writer.writeMapDataBlock(dataBlock, stringTable, e.getValue());
+    private EncodedMapBlock encodeMapBlock(SimplisticQuadTree quad, BinaryMapIndexWriter writer, MapZoomPair level)
+            throws IOException {
+        EncodedMapBlock block = new EncodedMapBlock();
+        MapDataBlock.Builder dataBlock = block.dataBlock;
+        Map<String, Integer> stringTable = block.stringTable;
+        long baseId = 0;
+        for (SimplisticBinaryData w : quad.getData(level)) {
+        	baseId = Math.min(w.id, baseId);
+        }
+        dataBlock.setBaseId(baseId);
+        for (SimplisticBinaryData w : quad.getData(level)) {
+            int[] wts = null;
+            int[] wats = null;
+            if (w.types != null) {
+                wts = new int[w.types.length];
+                for (int j = 0; j < w.types.length; j++) {
+                    wts[j] = renderingTypes.getTypeByInternalId(w.types[j]).getTargetId();
+                }
+            }
+            if (w.addTypes != null) {
+                wats = new int[w.addTypes.length];
+                for (int j = 0; j < w.addTypes.length; j++) {
+                    wats[j] = renderingTypes.getTypeByInternalId(w.addTypes[j]).getTargetId();
+                }
+            }
+            MapData mapData = writer.writeMapData(w.id - baseId,
+                    quad.x << (31 - quad.zoom), quad.y << (31 - quad.zoom), false,
+                    w.coordinates, w.innerCoordinates, wts, wats, w.names, new byte[0], null, stringTable, dataBlock, level.getMaxZoom() > 15); //TODO check
+            if (mapData != null) {
+                dataBlock.addDataObjects(mapData);
+            }
         }
+        return block;
     }
 
     private void writeBinaryMapTree(SimplisticQuadTree quadTree, BinaryMapIndexWriter writer,
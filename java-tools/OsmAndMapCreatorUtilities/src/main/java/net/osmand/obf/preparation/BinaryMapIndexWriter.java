@@ -187,6 +187,17 @@ public class BinaryMapIndexWriter {
 		state.push(OSMAND_STRUCTURE_INIT);
 	}
 
+	private BinaryMapIndexWriter() {
+	}
+
+	/**
+	 * Writer without output file, it could only encode map data (writeMapData) and
+	 * is used to prepare data blocks in parallel threads (one encoder per thread)
+	 */
+	public static BinaryMapIndexWriter createMapDataEncoder() {
+		return new BinaryMapIndexWriter();
+	}
+
 	private BinaryFileReference preserveInt32Size() throws IOException {
 		long filePointer = getFilePointer();
 		BinaryFileReference ref = BinaryFileReference.createSizeReference(filePointer);
@@ -1549,21 +1560,21 @@ public class BinaryMapIndexWriter {
 		codedOutStream.writeMessage(OsmandOdb.OsmAndPoiBox.CATEGORIES_FIELD_NUMBER, builder.build());
 	}
 
-	public Map<PoiTileBox, List<BinaryFileReference>> writePoiNameIndex(Map<String, Set<PoiTileBox>> namesIndex, long startPoiIndex) throws IOException {
+	public Map<PoiTileBox, List<BinaryFileReference>> writePoiNameIndex(PoiNamePrefixIndex namesIndex, long startPoiIndex) throws IOException {
 		checkPeekState(POI_INDEX_INIT);
 		codedOutStream.writeTag(OsmandOdb.OsmAndPoiIndex.NAMEINDEX_FIELD_NUMBER, WireFormat.WIRETYPE_FIXED32_LENGTH_DELIMITED);
 		preserveInt32Size();
 
 		Map<PoiTileBox, List<BinaryFileReference>> fpToWriteSeeks = new LinkedHashMap<PoiTileBox, List<BinaryFileReference>>();
-		Map<String, BinaryFileReference> indexedTable = writeIndexedTable(OsmandOdb.OsmAndPoiNameIndex.TABLE_FIELD_NUMBER, namesIndex.keySet());
-		for (Map.Entry<String, Set<PoiTileBox>> e : namesIndex.entrySet()) {
+		Map<String, BinaryFileReference> indexedTable = writeIndexedTable(OsmandOdb.OsmAndPoiNameIndex.TABLE_FIELD_NUMBER, namesIndex.getPrefixes());
+		for (int k = 0; k < namesIndex.size(); k++) {
 			codedOutStream.writeTag(OsmandOdb.OsmAndPoiNameIndex.DATA_FIELD_NUMBER, FieldType.MESSAGE.getWireType());
-			BinaryFileReference nameTableRef = indexedTable.get(e.getKey());
+			BinaryFileReference nameTableRef = indexedTable.get(namesIndex.getPrefix(k));
 			codedOutStream.flush();
 			nameTableRef.writeReference(raf, getFilePointer());
 
 			OsmAndPoiNameIndex.OsmAndPoiNameIndexData.Builder builder = OsmAndPoiNameIndex.OsmAndPoiNameIndexData.newBuilder();
-			List<PoiTileBox> tileBoxes = new ArrayList<PoiTileBox>(e.getValue());
+			List<PoiTileBox> tileBoxes = namesIndex.getBoxes(k);
 			for (PoiTileBox box : tileBoxes) {
 				OsmandOdb.OsmAndPoiNameIndexDataAtom.Builder bs = OsmandOdb.OsmAndPoiNameIndexDataAtom.newBuilder();
 				bs.setX(box.getX());
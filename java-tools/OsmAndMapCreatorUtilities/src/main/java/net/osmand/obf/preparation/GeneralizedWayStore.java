@@ -0,0 +1,302 @@
+package net.osmand.obf.preparation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import gnu.trove.TIntCollection;
+import gnu.trove.iterator.TIntIterator;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.list.array.TLongArrayList;
+import net.osmand.osm.MapRoutingTypes.MapRouteType;
+import net.osmand.util.MapUtils;
+
+/**
+ * Columnar storage of generalized basemap ways referenced by index. Points (x, y) of all ways are kept in shared
+ * blocks, way points are a range of one block (reallocated at the end when way grows over its capacity). Additional
+ * types are ranges of one int list (they could only be removed). Equal names maps are shared via dictionary.
+ *
+ * Ways could be added only before generalization, ways are modified in parallel only by different threads
+ * (see {@link RouteGeneralization}).
+ */
+class GeneralizedWayStore {
+
+	private static final int BLOCK_POINTS_POWER = 20;
+	private static final int BLOCK_POINTS = 1 << BLOCK_POINTS_POWER;
+	private static final int BLOCK_POINTS_MASK = BLOCK_POINTS - 1;
+	private static final int MAX_BLOCKS = 1 << (31 - BLOCK_POINTS_POWER);
+
+	// x, y pairs, start of way is block << BLOCK_POINTS_POWER | point in block
+	private final int[][] blocks = new int[MAX_BLOCKS][];
+	private int blocksCount = 0;
+	private int blockPoints = 0;
+
+	private final TLongArrayList ids = new TLongArrayList();
+	private final TIntArrayList mainTypes = new TIntArrayList();
+	private final TIntArrayList starts = new TIntArrayList();
+	private final TIntArrayList sizes = new TIntArrayList();
+	private final TIntArrayList capacities = new TIntArrayList();
+	private final TIntArrayList typesStart = new TIntArrayList();
+	private final TIntArrayList typesCount = new TIntArrayList();
+	private final TIntArrayList types = new TIntArrayList();
+	private final List<Map<MapRouteType, String>> names = new ArrayList<Map<MapRouteType, String>>();
+	private final Map<Map<MapRouteType, String>, Map<MapRouteType, String>> namesDictionary =
+			new HashMap<Map<MapRouteType, String>, Map<MapRouteType, String>>();
+
+	public int addWay(long id, int mainType, TIntCollection addTypes, Map<MapRouteType, String> wayNames,
+			TIntArrayList px, TIntArrayList py) {
+		int w = ids.size();
+		ids.add(id);
+		mainTypes.add(mainType);
+		int size = px.size();
+		int start = allocate(size);
+		starts.add(start);
+		sizes.add(size);
+		capacities.add(size);
+		int[] block = blocks[start >>> BLOCK_POINTS_POWER];
+		int p = (start & BLOCK_POINTS_MASK) << 1;
+		for (int i = 0; i < size; i++) {
+			block[p++] = px.get(i);
+			block[p++] = py.get(i);
+		}
+		typesStart.add(types.size());
+		TIntIterator it = addTypes.iterator();
+		while (it.hasNext()) {
+			int t = it.next();
+			if (!hasAddType(w, t, types.size())) {
+				types.add(t);
+			}
+		}
+		typesCount.add(types.size() - typesStart.get(w));
+		names.add(internNames(wayNames));
+		return w;
+	}
+
+	public int getWaysCount() {
+		return ids.size();
+	}
+
+	public long getId(int w) {
+		return ids.getQuick(w);
+	}
+
+	public int getMainType(int w) {
+		return mainTypes.getQuick(w);
+	}
+
+	public int size(int w) {
+		return sizes.getQuick(w);
+	}
+
+	public int getX(int w, int ind) {
+		int start = starts.getQuick(w);
+		return blocks[start >>> BLOCK_POINTS_POWER][((start & BLOCK_POINTS_MASK) + ind) << 1];
+	}
+
+	public int getY(int w, int ind) {
+		int start = starts.getQuick(w);
+		return blocks[start >>> BLOCK_POINTS_POWER][(((start & BLOCK_POINTS_MASK) + ind) << 1) + 1];
+	}
+
+	public long getLocation(int w, int ind) {
+		long x = getX(w, ind);
+		long y = getY(w, ind);
+		return (x << 31) + y;
+	}
+
+	public void addPoint(int w, int x, int y) {
+		insertPoint(w, size(w), x, y);
+	}
+
+	public void insertPoint(int w, int ind, int x, int y) {
+		int size = size(w);
+		ensureCapacity(w, size + 1);
+		int start = starts.getQuick(w);
+		int[] block = blocks[start >>> BLOCK_POINTS_POWER];
+		int p = (start & BLOCK_POINTS_MASK) << 1;
+		System.arraycopy(block, p + (ind << 1), block, p + ((ind + 1) << 1), (size - ind) << 1);
+		block[p + (ind << 1)] = x;
+		block[p + (ind << 1) + 1] = y;
+		sizes.setQuick(w, size + 1);
+	}
+
+	public void removePoint(int w, int ind) {
+		int size = size(w);
+		int start = starts.getQuick(w);
+		int[] block = blocks[start >>> BLOCK_POINTS_POWER];
+		int p = (start & BLOCK_POINTS_MASK) << 1;
+		System.arraycopy(block, p + ((ind + 1) << 1), block, p + (ind << 1), (size - ind - 1) << 1);
+		sizes.setQuick(w, size - 1);
+	}
+
+	/**
+	 * Joins points of prev way to the start (first) or to the end of way, common point is not duplicated
+	 */
+	public void join(int w, int prev, boolean first) {
+		int ws = size(w);
+		int ps = size(prev);
+		boolean reversePrev;
+		if (first) {
+			reversePrev = getLocation(w, 0) == getLocation(prev, 0);
+		} else {
+			reversePrev = getLocation(w, ws - 1) == getLocation(prev, ps - 1);
+		}
+		int[] res = new int[(ws + ps - 1) << 1];
+		int p = 0;
+		if (first) {
+			for (int i = 0; i < ps; i++) {
+				int j = reversePrev ? ps - 1 - i : i;
+				res[p++] = getX(prev, j);
+				res[p++] = getY(prev, j);
+			}
+			for (int i = 1; i < ws; i++) {
+				res[p++] = getX(w, i);
+				res[p++] = getY(w, i);
+			}
+		} else {
+			for (int i = 0; i < ws; i++) {
+				res[p++] = getX(w, i);
+				res[p++] = getY(w, i);
+			}
+			for (int i = 1; i < ps; i++) {
+				int j = reversePrev ? ps - 1 - i : i;
+				res[p++] = getX(prev, j);
+				res[p++] = getY(prev, j);
+			}
+		}
+		ensureCapacity(w, ws + ps - 1);
+		int start = starts.getQuick(w);
+		System.arraycopy(res, 0, blocks[start >>> BLOCK_POINTS_POWER], (start & BLOCK_POINTS_MASK) << 1, res.length);
+		sizes.setQuick(w, ws + ps - 1);
+	}
+
+	private void ensureCapacity(int w, int capacity) {
+		int cap = capacities.getQuick(w);
+		if (cap >= capacity) {
+			return;
+		}
+		cap = Math.max(capacity, Math.max(4, cap + (cap >> 1)));
+		int start = starts.getQuick(w);
+		int nstart = allocate(cap);
+		System.arraycopy(blocks[start >>> BLOCK_POINTS_POWER], (start & BLOCK_POINTS_MASK) << 1,
+				blocks[nstart >>> BLOCK_POINTS_POWER], (nstart & BLOCK_POINTS_MASK) << 1, size(w) << 1);
+		starts.setQuick(w, nstart);
+		capacities.setQuick(w, cap);
+	}
+
+	// previous range of way is not reused
+	private synchronized int allocate(int points) {
+		if (points > BLOCK_POINTS) {
+			throw new IllegalStateException("Generalized way has too many points " + points);
+		}
+		if (blocksCount == 0 || blockPoints + points > BLOCK_POINTS) {
+			if (blocksCount == MAX_BLOCKS) {
+				throw new IllegalStateException("Too many points of generalized ways");
+			}
+			blocks[blocksCount++] = new int[BLOCK_POINTS << 1];
+			blockPoints = 0;
+		}
+		int start = ((blocksCount - 1) << BLOCK_POINTS_POWER) | blockPoints;
+		blockPoints += points;
+		return start;
+	}
+
+	public boolean hasAddType(int w, int type) {
+		return hasAddType(w, type, typesStart.getQuick(w) + typesCount.getQuick(w));
+	}
+
+	private boolean hasAddType(int w, int type, int end) {
+		for (int i = typesStart.getQuick(w); i < end; i++) {
+			if (types.getQuick(i) == type) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Removes additional types of way which are not present in from way
+	 */
+	public void retainAddTypes(int w, int from) {
+		int st = typesStart.getQuick(w);
+		int end = st + typesCount.getQuick(w);
+		int p = st;
+		for (int i = st; i < end; i++) {
+			int t = types.getQuick(i);
+			if (hasAddType(from, t)) {
+				types.setQuick(p++, t);
+			}
+		}
+		typesCount.setQuick(w, p - st);
+	}
+
+	public void getAddTypes(int w, TIntArrayList out) {
+		int st = typesStart.getQuick(w);
+		for (int i = 0; i < typesCount.getQuick(w); i++) {
+			out.add(types.getQuick(st + i));
+		}
+	}
+
+	/**
+	 * @return unmodifiable names shared between ways
+	 */
+	public Map<MapRouteType, String> getNames(int w) {
+		return names.get(w);
+	}
+
+	public void setNames(int w, Map<MapRouteType, String> wayNames) {
+		names.set(w, internNames(wayNames));
+	}
+
+	private synchronized Map<MapRouteType, String> internNames(Map<MapRouteType, String> wayNames) {
+		if (wayNames.isEmpty()) {
+			return Collections.emptyMap();
+		}
+		Map<MapRouteType, String> res = namesDictionary.get(wayNames);
+		if (res == null) {
+			res = Collections.unmodifiableMap(new HashMap<MapRouteType, String>(wayNames));
+			namesDictionary.put(res, res);
+		}
+		return res;
+	}
+
+	public double getDistance(int w) {
+		double dx = 0;
+		for (int i = 1; i < size(w); i++) {
+			dx += MapUtils.getDistance(MapUtils.get31LatitudeY(getY(w, i - 1)), MapUtils.get31LongitudeX(getX(w, i - 1)),
+					MapUtils.get31LatitudeY(getY(w, i)), MapUtils.get31LongitudeX(getX(w, i)));
+		}
+		return dx;
+	}
+
+	// Gives route direction of EAST degrees from NORTH ]-PI, PI]
+	public double directionRoute(int w, int startPoint, boolean plus) {
+		float dist = 5;
+		int x = getX(w, startPoint);
+		int y = getY(w, startPoint);
+		int nx = startPoint;
+		int px = x;
+		int py = y;
+		double total = 0;
+		do {
+			if (plus) {
+				nx++;
+				if (nx >= size(w)) {
+					break;
+				}
+			} else {
+				nx--;
+				if (nx < 0) {
+					break;
+				}
+			}
+			px = getX(w, nx);
+			py = getY(w, nx);
+			// translate into meters
+			total += Math.abs(px - x) * 0.011d + Math.abs(py - y) * 0.01863d;
+		} while (total < dist);
+		return -Math.atan2( x - px, y - py );
+	}
+}
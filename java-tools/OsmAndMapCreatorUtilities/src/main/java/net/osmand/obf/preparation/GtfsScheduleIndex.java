@@ -0,0 +1,301 @@
+package net.osmand.obf.preparation;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import gnu.trove.list.array.TDoubleArrayList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TObjectIntHashMap;
+import net.osmand.data.LatLon;
+import net.osmand.data.TransportSchedule;
+import net.osmand.util.Algorithms;
+import net.osmand.util.MapUtils;
+
+/**
+ * Schedules of gtfs trips loaded with 2 sequential scans (routes + trips, stop_times ordered by trip) instead of
+ * querying stop times of each trip for every transport route. Intervals of trips are kept in columns
+ * (offset + count in shared int lists).
+ */
+class GtfsScheduleIndex {
+
+	private static final Log log = LogFactory.getLog(GtfsScheduleIndex.class);
+
+	// first stop of gtfs trip should be closer to the first stop of osm route
+	static final int TRIP_START_DISTANCE_THRESHOLD = 50;
+
+	static class GtfsInfoStats {
+		public int avgWaitDiff30Sec;
+		public int avgStopDiff30Sec;
+		int errorsTimeParsing = 0;
+		int successTripsParsing = 0;
+		int errorsTripsStopCounts = 0;
+		@Override
+		public String toString() {
+			return "GtfsInfoStats [avgWaitDiff30Sec=" + avgWaitDiff30Sec + ", avgStopDiff30Sec=" + avgStopDiff30Sec
+					+ ", errorsTimeParsing=" + errorsTimeParsing + ", successTripsParsing=" + successTripsParsing
+					+ ", errorsTripsStopCounts=" + errorsTripsStopCounts + "]";
+		}
+	}
+
+	/**
+	 * Parses stop times of one trip (ordered by stop_sequence) into stop and wait intervals.
+	 */
+	static class TripTimesParser {
+		final TIntArrayList stopIntervals;
+		final TIntArrayList waitIntervals;
+		int ftime;
+		int ptime;
+		int errorsTimeParsing;
+
+		TripTimesParser(TIntArrayList stopIntervals, TIntArrayList waitIntervals) {
+			this.stopIntervals = stopIntervals;
+			this.waitIntervals = waitIntervals;
+		}
+
+		void startTrip() {
+			ftime = ptime = 0;
+			errorsTimeParsing = 0;
+		}
+
+		void addStopTime(String arrival, String departure) {
+			int arrivalTime = parseTime(arrival);
+			int depTime = parseTime(departure);
+			if (arrivalTime == -1 || depTime == -1) {
+				errorsTimeParsing++;
+				return;
+			}
+			if (ftime == 0) {
+				ftime = ptime = depTime;
+			} else {
+				stopIntervals.add(arrivalTime - ptime);
+			}
+			waitIntervals.add(depTime - arrivalTime);
+			ptime = arrivalTime;
+		}
+	}
+
+	/**
+	 * Combines trips of the route into average intervals (intervals of the first trip) and intervals between trips.
+	 */
+	static class ScheduleBuilder {
+		private final TransportSchedule schedule = new TransportSchedule();
+		private final TIntArrayList timeDeparturesFirst = new TIntArrayList();
+		private final int stopsCount;
+		private final GtfsInfoStats stats;
+
+		ScheduleBuilder(int stopsCount, GtfsInfoStats stats) {
+			this.stopsCount = stopsCount;
+			this.stats = stats;
+		}
+
+		void addTrip(int ftime, TIntArrayList waits, int waitsStart, int waitsCount, TIntArrayList stops,
+				int stopsStart, int stopsCnt) {
+			if (waitsCount != stopsCount) {
+				stats.errorsTripsStopCounts++;
+				return;
+			}
+			stats.successTripsParsing++;
+			if (schedule.avgWaitIntervals.isEmpty()) {
+				for (int j = 0; j < waitsCount; j++) {
+					schedule.avgWaitIntervals.add(waits.getQuick(waitsStart + j));
+				}
+			} else {
+				// check wait intervals different
+				for (int j = 0; j < waitsCount; j++) {
+					if (Math.abs(schedule.avgWaitIntervals.getQuick(j) - waits.getQuick(waitsStart + j)) > 3) {
+						stats.avgWaitDiff30Sec++;
+						break;
+					}
+				}
+			}
+			if (schedule.avgStopIntervals.isEmpty()) {
+				for (int j = 0; j < stopsCnt; j++) {
+					schedule.avgStopIntervals.add(stops.getQuick(stopsStart + j));
+				}
+			} else {
+				for (int j = 0; j < stopsCnt; j++) {
+					if (Math.abs(schedule.avgStopIntervals.getQuick(j) - stops.getQuick(stopsStart + j)) > 3) {
+						stats.avgStopDiff30Sec++;
+						break;
+					}
+				}
+			}
+			timeDeparturesFirst.add(ftime);
+		}
+
+		TransportSchedule build() {
+			if (timeDeparturesFirst.size() == 0) {
+				return null;
+			}
+			timeDeparturesFirst.sort();
+			int p = 0;
+			for (int i = 0; i < timeDeparturesFirst.size(); i++) {
+				int x = timeDeparturesFirst.get(i) - p;
+				// this is a wrong check cause there should be a check for calendar
+				if (x > 0) {
+					schedule.tripIntervals.add(x);
+					p = timeDeparturesFirst.get(i);
+				}
+			}
+			boolean allZeros = true;
+			for (int i = 0; i < schedule.avgWaitIntervals.size(); i++) {
+				if (schedule.avgWaitIntervals.getQuick(i) != 0) {
+					allZeros = false;
+					break;
+				}
+			}
+			if (allZeros) {
+				schedule.avgWaitIntervals.clear();
+			}
+			return schedule;
+		}
+	}
+
+	// route_short_name -> trip rows in the order of route_id, trip_id
+	private final Map<String, TIntArrayList> tripsByRef = new HashMap<String, TIntArrayList>();
+	// trip rows
+	private final TDoubleArrayList firstStopLat = new TDoubleArrayList();
+	private final TDoubleArrayList firstStopLon = new TDoubleArrayList();
+	private final TIntArrayList tripTimes = new TIntArrayList();
+	// parsed stop times (by distinct trip_id)
+	private final TIntArrayList firstDeparture = new TIntArrayList();
+	private final TIntArrayList errorsTimeParsing = new TIntArrayList();
+	private final TIntArrayList waitsStart = new TIntArrayList();
+	private final TIntArrayList waitsCount = new TIntArrayList();
+	private final TIntArrayList stopsStart = new TIntArrayList();
+	private final TIntArrayList stopsCount = new TIntArrayList();
+	private final TIntArrayList waitIntervals = new TIntArrayList();
+	private final TIntArrayList stopIntervals = new TIntArrayList();
+
+	private GtfsScheduleIndex() {
+	}
+
+	/**
+	 * Trips are expected to have firstStopLat, firstStopLon columns (see IndexTransportCreator.indexBboxForGtfsTrips)
+	 */
+	static GtfsScheduleIndex load(Connection gtfsConnection) throws SQLException {
+		long time = System.currentTimeMillis();
+		GtfsScheduleIndex index = new GtfsScheduleIndex();
+		TObjectIntHashMap<String> tripIds = new TObjectIntHashMap<String>();
+		Statement stat = gtfsConnection.createStatement();
+		ResultSet rs = stat.executeQuery("SELECT r.route_short_name, t.trip_id, t.firstStopLat, t.firstStopLon "
+				+ " from routes r join trips t on t.route_id = r.route_id "
+				+ " order by r.route_short_name asc, r.route_id asc, t.trip_id asc");
+		while (rs.next()) {
+			String ref = rs.getString(1);
+			String tripId = rs.getString(2);
+			if (Algorithms.isEmpty(ref) || tripId == null) {
+				continue;
+			}
+			TIntArrayList refTrips = index.tripsByRef.get(ref);
+			if (refTrips == null) {
+				refTrips = new TIntArrayList();
+				index.tripsByRef.put(ref, refTrips);
+			}
+			if (!tripIds.containsKey(tripId)) {
+				tripIds.put(tripId, index.addTripTimes());
+			}
+			refTrips.add(index.firstStopLat.size());
+			index.firstStopLat.add(rs.getDouble(3));
+			index.firstStopLon.add(rs.getDouble(4));
+			index.tripTimes.add(tripIds.get(tripId));
+		}
+		rs.close();
+
+		TripTimesParser parser = new TripTimesParser(index.stopIntervals, index.waitIntervals);
+		int current = -1;
+		String currentTripId = null;
+		int stopTimes = 0;
+		rs = stat.executeQuery("SELECT trip_id, arrival_time, departure_time from stop_times "
+				+ " order by trip_id asc, stop_sequence asc");
+		while (rs.next()) {
+			String tripId = rs.getString(1);
+			if (!Algorithms.objectEquals(tripId, currentTripId)) {
+				index.finishTripTimes(current, parser);
+				currentTripId = tripId;
+				current = tripId != null && tripIds.containsKey(tripId) ? tripIds.get(tripId) : -1;
+				if (current != -1) {
+					parser.startTrip();
+					index.waitsStart.setQuick(current, index.waitIntervals.size());
+					index.stopsStart.setQuick(current, index.stopIntervals.size());
+				}
+			}
+			if (current != -1) {
+				parser.addStopTime(rs.getString(2), rs.getString(3));
+				stopTimes++;
+			}
+		}
+		index.finishTripTimes(current, parser);
+		rs.close();
+		stat.close();
+		log.info(String.format("Loaded gtfs schedules: %d routes, %d trips, %d stop times in %d ms",
+				index.tripsByRef.size(), tripIds.size(), stopTimes, System.currentTimeMillis() - time));
+		return index;
+	}
+
+	private int addTripTimes() {
+		firstDeparture.add(0);
+		errorsTimeParsing.add(0);
+		waitsStart.add(0);
+		waitsCount.add(0);
+		stopsStart.add(0);
+		stopsCount.add(0);
+		return firstDeparture.size() - 1;
+	}
+
+	private void finishTripTimes(int trip, TripTimesParser parser) {
+		if (trip == -1) {
+			return;
+		}
+		firstDeparture.setQuick(trip, parser.ftime);
+		errorsTimeParsing.setQuick(trip, parser.errorsTimeParsing);
+		waitsCount.setQuick(trip, waitIntervals.size() - waitsStart.getQuick(trip));
+		stopsCount.setQuick(trip, stopIntervals.size() - stopsStart.getQuick(trip));
+	}
+
+	TransportSchedule getSchedule(String ref, LatLon firstStop, int routeStopsCount, GtfsInfoStats stats) {
+		TIntArrayList trips = tripsByRef.get(ref);
+		if (trips == null) {
+			return null;
+		}
+		ScheduleBuilder builder = new ScheduleBuilder(routeStopsCount, stats);
+		for (int i = 0; i < trips.size(); i++) {
+			int row = trips.getQuick(i);
+			double dist = MapUtils.getDistance(firstStop, firstStopLat.getQuick(row), firstStopLon.getQuick(row));
+			if (dist < TRIP_START_DISTANCE_THRESHOLD) {
+				int t = tripTimes.getQuick(row);
+				stats.errorsTimeParsing += errorsTimeParsing.getQuick(t);
+				builder.addTrip(firstDeparture.getQuick(t), waitIntervals, waitsStart.getQuick(t),
+						waitsCount.getQuick(t), stopIntervals, stopsStart.getQuick(t), stopsCount.getQuick(t));
+			}
+		}
+		return builder.build();
+	}
+
+	// time in 10 seconds units, -1 if not parsed
+	static int parseTime(String str) {
+		if (str == null) {
+			return -1;
+		}
+		int f1 = str.indexOf(':');
+		int f2 = str.indexOf(':', f1 + 1);
+		if (f1 != -1 && f2 != -1) {
+			try {
+				int h = Integer.parseInt(str.substring(0, f1));
+				int m = Integer.parseInt(str.substring(f1 + 1, f2));
+				int s = Integer.parseInt(str.substring(f2 + 1));
+				return h * 60 * 6 + m * 6 + s / 10;
+			} catch (NumberFormatException e) {
+				return -1;
+			}
+		}
+		return -1;
+	}
+}
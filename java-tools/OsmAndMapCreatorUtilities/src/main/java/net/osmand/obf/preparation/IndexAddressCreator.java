@@ -4,6 +4,7 @@ import gnu.trove.iterator.TLongObjectIterator;
 import gnu.trove.map.hash.TLongObjectHashMap;
 import gnu.trove.set.hash.TLongHashSet;
 
+import java.io.File;
 import java.io.IOException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
@@ -19,12 +20,20 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -96,6 +105,8 @@ public class IndexAddressCreator extends AbstractIndexPartCreator {
     private static final int SHIFT_BOUNDARY_CENTER = 2;
 
 	Connection mapConnection;
+	private DBDialect mapDialect;
+	private File mapDBFile;
 	DBStreetDAO streetDAO;
 	private PreparedStatement postcodeSetStat;
 	private IndexCreatorSettings settings;
@@ -332,6 +343,8 @@ public class IndexAddressCreator extends AbstractIndexPartCreator {
 
 	private Boundary putCityBoundary(Boundary boundary, City cityFound) {
 		final Boundary oldBoundary = cityBoundaries.get(cityFound);
+		// city boundaries are tested for every street and building
+		boundary.prepareContainment();
 		if (oldBoundary == null) {
 			cityBoundaries.put(cityFound, boundary);
 			logBoundaryChanged(boundary, cityFound,
@@ -1126,14 +1139,7 @@ public class IndexAddressCreator extends AbstractIndexPartCreator {
 		}
 		writer.startWriteAddressIndex(regionName, additionalTags);
 		Map<CityType, List<City>> cities = readCities(mapConnection);
-		PreparedStatement streetstat = mapConnection.prepareStatement(//
-				"SELECT A.id, A.name, A.name_en, A.latitude, A.longitude, "+ //$NON-NLS-1$
-				"B.id, B.name, B.name_en, B.latitude, B.longitude, B.postcode, A.cityPart, "+ //$NON-NLS-1$
-				" B.name2, B.name_en2, B.lat2, B.lon2, B.interval, B.interpolateType, A.cityPart == C.name as MainTown " +
-				"FROM street A LEFT JOIN building B ON B.street = A.id JOIN city C ON A.city = C.id " + //$NON-NLS-1$
-				"WHERE A.city = ? ORDER BY MainTown DESC, A.name ASC"); //$NON-NLS-1$
-		PreparedStatement waynodesStat =
-			 mapConnection.prepareStatement("SELECT A.id, A.latitude, A.longitude FROM street_node A WHERE A.street = ? "); //$NON-NLS-1$
+		StreetsReaders readers = createStreetsReaders();
 
 		// collect suburbs with is in value
 		List<City> suburbs = new ArrayList<City>();
@@ -1160,8 +1166,12 @@ public class IndexAddressCreator extends AbstractIndexPartCreator {
 
 		progress.startTask(settings.getString("IndexCreator.SERIALIZING_ADDRESS"), cityTowns.size() + villages.size() / 100 + 1); //$NON-NLS-1$
 
-		writeCityBlockIndex(writer, CITIES_TYPE, streetstat, waynodesStat, suburbs, cityTowns, postcodes, namesIndex, tagRules, progress);
-		writeCityBlockIndex(writer, VILLAGES_TYPE, streetstat, waynodesStat, null, villages, postcodes, namesIndex, tagRules, progress);
+		try {
+			writeCityBlockIndex(writer, CITIES_TYPE, readers, suburbs, cityTowns, postcodes, namesIndex, tagRules, progress);
+			writeCityBlockIndex(writer, VILLAGES_TYPE, readers, null, villages, postcodes, namesIndex, tagRules, progress);
+		} finally {
+			readers.close();
+		}
 
 		// write postcodes
 		List<BinaryFileReference> refs = new ArrayList<BinaryFileReference>();
@@ -1194,11 +1204,124 @@ public class IndexAddressCreator extends AbstractIndexPartCreator {
 		writer.writeAddressNameIndex(namesIndex);
 		writer.endWriteAddressIndex();
 		writer.flush();
-		streetstat.close();
-		if (waynodesStat != null) {
+	}
+
+	private StreetsReaders createStreetsReaders() throws SQLException {
+		int threads = settings.threadsCount;
+		// in memory db can't be shared between connections
+		if (threads <= 1 || mapDialect != DBDialect.SQLITE || mapDBFile == null) {
+			return new StreetsReaders(null, new StreetsReader(mapConnection, false));
+		}
+		// release exclusive lock (held by main connection) to let other connections read db
+		Statement stat = mapConnection.createStatement();
+		stat.executeQuery("PRAGMA locking_mode = NORMAL").close();
+		stat.executeQuery("SELECT count(*) FROM city").close();
+		stat.close();
+		mapConnection.commit();
+		StreetsReaders readers = new StreetsReaders(Executors.newFixedThreadPool(threads), null);
+		try {
+			for (int i = 0; i < threads; i++) {
+				Connection c = mapDialect.getDatabaseConnection(mapDBFile.getAbsolutePath(), log);
+				readers.add(new StreetsReader(c, true));
+			}
+		} catch (SQLException | RuntimeException e) {
+			readers.close();
+			throw e;
+		}
+		return readers;
+	}
+
+	private class StreetsReaders {
+		final ExecutorService executor;
+		final StreetsReader mainReader;
+		final BlockingQueue<StreetsReader> pool;
+		// all created readers including ones taken from pool by workers
+		final List<StreetsReader> all = new ArrayList<>();
+
+		StreetsReaders(ExecutorService executor, StreetsReader mainReader) {
+			this.executor = executor;
+			this.mainReader = mainReader;
+			this.pool = new ArrayBlockingQueue<>(Math.max(1, settings.threadsCount));
+			if (mainReader != null) {
+				all.add(mainReader);
+			}
+		}
+
+		void add(StreetsReader reader) {
+			all.add(reader);
+			pool.add(reader);
+		}
+
+		boolean isParallel() {
+			return executor != null;
+		}
+
+		void close() throws SQLException {
+			if (executor != null) {
+				executor.shutdownNow();
+				// on error workers could still hold readers, statements are closed when workers are finished
+				try {
+					if (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+						log.warn("Streets readers are not finished, connections are closed while in use");
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			pool.clear();
+			SQLException error = null;
+			for (StreetsReader r : all) {
+				try {
+					r.close();
+				} catch (SQLException e) {
+					if (error == null) {
+						error = e;
+					}
+				}
+			}
+			all.clear();
+			if (error != null) {
+				throw error;
+			}
+			if (executor != null) {
+				Statement stat = mapConnection.createStatement();
+				stat.executeQuery("PRAGMA locking_mode = EXCLUSIVE").close();
+				stat.close();
+			}
+		}
+	}
+
+	private static class StreetsReader {
+		final Connection conn;
+		final boolean ownConnection;
+		final PreparedStatement streetstat;
+		final PreparedStatement waynodesStat;
+
+		StreetsReader(Connection conn, boolean ownConnection) throws SQLException {
+			this.conn = conn;
+			this.ownConnection = ownConnection;
+			streetstat = conn.prepareStatement(//
+					"SELECT A.id, A.name, A.name_en, A.latitude, A.longitude, "+ //$NON-NLS-1$
+					"B.id, B.name, B.name_en, B.latitude, B.longitude, B.postcode, A.cityPart, "+ //$NON-NLS-1$
+					" B.name2, B.name_en2, B.lat2, B.lon2, B.interval, B.interpolateType, A.cityPart == C.name as MainTown " +
+					"FROM street A LEFT JOIN building B ON B.street = A.id JOIN city C ON A.city = C.id " + //$NON-NLS-1$
+					"WHERE A.city = ? ORDER BY MainTown DESC, A.name ASC"); //$NON-NLS-1$
+			waynodesStat = conn.prepareStatement("SELECT A.id, A.latitude, A.longitude FROM street_node A WHERE A.street = ? "); //$NON-NLS-1$
+		}
+
+		void close() throws SQLException {
+			streetstat.close();
 			waynodesStat.close();
+			if (ownConnection) {
+				conn.close();
+			}
 		}
+	}
 
+	private static class CityStreets {
+		final Map<Street, List<Node>> streetNodes = new LinkedHashMap<Street, List<Node>>();
+		List<Street> streets;
+		long time;
 	}
 
 	private void updatePostcodeBoundaries(IProgress progress, Map<String, City> postcodes) throws SQLException {
@@ -1338,7 +1461,7 @@ public class IndexAddressCreator extends AbstractIndexPartCreator {
 	}
 
 
-	private void writeCityBlockIndex(BinaryMapIndexWriter writer, int type, PreparedStatement streetstat, PreparedStatement waynodesStat,
+	private void writeCityBlockIndex(BinaryMapIndexWriter writer, int type, StreetsReaders readers,
 			List<City> suburbs, List<City> cities, Map<String, City> postcodes, Map<String, List<MapObject>> namesIndex,
 			Map<String, Integer> tagRules, IProgress progress)
 			throws IOException, SQLException {
@@ -1348,6 +1471,10 @@ public class IndexAddressCreator extends AbstractIndexPartCreator {
 		for (City c : cities) {
 			refs.add(writer.writeCityHeader(c, c.getType().ordinal(), tagRules));
 		}
+		// streets are read and merged by workers ahead, but serialized strictly in cities order
+		LinkedList<Future<CityStreets>> queue = new LinkedList<>();
+		int submitted = 0;
+		int window = 4 * settings.threadsCount;
 		for (int i = 0; i < cities.size(); i++) {
 			City city = cities.get(i);
 			BinaryFileReference ref = refs.get(i);
@@ -1359,22 +1486,19 @@ public class IndexAddressCreator extends AbstractIndexPartCreator {
 					progress.progress(1);
 				}
 			}
-			Map<Street, List<Node>> streetNodes = new LinkedHashMap<Street, List<Node>>();
-			List<City> listSuburbs = null;
-			if (suburbs != null) {
-				for (City suburb : suburbs) {
-					if (suburb.getIsInValue().toLowerCase().contains(city.getName().toLowerCase())) {
-						if (listSuburbs == null) {
-							listSuburbs = new ArrayList<City>();
-						}
-						listSuburbs.add(suburb);
-					}
+			CityStreets cs;
+			if (readers.isParallel()) {
+				while (submitted < cities.size() && submitted < i + window) {
+					queue.add(submitReadCityStreets(readers, cities.get(submitted), suburbs));
+					submitted++;
 				}
+				cs = getCityStreets(queue.poll());
+			} else {
+				cs = readCityStreets(readers.mainReader, city, suburbs);
 			}
-			long time = System.currentTimeMillis();
-			List<Street> streets = readStreetsBuildings(streetstat, city, waynodesStat, streetNodes, listSuburbs);
-			long f = System.currentTimeMillis() - time;
-			writer.writeCityIndex(city, streets, streetNodes, ref, tagRules);
+			List<Street> streets = cs.streets;
+			long f = cs.time;
+			writer.writeCityIndex(city, streets, cs.streetNodes, ref, tagRules);
 
 			int bCount = 0;
 			// register postcodes and name index
@@ -1417,6 +1541,52 @@ public class IndexAddressCreator extends AbstractIndexPartCreator {
 		writer.endCityBlockIndex();
 	}
 
+	private Future<CityStreets> submitReadCityStreets(final StreetsReaders readers, final City city,
+			final List<City> suburbs) {
+		return readers.executor.submit(() -> {
+			StreetsReader reader = readers.pool.take();
+			try {
+				return readCityStreets(reader, city, suburbs);
+			} finally {
+				readers.pool.add(reader);
+			}
+		});
+	}
+
+	private CityStreets getCityStreets(Future<CityStreets> future) throws SQLException, IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			throw new IOException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof SQLException) {
+				throw (SQLException) e.getCause();
+			} else if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		}
+	}
+
+	private CityStreets readCityStreets(StreetsReader reader, City city, List<City> suburbs) throws SQLException {
+		CityStreets cs = new CityStreets();
+		List<City> listSuburbs = null;
+		if (suburbs != null) {
+			for (City suburb : suburbs) {
+				if (suburb.getIsInValue().toLowerCase().contains(city.getName().toLowerCase())) {
+					if (listSuburbs == null) {
+						listSuburbs = new ArrayList<City>();
+					}
+					listSuburbs.add(suburb);
+				}
+			}
+		}
+		long time = System.currentTimeMillis();
+		cs.streets = readStreetsBuildings(reader.streetstat, city, reader.waynodesStat, cs.streetNodes, listSuburbs);
+		cs.time = System.currentTimeMillis() - time;
+		return cs;
+	}
+
 	public void commitToPutAllCities() throws SQLException {
 		// commit to put all cities
 		streetDAO.commit();
@@ -1429,8 +1599,10 @@ public class IndexAddressCreator extends AbstractIndexPartCreator {
 		streetDAO.createIndexes(mapConnection);
 	}
 
-	public void createDatabaseStructure(Connection mapConnection, DBDialect dialect) throws SQLException {
+	public void createDatabaseStructure(Connection mapConnection, DBDialect dialect, File mapDBFile) throws SQLException {
 		this.mapConnection = mapConnection;
+		this.mapDialect = dialect;
+		this.mapDBFile = mapDBFile;
 		streetDAO.createDatabaseStructure(mapConnection, dialect);
 		Statement stat = mapConnection.createStatement();
         stat.executeUpdate("create table city (id bigint primary key, latitude double, longitude double, " +
@@ -1482,7 +1654,10 @@ public class IndexAddressCreator extends AbstractIndexPartCreator {
 					//logMapDataWarn.info("City : " + s.getCity() +
 					//	" combine 2 district streets '" + s.getName() + "' with '" + candidate.getName() + "'");
 					s.mergeWith(candidate);
-					candidate.getCity().unregisterStreet(candidate);
+					City candidateCity = candidate.getCity();
+					synchronized (candidateCity) {
+						candidateCity.unregisterStreet(candidate);
+					}
 					List<Node> old = streetNodes.remove(candidate);
 					streetNodes.get(s).addAll(old);
 					streets.remove(j);
@@ -1543,7 +1718,10 @@ public class IndexAddressCreator extends AbstractIndexPartCreator {
 					street.setName(lang, names.get(lang) + cityPart);
 				}
 				streetNodes.put(street, thisWayNodes);
-				city.registerStreet(street);
+				// suburbs are shared between cities read in parallel
+				synchronized (city) {
+					city.registerStreet(street);
+				}
 
 				visitedStreets.put(streetId, street); // mark the street as visited
 			}
@@ -0,0 +1,247 @@
+package net.osmand.obf.preparation;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.OperatingSystemMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+/**
+ * Lightweight registry of generation metrics: wall / cpu time and peak heap of each phase, entity counts and
+ * sizes of intermediate files. Phases are expected to run one after another (not nested).
+ * Report is serialized to json, so it could be aggregated across regions (see {@link #writeSummary(List, File)}).
+ */
+public class IndexCreationMetrics {
+
+	public static final String REPORT_EXT = ".report.json";
+	private static final long MB = 1 << 20;
+
+	public static class PhaseMetrics {
+		public String name;
+		public long wallMs;
+		// process cpu time (all threads), -1 if not supported by jvm
+		public long cpuMs = -1;
+		public long peakHeapMb;
+	}
+
+	public static class RunReport {
+		public String region;
+		public String file;
+		public long started;
+		public long wallMs;
+		public long cpuMs = -1;
+		public long peakHeapMb;
+		public List<PhaseMetrics> phases = new ArrayList<PhaseMetrics>();
+		public Map<String, Long> counts = new LinkedHashMap<String, Long>();
+		public Map<String, Long> sizes = new LinkedHashMap<String, Long>();
+	}
+
+	public class Phase {
+		private final PhaseMetrics metrics = new PhaseMetrics();
+		private final long startTime;
+		private final long startCpu;
+
+		private Phase(String name) {
+			metrics.name = name;
+			resetPeakHeap();
+			startCpu = getProcessCpuTime();
+			startTime = System.nanoTime();
+		}
+
+		public void finish() {
+			metrics.wallMs = (System.nanoTime() - startTime) / 1000000;
+			long cpu = getProcessCpuTime();
+			if (cpu >= 0 && startCpu >= 0) {
+				metrics.cpuMs = (cpu - startCpu) / 1000000;
+			}
+			metrics.peakHeapMb = getPeakHeap() / MB;
+			synchronized (report) {
+				report.phases.add(metrics);
+				report.peakHeapMb = Math.max(report.peakHeapMb, metrics.peakHeapMb);
+			}
+		}
+	}
+
+	private final RunReport report = new RunReport();
+	private final long startTime;
+	private final long startCpu;
+
+	public IndexCreationMetrics(String region) {
+		report.region = region;
+		report.started = System.currentTimeMillis();
+		startCpu = getProcessCpuTime();
+		startTime = System.nanoTime();
+	}
+
+	public Phase startPhase(String name) {
+		return new Phase(name);
+	}
+
+	public void setCount(String name, long value) {
+		synchronized (report) {
+			report.counts.put(name, value);
+		}
+	}
+
+	public void setFileSize(String name, File file) {
+		if (file != null && file.exists()) {
+			synchronized (report) {
+				report.sizes.put(name, file.length());
+			}
+		}
+	}
+
+	public RunReport finish(File result) {
+		synchronized (report) {
+			report.file = result == null ? null : result.getName();
+			report.wallMs = (System.nanoTime() - startTime) / 1000000;
+			long cpu = getProcessCpuTime();
+			if (cpu >= 0 && startCpu >= 0) {
+				report.cpuMs = (cpu - startCpu) / 1000000;
+			}
+			setFileSize("obf", result);
+			return report;
+		}
+	}
+
+	public RunReport getReport() {
+		return report;
+	}
+
+	public static File getReportFile(File mapFile) {
+		return new File(mapFile.getParentFile(), mapFile.getName() + REPORT_EXT);
+	}
+
+	public void writeReport(File file) throws IOException {
+		synchronized (report) {
+			writeJson(report, file);
+		}
+	}
+
+	public static RunReport readReport(File file) throws IOException {
+		Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8);
+		try {
+			return new Gson().fromJson(reader, RunReport.class);
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Aggregates reports of several regions: per phase total and max time (with region) sorted by total time,
+	 * regions are sorted by wall time. Returns aggregated phases (slowest first).
+	 */
+	public static List<PhaseSummary> writeSummary(List<RunReport> reports, File file) throws IOException {
+		Map<String, PhaseSummary> phases = new LinkedHashMap<String, PhaseSummary>();
+		for (RunReport r : reports) {
+			for (PhaseMetrics p : r.phases) {
+				PhaseSummary s = phases.get(p.name);
+				if (s == null) {
+					s = new PhaseSummary();
+					s.name = p.name;
+					phases.put(p.name, s);
+				}
+				s.regions++;
+				s.totalWallMs += p.wallMs;
+				if (p.cpuMs >= 0) {
+					s.totalCpuMs += p.cpuMs;
+				}
+				if (p.wallMs >= s.maxWallMs) {
+					s.maxWallMs = p.wallMs;
+					s.maxWallRegion = r.region;
+				}
+				s.maxPeakHeapMb = Math.max(s.maxPeakHeapMb, p.peakHeapMb);
+			}
+		}
+		BatchSummary summary = new BatchSummary();
+		summary.phases = new ArrayList<PhaseSummary>(phases.values());
+		Collections.sort(summary.phases, new Comparator<PhaseSummary>() {
+			@Override
+			public int compare(PhaseSummary o1, PhaseSummary o2) {
+				return Long.compare(o2.totalWallMs, o1.totalWallMs);
+			}
+		});
+		summary.regions = new ArrayList<RunReport>(reports);
+		Collections.sort(summary.regions, new Comparator<RunReport>() {
+			@Override
+			public int compare(RunReport o1, RunReport o2) {
+				return Long.compare(o2.wallMs, o1.wallMs);
+			}
+		});
+		for (RunReport r : reports) {
+			summary.totalWallMs += r.wallMs;
+		}
+		writeJson(summary, file);
+		return summary.phases;
+	}
+
+	public static class PhaseSummary {
+		public String name;
+		public int regions;
+		public long totalWallMs;
+		public long totalCpuMs;
+		public long maxWallMs;
+		public String maxWallRegion;
+		public long maxPeakHeapMb;
+	}
+
+	public static class BatchSummary {
+		public long totalWallMs;
+		public List<PhaseSummary> phases;
+		public List<RunReport> regions;
+	}
+
+	private static void writeJson(Object obj, File file) throws IOException {
+		Gson gson = new GsonBuilder().setPrettyPrinting().create();
+		Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8);
+		try {
+			gson.toJson(obj, writer);
+		} finally {
+			writer.close();
+		}
+	}
+
+	private static long getProcessCpuTime() {
+		OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+		if (os instanceof com.sun.management.OperatingSystemMXBean) {
+			return ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime();
+		}
+		return -1;
+	}
+
+	private static void resetPeakHeap() {
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				pool.resetPeakUsage();
+			}
+		}
+	}
+
+	// sum of pool peaks (upper estimate, pools could reach peak at different moments)
+	private static long getPeakHeap() {
+		long peak = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) {
+				peak += pool.getPeakUsage().getUsed();
+			}
+		}
+		return peak;
+	}
+}
@@ -11,6 +11,7 @@ import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.Iterator;
+import java.util.Map.Entry;
 import java.util.zip.GZIPInputStream;
 
 import javax.imageio.ImageIO;
@@ -21,6 +22,7 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.xmlpull.v1.XmlPullParserException;
 
+import gnu.trove.list.array.TLongArrayList;
 import net.osmand.IProgress;
 import net.osmand.IndexConstants;
 import net.osmand.binary.MapZooms;
@@ -32,6 +34,7 @@ import net.osmand.osm.edit.Entity;
 import net.osmand.osm.edit.Entity.EntityId;
 import net.osmand.osm.edit.Entity.EntityType;
 import net.osmand.osm.edit.Node;
+import net.osmand.osm.edit.OSMSettings.OSMTagKey;
 import net.osmand.osm.edit.Relation;
 import net.osmand.osm.edit.Way;
 import net.osmand.osm.io.IOsmStorageFilter;
@@ -87,6 +90,10 @@ public class IndexCreator {
 	private boolean recreateOnlyBinaryFile = false; // false;
 	private boolean deleteOsmDB = true;
 	private boolean deleteDatabaseIndexes = true;
+	// apply osm changes to nodes db from previous generation instead of creating it
+	private boolean applyOsmChanges = false;
+
+	private IndexCreationMetrics metrics;
 
 	public IndexCreator(File workingDir, IndexCreatorSettings settings) {
 		this.workingDir = workingDir;
@@ -104,6 +111,13 @@ public class IndexCreator {
 		}
 	}
 
+	/**
+	 * Metrics of last (or current) generation
+	 */
+	public IndexCreationMetrics getMetrics() {
+		return metrics;
+	}
+
 	public IndexCreatorSettings getSettings() {
 		return settings;
 	}
@@ -115,6 +129,17 @@ public class IndexCreator {
 		return regionName;
 	}
 
+	/**
+	 * Region name derived from name of source file (as for indexes generated from file)
+	 */
+	public static String getRegionName(String fileName) {
+		int i = fileName.indexOf('.');
+		if (i > -1) {
+			return Algorithms.capitalizeFirstLetterAndLowercase(fileName.substring(0, i));
+		}
+		return null;
+	}
+
 	public void setRegionName(String regionName) {
 		this.regionName = regionName;
 	}
@@ -252,52 +277,76 @@ public class IndexCreator {
 		return true;
 	}
 
-	private OsmDbCreator extractOsmToNodesDB(OsmDbAccessor accessor, File readFile, IProgress progress,
-			IOsmStorageFilter addFilter, int idSourceMapInd, int idShift, 
+	private OsmDbCreator extractOsmToNodesDB(OsmDbAccessor accessor, File readFile, OsmEntitySource entitySource,
+			IProgress progress, IOsmStorageFilter addFilter, int idSourceMapInd, int idShift,
 			boolean generateNewIds, OsmDbCreator previous) throws IOException, SQLException, XmlPullParserException {
 		boolean pbfFile = false;
-		InputStream stream = new BufferedInputStream(new FileInputStream(readFile), 8192 * 4);
-		InputStream streamFile = stream;
+		InputStream stream = null;
+		InputStream streamFile = null;
 		long st = System.currentTimeMillis();
-		if (readFile.getName().endsWith(".bz2")) { //$NON-NLS-1$
-			stream = new BZip2CompressorInputStream(stream);
-		} else if (readFile.getName().endsWith(".gz")) { //$NON-NLS-1$
-			stream = new GZIPInputStream(stream);
-		} else if (readFile.getName().endsWith(".pbf")) { //$NON-NLS-1$
-			pbfFile = true;
+		if (readFile != null) {
+			stream = new BufferedInputStream(new FileInputStream(readFile), 8192 * 4);
+			streamFile = stream;
+			if (readFile.getName().endsWith(".bz2")) { //$NON-NLS-1$
+				stream = new BZip2CompressorInputStream(stream);
+			} else if (readFile.getName().endsWith(".gz")) { //$NON-NLS-1$
+				stream = new GZIPInputStream(stream);
+			} else if (readFile.getName().endsWith(".pbf")) { //$NON-NLS-1$
+				pbfFile = true;
+			}
 		}
 
-		OsmBaseStorage storage = pbfFile ? new OsmBaseStoragePbf() : new OsmBaseStorage();
+		final OsmBaseStorage storage = pbfFile ? new OsmBaseStoragePbf() : new OsmBaseStorage();
 		storage.setSupressWarnings(settings.suppressWarningsForDuplicateIds);
 		if (addFilter != null) {
 			storage.getFilters().add(addFilter);
 		}
 
-		storage.getFilters().add(new IOsmStorageFilter() {
+		if (!applyOsmChanges) {
+			// with applied changes all entities are registered after loading (see registerStoredEntities)
+			storage.getFilters().add(new IOsmStorageFilter() {
 
-			@Override
-			public boolean acceptEntityToLoad(OsmBaseStorage storage, EntityId entityId, Entity entity) {
-				if (indexAddressCreator != null) {
-					indexAddressCreator.registerCityIfNeeded(entity);
-				}
-				if (indexRouteCreator != null) {
-					indexRouteCreator.registerRestrictionNodes(entity);
+				@Override
+				public boolean acceptEntityToLoad(OsmBaseStorage storage, EntityId entityId, Entity entity) {
+					if (indexAddressCreator != null) {
+						indexAddressCreator.registerCityIfNeeded(entity);
+					}
+					if (indexRouteCreator != null) {
+						indexRouteCreator.registerRestrictionNodes(entity);
+					}
+					// accept to allow db creator parse it
+					return true;
 				}
-				// accept to allow db creator parse it
-				return true;
-			}
-		});
+			});
+		}
 
 		// 1. Loading osm file
 		OsmDbCreator dbCreator = generateNewIds ? new OsmDbCreator(idSourceMapInd, idShift) : new OsmDbCreator();
+		dbCreator.setApplyChanges(applyOsmChanges);
 		
 		try {
 			setGeneralProgress(progress, "[15 / 100]"); //$NON-NLS-1$
-			progress.startTask(settings.getString("IndexCreator.LOADING_FILE") + readFile.getAbsolutePath(), -1); //$NON-NLS-1$
+			progress.startTask(settings.getString("IndexCreator.LOADING_FILE")
+					+ (readFile != null ? readFile.getAbsolutePath() : getRegionName()), -1); //$NON-NLS-1$
 			// 1 init database to store temporary data
-			dbCreator.initDatabase(osmDBdialect, accessor.getDbConn(), idSourceMapInd == 0, previous);
+			dbCreator.initDatabase(osmDBdialect, accessor.getDbConn(), idSourceMapInd == 0 && !applyOsmChanges,
+					previous);
 			storage.getFilters().add(dbCreator);
-			if (pbfFile) {
+			if (entitySource != null) {
+				// same filter chain as parser applies, but without osm xml serialization round trip
+				entitySource.produceEntities(new OsmEntitySource.OsmEntityConsumer() {
+
+					@Override
+					public void acceptEntity(Entity entity) {
+						EntityId entityId = EntityId.valueOf(entity);
+						for (IOsmStorageFilter f : storage.getFilters()) {
+							if (!f.acceptEntityToLoad(storage, entityId, entity)) {
+								break;
+							}
+						}
+					}
+				});
+			} else if (pbfFile) {
 				((OsmBaseStoragePbf) storage).parseOSMPbf(stream, progress, false);
 			} else {
 				storage.parseOSM(stream, progress, streamFile, false);
@@ -307,6 +356,9 @@ public class IndexCreator {
 
 			if (log.isInfoEnabled()) {
 				log.info("File parsed : " + (System.currentTimeMillis() - st)); //$NON-NLS-1$
+				if (applyOsmChanges) {
+					log.info("Changes applied, deleted entities : " + dbCreator.getDeletedEntities()); //$NON-NLS-1$
+				}
 			}
 			progress.finishTask();
 			return dbCreator;
@@ -317,37 +369,101 @@ public class IndexCreator {
 		}
 	}
 
-	private OsmDbAccessor initDbAccessor(File[] readFile, IProgress progress, IOsmStorageFilter addFilter,
-			boolean generateUniqueIdsForEachFile) throws IOException, SQLException, InterruptedException, XmlPullParserException {
+	private OsmDbAccessor initDbAccessor(File[] readFile, OsmEntitySource entitySource, IProgress progress,
+			IOsmStorageFilter addFilter, boolean generateUniqueIdsForEachFile)
+			throws IOException, SQLException, InterruptedException, XmlPullParserException {
 		OsmDbAccessor accessor = new OsmDbAccessor();
 		if (dbFile == null) {
 			dbFile = new File(workingDir, TEMP_NODES_DB);
 		}
-		if (osmDBdialect.databaseFileExists(dbFile)) {
+		if (applyOsmChanges) {
+			if (!osmDBdialect.databaseFileExists(dbFile)) {
+				throw new IOException("Nodes db to apply changes doesn't exist " + dbFile.getAbsolutePath()); //$NON-NLS-1$
+			}
+		} else if (osmDBdialect.databaseFileExists(dbFile)) {
 			osmDBdialect.removeDatabase(dbFile);
 		}
 		
 		Connection dbConn = (Connection) getDatabaseConnection(dbFile.getAbsolutePath(), osmDBdialect);
 		accessor.setDbConn(dbConn, osmDBdialect);
 		OsmDbCreator dbCreator = null;
-		int idShift = readFile.length < 16 ? 4 : (readFile.length < 64 ? 6 : 11);
-		if (readFile.length > (1 << 11)) {
-			throw new UnsupportedOperationException();
+		if (applyOsmChanges) {
+			for (File read : readFile) {
+				OsmEntitySource changes = OsmChangeSource.isOsmChangeFile(read) ? new OsmChangeSource(read) : null;
+				dbCreator = extractOsmToNodesDB(accessor, changes == null ? read : null, changes, progress, addFilter,
+						0, 0, false, null);
+			}
+			osmDBdialect.commitDatabase(dbConn);
+			accessor.initDatabase();
+			accessor.updateCounts();
+			registerStoredEntities(accessor, progress);
+			return accessor;
 		}
-		int idSourceMapInd = 0;
-		for (File read : readFile) {
-			dbCreator = extractOsmToNodesDB(accessor, read, progress, addFilter, idSourceMapInd, idShift, generateUniqueIdsForEachFile, null);
+		if (entitySource != null) {
+			dbCreator = extractOsmToNodesDB(accessor, null, entitySource, progress, addFilter, 0, 0,
+					generateUniqueIdsForEachFile, null);
 			accessor.updateCounts(dbCreator);
-			if (readFile.length > 1) {
-				log.info("Processing " + (idSourceMapInd + 1) + " file out of " + readFile.length);
+		} else {
+			int idShift = readFile.length < 16 ? 4 : (readFile.length < 64 ? 6 : 11);
+			if (readFile.length > (1 << 11)) {
+				throw new UnsupportedOperationException();
+			}
+			int idSourceMapInd = 0;
+			for (File read : readFile) {
+				dbCreator = extractOsmToNodesDB(accessor, read, null, progress, addFilter, idSourceMapInd, idShift,
+						generateUniqueIdsForEachFile, null);
+				accessor.updateCounts(dbCreator);
+				if (readFile.length > 1) {
+					log.info("Processing " + (idSourceMapInd + 1) + " file out of " + readFile.length);
+				}
+				idSourceMapInd++;
 			}
-			idSourceMapInd++;
 		}
 		osmDBdialect.commitDatabase(dbConn);
 		accessor.initDatabase();
 		return accessor;
 	}
 
+	private void registerStoredEntities(OsmDbAccessor accessor, IProgress progress)
+			throws SQLException, InterruptedException {
+		// entities are registered with original osm ids as during file parsing
+		progress.startTask(settings.getString("IndexCreator.INDEX_CITIES"), -1); //$NON-NLS-1$
+		accessor.iterateOverEntities(progress, EntityType.NODE, new OsmDbVisitor() {
+			@Override
+			public void iterateEntity(Entity e, OsmDbAccessorContext ctx) throws SQLException {
+				if (e.getTag(OSMTagKey.PLACE) != null) {
+					Node n = (Node) e;
+					Node city = new Node(n.getLatitude(), n.getLongitude(), getOsmId(n.getId()));
+					for (Entry<String, String> t : n.getTags().entrySet()) {
+						city.putTag(t.getKey(), t.getValue());
+					}
+					indexAddressCreator.registerCityIfNeeded(city);
+				}
+			}
+		});
+		if (settings.indexRouting) {
+			progress.startTask(settings.getString("IndexCreator.PROCESS_OSM_WAYS"), -1); //$NON-NLS-1$
+			accessor.iterateOverEntities(progress, EntityType.WAY, new OsmDbVisitor() {
+				@Override
+				public void iterateEntity(Entity e, OsmDbAccessorContext ctx) throws SQLException {
+					Way w = new Way(getOsmId(e.getId()));
+					for (Entry<String, String> t : e.getTags().entrySet()) {
+						w.putTag(t.getKey(), t.getValue());
+					}
+					TLongArrayList nodeIds = ((Way) e).getNodeIds();
+					for (int i = 0; i < nodeIds.size(); i++) {
+						w.addNode(getOsmId(nodeIds.get(i)));
+					}
+					indexRouteCreator.registerRestrictionNodes(w);
+				}
+			});
+		}
+	}
+
+	private static long getOsmId(long storedId) {
+		return storedId < 0 ? storedId : (storedId >> OsmDbCreator.SHIFT_ID);
+	}
+
 	private void createDatabaseIndexesStructure() throws SQLException, IOException {
 		// 2.1 create temporary sqlite database to put temporary results to it
 		mapFile = new File(workingDir, getMapFileName());
@@ -368,7 +484,7 @@ public class IndexCreator {
 					getRTreeRouteIndexNonPackFileName());
 		}
 		if (settings.indexAddress) {
-			indexAddressCreator.createDatabaseStructure(mapConnection, mapIndexDBDialect);
+			indexAddressCreator.createDatabaseStructure(mapConnection, mapIndexDBDialect, tempDBMapFile);
 		}
 		if (settings.indexPOI) {
 			indexPoiCreator.createDatabaseStructure(getPoiFile());
@@ -395,13 +511,13 @@ public class IndexCreator {
 		try {
 
 			final BasemapProcessor processor = new BasemapProcessor(logMapDataWarn, mapZooms, renderingTypes,
-					settings.zoomWaySmoothness);
+					settings.zoomWaySmoothness, settings.threadsCount);
 			final IndexPoiCreator poiCreator = settings.indexPOI ? new IndexPoiCreator(settings, renderingTypes)
 					: null;
 			if (settings.indexPOI) {
 				poiCreator.createDatabaseStructure(getPoiFile());
 			}
-			OsmDbAccessor accessor = initDbAccessor(readFiles, progress, addFilter, true);
+			OsmDbAccessor accessor = initDbAccessor(readFiles, null, progress, addFilter, true);
 			// 2. Create index connections and index structure
 
 			IndexCreationContext icc = new IndexCreationContext(this, regionName, true);
@@ -486,6 +602,46 @@ public class IndexCreator {
 
 	public File generateIndexes(File[] readFile, IProgress progress, IOsmStorageFilter addFilter, MapZooms mapZooms,
 			MapRenderingTypesEncoder renderingTypes, Log logMapDataWarn, boolean generateUniqueIds) throws IOException, SQLException, InterruptedException, XmlPullParserException {
+		return generateIndexes(readFile, null, progress, addFilter, mapZooms, renderingTypes, logMapDataWarn,
+				generateUniqueIds);
+	}
+
+	/**
+	 * Generates indexes from entities pushed directly by producer (without intermediate osm file).
+	 * Region name should be set before, otherwise default region name is used.
+	 */
+	public File generateIndexes(OsmEntitySource entitySource, IProgress progress, IOsmStorageFilter addFilter,
+			MapZooms mapZooms, MapRenderingTypesEncoder renderingTypes, Log logMapDataWarn)
+			throws IOException, SQLException, InterruptedException, XmlPullParserException {
+		return generateIndexes(null, entitySource, progress, addFilter, mapZooms, renderingTypes, logMapDataWarn,
+				false);
+	}
+
+	/**
+	 * Applies osm change files (.osc or .osm with osmand_change=delete tags) to nodes db kept from previous
+	 * generation (see setDeleteOsmDB) and regenerates indexes from it without parsing full region file.
+	 * Nodes db is kept for next updates. Region name should be set before.
+	 *
+	 * Only parsing of region file is saved: map index db and all index sections are still generated for the whole
+	 * region from updated nodes db (regeneration of affected tiles only is not supported).
+	 */
+	public File updateIndexes(File[] changeFiles, IProgress progress, IOsmStorageFilter addFilter, MapZooms mapZooms,
+			MapRenderingTypesEncoder renderingTypes, Log logMapDataWarn)
+			throws IOException, SQLException, InterruptedException, XmlPullParserException {
+		applyOsmChanges = true;
+		deleteOsmDB = false;
+		try {
+			return generateIndexes(changeFiles, null, progress, addFilter, mapZooms, renderingTypes, logMapDataWarn,
+					false);
+		} finally {
+			applyOsmChanges = false;
+		}
+	}
+
+	private File generateIndexes(File[] readFile, OsmEntitySource entitySource, IProgress progress,
+			IOsmStorageFilter addFilter, MapZooms mapZooms, MapRenderingTypesEncoder renderingTypes,
+			Log logMapDataWarn, boolean generateUniqueIds)
+			throws IOException, SQLException, InterruptedException, XmlPullParserException {
 		if (logMapDataWarn == null) {
 			logMapDataWarn = log;
 		}
@@ -496,13 +652,12 @@ public class IndexCreator {
 
 		// clear previous results and setting variables
 		if (readFile != null && readFile.length > 0 && regionName == null) {
-			int i = readFile[0].getName().indexOf('.');
-			if (i > -1) {
-				regionName = Algorithms.capitalizeFirstLetterAndLowercase(readFile[0].getName().substring(0, i));
-			}
+			regionName = getRegionName(readFile[0].getName());
 		}
 
 		IndexCreationContext icc = new IndexCreationContext(this, regionName, false);
+		metrics = new IndexCreationMetrics(regionName);
+		IndexCreationMetrics.Phase phase;
 
 		if (renderingTypes == null) {
 			renderingTypes = new MapRenderingTypesEncoder(null, regionName);
@@ -558,21 +713,33 @@ public class IndexCreator {
 			} else {
 				// 2. Create index connections and index structure
 				createDatabaseIndexesStructure();
-				OsmDbAccessor accessor = initDbAccessor(readFile, progress, addFilter, generateUniqueIds);
+				phase = metrics.startPhase("nodesDb");
+				OsmDbAccessor accessor = initDbAccessor(readFile, entitySource, progress, addFilter, generateUniqueIds);
+				phase.finish();
+				metrics.setCount("nodes", accessor.getAllNodes());
+				metrics.setCount("ways", accessor.getAllWays());
+				metrics.setCount("relations", accessor.getAllRelations());
 
 				// 3. Processing all entries
 				// 3.1 write all cities
+				phase = metrics.startPhase("cities");
 				writeAllCities(accessor, progress);
+				phase.finish();
 				// 3.2 index address relations
+				phase = metrics.startPhase("relations");
 				indexRelations(accessor, progress, icc);
+				phase.finish();
 				// 3.3 MAIN iterate over all entities
+				phase = metrics.startPhase("mainEntities");
 				iterateMainEntities(accessor, progress, icc);
+				phase.finish();
 				accessor.closeReadingConnection();
 				// do not delete first db connection
 				if (accessor.getDbConn() != null) {
 					osmDBdialect.commitDatabase(accessor.getDbConn());
 					osmDBdialect.closeDatabase(accessor.getDbConn());
 				}
+				metrics.setFileSize("nodesDb", dbFile);
 				if (deleteOsmDB) {
 					osmDBdialect.removeDatabase(dbFile);
 				}
@@ -583,16 +750,22 @@ public class IndexCreator {
 					if (settings.indexMap) {
 						progress.startTask(settings.getString("IndexCreator.INDEX_LO_LEVEL_WAYS"),
 								indexMapCreator.getLowLevelWays());
+						metrics.setCount("map.lowLevelWays", indexMapCreator.getLowLevelWays());
+						phase = metrics.startPhase("map.lowLevelWays");
 						indexMapCreator.processingLowLevelWays(progress);
+						phase.finish();
 					}
 					if (settings.indexRouting) {
 						progress.startTask(settings.getString("IndexCreator.INDEX_LO_LEVEL_WAYS"), -1);
+						phase = metrics.startPhase("route.lowLevelWays");
 						indexRouteCreator.processingLowLevelWays(progress);
+						phase.finish();
 					}
 
 				}
 
 				// 4. packing map rtree indexes
+				phase = metrics.startPhase("packRtree");
 				if (settings.indexMap) {
 					setGeneralProgress(progress, "[90 / 100]"); //$NON-NLS-1$
 					progress.startTask(settings.getString("IndexCreator.PACK_RTREE_MAP"), -1); //$NON-NLS-1$
@@ -609,6 +782,9 @@ public class IndexCreator {
 					indexTransportCreator.packRTree(getRTreeTransportStopsFileName(),
 							getRTreeTransportStopsPackFileName());
 				}
+				phase.finish();
+				metrics.setFileSize("mapDb", new File(workingDir, getTempMapDBFileName()));
+				metrics.setFileSize("poiDb", getPoiFile());
 			}
 
 			// 5. Writing binary file
@@ -623,36 +799,50 @@ public class IndexCreator {
 				if (settings.indexMap) {
 					setGeneralProgress(progress, "[95 of 100]");
 					progress.startTask("Writing map index to binary file...", -1);
+					phase = metrics.startPhase("write.map");
 					indexMapCreator.writeBinaryMapIndex(writer, regionName);
+					phase.finish();
 				}
 				if (settings.indexRouting) {
 					setGeneralProgress(progress, "[95 of 100]");
 					progress.startTask("Writing route index to binary file...", -1);
+					phase = metrics.startPhase("write.route");
 					indexRouteCreator.writeBinaryRouteIndex(mapFile, writer, regionName, settings.generateLowLevel);
+					phase.finish();
 				}
 
 				if (settings.indexAddress) {
 					setGeneralProgress(progress, "[95 of 100]");
 					progress.startTask("Writing address index to binary file...", -1);
+					phase = metrics.startPhase("write.address");
 					indexAddressCreator.writeBinaryAddressIndex(writer, regionName, progress);
+					phase.finish();
 				}
 
 				if (settings.indexPOI) {
 					setGeneralProgress(progress, "[95 of 100]");
 					progress.startTask("Writing poi index to binary file...", -1);
+					phase = metrics.startPhase("write.poi");
 					indexPoiCreator.writeBinaryPoiIndex(writer, regionName, progress);
+					phase.finish();
 				}
 
 				if (settings.indexTransport) {
 					setGeneralProgress(progress, "[95 of 100]");
 					progress.startTask("Writing transport index to binary file...", -1);
+					phase = metrics.startPhase("write.transport");
 					indexTransportCreator.writeBinaryTransportIndex(writer, regionName, mapConnection);
+					phase.finish();
 				}
 				progress.finishTask();
 				writer.close();
 				mapRAFile.close();
 				log.info("Finish writing binary file"); //$NON-NLS-1$
 			}
+			metrics.finish(mapFile);
+			if (settings.writeRunReport && mapFile != null && mapFile.exists()) {
+				metrics.writeReport(IndexCreationMetrics.getReportFile(mapFile));
+			}
 		} catch (RuntimeException e) {
 			log.error("Log exception", e); //$NON-NLS-1$
 			throw e;
@@ -765,6 +955,7 @@ public class IndexCreator {
 				}
 			});
 			if (settings.indexMap) {
+				indexMapCreator.flushMultipolygons();
 				indexMapCreator.createMapIndexTableIndexes(mapConnection);
 			}
 			if (settings.indexAddress || settings.indexRouting) {
@@ -33,6 +33,9 @@ public class IndexCreatorSettings {
 	// gtfs data for public transport
 	public File gtfsData;
 	
+	// load gtfs schedules in memory with one scan of stop_times (false - query stop times per trip)
+	public boolean gtfsScheduleInMemory = true;
+	
 	// for example file with low emissions polygons 
 	public List<File> extraRelations = new ArrayList<>();
 	
@@ -58,6 +61,12 @@ public class IndexCreatorSettings {
 	
 	public int poiZipStringLimit = 100;
 	
+	// keep poi data in memory till poi index is written (false - stream poi table ordered by tiles)
+	public boolean poiInMemory = true;
+	
+	// combine low level map ways with endpoints index in memory (false - query ways by node from db)
+	public boolean lowLevelWaysInMemory = true;
+	
 	public int charsToBuildPoiNameIndex = 4;
 	
 	public int charsToBuildAddressNameIndex = 4;
@@ -66,6 +75,12 @@ public class IndexCreatorSettings {
 
 	public boolean indexMultipolygon = true;
 	
+	// threads for parallel generation steps (1 to process sequentially)
+	public int threadsCount = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+
+	// write json report with phase metrics next to generated obf (see IndexCreationMetrics)
+	public boolean writeRunReport;
+	
 	
 
 	public String getString(String key) {
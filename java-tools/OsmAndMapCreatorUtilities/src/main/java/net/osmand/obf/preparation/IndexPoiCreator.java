@@ -12,12 +12,10 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
-import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
-import java.util.TreeMap;
 import java.util.TreeSet;
 
 import org.apache.commons.logging.Log;
@@ -54,7 +52,7 @@ public class IndexPoiCreator extends AbstractIndexPartCreator {
 	private static final int ZOOM_TO_SAVE_START = 6;
 	private static final int ZOOM_TO_WRITE_CATEGORIES_START = 12;
 	private static final int ZOOM_TO_WRITE_CATEGORIES_END = 16;
-	private boolean useInMemoryCreator = true;
+	private boolean useInMemoryCreator;
 	public static long GENERATE_OBJ_ID = -(1L << 10L);
 	private static int SHIFT_MULTIPOLYGON_IDS = 43;
 	private static int DUPLICATE_SPLIT = 5;
@@ -73,6 +71,7 @@ public class IndexPoiCreator extends AbstractIndexPartCreator {
 		this.settings = settings;
 		this.renderingTypes = renderingTypes;
 		this.poiTypes = MapPoiTypes.getDefault();
+		this.useInMemoryCreator = settings.poiInMemory;
 	}
 
 	public void setPoiTypes(MapPoiTypes poiTypes) {
@@ -411,13 +410,14 @@ public class IndexPoiCreator extends AbstractIndexPartCreator {
 		}
 		poiConnection.commit();
 
-		Map<String, Set<PoiTileBox>> namesIndex = new TreeMap<String, Set<PoiTileBox>>();
+		PoiNamePrefixIndex namesIndex = new PoiNamePrefixIndex();
 
 		int zoomToStart = ZOOM_TO_SAVE_START;
 		IntBbox bbox = new IntBbox();
 		Tree<PoiTileBox> rootZoomsTree = new Tree<PoiTileBox>();
 		// 0. process all entities
 		processPOIIntoTree(namesIndex, zoomToStart, bbox, rootZoomsTree);
+		namesIndex.build();
 
 		// 1. write header
 		long startFpPoiIndex = writer.startWritePoiIndex(regionName, bbox.minX, bbox.maxX, bbox.maxY, bbox.minY);
@@ -451,20 +451,13 @@ public class IndexPoiCreator extends AbstractIndexPartCreator {
 		}
 
 		// 4. write poi data
-		// not so effective probably better to load in memory one time
-		PreparedStatement prepareStatement = poiConnection
-				.prepareStatement("SELECT id, x, y, type, subtype, additionalTags from poi "
-						+ "where x >= ? AND x < ? AND y >= ? AND y < ?"
-						+ " order by priority ");
-		for (Map.Entry<PoiTileBox, List<BinaryFileReference>> entry : fpToWriteSeeks.entrySet()) {
-			int z = entry.getKey().zoom;
-			int x = entry.getKey().x;
-			int y = entry.getKey().y;
-			writer.startWritePoiData(z, x, y, entry.getValue());
-
-			if (useInMemoryCreator) {
+		if (useInMemoryCreator) {
+			for (Map.Entry<PoiTileBox, List<BinaryFileReference>> entry : fpToWriteSeeks.entrySet()) {
+				int z = entry.getKey().zoom;
+				int x = entry.getKey().x;
+				int y = entry.getKey().y;
+				writer.startWritePoiData(z, x, y, entry.getValue());
 				List<PoiData> poiData = entry.getKey().poiData;
-
 				for (PoiData poi : poiData) {
 					int x31 = poi.x;
 					int y31 = poi.y;
@@ -476,36 +469,81 @@ public class IndexPoiCreator extends AbstractIndexPartCreator {
 					writer.writePoiDataAtom(poi.id, x24shift, y24shift, type, subtype, poi.additionalTags,
 							globalCategories, settings.poiZipLongStrings ? settings.poiZipStringLimit : -1, precisionXY);
 				}
+				writer.endWritePoiData();
+			}
+		} else {
+			writePoiDataByTiles(writer, fpToWriteSeeks, globalCategories);
+		}
 
-			} else {
-				prepareStatement.setInt(1, x << (31 - z));
-				prepareStatement.setInt(2, (x + 1) << (31 - z));
-				prepareStatement.setInt(3, y << (31 - z));
-				prepareStatement.setInt(4, (y + 1) << (31 - z));
-				ResultSet rset = prepareStatement.executeQuery();
-				Map<PoiAdditionalType, String> mp = new HashMap<PoiAdditionalType, String>();
-				while (rset.next()) {
-					long id = rset.getLong(1);
-					int x31 = rset.getInt(2);
-					int y31 = rset.getInt(3);
-					int x24shift = (x31 >> 7) - (x << (24 - z));
-					int y24shift = (y31 >> 7) - (y << (24 - z));
-					int precisionXY = MapUtils.calculateFromBaseZoomPrecisionXY(24, 27, (x31 >> 4), (y31 >> 4));
-					String type = rset.getString(4);
-					String subtype = rset.getString(5);
-					writer.writePoiDataAtom(id, x24shift, y24shift, type, subtype,
-							decodeAdditionalInfo(rset.getString(6), mp), globalCategories,
-							settings.poiZipLongStrings ? settings.poiZipStringLimit : -1, precisionXY);
+		writer.endWritePoiIndex();
+
+	}
+
+	/**
+	 * Reads poi table once ordered by tiles of the last zoom (all data boxes are on that zoom) and priority,
+	 * instead of range query per tile.
+	 */
+	private void writePoiDataByTiles(BinaryMapIndexWriter writer,
+			Map<PoiTileBox, List<BinaryFileReference>> fpToWriteSeeks, PoiCreatorCategories globalCategories)
+			throws SQLException, IOException {
+		int z = ZOOM_TO_SAVE_END;
+		int shift = 31 - z;
+		Map<Long, PoiTileBox> tiles = new LinkedHashMap<Long, PoiTileBox>();
+		for (PoiTileBox box : fpToWriteSeeks.keySet()) {
+			if (box.zoom != z) {
+				throw new IllegalStateException("Unexpected zoom of poi data box " + box.zoom);
+			}
+			tiles.put(getTileKey(box.x, box.y), box);
+		}
+		Statement stat = poiConnection.createStatement();
+		ResultSet rset = stat.executeQuery("SELECT id, x, y, type, subtype, additionalTags, "
+				+ "(x >> " + shift + ") as tx, (y >> " + shift + ") as ty from poi order by tx, ty, priority");
+		Map<PoiAdditionalType, String> mp = new HashMap<PoiAdditionalType, String>();
+		PoiTileBox box = null;
+		long tileKey = -1;
+		while (rset.next()) {
+			int x = rset.getInt(7);
+			int y = rset.getInt(8);
+			long key = getTileKey(x, y);
+			if (key != tileKey) {
+				if (box != null) {
+					writer.endWritePoiData();
+				}
+				tileKey = key;
+				box = tiles.remove(key);
+				if (box != null) {
+					writer.startWritePoiData(z, x, y, fpToWriteSeeks.get(box));
 				}
-				rset.close();
 			}
+			if (box == null) {
+				continue;
+			}
+			long id = rset.getLong(1);
+			int x31 = rset.getInt(2);
+			int y31 = rset.getInt(3);
+			int x24shift = (x31 >> 7) - (x << (24 - z));
+			int y24shift = (y31 >> 7) - (y << (24 - z));
+			int precisionXY = MapUtils.calculateFromBaseZoomPrecisionXY(24, 27, (x31 >> 4), (y31 >> 4));
+			String type = rset.getString(4);
+			String subtype = rset.getString(5);
+			writer.writePoiDataAtom(id, x24shift, y24shift, type, subtype,
+					decodeAdditionalInfo(rset.getString(6), mp), globalCategories,
+					settings.poiZipLongStrings ? settings.poiZipStringLimit : -1, precisionXY);
+		}
+		if (box != null) {
 			writer.endWritePoiData();
 		}
+		rset.close();
+		stat.close();
+		// all boxes are created from poi table, so references are not expected to be left
+		for (PoiTileBox b : tiles.values()) {
+			writer.startWritePoiData(z, b.x, b.y, fpToWriteSeeks.get(b));
+			writer.endWritePoiData();
+		}
+	}
 
-		prepareStatement.close();
-
-		writer.endWritePoiIndex();
-
+	private static long getTileKey(int x, int y) {
+		return (((long) x) << 32) | y;
 	}
 
 	private PoiAdditionalType retrieveAdditionalType(String key) {
@@ -517,13 +555,13 @@ public class IndexPoiCreator extends AbstractIndexPartCreator {
 		return null;
 	}
 
-	private void processPOIIntoTree(Map<String, Set<PoiTileBox>> namesIndex, int zoomToStart, IntBbox bbox,
+	private void processPOIIntoTree(PoiNamePrefixIndex namesIndex, int zoomToStart, IntBbox bbox,
 			Tree<PoiTileBox> rootZoomsTree) throws SQLException {
 		ResultSet rs;
 		if (useInMemoryCreator) {
 			rs = poiConnection.createStatement().executeQuery("SELECT x,y,type,subtype,id,additionalTags from poi ORDER BY id, priority");
 		} else {
-			rs = poiConnection.createStatement().executeQuery("SELECT x,y,type,subtype from poi ORDER BY id, priority");
+			rs = poiConnection.createStatement().executeQuery("SELECT x,y,type,subtype,id,additionalTags from poi ORDER BY id, priority");
 		}
 		rootZoomsTree.setNode(new PoiTileBox());
 
@@ -608,7 +646,7 @@ public class IndexPoiCreator extends AbstractIndexPartCreator {
 		log.info("Poi processing finished");
 	}
 
-	private void addNamePrefix(String name, String nameEn, PoiTileBox data, Map<String, Set<PoiTileBox>> poiData,
+	private void addNamePrefix(String name, String nameEn, PoiTileBox data, PoiNamePrefixIndex poiData,
 			Set<String> names) {
 		if (name != null) {
 			parsePrefix(name, data, poiData);
@@ -629,17 +667,14 @@ public class IndexPoiCreator extends AbstractIndexPartCreator {
 		}
 	}
 
-	private void parsePrefix(String name, PoiTileBox data, Map<String, Set<PoiTileBox>> poiData) {
+	private void parsePrefix(String name, PoiTileBox data, PoiNamePrefixIndex poiData) {
 		name = Algorithms.normalizeSearchText(name);
 		List<String> splitName = Algorithms.splitByWordsLowercase(name);
 		for (String str : splitName) {
 			if (str.length() > settings.charsToBuildPoiNameIndex) {
 				str = str.substring(0, settings.charsToBuildPoiNameIndex);
 			}
-			if (!poiData.containsKey(str)) {
-				poiData.put(str, new LinkedHashSet<>());
-			}
-			poiData.get(str).add(data);
+			poiData.add(str, data);
 		}
 	}
 
@@ -686,6 +721,8 @@ public class IndexPoiCreator extends AbstractIndexPartCreator {
 		int zoom;
 		PoiCreatorCategories categories = new PoiCreatorCategories();
 		List<PoiData> poiData = null;
+		// id in PoiNamePrefixIndex
+		int nameIndexId = -1;
 
 		public int getX() {
 			return x;
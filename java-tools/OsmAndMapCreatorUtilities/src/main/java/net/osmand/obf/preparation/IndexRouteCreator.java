@@ -16,7 +16,6 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -32,7 +31,6 @@ import gnu.trove.list.array.TIntArrayList;
 import gnu.trove.list.array.TLongArrayList;
 import gnu.trove.map.hash.TIntObjectHashMap;
 import gnu.trove.map.hash.TLongObjectHashMap;
-import gnu.trove.set.hash.TIntHashSet;
 import gnu.trove.set.hash.TLongHashSet;
 import net.osmand.IProgress;
 import net.osmand.binary.BinaryMapIndexReader;
@@ -50,6 +48,7 @@ import net.osmand.data.MultipolygonBuilder;
 import net.osmand.data.QuadRect;
 import net.osmand.data.QuadTree;
 import net.osmand.obf.preparation.BinaryMapIndexWriter.RoutePointToWrite;
+import net.osmand.obf.preparation.RouteGeneralization.GeneralizedCluster;
 import net.osmand.osm.MapRenderingTypes;
 import net.osmand.osm.MapRenderingTypesEncoder;
 import net.osmand.osm.MapRenderingTypesEncoder.EntityConvertApplyType;
@@ -82,8 +81,6 @@ public class IndexRouteCreator extends AbstractIndexPartCreator {
 
 	private Connection mapConnection;
 	private final Log logMapDataWarn;
-	private final static int CLUSTER_ZOOM = 15;
-	private final static String CONFLICT_NAME = "#CONFLICT";
 	private RTree routeTree = null;
 	private RTree baserouteTree = null;
 	private MapRoutingTypes routeTypes;
@@ -91,8 +88,6 @@ public class IndexRouteCreator extends AbstractIndexPartCreator {
 
 	private TLongArrayList nodePropagatedIds = new TLongArrayList();
 	private Map<Long, Map<String, String>> nodePropagatedTags = new HashMap<>();
-
-	private final static float DOUGLAS_PEUKER_DISTANCE = 15;
 	
 	// flipped quad tree cause bottom > top
 	private QuadTree<Multipolygon> lowEmissionZones = new QuadTree<Multipolygon>(new QuadRect(-180, 90, 180, -90), 8, 0.55f);
@@ -132,7 +127,7 @@ public class IndexRouteCreator extends AbstractIndexPartCreator {
 	}
 
 
-	TLongObjectHashMap<GeneralizedCluster> generalClusters = new TLongObjectHashMap<GeneralizedCluster>();
+	RouteGeneralization generalization = new RouteGeneralization();
 	private PreparedStatement mapRouteInsertStat;
 	private PreparedStatement basemapRouteInsertStat;
 	private MapRenderingTypesEncoder renderingTypes;
@@ -439,36 +434,11 @@ public class IndexRouteCreator extends AbstractIndexPartCreator {
 		}
 	}
 
-	private static long getBaseId(int x31, int y31) {
-		long x = x31;
-		long y = y31;
-		return (x << 31) + y;
-	}
-
-	private GeneralizedCluster getCluster(GeneralizedWay gw, int ind, GeneralizedCluster helper) {
-		int x31 = gw.px.get(ind);
-		int y31 = gw.py.get(ind);
-		int xc = x31 >> (31 - CLUSTER_ZOOM);
-		int yc = y31 >> (31 - CLUSTER_ZOOM);
-		if(helper != null && helper.x == xc  &&
-				helper.y == yc) {
-			return helper;
-		}
-		long l = (((long)xc) << (CLUSTER_ZOOM+1)) + yc;
-		if(!generalClusters.containsKey(l)) {
-			generalClusters.put(l, new GeneralizedCluster(xc, yc, CLUSTER_ZOOM));
-		}
-		return generalClusters.get(l);
-	}
-
-
 	public void generalizeWay(Way e) throws SQLException {
 		List<Node> ns = e.getNodes();
 
-		GeneralizedWay w = new GeneralizedWay(e.getId());
-		TIntArrayList px = w.px;
-		TIntArrayList py = w.py;
-		GeneralizedCluster cluster = null;
+		TIntArrayList px = new TIntArrayList(ns.size());
+		TIntArrayList py = new TIntArrayList(ns.size());
 		for (Node n : ns) {
 			if (n != null) {
 				int x31 = MapUtils.get31TileNumberX(n.getLongitude());
@@ -477,21 +447,12 @@ public class IndexRouteCreator extends AbstractIndexPartCreator {
 				py.add(y31);
 			}
 		}
-		if(w.size() < 2) {
+		if(px.size() < 2) {
 			return;
 		}
-		for (int i = 0; i < w.size(); i++) {
-			GeneralizedCluster ncluster = getCluster(w, i, cluster);
-			if (ncluster != cluster) {
-				cluster = ncluster;
-			}
-			ncluster.addWayFromLocation(w, i);
-		}
 		int mt = getMainType(outTypes); // routeTypes.getTypeByInternalId(mt)
 		outTypes.remove(mt);
-		w.mainType = mt;
-		w.addtypes.addAll(outTypes);
-		w.names.putAll(names);
+		generalization.addWay(e.getId(), mt, outTypes, names, px, py);
 	}
 
 	private static final char SPECIAL_CHAR = ((char) 0x60000);
@@ -820,97 +781,41 @@ public class IndexRouteCreator extends AbstractIndexPartCreator {
 		return main;
 	}
 
-	@SuppressWarnings("rawtypes")
-	public void getAdjacentRoads(GeneralizedCluster gcluster, GeneralizedWay gw, int i, Collection<GeneralizedWay> collection){
-		gcluster = getCluster(gw, i, gcluster);
-		Object o = gcluster.map.get(gw.getLocation(i));
-		if (o instanceof LinkedList) {
-			Iterator it = ((LinkedList) o).iterator();
-			while (it.hasNext()) {
-				GeneralizedWay next = (GeneralizedWay) it.next();
-				if (next.id != gw.id) {
-					collection.add(next);
-				}
-			}
-		}
-	}
-
-	@SuppressWarnings("rawtypes")
-	public int countAdjacentRoads(GeneralizedCluster gcluster, GeneralizedWay gw, int i){
-		gcluster = getCluster(gw, i, gcluster);
-		Object o = gcluster.map.get(gw.getLocation(i));
-		if (o instanceof LinkedList) {
-
-			Iterator it = ((LinkedList) o).iterator();
-			int cnt = 0;
-			while (it.hasNext()) {
-				GeneralizedWay next = (GeneralizedWay) it.next();
-				if (next.id != gw.id ) {
-					cnt++;
-				}
-			}
-			return cnt;
-		} else if(o instanceof GeneralizedWay) {
-			if(gw.id != ((GeneralizedWay)o).id){
-				return 1;
-			}
-		}
-		return 0;
-	}
-
-
-
 	public void processingLowLevelWays(IProgress progress) {
 		if(!settings.generateLowLevel) {
 			return;
 		}
 		pointTypes.clear();
 		pointNames.clear();
-		Collection<GeneralizedCluster> clusters = new ArrayList<IndexRouteCreator.GeneralizedCluster>(
-				generalClusters.valueCollection());
-		// 1. roundabouts
-		processRoundabouts(clusters);
-
-		// 2. way combination based
-		for (GeneralizedCluster cluster : clusters) {
-			ArrayList<GeneralizedWay> copy = new ArrayList<GeneralizedWay>(cluster.ways);
-			for (GeneralizedWay gw : copy) {
-				// already deleted
-				if (!cluster.ways.contains(gw)) {
-					continue;
-				}
-				attachWays(gw, true);
-				attachWays(gw, false);
-			}
-		}
-
-		// 3. Douglas peuker simplifications
-		douglasPeukerSimplificationStep(clusters);
+		// 1. roundabouts, 2. way combination based, 3. Douglas peuker simplifications
+		List<GeneralizedCluster> clusters = generalization.generalize(routeTypes, settings.threadsCount);
 
 		// 5. write to db
+		GeneralizedWayStore store = generalization.getStore();
 		TLongHashSet ids = new TLongHashSet();
 		for (GeneralizedCluster cluster : clusters) {
-			for (GeneralizedWay gw : cluster.ways) {
-				if (ids.contains(gw.id)) {
+			for (int gw : cluster.getClusterWays()) {
+				long id = store.getId(gw);
+				if (ids.contains(id)) {
 					continue;
 				}
-				ids.add(gw.id);
+				ids.add(id);
 				names.clear();
-				Iterator<Entry<MapRouteType, String>> its = gw.names.entrySet().iterator();
+				Iterator<Entry<MapRouteType, String>> its = store.getNames(gw).entrySet().iterator();
 				while (its.hasNext()) {
 					Entry<MapRouteType, String> e = its.next();
-					if (e.getValue() != null && !e.getValue().equals(CONFLICT_NAME)) {
+					if (e.getValue() != null && !e.getValue().equals(RouteGeneralization.CONFLICT_NAME)) {
 						names.put(e.getKey(), e.getValue());
 					}
 				}
 				ArrayList<Node> nodes = new ArrayList<Node>();
-				if (gw.size() == 0) {
-					System.err.println(gw.id + " empty ? ");
+				if (store.size(gw) == 0) {
+					System.err.println(id + " empty ? ");
 					continue;
 				}
 				long prev = 0;
-				for (int i = 0; i < gw.size(); i++) {
-					long loc = gw.getLocation(i);
+				for (int i = 0; i < store.size(gw); i++) {
+					long loc = store.getLocation(gw, i);
 					if (loc != prev) {
 						Node c = convertBaseToNode(loc);
 						prev = loc;
@@ -918,10 +823,10 @@ public class IndexRouteCreator extends AbstractIndexPartCreator {
 					}
 				}
 				outTypes.clear();
-				outTypes.add(gw.mainType);
-				outTypes.addAll(gw.addtypes);
+				outTypes.add(store.getMainType(gw));
+				store.getAddTypes(gw, outTypes);
 				try {
-					addWayToIndex(gw.id, nodes, basemapRouteInsertStat, baserouteTree, outTypes, pointTypes,
+					addWayToIndex(id, nodes, basemapRouteInsertStat, baserouteTree, outTypes, pointTypes,
 							pointNames, names);
 				} catch (SQLException e) {
 					throw new IllegalStateException(e);
@@ -933,16 +838,10 @@ public class IndexRouteCreator extends AbstractIndexPartCreator {
 
 
 
-	private static double scalarMultiplication(double xA, double yA, double xB, double yB, double xC, double yC) {
-		// Scalar multiplication between (AB, AC)
-		double multiple = (xB - xA) * (xC - xA) + (yB- yA) * (yC -yA);
-		return multiple;
-	}
-
 	public static LatLon getProjection(float y31, float x31, float fromy31, float fromx31, float toy31, float tox31) {
 		// not very accurate computation on sphere but for distances < 1000m it is ok
 		float mDist = (fromy31 - toy31) * (fromy31 - toy31) + (fromx31 - tox31) * (fromx31 - tox31);
-		float projection = (float) scalarMultiplication(fromy31, fromx31, toy31, tox31, y31, x31);
+		float projection = (float) RouteGeneralization.scalarMultiplication(fromy31, fromx31, toy31, tox31, y31, x31);
 		float prlat;
 		float prlon;
 		if (projection < 0) {
@@ -958,279 +857,6 @@ public class IndexRouteCreator extends AbstractIndexPartCreator {
 		return new LatLon(prlat, prlon);
 	}
 
-	private void simplifyDouglasPeucker(GeneralizedWay gw, float epsilon, Collection<Integer> ints, int start, int end){
-		double dmax = -1;
-		int index = -1;
-		for (int i = start + 1; i <= end - 1; i++) {
-			double d = orthogonalDistance(gw, start, end, gw.px.get(i),  gw.py.get(i), false);
-			if (d > dmax) {
-				dmax = d;
-				index = i;
-			}
-		}
-		if(dmax >= epsilon){
-			simplifyDouglasPeucker(gw, epsilon, ints, start, index);
-			simplifyDouglasPeucker(gw, epsilon, ints, index, end);
-		} else {
-			ints.add(end);
-		}
-	}
-
-	private double orthogonalDistance(GeneralizedWay gn, int st, int end, int px, int py, boolean returnNanIfNoProjection){
-		int fromy31 = gn.py.get(st);
-		int fromx31 = gn.px.get(st);
-		int toy31 = gn.py.get(end);
-		int tox31 = gn.px.get(end);
-		float mDist = ((float)fromy31 - toy31) * ((float)fromy31 - toy31) +
-				((float)fromx31 - tox31) * ((float)fromx31 - tox31);
-		float projection = (float) scalarMultiplication(fromy31, fromx31, toy31, tox31, py, px);
-		if (returnNanIfNoProjection && (projection < 0 || projection > mDist)) {
-			return Double.NaN;
-		}
-//		float projy31 = fromy31 + (toy31 - fromy31) * (projection / mDist);
-//		float projx31 = fromx31 + (tox31 - fromx31) * (projection / mDist);
-		double A = MapUtils.convert31XToMeters(px, fromx31, py);
-		double B = MapUtils.convert31YToMeters(py, fromy31, px);
-		double C = MapUtils.convert31XToMeters(tox31, fromx31, toy31);
-		double D = MapUtils.convert31YToMeters(toy31, fromy31, tox31);
-		return Math.abs(A * D - C * B) / Math.sqrt(C * C + D * D);
-
-	}
-
-	private void douglasPeukerSimplificationStep(Collection<GeneralizedCluster> clusters){
-		for(GeneralizedCluster cluster : clusters) {
-			ArrayList<GeneralizedWay> copy = new ArrayList<GeneralizedWay>(cluster.ways);
-			for(GeneralizedWay gw : copy) {
-				Set<Integer> res = new HashSet<Integer>();
-				simplifyDouglasPeucker(gw, DOUGLAS_PEUKER_DISTANCE, res, 0, gw.size() - 1);
-
-				int ind = 1;
-				int len = gw.size() - 1;
-				for(int j = 1; j < len; j++) {
-					if(!res.contains(j) && countAdjacentRoads(cluster, gw, ind) == 0) {
-						GeneralizedCluster gcluster = getCluster(gw, ind, cluster);
-						gcluster.removeWayFromLocation(gw, ind);
-						gw.px.removeAt(ind);
-						gw.py.removeAt(ind);
-					} else {
-						ind++;
-					}
-				}
-			}
-		}
-	}
-
-	public int checkDistanceToLine(GeneralizedWay line, int start, boolean directionPlus, int px, int py, double distThreshold) {
-		int j = start;
-		int next = directionPlus ? j + 1 : j - 1;
-		while (next >= 0 && next < line.size()) {
-			double od = orthogonalDistance(line, j, next, px, py, false);
-			if (od < distThreshold) {
-				return j;
-			}
-			j = next;
-			next = directionPlus ? j + 1 : j - 1;
-		}
-		return -1;
-	}
-
-	private void processRoundabouts(Collection<GeneralizedCluster> clusters) {
-		for(GeneralizedCluster cluster : clusters) {
-			ArrayList<GeneralizedWay> copy = new ArrayList<GeneralizedWay>(cluster.ways);
-			for (GeneralizedWay gw : copy) {
-				// roundabout
-				GeneralizedCluster gcluster = cluster;
-				if (gw.getLocation(gw.size() - 1) == gw.getLocation(0) && cluster.ways.contains(gw)) {
-					removeWayAndSubstituteWithPoint(gw, gcluster);
-				}
-			}
-		}
-	}
-
-	private void removeGeneratedWay(GeneralizedWay gw, GeneralizedCluster gcluster) {
-		for (int i = 0; i < gw.size(); i++) {
-			gcluster = getCluster(gw, i, gcluster);
-			gcluster.removeWayFromLocation(gw, i, true);
-		}
-	}
-
-
-	@SuppressWarnings("rawtypes")
-	private void removeWayAndSubstituteWithPoint(GeneralizedWay gw, GeneralizedCluster gcluster) {
-		// calculate center location
-		long pxc = 0;
-		long pyc = 0;
-		for (int i = 0; i < gw.size(); i++) {
-			pxc += gw.px.get(i);
-			pyc += gw.py.get(i);
-		}
-		pxc /= gw.size();
-		pyc /= gw.size();
-
-		// attach additional point to other roads
-		for (int i = 0; i < gw.size(); i++) {
-			gcluster = getCluster(gw, i, gcluster);
-			Object o = gcluster.map.get(gw.getLocation(i));
-			// something attachedpxc
-			if (o instanceof LinkedList) {
-				Iterator it = ((LinkedList)o).iterator();
-				while(it.hasNext()) {
-					GeneralizedWay next = (GeneralizedWay) it.next();
-					replacePointWithAnotherPoint(gcluster, gw, (int) pxc, (int) pyc, i, next);
-				}
-			} else if (o instanceof GeneralizedWay) {
-				replacePointWithAnotherPoint(gcluster, gw, (int) pxc, (int) pyc, i, (GeneralizedWay) o);
-			}
-		}
-		// remove roundabout
-		removeGeneratedWay(gw, gcluster);
-	}
-
-	private void replacePointWithAnotherPoint(GeneralizedCluster gcluster, GeneralizedWay gw, int pxc, int pyc, int i, GeneralizedWay next) {
-		if (next.id != gw.id) {
-			for (int j = 0; j < next.size(); j++) {
-				if (next.getLocation(j) == gw.getLocation(i)) {
-					if (j == next.size() - 1) {
-						next.px.add(pxc);
-						next.py.add(pyc);
-						gcluster = getCluster(next, next.size() - 1, gcluster);
-						gcluster.addWayFromLocation(next, next.size() - 1);
-					} else {
-						next.px.insert(j, pxc);
-						next.py.insert(j, pyc);
-						gcluster = getCluster(next, j, gcluster);
-						gcluster.addWayFromLocation(next, j);
-					}
-					break;
-				}
-			}
-		}
-	}
-
-	private boolean compareRefs(GeneralizedWay gw, GeneralizedWay gn){
-		String ref1 = gw.names.get(routeTypes.getRefRuleType());
-		String ref2 = gn.names.get(routeTypes.getRefRuleType());
-		String name1 = gw.names.get(routeTypes.getNameRuleType());
-		String name2 = gn.names.get(routeTypes.getNameRuleType());
-		return equalsIfNotEmpty(ref1, ref2) && equalsIfNotEmpty(name1, name2);
-	}
-
-	private boolean equalsIfNotEmpty(String s1, String s2) {
-		if(Algorithms.isEmpty(s1) || Algorithms.isEmpty(s2)) {
-			return true;
-		}
-		return s1.equalsIgnoreCase(s2);
-	}
-
-	private void mergeName(MapRouteType rt, GeneralizedWay from, GeneralizedWay to){
-		String rfFrom = from.names.get(rt);
-		String rfTo = to.names.get(rt);
-		if (rfFrom != null) {
-			if (!rfFrom.equalsIgnoreCase(rfTo) && !Algorithms.isEmpty(rfTo)) {
-				to.names.put(rt, CONFLICT_NAME);
-			} else {
-				to.names.put(rt, from.names.get(rt));
-			}
-		}
-	}
-
-	private void mergeAddTypes(GeneralizedWay from, GeneralizedWay to){
-		TIntIterator it = to.addtypes.iterator();
-		while(it.hasNext()) {
-			int n = it.next();
-			// maxspeed could be merged better
-			if(!from.addtypes.contains(n)) {
-				it.remove();
-			}
-		}
-	}
-
-	@SuppressWarnings("unchecked")
-	private GeneralizedWay selectBestWay(GeneralizedCluster cluster, GeneralizedWay gw, int ind) {
-		long loc = gw.getLocation(ind);
-		Object o = cluster.map.get(loc);
-		GeneralizedWay res = null;
-		if (o instanceof GeneralizedWay) {
-			if (o != gw) {
-				GeneralizedWay m = (GeneralizedWay) o;
-				if (m.id != gw.id && m.mainType == gw.mainType && compareRefs(gw, m)) {
-					return m;
-				}
-
-			}
-		} else if (o instanceof LinkedList) {
-			LinkedList<GeneralizedWay> l = (LinkedList<GeneralizedWay>) o;
-			double bestDiff = Math.PI / 2;
-			for (GeneralizedWay m : l) {
-				if (m.id != gw.id && m.mainType == gw.mainType && compareRefs(gw, m)) {
-					double init = gw.directionRoute(ind, ind == 0);
-					double dir;
-					if (m.getLocation(0) == loc) {
-						dir = m.directionRoute(0, true);
-					} else if (m.getLocation(m.size() - 1) == loc) {
-						dir = m.directionRoute(m.size() - 1, false);
-					} else {
-						return null;
-					}
-					double angleDiff = Math.abs(MapUtils.alignAngleDifference(Math.PI + dir - init));
-					if (angleDiff < bestDiff) {
-						bestDiff = angleDiff;
-						res = m;
-					}
-				}
-			}
-		}
-		return res;
-	}
-
-
-	private void attachWays(GeneralizedWay gw, boolean first) {
-		GeneralizedCluster cluster = null;
-		while(true) {
-			int ind = first? 0 : gw.size() - 1;
-			cluster = getCluster(gw, ind, cluster);
-			GeneralizedWay prev = selectBestWay(cluster, gw, ind);
-			if(prev == null) {
-				break;
-			}
-			for (int i = 0; i < prev.size(); i++) {
-				cluster = getCluster(prev, i, cluster);
-				cluster.replaceWayFromLocation(prev, i, gw);
-			}
-			mergeAddTypes(prev, gw);
-			for(MapRouteType rt : new ArrayList<MapRouteType>(gw.names.keySet())) {
-				mergeName(rt, prev, gw);
-			}
-			for(MapRouteType rt : new ArrayList<MapRouteType>(prev.names.keySet())) {
-				if(!gw.names.containsKey(rt)){
-					mergeName(rt, prev, gw);
-				}
-			}
-
-			TIntArrayList ax = first? prev.px : gw.px;
-			TIntArrayList ay = first? prev.py : gw.py;
-			TIntArrayList bx = !first? prev.px : gw.px;
-			TIntArrayList by = !first? prev.py : gw.py;
-			if(first) {
-				if(gw.getLocation(0) == prev.getLocation(0)) {
-					ax.reverse();
-					ay.reverse();
-				}
-			} else {
-				if(gw.getLocation(ind) == prev.getLocation(prev.size() - 1)) {
-					bx.reverse();
-					by.reverse();
-				}
-			}
-			bx.removeAt(0);
-			by.removeAt(0);
-			ax.addAll(bx);
-			ay.addAll(by);
-			gw.px = ax;
-			gw.py = ay;
-		}
-	}
-
 	public void registerRestrictionNodes(Entity entity) {
 		if (entity instanceof Way) {
 			for (String propagate : propagateToNodes) {
@@ -1618,164 +1244,6 @@ public class IndexRouteCreator extends AbstractIndexPartCreator {
 			}
 		}
 		writer.endRouteTreeElement();
-	}
-
-
-	/*private*/ static class GeneralizedCluster {
-		public final int x;
-		public final int y;
-		public final int zoom;
-
-		public GeneralizedCluster(int x, int y, int z){
-			this.x = x;
-			this.y = y;
-			this.zoom = z;
-		}
-
-		public final Set<GeneralizedWay> ways = new HashSet<IndexRouteCreator.GeneralizedWay>();
-		// either LinkedList<GeneralizedWay> or GeneralizedWay
-		public final TLongObjectHashMap<Object> map = new TLongObjectHashMap<Object>();
-
-		@SuppressWarnings({ "rawtypes", "unchecked" })
-		public void replaceWayFromLocation(GeneralizedWay delete, int ind, GeneralizedWay toReplace){
-			ways.remove(delete);
-			long loc = delete.getLocation(ind);
-			Object o = map.get(loc);
-			if(o instanceof GeneralizedWay){
-				if(delete == o) {
-					map.put(loc, toReplace);
-				} else if(toReplace !=  o){
-					addWay(toReplace, loc);
-				}
-			} else if(o instanceof LinkedList){
-				((LinkedList) o).remove(delete);
-				if(!((LinkedList) o).contains(toReplace)){
-					((LinkedList) o).add(toReplace);
-				}
-			} else {
-				map.put(loc, toReplace);
-			}
-		}
-
-		public void removeWayFromLocation(GeneralizedWay delete, int ind){
-			removeWayFromLocation(delete, ind, false);
-		}
-		@SuppressWarnings("rawtypes")
-		public void removeWayFromLocation(GeneralizedWay delete, int ind, boolean deleteAll) {
-			long loc = delete.getLocation(ind);
-			boolean ex = false;
-			if (!deleteAll) {
-				for (int t = 0; t < delete.size(); t++) {
-					if (t != ind && map.containsKey(delete.getLocation(t))) {
-						ex = true;
-						break;
-					}
-				}
-			}
-			if (!ex || deleteAll) {
-				ways.remove(delete);
-			}
-
-			Object o = map.get(loc);
-			if (o instanceof GeneralizedWay) {
-				if (delete == o) {
-					map.remove(loc);
-				}
-			} else if (o instanceof LinkedList) {
-				((LinkedList) o).remove(delete);
-				if (((LinkedList) o).size() == 1) {
-					map.put(loc, ((LinkedList) o).iterator().next());
-				} else if (((LinkedList) o).size() == 0) {
-					map.remove(loc);
-				}
-			}
-		}
-
-		public void addWayFromLocation(GeneralizedWay w, int i) {
-			ways.add(w);
-			long loc = w.getLocation(i);
-			addWay(w, loc);
-		}
-
-		@SuppressWarnings("unchecked")
-		private void addWay(GeneralizedWay w, long loc) {
-
-			if (map.containsKey(loc)) {
-				Object o = map.get(loc);
-				if (o instanceof LinkedList) {
-					if(!((LinkedList<GeneralizedWay>) o).contains(w)){
-						((LinkedList<GeneralizedWay>) o).add(w);
-					}
-				} else if(o != w){
-					LinkedList<GeneralizedWay> list = new LinkedList<GeneralizedWay>();
-					list.add((GeneralizedWay) o);
-					list.add(w);
-					map.put(loc, list);
-				}
-			} else {
-				map.put(loc, w);
-			}
-		}
-	}
-	/*private*/ static class GeneralizedWay {
-		private long id;
-		private int mainType;
-		private TIntHashSet addtypes = new TIntHashSet();
-		private TIntArrayList px = new TIntArrayList();
-		private TIntArrayList py = new TIntArrayList();
-
-		// TLongObjectHashMap<TIntArrayList> pointTypes = new TLongObjectHashMap<TIntArrayList>();
-		private Map<MapRoutingTypes.MapRouteType, String> names = new HashMap<MapRoutingTypes.MapRouteType, String>();
-		public GeneralizedWay(long id) {
-			this.id = id;
-		}
-
-		public double getDistance() {
-			double dx = 0;
-			for (int i = 1; i < px.size(); i++) {
-				dx += MapUtils.getDistance(MapUtils.get31LatitudeY(py.get(i - 1)), MapUtils.get31LongitudeX(px.get(i - 1)),
-						MapUtils.get31LatitudeY(py.get(i)), MapUtils.get31LongitudeX(px.get(i)));
-			}
-			return dx;
-		}
-
-		public long getLocation(int ind) {
-			return getBaseId(px.get(ind), py.get(ind));
-		}
-
-		public int size(){
-			return px.size();
-		}
-
-		// Gives route direction of EAST degrees from NORTH ]-PI, PI]
-		public double directionRoute(int startPoint, boolean plus) {
-			float dist = 5;
-			int x = this.px.get(startPoint);
-			int y = this.py.get(startPoint);
-			int nx = startPoint;
-			int px = x;
-			int py = y;
-			double total = 0;
-			do {
-				if (plus) {
-					nx++;
-					if (nx >= size()) {
-						break;
-					}
-				} else {
-					nx--;
-					if (nx < 0) {
-						break;
-					}
-				}
-				px = this.px.get(nx);
-				py = this.py.get(nx);
-				// translate into meters
-				total += Math.abs(px - x) * 0.011d + Math.abs(py - y) * 0.01863d;
-			} while (total < dist);
-			return -Math.atan2( x - px, y - py );
-		}
-	}
 
 
 }
@@ -38,6 +38,9 @@ import net.osmand.data.TransportRoute;
 import net.osmand.data.TransportSchedule;
 import net.osmand.data.TransportStop;
 import net.osmand.data.TransportStopExit;
+import net.osmand.obf.preparation.GtfsScheduleIndex.GtfsInfoStats;
+import net.osmand.obf.preparation.GtfsScheduleIndex.ScheduleBuilder;
+import net.osmand.obf.preparation.GtfsScheduleIndex.TripTimesParser;
 import net.osmand.osm.MapRenderingTypesEncoder;
 import net.osmand.osm.edit.Entity;
 import net.osmand.osm.edit.Entity.EntityId;
@@ -63,7 +66,6 @@ public class IndexTransportCreator extends AbstractIndexPartCreator {
 
 	private static final Log log = LogFactory.getLog(IndexTransportCreator.class);
 
-	private static final int DISTANCE_THRESHOLD = 50;
 	public static final int MISSING_STOP_DISTANCE_THRESHOLD = 30;
 	public static final String MISSING_STOP_NAME = TransportStop.MISSING_STOP_NAME;
 
@@ -90,6 +92,7 @@ public class IndexTransportCreator extends AbstractIndexPartCreator {
 
 	private PreparedStatement gtfsSelectRoute;
 	private PreparedStatement gtfsSelectStopTimes;
+	private GtfsScheduleIndex gtfsScheduleIndex;
 	
 	private GtfsInfoStats gtfsStats = new GtfsInfoStats();
 
@@ -914,8 +917,15 @@ public class IndexTransportCreator extends AbstractIndexPartCreator {
 		return relationHasIncompleteWays;
 	}
 
-	private TransportSchedule readSchedule(String ref, List<TransportStop> directStops) throws SQLException {
+	TransportSchedule readSchedule(String ref, List<TransportStop> directStops) throws SQLException {
 		if(!Algorithms.isEmpty(ref) && gtfsConnection != null && directStops.size() > 0) {
+			if (settings.gtfsScheduleInMemory) {
+				if (gtfsScheduleIndex == null) {
+					gtfsScheduleIndex = GtfsScheduleIndex.load(gtfsConnection);
+				}
+				return gtfsScheduleIndex.getSchedule(ref, directStops.get(0).getLocation(), directStops.size(),
+						gtfsStats);
+			}
 			if(gtfsSelectRoute == null) {
 				// new String[] { "firstStopLat", "firstStopLon", "minLat", "maxLat", "minLon", "maxLon" }
 				gtfsSelectRoute = gtfsConnection.prepareStatement(
@@ -930,16 +940,8 @@ public class IndexTransportCreator extends AbstractIndexPartCreator {
 			}
 			gtfsSelectRoute.setString(1, ref);
 			ResultSet rs = gtfsSelectRoute.executeQuery();
-			String routeId = null, routeShortName = null, routeLongName = null;
-			TransportSchedule schedule = new TransportSchedule();
-			TIntArrayList timeDeparturesFirst = new TIntArrayList(); 
+			ScheduleBuilder builder = new ScheduleBuilder(directStops.size(), gtfsStats);
 			while (rs.next()) {
-				String nrouteId = rs.getString(1);
-				if (!Algorithms.objectEquals(routeId, nrouteId)) {
-					routeId = nrouteId;
-					routeShortName = rs.getString(2);
-					routeLongName = rs.getString(3);
-				}
 				String tripId = rs.getString(4);
 				// String shapeId = rs.getString(5);
 				// String serviceId = rs.getString(6);
@@ -947,100 +949,30 @@ public class IndexTransportCreator extends AbstractIndexPartCreator {
 				double firstLon = rs.getDouble(8);
 				double dist = MapUtils.getDistance(directStops.get(0).getLocation(), firstLat,
 						firstLon);
-				if (dist < DISTANCE_THRESHOLD) {
+				if (dist < GtfsScheduleIndex.TRIP_START_DISTANCE_THRESHOLD) {
 					gtfsSelectStopTimes.setString(1, tripId);
 					ResultSet nrs = gtfsSelectStopTimes.executeQuery();
 					TIntArrayList stopIntervals = new TIntArrayList(directStops.size());
 					TIntArrayList waitIntervals = new TIntArrayList(directStops.size());
-					int ftime = 0, ptime = 0;
-					
+					TripTimesParser parser = new TripTimesParser(stopIntervals, waitIntervals);
+					parser.startTrip();
 					while (nrs.next()) {
-						int arrivalTime = parseTime(nrs.getString(1));
-						int depTime = parseTime(nrs.getString(2));
-						if(arrivalTime == -1 || depTime == -1) {
-							gtfsStats.errorsTimeParsing++;
-							continue;
-						}
-						if(ftime == 0) {
-							ftime = ptime = depTime;
-						} else {
-							stopIntervals.add(arrivalTime - ptime);
-						}
-						waitIntervals.add(depTime - arrivalTime);
-						ptime = arrivalTime;
-					}
-					if(waitIntervals.size() != directStops.size()) {
-						gtfsStats.errorsTripsStopCounts++;
-						// failed = true;
-					} else {
-						gtfsStats.successTripsParsing++;
-						if(schedule.avgWaitIntervals.isEmpty()) {
-							schedule.avgWaitIntervals.addAll(waitIntervals);
-						} else {
-							// check wait intervals different
-							for (int j = 0; j < waitIntervals.size(); j++) {
-								if(Math.abs(schedule.avgWaitIntervals.getQuick(j) - waitIntervals.getQuick(j)) > 3) {
-									gtfsStats.avgWaitDiff30Sec++;
-									break;
-								}
-							}
-						}
-						if(schedule.avgStopIntervals.isEmpty()) {
-							schedule.avgStopIntervals.addAll(stopIntervals);
-						} else {
-							for (int j = 0; j < stopIntervals.size(); j++) {
-								if(Math.abs(schedule.avgStopIntervals.getQuick(j) - stopIntervals.getQuick(j)) > 3) {
-									gtfsStats.avgStopDiff30Sec++;
-									break;
-								}
-							}
-						}
-						timeDeparturesFirst.add(ftime);
+						parser.addStopTime(nrs.getString(1), nrs.getString(2));
 					}
+					gtfsStats.errorsTimeParsing += parser.errorsTimeParsing;
+					builder.addTrip(parser.ftime, waitIntervals, 0, waitIntervals.size(), stopIntervals, 0,
+							stopIntervals.size());
 					nrs.close();
 				}
 			}
-			if(timeDeparturesFirst.size() > 0) {
-				timeDeparturesFirst.sort();
-				int p = 0;
-				for(int i = 0; i < timeDeparturesFirst.size(); i++) {
-					int x = timeDeparturesFirst.get(i) - p;
-					// this is a wrong check cause there should be a check for calendar
-					if(x > 0) {
-						schedule.tripIntervals.add(x);
-						p = timeDeparturesFirst.get(i);
-					}
-				}
-				boolean allZeros = true;
-				for (int i = 0; i < schedule.avgWaitIntervals.size(); i++) {
-					if(schedule.avgWaitIntervals.getQuick(i) != 0) {
-						allZeros = false;
-						break;
-					}
-				}
-				if (allZeros) {
-					schedule.avgWaitIntervals.clear();
-				}
-				return schedule;
-			}
+			rs.close();
+			return builder.build();
 		}
 		return null;
 	}
 
-	private int parseTime(String str) {
-		int f1 = str.indexOf(':');
-		int f2 = str.indexOf(':', f1 + 1);
-		if (f1 != -1 && f2 != -1) {
-			try {
-				int h = Integer.parseInt(str.substring(0, f1));
-				int m = Integer.parseInt(str.substring(f1 + 1, f2));
-				int s = Integer.parseInt(str.substring(f2 + 1));
-				return h * 60 * 6 + m * 6 + s / 10;
-			} catch (NumberFormatException e) {
-				return -1;
-			}
-		}
-		return -1;
+	GtfsInfoStats getGtfsStats() {
+		return gtfsStats;
 	}
 
 
@@ -1260,19 +1192,4 @@ public class IndexTransportCreator extends AbstractIndexPartCreator {
 		});
 		return true;
 	}
-
-	
-	private static class GtfsInfoStats {
-		public int avgWaitDiff30Sec;
-		public int avgStopDiff30Sec;
-		int errorsTimeParsing = 0;
-		int successTripsParsing = 0;
-		int errorsTripsStopCounts = 0;
-		@Override
-		public String toString() {
-			return "GtfsInfoStats [avgWaitDiff30Sec=" + avgWaitDiff30Sec + ", avgStopDiff30Sec=" + avgStopDiff30Sec
-					+ ", errorsTimeParsing=" + errorsTimeParsing + ", successTripsParsing=" + successTripsParsing
-					+ ", errorsTripsStopCounts=" + errorsTripsStopCounts + "]";
-		}
-	}	
 }
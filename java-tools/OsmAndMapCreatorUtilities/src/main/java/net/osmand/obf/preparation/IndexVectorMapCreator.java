@@ -32,6 +32,11 @@ import net.osmand.binary.MapZooms;
 import net.osmand.binary.MapZooms.MapZoomPair;
 import net.osmand.binary.OsmandOdb.MapData;
 import net.osmand.binary.OsmandOdb.MapDataBlock;
+import net.osmand.obf.preparation.LowLevelWayIndex.LowLevelWay;
+import net.osmand.obf.preparation.MultipolygonAssembler.AssembledMultipolygon;
+import net.osmand.obf.preparation.MultipolygonAssembler.MultipolygonConsumer;
+import net.osmand.obf.preparation.MultipolygonAssembler.MultipolygonTask;
+import net.osmand.obf.preparation.MultipolygonAssembler.PolygonGeometry;
 import net.osmand.osm.MapRenderingTypes.MapRulType;
 import net.osmand.osm.MapRenderingTypesEncoder;
 import net.osmand.osm.MapRenderingTypesEncoder.EntityConvertApplyType;
@@ -96,6 +101,7 @@ public class IndexVectorMapCreator extends AbstractIndexPartCreator {
     private PreparedStatement mapBinaryStat;
     private PreparedStatement mapLowLevelBinaryStat;
     private int lowLevelWays = -1;
+    private long lowLevelWaysNodesBytes = 0;
     private RTree[] mapTree = null;
     private Connection mapConnection;
 
@@ -106,6 +112,20 @@ public class IndexVectorMapCreator extends AbstractIndexPartCreator {
     private static boolean VALIDATE_DUPLICATE = false;
     private TLongObjectHashMap<Long> duplicateIds = new TLongObjectHashMap<Long>();
     private BasemapProcessor checkSeaTile;
+    private final MultipolygonAssembler<EncodedMapObject> multipolygonAssembler;
+
+    // types and names of multipolygon object on map level
+    private static class EncodedMapObject {
+        final TIntArrayList types;
+        final TIntArrayList addTypes;
+        final Map<MapRulType, String> names;
+
+        EncodedMapObject(TIntArrayList types, TIntArrayList addTypes, TreeMap<MapRulType, String> names) {
+            this.types = new TIntArrayList(types);
+            this.addTypes = new TIntArrayList(addTypes);
+            this.names = new TreeMap<MapRulType, String>(names);
+        }
+    }
 
     public IndexVectorMapCreator(Log logMapDataWarn, MapZooms mapZooms, MapRenderingTypesEncoder renderingTypes,
             IndexCreatorSettings settings) {
@@ -114,6 +134,18 @@ public class IndexVectorMapCreator extends AbstractIndexPartCreator {
         this.settings = settings;
         this.renderingTypes = renderingTypes;
         lowLevelWays = -1;
+        int[] levelMaxZooms = new int[mapZooms.size()];
+        for (int level = 0; level < levelMaxZooms.length; level++) {
+            levelMaxZooms[level] = mapZooms.getLevel(level).getMaxZoom();
+        }
+        multipolygonAssembler = new MultipolygonAssembler<EncodedMapObject>(settings.threadsCount, levelMaxZooms,
+                settings.zoomWaySmoothness, logMapDataWarn, new MultipolygonConsumer<EncodedMapObject>() {
+
+                    @Override
+                    public void consume(MultipolygonTask<EncodedMapObject> task) throws SQLException {
+                        insertMultipolygon(task);
+                    }
+                });
     }
 
     private long assignIdForMultipolygon(Relation orig) {
@@ -275,83 +307,63 @@ public class IndexVectorMapCreator extends AbstractIndexPartCreator {
         }
 //		excludeFromMainIteration(original.getInnerWays()); // fix issue with different type of swamp inside each other (inner ring has same tag as multipolygon but has a different meaning)
 
-        // Rings with different types (inner or outer) in one ring will be logged in the
-        // previous case
-        // The Rings are only composed by type, so if one way gets in a different Ring,
-        // the rings will be incomplete
-        List<Multipolygon> multipolygons = original.splitPerOuterRing(logMapDataWarn);
-
-        for (Multipolygon m : multipolygons) {
-            assert m.getOuterRings().size() == 1;
-            // Log the fact that Rings aren't complete, but continue with the relation, try
-            // to close it as well as possible
-            if (!m.areRingsComplete()) {
-                logMapDataWarn.warn("In multipolygon  " + e.getId() + " there are incompleted ways");
-            }
-            Ring out = m.getOuterRings().get(0);
-            if (out.getBorder().size() == 0) {
-                logMapDataWarn.warn("Multipolygon has an outer ring that can't be formed: " + e.getId());
-                // don't index this
-                continue;
-            }
-
-            // innerWays are new closed ways
-            List<List<Node>> innerWays = new ArrayList<List<Node>>();
-
-            for (Ring r : m.getInnerRings()) {
-                innerWays.add(r.getBorder());
-            }
-
-            // don't use the relation ids. Create new onesgetInnerRings
-            Map<String, String> stags = splitEntities == null ? tags : splitEntities.get(0);
-            long assignId = assignIdForMultipolygon((Relation) e);
-            createMultipolygonObject(stags, out, innerWays, assignId);
-            if (splitEntities != null) {
-                for (int i = 1; i < splitEntities.size(); i++) {
-                    Map<String, String> splitTags = splitEntities.get(i);
-                    while (generatedIds.contains(assignId)) {
-                        assignId += 2;
-                    }
-                    generatedIds.add(assignId);
-                    createMultipolygonObject(splitTags, out, innerWays, assignId);
-                }
+        // rings are built and simplified by assembler, objects are inserted by insertMultipolygon in relations order
+        List<List<EncodedMapObject>> objects = new ArrayList<List<EncodedMapObject>>();
+        if (splitEntities == null) {
+            objects.add(encodeMultipolygonObject(tags));
+        } else {
+            for (Map<String, String> splitTags : splitEntities) {
+                objects.add(encodeMultipolygonObject(splitTags));
             }
         }
+        multipolygonAssembler.submit(new MultipolygonTask<EncodedMapObject>(e, original, objects));
     }
 
-    protected void createMultipolygonObject(Map<String, String> tags, Ring out, List<List<Node>> innerWays, long baseId)
-            throws SQLException {
-        nextZoom: for (int level = 0; level < mapZooms.size(); level++) {
+    private List<EncodedMapObject> encodeMultipolygonObject(Map<String, String> tags) {
+        List<EncodedMapObject> levels = new ArrayList<EncodedMapObject>();
+        for (int level = 0; level < mapZooms.size(); level++) {
             renderingTypes.encodeEntityWithType(false, tags, mapZooms.getLevel(level).getMaxZoom(), typeUse, addtypeUse,
                     namesUse,
                     tempNameUse);
-            if (typeUse.isEmpty()) {
-                continue;
-            }
-            long id = convertBaseIdToGeneratedId(baseId, level);
-            // simplify route
-            List<Node> outerWay = out.getBorder();
-            int zoomToSimplify = mapZooms.getLevel(level).getMaxZoom() - 1;
-            if (zoomToSimplify < 15) {
-                outerWay = simplifyCycleWay(outerWay, zoomToSimplify, settings.zoomWaySmoothness);
-                if (outerWay == null) {
-                    continue nextZoom;
+            levels.add(typeUse.isEmpty() ? null : new EncodedMapObject(typeUse, addtypeUse, namesUse));
+        }
+        return levels;
+    }
+
+    private void insertMultipolygon(MultipolygonTask<EncodedMapObject> task) throws SQLException {
+        for (AssembledMultipolygon m : task.multipolygons) {
+            // don't use the relation ids. Create new ones
+            long assignId = assignIdForMultipolygon(task.relation);
+            for (int i = 0; i < m.objects.size(); i++) {
+                if (i > 0) {
+                    while (generatedIds.contains(assignId)) {
+                        assignId += 2;
+                    }
+                    generatedIds.add(assignId);
                 }
-                List<List<Node>> newinnerWays = new ArrayList<List<Node>>();
-                for (List<Node> ls : innerWays) {
-                    ls = simplifyCycleWay(ls, zoomToSimplify, settings.zoomWaySmoothness);
-                    if (ls != null) {
-                        newinnerWays.add(ls);
+                List<EncodedMapObject> levels = task.objects.get(i);
+                List<PolygonGeometry> geometries = m.objects.get(i);
+                for (int level = 0; level < levels.size(); level++) {
+                    EncodedMapObject obj = levels.get(level);
+                    PolygonGeometry g = geometries.get(level);
+                    if (obj == null || g == null) {
+                        continue;
                     }
+                    long id = convertBaseIdToGeneratedId(assignId, level);
+                    insertBinaryMapRenderObjectIndex(mapTree[level], g.outer, g.inner, obj.names, id, true, obj.types,
+                            obj.addTypes, true, true, g.label);
                 }
-                innerWays = newinnerWays;
             }
-            insertBinaryMapRenderObjectIndex(mapTree[level], outerWay, innerWays, namesUse, id, true, typeUse,
-                    addtypeUse, true, true);
-
         }
     }
 
+    /**
+     * Waits until all multipolygons submitted for assembly are inserted
+     */
+    public void flushMultipolygons() throws SQLException {
+        multipolygonAssembler.flush();
+    }
+
     public static MultipolygonBuilder createMultipolygonBuilder(Entity e) {
 
         // create a multipolygon object for this
@@ -398,18 +410,6 @@ public class IndexVectorMapCreator extends AbstractIndexPartCreator {
         return lowLevelWays;
     }
 
-    private void loadNodes(byte[] nodes, List<Float> toPut) {
-        toPut.clear();
-        for (int i = 0; i < nodes.length;) {
-            int lat = Algorithms.parseIntFromBytes(nodes, i);
-            i += 4;
-            int lon = Algorithms.parseIntFromBytes(nodes, i);
-            i += 4;
-            toPut.add(Float.intBitsToFloat(lat));
-            toPut.add(Float.intBitsToFloat(lon));
-        }
-    }
-
     private void parseAndSort(TIntArrayList ts, byte[] bs) {
         ts.clear();
         if (bs != null && bs.length > 0) {
@@ -421,7 +421,7 @@ public class IndexVectorMapCreator extends AbstractIndexPartCreator {
     }
 
     private static class LowLevelWayCandidate {
-        public byte[] nodes;
+        public int[] nodes;
         public long wayId;
         public long otherNodeId;
         public Map<MapRulType, String> names;
@@ -429,32 +429,41 @@ public class IndexVectorMapCreator extends AbstractIndexPartCreator {
 
     }
 
-    public List<LowLevelWayCandidate> readLowLevelCandidates(ResultSet fs,
-            List<LowLevelWayCandidate> l, TIntArrayList temp, TIntArrayList tempAdd, TLongHashSet visitedWays)
-            throws SQLException {
+    private List<LowLevelWayCandidate> readLowLevelCandidates(List<LowLevelWay> ways, boolean byStartNode,
+            List<LowLevelWayCandidate> l, TIntArrayList temp, TIntArrayList tempAdd) {
         l.clear();
-        while (fs.next()) {
-            if (!visitedWays.contains(fs.getLong(1))) {
-                parseAndSort(temp, fs.getBytes(5));
-                parseAndSort(tempAdd, fs.getBytes(6));
-                if (temp.equals(typeUse) && tempAdd.equals(addtypeUse)) {
-                    LowLevelWayCandidate llwc = new LowLevelWayCandidate();
-                    llwc.wayId = fs.getLong(1);
-                    llwc.names = decodeNames(fs.getString(4), new HashMap<MapRulType, String>());
-                    llwc.nodes = fs.getBytes(3);
-                    llwc.otherNodeId = fs.getLong(2);
-                    for (MapRulType mr : namesUse.keySet()) {
-                        if (Algorithms.objectEquals(namesUse.get(mr), llwc.names.get(mr))) {
-                            llwc.namesCount++;
-                        }
+        for (LowLevelWay way : ways) {
+            parseAndSort(temp, way.types);
+            parseAndSort(tempAdd, way.addTypes);
+            if (temp.equals(typeUse) && tempAdd.equals(addtypeUse)) {
+                LowLevelWayCandidate llwc = new LowLevelWayCandidate();
+                llwc.wayId = way.id;
+                llwc.names = decodeNames(way.name, new HashMap<MapRulType, String>());
+                llwc.nodes = way.nodes;
+                llwc.otherNodeId = byStartNode ? way.endNode : way.startNode;
+                for (MapRulType mr : namesUse.keySet()) {
+                    if (Algorithms.objectEquals(namesUse.get(mr), llwc.names.get(mr))) {
+                        llwc.namesCount++;
                     }
-                    l.add(llwc);
                 }
+                l.add(llwc);
             }
         }
         return l;
     }
 
+    private boolean isLowLevelWaysFitInMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        long free = runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+        long estimate = LowLevelWayIndex.estimateMemory(lowLevelWays, lowLevelWaysNodesBytes);
+        if (estimate > free / 2) {
+            log.warn(String.format("Low level ways (~%d MB) don't fit in memory (%d MB free), query them from db",
+                    estimate >> 20, free >> 20));
+            return false;
+        }
+        return true;
+    }
+
     public void processingLowLevelWays(IProgress progress) throws SQLException {
         mapLowLevelBinaryStat.executeBatch();
         mapLowLevelBinaryStat.close();
@@ -462,43 +471,41 @@ public class IndexVectorMapCreator extends AbstractIndexPartCreator {
         mapLowLevelBinaryStat = null;
         mapConnection.commit();
 
-        PreparedStatement startStat = mapConnection
-                .prepareStatement("SELECT id, end_node, nodes, name, type, addType FROM low_level_map_objects"
-                        + " WHERE start_node = ? AND level = ?");
-        PreparedStatement endStat = mapConnection
-                .prepareStatement("SELECT id, start_node, nodes, name, type, addType FROM low_level_map_objects"
-                        + " WHERE end_node = ? AND level = ?");
-        Statement selectStatement = mapConnection.createStatement();
-        ResultSet rs = selectStatement.executeQuery(
-                "SELECT id, start_node, end_node, nodes, name, type, addType, level FROM low_level_map_objects");
+        LowLevelWayIndex index;
+        if (settings.lowLevelWaysInMemory && isLowLevelWaysFitInMemory()) {
+            index = LowLevelWayIndex.loadInMemory(mapConnection);
+        } else {
+            index = LowLevelWayIndex.createQueryIndex(mapConnection);
+        }
         TLongHashSet visitedWays = new TLongHashSet();
-        ArrayList<Float> list = new ArrayList<Float>(100);
+        LowLevelWay way = new LowLevelWay();
+        List<LowLevelWay> ways = new ArrayList<LowLevelWay>();
         TIntArrayList temp = new TIntArrayList();
         TIntArrayList tempAdd = new TIntArrayList();
-        while (rs.next()) {
+        while (index.next(way)) {
             if (lowLevelWays != -1) {
                 progress.progress(1);
             }
-            long id = rs.getLong(1);
+            long id = way.id;
             if (visitedWays.contains(id)) {
                 continue;
             }
             visitedWays.add(id);
 
-            int level = rs.getInt(8);
+            int level = way.level;
             int zoom = mapZooms.getLevel(level).getMaxZoom();
             int minZoom = mapZooms.getLevel(level).getMinZoom();
 
-            long startNode = rs.getLong(2);
-            long endNode = rs.getLong(3);
+            long startNode = way.startNode;
+            long endNode = way.endNode;
 
             namesUse.clear();
-            decodeNames(rs.getString(5), namesUse);
-            parseAndSort(typeUse, rs.getBytes(6));
-            parseAndSort(addtypeUse, rs.getBytes(7));
+            decodeNames(way.name, namesUse);
+            parseAndSort(typeUse, way.types);
+            parseAndSort(addtypeUse, way.addTypes);
 
-            loadNodes(rs.getBytes(4), list);
-            ArrayList<Float> wayNodes = new ArrayList<Float>(list);
+            // float bits of lat, lon
+            TIntArrayList wayNodes = new TIntArrayList(way.nodes);
 
             // combine startPoint with EndPoint
             List<LowLevelWayCandidate> candidates = new ArrayList<LowLevelWayCandidate>();
@@ -522,22 +529,19 @@ public class IndexVectorMapCreator extends AbstractIndexPartCreator {
 
             while (combined && wayNodes.size() < LOW_LEVEL_COMBINE_WAY_POINS_LIMIT) {
                 combined = false;
-                endStat.setLong(1, startNode);
-                endStat.setShort(2, (short) level);
-                ResultSet fs = endStat.executeQuery();
-                readLowLevelCandidates(fs, candidates, temp, tempAdd, visitedWays);
-                fs.close();
+                index.readWays(startNode, level, false, visitedWays, ways);
+                readLowLevelCandidates(ways, false, candidates, temp, tempAdd);
                 LowLevelWayCandidate cand = getCandidate(candidates, cmpCandidates);
                 if (cand != null) {
                     combined = true;
                     startNode = cand.otherNodeId;
                     visitedWays.add(cand.wayId);
-                    loadNodes(cand.nodes, list);
-                    ArrayList<Float> li = new ArrayList<Float>(list);
+                    TIntArrayList li = new TIntArrayList(cand.nodes.length + wayNodes.size());
+                    li.add(cand.nodes);
                     // remove first lat/lon point
-                    wayNodes.remove(0);
-                    wayNodes.remove(0);
-                    li.addAll(wayNodes);
+                    for (int i = 2; i < wayNodes.size(); i++) {
+                        li.add(wayNodes.getQuick(i));
+                    }
                     wayNodes = li;
                     for (MapRulType rt : new ArrayList<MapRulType>(namesUse.keySet())) {
                         if (!Algorithms.objectEquals(namesUse.get(rt), cand.names.get(rt)) &&
@@ -552,19 +556,15 @@ public class IndexVectorMapCreator extends AbstractIndexPartCreator {
             combined = !dontCombine;
             while (combined && wayNodes.size() < LOW_LEVEL_COMBINE_WAY_POINS_LIMIT) {
                 combined = false;
-                startStat.setLong(1, endNode);
-                startStat.setShort(2, (short) level);
-                ResultSet fs = startStat.executeQuery();
-                readLowLevelCandidates(fs, candidates, temp, tempAdd, visitedWays);
-                fs.close();
+                index.readWays(endNode, level, true, visitedWays, ways);
+                readLowLevelCandidates(ways, true, candidates, temp, tempAdd);
                 LowLevelWayCandidate cand = getCandidate(candidates, cmpCandidates);
                 if (cand != null) {
                     combined = true;
                     endNode = cand.otherNodeId;
                     visitedWays.add(cand.wayId);
-                    loadNodes(cand.nodes, list);
-                    for (int i = 2; i < list.size(); i++) {
-                        wayNodes.add(list.get(i));
+                    for (int i = 2; i < cand.nodes.length; i++) {
+                        wayNodes.add(cand.nodes[i]);
                     }
                     for (MapRulType rt : new ArrayList<MapRulType>(namesUse.keySet())) {
                         if (!Algorithms.objectEquals(namesUse.get(rt), cand.names.get(rt)) &&
@@ -578,7 +578,8 @@ public class IndexVectorMapCreator extends AbstractIndexPartCreator {
             List<Node> wNodes = new ArrayList<Node>();
             int wNsize = wayNodes.size();
             for (int i = 0; i < wNsize; i += 2) {
-                wNodes.add(new Node(wayNodes.get(i), wayNodes.get(i + 1), i == 0 ? startNode : endNode));
+                wNodes.add(new Node(Float.intBitsToFloat(wayNodes.getQuick(i)), Float.intBitsToFloat(wayNodes.getQuick(i + 1)),
+                        i == 0 ? startNode : endNode));
             }
             boolean skip = false;
             boolean cycle = startNode == endNode;
@@ -602,7 +603,7 @@ public class IndexVectorMapCreator extends AbstractIndexPartCreator {
             // end cycle
 
         }
-
+        index.close();
     }
 
     private boolean checkOneLocaleHasSameName(TreeMap<MapRulType, String> nu1, Map<MapRulType, String> nu2,
@@ -1201,6 +1202,7 @@ public class IndexVectorMapCreator extends AbstractIndexPartCreator {
         mapLowLevelBinaryStat.setLong(3, lastId);
         mapLowLevelBinaryStat.setString(4, encodeNames(namesUse));
         mapLowLevelBinaryStat.setBytes(5, bNodes.toByteArray());
+        lowLevelWaysNodesBytes += bNodes.size();
         mapLowLevelBinaryStat.setBytes(6, bTypes.toByteArray());
         mapLowLevelBinaryStat.setBytes(7, bAddtTypes.toByteArray());
         mapLowLevelBinaryStat.setShort(8, (short) level);
@@ -1212,6 +1214,18 @@ public class IndexVectorMapCreator extends AbstractIndexPartCreator {
             Map<MapRulType, String> names, long id, boolean area, TIntArrayList types, TIntArrayList addTypes,
             boolean commit, boolean cycle)
             throws SQLException {
+        LatLon label = null;
+        if (cycle && !Algorithms.isEmpty(nodes)) {
+            label = OsmMapUtils.getComplexPolyCenter(nodes, innerWays);
+        }
+        insertBinaryMapRenderObjectIndex(mapTree, nodes, innerWays, names, id, area, types, addTypes, commit, cycle,
+                label);
+    }
+
+    private void insertBinaryMapRenderObjectIndex(RTree mapTree, Collection<Node> nodes, List<List<Node>> innerWays,
+            Map<MapRulType, String> names, long id, boolean area, TIntArrayList types, TIntArrayList addTypes,
+            boolean commit, boolean cycle, LatLon label)
+            throws SQLException {
         boolean init = false;
         int minX = Integer.MAX_VALUE;
         int maxX = 0;
@@ -1246,10 +1260,9 @@ public class IndexVectorMapCreator extends AbstractIndexPartCreator {
                 }
             }
 
-            if (cycle && !Algorithms.isEmpty(nodes)) {
-                LatLon labelll = OsmMapUtils.getComplexPolyCenter(nodes, innerWays);
-                Algorithms.writeInt(blabelCoordinates, MapUtils.get31TileNumberX(labelll.getLongitude()));
-                Algorithms.writeInt(blabelCoordinates, MapUtils.get31TileNumberY(labelll.getLatitude()));
+            if (label != null) {
+                Algorithms.writeInt(blabelCoordinates, MapUtils.get31TileNumberX(label.getLongitude()));
+                Algorithms.writeInt(blabelCoordinates, MapUtils.get31TileNumberY(label.getLatitude()));
             }
 
             if (innerWays != null) {
@@ -1315,6 +1328,7 @@ public class IndexVectorMapCreator extends AbstractIndexPartCreator {
     public void commitAndCloseFiles(String rTreeMapIndexNonPackFileName, String rTreeMapIndexPackFileName,
             boolean deleteDatabaseIndexes)
             throws IOException, SQLException {
+        multipolygonAssembler.close();
         // delete map rtree files
         if (mapTree != null) {
             for (int i = 0; i < mapTree.length; i++) {
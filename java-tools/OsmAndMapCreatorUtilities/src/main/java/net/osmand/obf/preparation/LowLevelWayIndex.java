@@ -0,0 +1,279 @@
+package net.osmand.obf.preparation;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.list.array.TLongArrayList;
+import gnu.trove.map.hash.TLongIntHashMap;
+import gnu.trove.set.hash.TLongHashSet;
+import net.osmand.util.Algorithms;
+
+/**
+ * Low level ways (table low_level_map_objects) to combine ways by their end nodes. Ways are either loaded in memory
+ * (ways are linked by start / end node per level, coordinates are kept in one int list) or queried from the table
+ * for each node. Both indexes return ways in the same order.
+ */
+abstract class LowLevelWayIndex {
+
+	private static final Log log = LogFactory.getLog(LowLevelWayIndex.class);
+
+	private static final String SELECT_WAYS = "SELECT id, start_node, end_node, nodes, name, type, addType, level "
+			+ "FROM low_level_map_objects";
+
+	// approximate size of way in memory without coordinates
+	private static final int WAY_MEMORY_BYTES = 200;
+
+	static class LowLevelWay {
+		long id;
+		long startNode;
+		long endNode;
+		int level;
+		String name;
+		byte[] types;
+		byte[] addTypes;
+		// float bits of lat, lon
+		int[] nodes;
+	}
+
+	/**
+	 * Reads next way in order of table (rowid)
+	 */
+	abstract boolean next(LowLevelWay way) throws SQLException;
+
+	/**
+	 * Reads not visited ways starting (byStartNode) or ending with node on the level. Order is the same as
+	 * order of table index (node, type): by types bytes and then by rowid.
+	 */
+	abstract void readWays(long node, int level, boolean byStartNode, TLongHashSet visitedWays, List<LowLevelWay> ways)
+			throws SQLException;
+
+	abstract void close() throws SQLException;
+
+	static long estimateMemory(int ways, long nodesBytes) {
+		return (long) ways * WAY_MEMORY_BYTES + nodesBytes;
+	}
+
+	static LowLevelWayIndex createQueryIndex(Connection conn) throws SQLException {
+		return new QueryIndex(conn);
+	}
+
+	static LowLevelWayIndex loadInMemory(Connection conn) throws SQLException {
+		long time = System.currentTimeMillis();
+		InMemoryIndex index = new InMemoryIndex();
+		Statement stat = conn.createStatement();
+		ResultSet rs = stat.executeQuery(SELECT_WAYS);
+		while (rs.next()) {
+			index.add(rs.getLong(1), rs.getLong(2), rs.getLong(3), rs.getBytes(4), rs.getString(5), rs.getBytes(6),
+					rs.getBytes(7), rs.getInt(8));
+		}
+		rs.close();
+		stat.close();
+		log.info(String.format("Loaded %d low level ways with %d points in %d ms", index.ids.size(),
+				index.coordinates.size() / 2, System.currentTimeMillis() - time));
+		return index;
+	}
+
+	static int[] decodeNodes(byte[] nodes) {
+		int[] res = new int[nodes.length / 4];
+		for (int i = 0; i < res.length; i++) {
+			res[i] = Algorithms.parseIntFromBytes(nodes, i * 4);
+		}
+		return res;
+	}
+
+	// sqlite order of blobs
+	static int compareBytes(byte[] b1, byte[] b2) {
+		int l1 = b1 == null ? 0 : b1.length;
+		int l2 = b2 == null ? 0 : b2.length;
+		for (int i = 0; i < l1 && i < l2; i++) {
+			int c = Integer.compare(b1[i] & 0xff, b2[i] & 0xff);
+			if (c != 0) {
+				return c;
+			}
+		}
+		return Integer.compare(l1, l2);
+	}
+
+	private static class QueryIndex extends LowLevelWayIndex {
+		private final PreparedStatement startStat;
+		private final PreparedStatement endStat;
+		private final Statement selectStatement;
+		private final ResultSet rs;
+
+		QueryIndex(Connection conn) throws SQLException {
+			startStat = conn.prepareStatement("SELECT id, end_node, nodes, name, type, addType FROM low_level_map_objects"
+					+ " WHERE start_node = ? AND level = ?");
+			endStat = conn.prepareStatement("SELECT id, start_node, nodes, name, type, addType FROM low_level_map_objects"
+					+ " WHERE end_node = ? AND level = ?");
+			selectStatement = conn.createStatement();
+			rs = selectStatement.executeQuery(SELECT_WAYS);
+		}
+
+		@Override
+		boolean next(LowLevelWay way) throws SQLException {
+			if (!rs.next()) {
+				return false;
+			}
+			way.id = rs.getLong(1);
+			way.startNode = rs.getLong(2);
+			way.endNode = rs.getLong(3);
+			way.nodes = decodeNodes(rs.getBytes(4));
+			way.name = rs.getString(5);
+			way.types = rs.getBytes(6);
+			way.addTypes = rs.getBytes(7);
+			way.level = rs.getInt(8);
+			return true;
+		}
+
+		@Override
+		void readWays(long node, int level, boolean byStartNode, TLongHashSet visitedWays, List<LowLevelWay> ways)
+				throws SQLException {
+			ways.clear();
+			PreparedStatement stat = byStartNode ? startStat : endStat;
+			stat.setLong(1, node);
+			stat.setShort(2, (short) level);
+			ResultSet fs = stat.executeQuery();
+			while (fs.next()) {
+				if (!visitedWays.contains(fs.getLong(1))) {
+					LowLevelWay way = new LowLevelWay();
+					way.id = fs.getLong(1);
+					way.startNode = byStartNode ? node : fs.getLong(2);
+					way.endNode = byStartNode ? fs.getLong(2) : node;
+					way.nodes = decodeNodes(fs.getBytes(3));
+					way.name = fs.getString(4);
+					way.types = fs.getBytes(5);
+					way.addTypes = fs.getBytes(6);
+					way.level = level;
+					ways.add(way);
+				}
+			}
+			fs.close();
+		}
+
+		@Override
+		void close() throws SQLException {
+			rs.close();
+			selectStatement.close();
+			startStat.close();
+			endStat.close();
+		}
+	}
+
+	private static class InMemoryIndex extends LowLevelWayIndex {
+		private final TLongArrayList ids = new TLongArrayList();
+		private final TLongArrayList startNodes = new TLongArrayList();
+		private final TLongArrayList endNodes = new TLongArrayList();
+		private final TIntArrayList levels = new TIntArrayList();
+		private final List<String> names = new ArrayList<String>();
+		private final List<byte[]> types = new ArrayList<byte[]>();
+		private final List<byte[]> addTypes = new ArrayList<byte[]>();
+		// coordinates of way i are coordinates[nodesStart[i]..nodesStart[i + 1])
+		private final TIntArrayList nodesStart = new TIntArrayList();
+		private final TIntArrayList coordinates = new TIntArrayList();
+		// node -> last way + 1 with such start (end) node per level, ways are linked with startNext (endNext)
+		private final List<TLongIntHashMap> startHeads = new ArrayList<TLongIntHashMap>();
+		private final List<TLongIntHashMap> endHeads = new ArrayList<TLongIntHashMap>();
+		private final TIntArrayList startNext = new TIntArrayList();
+		private final TIntArrayList endNext = new TIntArrayList();
+		private final TIntArrayList temp = new TIntArrayList();
+		private int cursor = 0;
+
+		void add(long id, long startNode, long endNode, byte[] nodes, String name, byte[] type, byte[] addType,
+				int level) {
+			int ind = ids.size();
+			ids.add(id);
+			startNodes.add(startNode);
+			endNodes.add(endNode);
+			levels.add(level);
+			names.add(name);
+			types.add(type);
+			addTypes.add(addType);
+			nodesStart.add(coordinates.size());
+			for (int i = 0; i + 4 <= nodes.length; i += 4) {
+				coordinates.add(Algorithms.parseIntFromBytes(nodes, i));
+			}
+			startNext.add(link(startHeads, level, startNode, ind));
+			endNext.add(link(endHeads, level, endNode, ind));
+		}
+
+		private int link(List<TLongIntHashMap> heads, int level, long node, int ind) {
+			while (heads.size() <= level) {
+				heads.add(new TLongIntHashMap());
+			}
+			// 0 is no entry value
+			return heads.get(level).put(node, ind + 1);
+		}
+
+		private int getNodesEnd(int ind) {
+			return ind + 1 < nodesStart.size() ? nodesStart.getQuick(ind + 1) : coordinates.size();
+		}
+
+		private void fill(int ind, LowLevelWay way) {
+			way.id = ids.getQuick(ind);
+			way.startNode = startNodes.getQuick(ind);
+			way.endNode = endNodes.getQuick(ind);
+			way.level = levels.getQuick(ind);
+			way.name = names.get(ind);
+			way.types = types.get(ind);
+			way.addTypes = addTypes.get(ind);
+			int st = nodesStart.getQuick(ind);
+			way.nodes = coordinates.toArray(st, getNodesEnd(ind) - st);
+		}
+
+		@Override
+		boolean next(LowLevelWay way) {
+			if (cursor >= ids.size()) {
+				return false;
+			}
+			fill(cursor++, way);
+			return true;
+		}
+
+		@Override
+		void readWays(long node, int level, boolean byStartNode, TLongHashSet visitedWays, List<LowLevelWay> ways) {
+			ways.clear();
+			List<TLongIntHashMap> heads = byStartNode ? startHeads : endHeads;
+			if (level >= heads.size()) {
+				return;
+			}
+			TIntArrayList next = byStartNode ? startNext : endNext;
+			temp.clear();
+			int ind = heads.get(level).get(node) - 1;
+			while (ind >= 0) {
+				if (!visitedWays.contains(ids.getQuick(ind))) {
+					temp.add(ind);
+				}
+				ind = next.getQuick(ind) - 1;
+			}
+			// linked in descending order of rows, insertion sort by types keeps rows ascending
+			temp.reverse();
+			for (int i = 1; i < temp.size(); i++) {
+				int t = temp.getQuick(i);
+				int j = i - 1;
+				while (j >= 0 && compareBytes(types.get(temp.getQuick(j)), types.get(t)) > 0) {
+					temp.setQuick(j + 1, temp.getQuick(j));
+					j--;
+				}
+				temp.setQuick(j + 1, t);
+			}
+			for (int i = 0; i < temp.size(); i++) {
+				LowLevelWay way = new LowLevelWay();
+				fill(temp.getQuick(i), way);
+				ways.add(way);
+			}
+		}
+
+		@Override
+		void close() {
+		}
+	}
+}
@@ -0,0 +1,211 @@
+package net.osmand.obf.preparation;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.logging.Log;
+
+import net.osmand.data.LatLon;
+import net.osmand.data.Multipolygon;
+import net.osmand.data.MultipolygonBuilder;
+import net.osmand.data.Ring;
+import net.osmand.osm.edit.Node;
+import net.osmand.osm.edit.OsmMapUtils;
+import net.osmand.osm.edit.Relation;
+
+/**
+ * Assembles geometry of multipolygon relations: rings are built and split per outer ring, then simplified for every
+ * map level where object is created and label is calculated. Relations are assembled by worker threads, assembled
+ * relations are passed to consumer on the submitting thread in the order of submission, so ids and db rows are the
+ * same as with sequential processing. Number of relations submitted but not consumed is limited.
+ */
+class MultipolygonAssembler<T> {
+
+	private static final int QUEUE_TASKS_PER_THREAD = 4;
+
+	interface MultipolygonConsumer<T> {
+
+		void consume(MultipolygonTask<T> task) throws SQLException;
+	}
+
+	static class MultipolygonTask<T> {
+		final Relation relation;
+		final MultipolygonBuilder builder;
+		// split entities -> map levels -> encoded object or null if object isn't created on level
+		final List<List<T>> objects;
+		// filled after assembly
+		final List<AssembledMultipolygon> multipolygons = new ArrayList<AssembledMultipolygon>();
+
+		MultipolygonTask(Relation relation, MultipolygonBuilder builder, List<List<T>> objects) {
+			this.relation = relation;
+			this.builder = builder;
+			this.objects = objects;
+		}
+	}
+
+	static class AssembledMultipolygon {
+		// split entities -> map levels -> geometry or null if object isn't created on level
+		final List<List<PolygonGeometry>> objects = new ArrayList<List<PolygonGeometry>>();
+	}
+
+	static class PolygonGeometry {
+		final List<Node> outer;
+		final List<List<Node>> inner;
+		final LatLon label;
+
+		PolygonGeometry(List<Node> outer, List<List<Node>> inner, LatLon label) {
+			this.outer = outer;
+			this.inner = inner;
+			this.label = label;
+		}
+	}
+
+	private final int threads;
+	private final int[] levelMaxZooms;
+	private final int zoomWaySmoothness;
+	private final Log logMapDataWarn;
+	private final MultipolygonConsumer<T> consumer;
+	private final LinkedList<Future<MultipolygonTask<T>>> queue = new LinkedList<Future<MultipolygonTask<T>>>();
+	private ExecutorService executor;
+
+	MultipolygonAssembler(int threads, int[] levelMaxZooms, int zoomWaySmoothness, Log logMapDataWarn,
+			MultipolygonConsumer<T> consumer) {
+		this.threads = threads;
+		this.levelMaxZooms = levelMaxZooms;
+		this.zoomWaySmoothness = zoomWaySmoothness;
+		this.logMapDataWarn = logMapDataWarn;
+		this.consumer = consumer;
+	}
+
+	public void submit(final MultipolygonTask<T> task) throws SQLException {
+		if (threads <= 1) {
+			assemble(task);
+			consumer.consume(task);
+			return;
+		}
+		if (executor == null) {
+			executor = Executors.newFixedThreadPool(threads);
+		}
+		queue.add(executor.submit(new Callable<MultipolygonTask<T>>() {
+
+			@Override
+			public MultipolygonTask<T> call() throws Exception {
+				assemble(task);
+				return task;
+			}
+		}));
+		while (queue.size() > threads * QUEUE_TASKS_PER_THREAD) {
+			consumer.consume(poll());
+		}
+	}
+
+	/**
+	 * Waits for all submitted relations and stops worker threads
+	 */
+	public void flush() throws SQLException {
+		try {
+			while (!queue.isEmpty()) {
+				consumer.consume(poll());
+			}
+		} finally {
+			close();
+		}
+	}
+
+	public void close() {
+		if (executor != null) {
+			executor.shutdownNow();
+			executor = null;
+		}
+		queue.clear();
+	}
+
+	private MultipolygonTask<T> poll() throws SQLException {
+		try {
+			return queue.poll().get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof SQLException) {
+				throw (SQLException) e.getCause();
+			}
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	void assemble(MultipolygonTask<T> task) throws SQLException {
+		// Rings with different types (inner or outer) in one ring will be logged in the
+		// previous case
+		// The Rings are only composed by type, so if one way gets in a different Ring,
+		// the rings will be incomplete
+		List<Multipolygon> multipolygons = task.builder.splitPerOuterRing(logMapDataWarn);
+		for (Multipolygon m : multipolygons) {
+			assert m.getOuterRings().size() == 1;
+			// Log the fact that Rings aren't complete, but continue with the relation, try
+			// to close it as well as possible
+			if (!m.areRingsComplete()) {
+				logMapDataWarn.warn("In multipolygon  " + task.relation.getId() + " there are incompleted ways");
+			}
+			Ring out = m.getOuterRings().get(0);
+			List<Node> border = out.getBorder();
+			if (border.size() == 0) {
+				logMapDataWarn.warn("Multipolygon has an outer ring that can't be formed: " + task.relation.getId());
+				// don't index this
+				continue;
+			}
+			// innerWays are new closed ways
+			List<List<Node>> innerWays = new ArrayList<List<Node>>();
+			for (Ring r : m.getInnerRings()) {
+				innerWays.add(r.getBorder());
+			}
+			AssembledMultipolygon res = new AssembledMultipolygon();
+			for (List<T> levels : task.objects) {
+				res.objects.add(simplify(levels, border, innerWays));
+			}
+			task.multipolygons.add(res);
+		}
+	}
+
+	private List<PolygonGeometry> simplify(List<T> levels, List<Node> border, List<List<Node>> innerWays)
+			throws SQLException {
+		List<PolygonGeometry> res = new ArrayList<PolygonGeometry>(levels.size());
+		for (int level = 0; level < levels.size(); level++) {
+			if (levels.get(level) == null) {
+				res.add(null);
+				continue;
+			}
+			// simplify route
+			List<Node> outerWay = border;
+			int zoomToSimplify = levelMaxZooms[level] - 1;
+			if (zoomToSimplify < 15) {
+				outerWay = IndexVectorMapCreator.simplifyCycleWay(outerWay, zoomToSimplify, zoomWaySmoothness);
+				if (outerWay == null) {
+					res.add(null);
+					continue;
+				}
+				// inner ways are simplified further from previous created level
+				List<List<Node>> newinnerWays = new ArrayList<List<Node>>();
+				for (List<Node> ls : innerWays) {
+					ls = IndexVectorMapCreator.simplifyCycleWay(ls, zoomToSimplify, zoomWaySmoothness);
+					if (ls != null) {
+						newinnerWays.add(ls);
+					}
+				}
+				innerWays = newinnerWays;
+			}
+			res.add(new PolygonGeometry(outerWay, innerWays, OsmMapUtils.getComplexPolyCenter(outerWay, innerWays)));
+		}
+		return res;
+	}
+}
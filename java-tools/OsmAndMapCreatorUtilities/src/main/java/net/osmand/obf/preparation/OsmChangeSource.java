@@ -0,0 +1,100 @@
+package net.osmand.obf.preparation;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.SQLException;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import net.osmand.PlatformUtil;
+import net.osmand.osm.edit.Entity;
+import net.osmand.osm.edit.Entity.EntityType;
+import net.osmand.osm.edit.Node;
+import net.osmand.osm.edit.Relation;
+import net.osmand.osm.edit.Way;
+
+/**
+ * Reads osmChange file (.osc, .osc.gz, .osc.bz2). Created and modified entities are produced as is,
+ * deleted entities are produced with {@link OsmDbCreator#OSMAND_DELETE_TAG} tag.
+ */
+public class OsmChangeSource implements OsmEntitySource {
+
+	private final File file;
+
+	public OsmChangeSource(File file) {
+		this.file = file;
+	}
+
+	public static boolean isOsmChangeFile(File file) {
+		String name = file.getName();
+		return name.endsWith(".osc") || name.endsWith(".osc.gz") || name.endsWith(".osc.bz2");
+	}
+
+	@Override
+	public void produceEntities(OsmEntityConsumer consumer) throws IOException, SQLException {
+		InputStream stream = new BufferedInputStream(new FileInputStream(file), 8192 * 4);
+		try {
+			if (file.getName().endsWith(".bz2")) {
+				stream = new BZip2CompressorInputStream(stream);
+			} else if (file.getName().endsWith(".gz")) {
+				stream = new GZIPInputStream(stream);
+			}
+			parse(stream, consumer);
+		} catch (XmlPullParserException e) {
+			throw new IOException("Error parsing " + file.getName(), e);
+		} finally {
+			stream.close();
+		}
+	}
+
+	private void parse(InputStream stream, OsmEntityConsumer consumer) throws XmlPullParserException, IOException {
+		XmlPullParser parser = PlatformUtil.newXMLPullParser();
+		parser.setInput(stream, "UTF-8");
+		boolean delete = false;
+		Entity entity = null;
+		int tok;
+		while ((tok = parser.next()) != XmlPullParser.END_DOCUMENT) {
+			if (tok == XmlPullParser.START_TAG) {
+				String name = parser.getName();
+				if (name.equals("delete")) {
+					delete = true;
+				} else if (name.equals("create") || name.equals("modify")) {
+					delete = false;
+				} else if (name.equals("node")) {
+					long id = Long.parseLong(parser.getAttributeValue("", "id"));
+					String lat = parser.getAttributeValue("", "lat");
+					String lon = parser.getAttributeValue("", "lon");
+					// deleted nodes could be without coordinates
+					entity = new Node(lat == null ? 0 : Double.parseDouble(lat), lon == null ? 0 : Double.parseDouble(lon), id);
+				} else if (name.equals("way")) {
+					entity = new Way(Long.parseLong(parser.getAttributeValue("", "id")));
+				} else if (name.equals("relation")) {
+					entity = new Relation(Long.parseLong(parser.getAttributeValue("", "id")));
+				} else if (name.equals("tag") && entity != null) {
+					entity.putTag(parser.getAttributeValue("", "k"), parser.getAttributeValue("", "v"));
+				} else if (name.equals("nd") && entity instanceof Way) {
+					((Way) entity).addNode(Long.parseLong(parser.getAttributeValue("", "ref")));
+				} else if (name.equals("member") && entity instanceof Relation) {
+					EntityType type = EntityType.valueOf(parser.getAttributeValue("", "type").toUpperCase());
+					((Relation) entity).addMember(Long.parseLong(parser.getAttributeValue("", "ref")), type,
+							parser.getAttributeValue("", "role"));
+				}
+			} else if (tok == XmlPullParser.END_TAG) {
+				String name = parser.getName();
+				if (entity != null && (name.equals("node") || name.equals("way") || name.equals("relation"))) {
+					if (delete) {
+						entity.putTag(OsmDbCreator.OSMAND_DELETE_TAG, OsmDbCreator.OSMAND_DELETE_VALUE);
+					}
+					consumer.acceptEntity(entity);
+					entity = null;
+				}
+			}
+		}
+	}
+}
@@ -77,6 +77,14 @@ public class OsmDbAccessor implements OsmDbAccessorContext {
 		}
 	}
 
+	/**
+	 * Counts are taken from database (nodes db is updated by osm changes, so creator counts only changed entities)
+	 */
+	public void updateCounts() throws SQLException {
+		realCounts = false;
+		computeRealCounts();
+	}
+
 	public Connection getDbConn() {
 		return dbConn;
 	}
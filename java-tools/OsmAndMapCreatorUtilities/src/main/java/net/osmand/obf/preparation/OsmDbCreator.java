@@ -78,6 +78,18 @@ public class OsmDbCreator implements IOsmStorageFilter {
 	
 	private long generatedId = -100;
 
+	// apply osm change to existing database: entities are replaced and entities with OSMAND_DELETE_TAG are deleted
+	private boolean applyChanges;
+	private PreparedStatement delChangedNode;
+	private PreparedStatement delChangedWays;
+	private PreparedStatement delChangedRelations;
+	private PreparedStatement selectStoredNode;
+	private PreparedStatement selectStoredWay;
+	private int deletedEntities = 0;
+	// previous versions are deleted in batches before new versions are stored
+	private int currentDeletesCount = 0;
+	private TLongHashSet changedInBatch = new TLongHashSet();
+
 
 	public OsmDbCreator(int additionId, int shiftId) {
 		this.additionId = additionId;
@@ -110,6 +122,10 @@ public class OsmDbCreator implements IOsmStorageFilter {
 			if (!addGeoHash) {
 				return getSimpleConvertId(id, EntityType.NODE, true);
 			}
+			Long storedId = getStoredId(id, ord);
+			if (storedId != null) {
+				return storedId;
+			}
 			int hash = getNodeHash(e);
 			return getConvertId(id, ord, hash);
 		} else if (e instanceof Way) {
@@ -133,6 +149,10 @@ public class OsmDbCreator implements IOsmStorageFilter {
 			if (!addGeoHash) {
 				return getSimpleConvertId(id, EntityType.WAY, true);
 			}
+			Long storedId = getStoredId(id, ord);
+			if (storedId != null) {
+				return storedId;
+			}
 			return getConvertId(id, ord, hash);
 		} else {
 			Relation r = (Relation) e;
@@ -180,8 +200,12 @@ public class OsmDbCreator implements IOsmStorageFilter {
 	}
 
 	private int getNodeHash(Entity e) {
-		int y = MapUtils.get31TileNumberY(((Node) e).getLatitude());
-		int x = MapUtils.get31TileNumberX(((Node) e).getLongitude());
+		return getNodeHash(((Node) e).getLatitude(), ((Node) e).getLongitude());
+	}
+
+	private int getNodeHash(double lat, double lon) {
+		int y = MapUtils.get31TileNumberY(lat);
+		int x = MapUtils.get31TileNumberX(lon);
 		int hash = (x + y) >> 10;
 		return hash;
 	}
@@ -202,7 +226,95 @@ public class OsmDbCreator implements IOsmStorageFilter {
 			long fid = (lid << 2) + ord;
 			return generatedIds.get(fid);
 		}
-		return generatedIds.get((l << 2) + ord);
+		long key = (l << 2) + ord;
+		if (applyChanges && !generatedIds.contains(key)) {
+			loadStoredId(l, ord);
+		}
+		return generatedIds.get(key);
+	}
+
+	private Long getStoredId(long id, int ord) {
+		if (!applyChanges || id < 0) {
+			return null;
+		}
+		return generatedIds.get((id << 2) + ord);
+	}
+
+	// unchanged entities referenced by changed ones are only present in database
+	private void loadStoredId(long id, int ord) {
+		try {
+			if (ord == EntityType.NODE.ordinal()) {
+				selectStoredNode.setLong(1, id << SHIFT_ID);
+				selectStoredNode.setLong(2, (id + 1) << SHIFT_ID);
+				ResultSet rs = selectStoredNode.executeQuery();
+				if (rs.next()) {
+					generatedIds.put((id << 2) + ord, rs.getLong(1));
+					hashes.put((id << 2) + ord, (long) getNodeHash(rs.getDouble(2), rs.getDouble(3)));
+				}
+				rs.close();
+			} else if (ord == EntityType.WAY.ordinal()) {
+				selectStoredWay.setLong(1, id << SHIFT_ID);
+				selectStoredWay.setLong(2, (id + 1) << SHIFT_ID);
+				ResultSet rs = selectStoredWay.executeQuery();
+				if (rs.next()) {
+					generatedIds.put((id << 2) + ord, rs.getLong(1));
+				}
+				rs.close();
+			}
+		} catch (SQLException e) {
+			log.error("Could not read stored entity " + id, e); //$NON-NLS-1$
+		}
+	}
+
+	private void deleteStoredEntity(Entity e, int ord) throws SQLException {
+		long id = e.getId();
+		if (!changedInBatch.add((id << 2) + ord)) {
+			// previous version of entity is still in batch
+			flushBatches();
+			changedInBatch.add((id << 2) + ord);
+		}
+		// stored id depends on coordinates (geo hash), so delete all possible ids
+		long from = id < 0 ? id : (id << SHIFT_ID);
+		long to = id < 0 ? id + 1 : ((id + 1) << SHIFT_ID);
+		if (e instanceof Node) {
+			delChangedNode.setLong(1, from);
+			delChangedNode.setLong(2, to);
+			delChangedNode.addBatch();
+		} else if (e instanceof Way) {
+			delChangedWays.setLong(1, from);
+			delChangedWays.setLong(2, to);
+			delChangedWays.addBatch();
+		} else if (e instanceof Relation) {
+			delChangedRelations.setLong(1, id);
+			delChangedRelations.addBatch();
+		}
+		currentDeletesCount++;
+		if (currentDeletesCount >= BATCH_SIZE_OSM) {
+			flushBatches();
+			dbConn.commit(); // clear memory
+		}
+	}
+
+	private void flushBatches() throws SQLException {
+		if (currentDeletesCount > 0) {
+			delChangedNode.executeBatch();
+			delChangedWays.executeBatch();
+			delChangedRelations.executeBatch();
+			currentDeletesCount = 0;
+		}
+		changedInBatch.clear();
+		if (currentCountNode > 0) {
+			prepNode.executeBatch();
+			currentCountNode = 0;
+		}
+		if (currentWaysCount > 0) {
+			prepWays.executeBatch();
+			currentWaysCount = 0;
+		}
+		if (currentRelationsCount > 0) {
+			prepRelations.executeBatch();
+			currentRelationsCount = 0;
+		}
 	}
 
 	private long getConvertId(long id, int ord, long hash) {
@@ -222,6 +334,21 @@ public class OsmDbCreator implements IOsmStorageFilter {
 	}
 	
 
+	/**
+	 * Should be called before initDatabase, database should exist and be created with the same id conversion
+	 * (default constructor).
+	 */
+	public void setApplyChanges(boolean applyChanges) {
+		if (applyChanges && (generateNewIds || !addGeoHash || shiftId != 0)) {
+			throw new IllegalStateException("Changes could be applied only with default id conversion");
+		}
+		this.applyChanges = applyChanges;
+	}
+
+	public int getDeletedEntities() {
+		return deletedEntities;
+	}
+
 	public void initDatabase(DBDialect dialect, Object databaseConn, boolean create, OsmDbCreator previous) throws SQLException {
 
 		this.dialect = dialect;
@@ -254,6 +381,13 @@ public class OsmDbCreator implements IOsmStorageFilter {
 		prepNode = dbConn.prepareStatement("replace into node(id, latitude, longitude, tags) values (?, ?, ?, ?)"); //$NON-NLS-1$
 		prepWays = dbConn.prepareStatement("replace into ways(id, node, ord, tags, boundary) values (?, ?, ?, ?, ?)"); //$NON-NLS-1$
 		prepRelations = dbConn.prepareStatement("replace into relations(id, member, type, role, ord, tags) values (?, ?, ?, ?, ?, ?)"); //$NON-NLS-1$
+		if (applyChanges) {
+			delChangedNode = dbConn.prepareStatement("delete from node where id >= ? and id < ?"); //$NON-NLS-1$
+			delChangedWays = dbConn.prepareStatement("delete from ways where id >= ? and id < ?"); //$NON-NLS-1$
+			delChangedRelations = dbConn.prepareStatement("delete from relations where id = ?"); //$NON-NLS-1$
+			selectStoredNode = dbConn.prepareStatement("select id, latitude, longitude from node where id >= ? and id < ?"); //$NON-NLS-1$
+			selectStoredWay = dbConn.prepareStatement("select id from ways where id >= ? and id < ? limit 1"); //$NON-NLS-1$
+		}
 		dbConn.setAutoCommit(false);
 	}
 
@@ -271,6 +405,9 @@ public class OsmDbCreator implements IOsmStorageFilter {
 
 	public void finishLoading() throws SQLException {
 		try {
+			if (applyChanges && currentDeletesCount > 0) {
+				flushBatches();
+			}
 			if (currentCountNode > 0) {
 				prepNode.executeBatch();
 			}
@@ -295,6 +432,13 @@ public class OsmDbCreator implements IOsmStorageFilter {
 		if (delRelations != null) {
 			delRelations.close();
 		}
+		if (applyChanges) {
+			delChangedNode.close();
+			delChangedWays.close();
+			delChangedRelations.close();
+			selectStoredNode.close();
+			selectStoredWay.close();
+		}
 	}
 	
 	
@@ -345,6 +489,18 @@ public class OsmDbCreator implements IOsmStorageFilter {
 			}
 		}
 		try {
+			if (applyChanges) {
+				// keep stored id (it depends on coordinates), so unchanged ways and relations still reference it
+				if (!(e instanceof Relation)) {
+					getGeneratedId(e.getId(), entityId.getType().ordinal());
+				}
+				// previous version is replaced completely (way could become shorter, node could move)
+				deleteStoredEntity(e, entityId.getType().ordinal());
+				if (OSMAND_DELETE_VALUE.equals(e.getTag(OSMAND_DELETE_TAG))) {
+					deletedEntities++;
+					return false;
+				}
+			}
 			e.removeTags(tagsToIgnore);
 			ByteArrayOutputStream tags = new ByteArrayOutputStream();
 			try {
@@ -370,7 +526,11 @@ public class OsmDbCreator implements IOsmStorageFilter {
 				prepNode.setBytes(4, tags.toByteArray());
 				prepNode.addBatch();
 				if (currentCountNode >= BATCH_SIZE_OSM) {
-					prepNode.executeBatch();
+					if (applyChanges) {
+						flushBatches();
+					} else {
+						prepNode.executeBatch();
+					}
 					dbConn.commit(); // clear memory
 					currentCountNode = 0;
 				}
@@ -392,7 +552,11 @@ public class OsmDbCreator implements IOsmStorageFilter {
 					prepWays.addBatch();
 				}
 				if (currentWaysCount >= BATCH_SIZE_OSM) {
-					prepWays.executeBatch();
+					if (applyChanges) {
+						flushBatches();
+					} else {
+						prepWays.executeBatch();
+					}
 					dbConn.commit(); // clear memory
 					currentWaysCount = 0;
 				}
@@ -414,7 +578,11 @@ public class OsmDbCreator implements IOsmStorageFilter {
 				}
 //				System.out.println(id + " " + delete);
 				if (currentRelationsCount >= BATCH_SIZE_OSM) {
-					prepRelations.executeBatch();
+					if (applyChanges) {
+						flushBatches();
+					} else {
+						prepRelations.executeBatch();
+					}
 					dbConn.commit(); // clear memory
 					currentRelationsCount = 0;
 				}
@@ -0,0 +1,21 @@
+package net.osmand.obf.preparation;
+
+import java.io.IOException;
+import java.sql.SQLException;
+
+import net.osmand.osm.edit.Entity;
+
+/**
+ * In-process producer of osm entities for {@link IndexCreator}, used instead of writing intermediate osm xml file
+ * and parsing it back. Ways and relations reference members by id, so referenced nodes should be produced as well
+ * (order is not important, same as for osm file).
+ */
+public interface OsmEntitySource {
+
+	void produceEntities(OsmEntityConsumer consumer) throws IOException, SQLException;
+
+	interface OsmEntityConsumer {
+
+		void acceptEntity(Entity entity);
+	}
+}
@@ -0,0 +1,103 @@
+package net.osmand.obf.preparation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TObjectIntHashMap;
+import gnu.trove.set.hash.TLongHashSet;
+import net.osmand.obf.preparation.IndexPoiCreator.PoiTileBox;
+
+/**
+ * Name prefixes of poi with tile boxes containing them. Instead of a set of boxes per prefix, pairs (prefix id, box id)
+ * are collected once in insertion order and grouped after {@link #build()} into a sorted array of prefixes and
+ * a posting array of box ids. Order of prefixes and boxes is the same as with TreeMap of LinkedHashSet.
+ */
+public class PoiNamePrefixIndex {
+
+	private TObjectIntHashMap<String> prefixIds = new TObjectIntHashMap<String>();
+	private List<String> prefixes = new ArrayList<String>();
+	private final List<PoiTileBox> boxes = new ArrayList<PoiTileBox>();
+	// unique pairs (prefix << 32 | box)
+	private TLongHashSet postings = new TLongHashSet();
+	private TIntArrayList postingPrefixes = new TIntArrayList();
+	private TIntArrayList postingBoxes = new TIntArrayList();
+
+	// built index: boxes of sortedPrefixes[i] are sortedBoxes[offsets[i]..offsets[i + 1])
+	private String[] sortedPrefixes;
+	private int[] offsets;
+	private int[] sortedBoxes;
+
+	public void add(String prefix, PoiTileBox box) {
+		if (sortedPrefixes != null) {
+			throw new IllegalStateException("Index is already built");
+		}
+		int prefixId;
+		if (prefixIds.containsKey(prefix)) {
+			prefixId = prefixIds.get(prefix);
+		} else {
+			prefixId = prefixes.size();
+			prefixIds.put(prefix, prefixId);
+			prefixes.add(prefix);
+		}
+		if (box.nameIndexId == -1) {
+			box.nameIndexId = boxes.size();
+			boxes.add(box);
+		}
+		if (postings.add(((long) prefixId << 32) | box.nameIndexId)) {
+			postingPrefixes.add(prefixId);
+			postingBoxes.add(box.nameIndexId);
+		}
+	}
+
+	public void build() {
+		if (sortedPrefixes != null) {
+			return;
+		}
+		postings = null;
+		sortedPrefixes = prefixes.toArray(new String[prefixes.size()]);
+		Arrays.sort(sortedPrefixes);
+		int[] rank = new int[sortedPrefixes.length];
+		for (int i = 0; i < sortedPrefixes.length; i++) {
+			rank[prefixIds.get(sortedPrefixes[i])] = i;
+		}
+		prefixIds = null;
+		prefixes = null;
+		// counting sort keeps insertion order of boxes for each prefix
+		offsets = new int[sortedPrefixes.length + 1];
+		for (int i = 0; i < postingPrefixes.size(); i++) {
+			offsets[rank[postingPrefixes.getQuick(i)] + 1]++;
+		}
+		for (int i = 0; i < sortedPrefixes.length; i++) {
+			offsets[i + 1] += offsets[i];
+		}
+		int[] pos = Arrays.copyOf(offsets, sortedPrefixes.length);
+		sortedBoxes = new int[postingBoxes.size()];
+		for (int i = 0; i < postingPrefixes.size(); i++) {
+			sortedBoxes[pos[rank[postingPrefixes.getQuick(i)]]++] = postingBoxes.getQuick(i);
+		}
+		postingPrefixes = null;
+		postingBoxes = null;
+	}
+
+	public int size() {
+		return sortedPrefixes.length;
+	}
+
+	public List<String> getPrefixes() {
+		return Arrays.asList(sortedPrefixes);
+	}
+
+	public String getPrefix(int i) {
+		return sortedPrefixes[i];
+	}
+
+	public List<PoiTileBox> getBoxes(int i) {
+		List<PoiTileBox> res = new ArrayList<PoiTileBox>(offsets[i + 1] - offsets[i]);
+		for (int j = offsets[i]; j < offsets[i + 1]; j++) {
+			res.add(boxes.get(sortedBoxes[j]));
+		}
+		return res;
+	}
+}
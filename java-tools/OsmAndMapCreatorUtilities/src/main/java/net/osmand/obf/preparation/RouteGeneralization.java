@@ -0,0 +1,736 @@
+package net.osmand.obf.preparation;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import gnu.trove.TIntCollection;
+import gnu.trove.impl.Constants;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TIntIntHashMap;
+import gnu.trove.map.hash.TLongIntHashMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import net.osmand.osm.MapRoutingTypes;
+import net.osmand.osm.MapRoutingTypes.MapRouteType;
+import net.osmand.util.Algorithms;
+import net.osmand.util.MapUtils;
+
+/**
+ * Generalization of basemap roads: roundabouts are replaced with points, roads are attached to each other and
+ * simplified.
+ *
+ * Clusters are grouped into partitions (tiles of PARTITION_ZOOM). Ways with all points inside one partition are
+ * processed in parallel by partitions, operation is postponed if it touches a way crossing the partition border.
+ * Crossing and postponed ways are processed after that sequentially, so result doesn't depend on threads count.
+ *
+ * Ways are kept in {@link GeneralizedWayStore} and referenced by index.
+ */
+class RouteGeneralization {
+
+	static final int CLUSTER_ZOOM = 15;
+	static final int PARTITION_ZOOM = 9;
+	static final String CONFLICT_NAME = "#CONFLICT";
+	private static final float DOUGLAS_PEUKER_DISTANCE = 15;
+	private static final long BORDER_PARTITION = -1;
+	private static final int NO_WAY = -1;
+	// cluster ways are searched in list till this size
+	private static final int WAY_POSITIONS_LIMIT = 16;
+
+	private static final int STEP_ROUNDABOUTS = 0;
+	private static final int STEP_ATTACH_WAYS = 1;
+	private static final int STEP_SIMPLIFY = 2;
+
+	private final TLongObjectHashMap<GeneralizedCluster> generalClusters = new TLongObjectHashMap<GeneralizedCluster>();
+	private final GeneralizedWayStore store = new GeneralizedWayStore();
+	private MapRouteType refRuleType;
+	private MapRouteType nameRuleType;
+	// partition containing all points of way or BORDER_PARTITION
+	private long[] partitions;
+	// processing of way is postponed from partition to border step
+	private boolean[] postponed;
+
+	public GeneralizedWayStore getStore() {
+		return store;
+	}
+
+	public void addWay(long id, int mainType, TIntCollection addTypes, Map<MapRouteType, String> names,
+			TIntArrayList px, TIntArrayList py) {
+		int w = store.addWay(id, mainType, addTypes, names, px, py);
+		GeneralizedCluster cluster = null;
+		for (int i = 0; i < store.size(w); i++) {
+			cluster = getCluster(w, i, cluster);
+			cluster.addWayFromLocation(w, store.getLocation(w, i));
+		}
+	}
+
+	public boolean isEmpty() {
+		return generalClusters.isEmpty();
+	}
+
+	/**
+	 * @return clusters existing before generalization ordered by partitions
+	 */
+	public List<GeneralizedCluster> generalize(MapRoutingTypes routeTypes, int threads) {
+		return generalize(routeTypes.getRefRuleType(), routeTypes.getNameRuleType(), threads);
+	}
+
+	List<GeneralizedCluster> generalize(MapRouteType refRuleType, MapRouteType nameRuleType, int threads) {
+		this.refRuleType = refRuleType;
+		this.nameRuleType = nameRuleType;
+		List<GeneralizedCluster> clusters = new ArrayList<GeneralizedCluster>(generalClusters.valueCollection());
+		Collections.sort(clusters, new Comparator<GeneralizedCluster>() {
+
+			@Override
+			public int compare(GeneralizedCluster o1, GeneralizedCluster o2) {
+				int c = Long.compare(o1.getPartition(), o2.getPartition());
+				if (c == 0) {
+					c = Long.compare(getClusterKey(o1.x, o1.y), getClusterKey(o2.x, o2.y));
+				}
+				return c;
+			}
+		});
+		List<List<GeneralizedCluster>> parts = new ArrayList<List<GeneralizedCluster>>();
+		for (GeneralizedCluster c : clusters) {
+			if (parts.isEmpty() || parts.get(parts.size() - 1).get(0).getPartition() != c.getPartition()) {
+				parts.add(new ArrayList<GeneralizedCluster>());
+			}
+			parts.get(parts.size() - 1).add(c);
+		}
+		partitions = new long[store.getWaysCount()];
+		postponed = new boolean[store.getWaysCount()];
+		ExecutorService executor = threads > 1 && parts.size() > 1 ? Executors.newFixedThreadPool(threads) : null;
+		try {
+			// 1. roundabouts, 2. way combination based, 3. Douglas peuker simplifications
+			for (int step = STEP_ROUNDABOUTS; step <= STEP_SIMPLIFY; step++) {
+				assignPartitions(clusters);
+				processPartitions(parts, step, executor);
+				processStep(clusters, step, BORDER_PARTITION);
+			}
+		} finally {
+			if (executor != null) {
+				executor.shutdownNow();
+			}
+			partitions = null;
+			postponed = null;
+		}
+		return clusters;
+	}
+
+	private void processPartitions(List<List<GeneralizedCluster>> parts, final int step, ExecutorService executor) {
+		if (executor == null) {
+			for (List<GeneralizedCluster> p : parts) {
+				processStep(p, step, p.get(0).getPartition());
+			}
+			return;
+		}
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		for (final List<GeneralizedCluster> p : parts) {
+			futures.add(executor.submit(new Runnable() {
+
+				@Override
+				public void run() {
+					processStep(p, step, p.get(0).getPartition());
+				}
+			}));
+		}
+		try {
+			for (Future<?> f : futures) {
+				f.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	private void assignPartitions(List<GeneralizedCluster> clusters) {
+		for (GeneralizedCluster cluster : clusters) {
+			for (int gw : cluster.getClusterWays()) {
+				postponed[gw] = false;
+				partitions[gw] = getPartition(store.getX(gw, 0), store.getY(gw, 0));
+				if (!isInPartition(gw, partitions[gw])) {
+					partitions[gw] = BORDER_PARTITION;
+				}
+			}
+		}
+	}
+
+	// ways touching partition are either crossing the border (not modified in parallel) or processed by partition
+	// thread, so their points could be read by partition thread
+	private boolean isInPartition(int gw, long partition) {
+		for (int i = 0; i < store.size(gw); i++) {
+			if (getPartition(store.getX(gw, i), store.getY(gw, i)) != partition) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void processStep(List<GeneralizedCluster> clusters, int step, long partition) {
+		for (GeneralizedCluster cluster : clusters) {
+			int[] copy = cluster.getClusterWays();
+			for (int gw : copy) {
+				boolean process;
+				if (partition == BORDER_PARTITION) {
+					process = partitions[gw] == BORDER_PARTITION || postponed[gw];
+				} else {
+					process = partitions[gw] == partition;
+				}
+				if (!process) {
+					continue;
+				}
+				if (step == STEP_ROUNDABOUTS) {
+					// roundabout
+					if (store.getLocation(gw, store.size(gw) - 1) == store.getLocation(gw, 0)
+							&& cluster.containsWay(gw)) {
+						if (partition != BORDER_PARTITION && !isAdjacentRoadsInPartition(cluster, gw, partition)) {
+							postponed[gw] = true;
+						} else {
+							removeWayAndSubstituteWithPoint(gw, cluster);
+						}
+					}
+				} else if (step == STEP_ATTACH_WAYS) {
+					// already deleted
+					if (!cluster.containsWay(gw)) {
+						continue;
+					}
+					attachWays(gw, true, partition);
+					attachWays(gw, false, partition);
+				} else if (step == STEP_SIMPLIFY) {
+					simplifyWay(cluster, gw);
+				}
+			}
+		}
+	}
+
+	static long getClusterKey(int xc, int yc) {
+		return (((long) xc) << (CLUSTER_ZOOM + 1)) + yc;
+	}
+
+	static long getPartition(int x31, int y31) {
+		int xp = x31 >> (31 - PARTITION_ZOOM);
+		int yp = y31 >> (31 - PARTITION_ZOOM);
+		return (((long) xp) << (PARTITION_ZOOM + 1)) + yp;
+	}
+
+	GeneralizedCluster getCluster(int gw, int ind, GeneralizedCluster helper) {
+		int x31 = store.getX(gw, ind);
+		int y31 = store.getY(gw, ind);
+		int xc = x31 >> (31 - CLUSTER_ZOOM);
+		int yc = y31 >> (31 - CLUSTER_ZOOM);
+		if(helper != null && helper.x == xc  &&
+				helper.y == yc) {
+			return helper;
+		}
+		long l = getClusterKey(xc, yc);
+		// clusters could be created by parallel processing of roundabouts
+		synchronized (generalClusters) {
+			GeneralizedCluster cluster = generalClusters.get(l);
+			if (cluster == null) {
+				cluster = new GeneralizedCluster(xc, yc, CLUSTER_ZOOM);
+				generalClusters.put(l, cluster);
+			}
+			return cluster;
+		}
+	}
+
+	private boolean isAdjacentRoadsInPartition(GeneralizedCluster gcluster, int gw, long partition) {
+		for (int i = 0; i < store.size(gw); i++) {
+			gcluster = getCluster(gw, i, gcluster);
+			long loc = store.getLocation(gw, i);
+			TIntArrayList l = gcluster.getWays(loc);
+			if (l != null) {
+				for (int k = 0; k < l.size(); k++) {
+					if (!isInPartition(l.getQuick(k), partition)) {
+						return false;
+					}
+				}
+			} else {
+				int o = gcluster.getWay(loc);
+				if (o != NO_WAY && !isInPartition(o, partition)) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	public void getAdjacentRoads(GeneralizedCluster gcluster, int gw, int i, TIntCollection collection){
+		gcluster = getCluster(gw, i, gcluster);
+		TIntArrayList l = gcluster.getWays(store.getLocation(gw, i));
+		if (l != null) {
+			for (int k = 0; k < l.size(); k++) {
+				int next = l.getQuick(k);
+				if (store.getId(next) != store.getId(gw)) {
+					collection.add(next);
+				}
+			}
+		}
+	}
+
+	public int countAdjacentRoads(GeneralizedCluster gcluster, int gw, int i){
+		gcluster = getCluster(gw, i, gcluster);
+		long loc = store.getLocation(gw, i);
+		TIntArrayList l = gcluster.getWays(loc);
+		if (l != null) {
+			int cnt = 0;
+			for (int k = 0; k < l.size(); k++) {
+				if (store.getId(l.getQuick(k)) != store.getId(gw)) {
+					cnt++;
+				}
+			}
+			return cnt;
+		} else {
+			int o = gcluster.getWay(loc);
+			if (o != NO_WAY && store.getId(gw) != store.getId(o)) {
+				return 1;
+			}
+		}
+		return 0;
+	}
+
+	static double scalarMultiplication(double xA, double yA, double xB, double yB, double xC, double yC) {
+		// Scalar multiplication between (AB, AC)
+		double multiple = (xB - xA) * (xC - xA) + (yB- yA) * (yC -yA);
+		return multiple;
+	}
+
+	private void simplifyDouglasPeucker(int gw, float epsilon, Collection<Integer> ints, int start, int end){
+		double dmax = -1;
+		int index = -1;
+		for (int i = start + 1; i <= end - 1; i++) {
+			double d = orthogonalDistance(gw, start, end, store.getX(gw, i), store.getY(gw, i), false);
+			if (d > dmax) {
+				dmax = d;
+				index = i;
+			}
+		}
+		if(dmax >= epsilon){
+			simplifyDouglasPeucker(gw, epsilon, ints, start, index);
+			simplifyDouglasPeucker(gw, epsilon, ints, index, end);
+		} else {
+			ints.add(end);
+		}
+	}
+
+	private double orthogonalDistance(int gn, int st, int end, int px, int py, boolean returnNanIfNoProjection){
+		int fromy31 = store.getY(gn, st);
+		int fromx31 = store.getX(gn, st);
+		int toy31 = store.getY(gn, end);
+		int tox31 = store.getX(gn, end);
+		float mDist = ((float)fromy31 - toy31) * ((float)fromy31 - toy31) +
+				((float)fromx31 - tox31) * ((float)fromx31 - tox31);
+		float projection = (float) scalarMultiplication(fromy31, fromx31, toy31, tox31, py, px);
+		if (returnNanIfNoProjection && (projection < 0 || projection > mDist)) {
+			return Double.NaN;
+		}
+//		float projy31 = fromy31 + (toy31 - fromy31) * (projection / mDist);
+//		float projx31 = fromx31 + (tox31 - fromx31) * (projection / mDist);
+		double A = MapUtils.convert31XToMeters(px, fromx31, py);
+		double B = MapUtils.convert31YToMeters(py, fromy31, px);
+		double C = MapUtils.convert31XToMeters(tox31, fromx31, toy31);
+		double D = MapUtils.convert31YToMeters(toy31, fromy31, tox31);
+		return Math.abs(A * D - C * B) / Math.sqrt(C * C + D * D);
+
+	}
+
+	private void simplifyWay(GeneralizedCluster cluster, int gw) {
+		Set<Integer> res = new HashSet<Integer>();
+		simplifyDouglasPeucker(gw, DOUGLAS_PEUKER_DISTANCE, res, 0, store.size(gw) - 1);
+
+		int ind = 1;
+		int len = store.size(gw) - 1;
+		for(int j = 1; j < len; j++) {
+			if(!res.contains(j) && countAdjacentRoads(cluster, gw, ind) == 0) {
+				GeneralizedCluster gcluster = getCluster(gw, ind, cluster);
+				gcluster.removeWayFromLocation(store, gw, ind, false);
+				store.removePoint(gw, ind);
+			} else {
+				ind++;
+			}
+		}
+	}
+
+	public int checkDistanceToLine(int line, int start, boolean directionPlus, int px, int py, double distThreshold) {
+		int j = start;
+		int next = directionPlus ? j + 1 : j - 1;
+		while (next >= 0 && next < store.size(line)) {
+			double od = orthogonalDistance(line, j, next, px, py, false);
+			if (od < distThreshold) {
+				return j;
+			}
+			j = next;
+			next = directionPlus ? j + 1 : j - 1;
+		}
+		return -1;
+	}
+
+	private void removeGeneratedWay(int gw, GeneralizedCluster gcluster) {
+		for (int i = 0; i < store.size(gw); i++) {
+			gcluster = getCluster(gw, i, gcluster);
+			gcluster.removeWayFromLocation(store, gw, i, true);
+		}
+	}
+
+
+	private void removeWayAndSubstituteWithPoint(int gw, GeneralizedCluster gcluster) {
+		// calculate center location
+		long pxc = 0;
+		long pyc = 0;
+		int size = store.size(gw);
+		for (int i = 0; i < size; i++) {
+			pxc += store.getX(gw, i);
+			pyc += store.getY(gw, i);
+		}
+		pxc /= size;
+		pyc /= size;
+
+		// attach additional point to other roads
+		for (int i = 0; i < size; i++) {
+			gcluster = getCluster(gw, i, gcluster);
+			long loc = store.getLocation(gw, i);
+			TIntArrayList l = gcluster.getWays(loc);
+			// something attachedpxc
+			if (l != null) {
+				for (int k = 0; k < l.size(); k++) {
+					replacePointWithAnotherPoint(gcluster, gw, (int) pxc, (int) pyc, i, l.getQuick(k));
+				}
+			} else {
+				int o = gcluster.getWay(loc);
+				if (o != NO_WAY) {
+					replacePointWithAnotherPoint(gcluster, gw, (int) pxc, (int) pyc, i, o);
+				}
+			}
+		}
+		// remove roundabout
+		removeGeneratedWay(gw, gcluster);
+	}
+
+	private void replacePointWithAnotherPoint(GeneralizedCluster gcluster, int gw, int pxc, int pyc, int i, int next) {
+		if (store.getId(next) != store.getId(gw)) {
+			long loc = store.getLocation(gw, i);
+			for (int j = 0; j < store.size(next); j++) {
+				if (store.getLocation(next, j) == loc) {
+					if (j == store.size(next) - 1) {
+						store.addPoint(next, pxc, pyc);
+						gcluster = getCluster(next, store.size(next) - 1, gcluster);
+						gcluster.addWayFromLocation(next, store.getLocation(next, store.size(next) - 1));
+					} else {
+						store.insertPoint(next, j, pxc, pyc);
+						gcluster = getCluster(next, j, gcluster);
+						gcluster.addWayFromLocation(next, store.getLocation(next, j));
+					}
+					break;
+				}
+			}
+		}
+	}
+
+	private boolean compareRefs(int gw, int gn){
+		Map<MapRouteType, String> names1 = store.getNames(gw);
+		Map<MapRouteType, String> names2 = store.getNames(gn);
+		String ref1 = names1.get(refRuleType);
+		String ref2 = names2.get(refRuleType);
+		String name1 = names1.get(nameRuleType);
+		String name2 = names2.get(nameRuleType);
+		return equalsIfNotEmpty(ref1, ref2) && equalsIfNotEmpty(name1, name2);
+	}
+
+	private boolean equalsIfNotEmpty(String s1, String s2) {
+		if(Algorithms.isEmpty(s1) || Algorithms.isEmpty(s2)) {
+			return true;
+		}
+		return s1.equalsIgnoreCase(s2);
+	}
+
+	private void mergeName(MapRouteType rt, Map<MapRouteType, String> from, Map<MapRouteType, String> to){
+		String rfFrom = from.get(rt);
+		String rfTo = to.get(rt);
+		if (rfFrom != null) {
+			if (!rfFrom.equalsIgnoreCase(rfTo) && !Algorithms.isEmpty(rfTo)) {
+				to.put(rt, CONFLICT_NAME);
+			} else {
+				to.put(rt, from.get(rt));
+			}
+		}
+	}
+
+	private int selectBestWay(GeneralizedCluster cluster, int gw, int ind) {
+		long loc = store.getLocation(gw, ind);
+		TIntArrayList l = cluster.getWays(loc);
+		int res = NO_WAY;
+		if (l == null) {
+			int m = cluster.getWay(loc);
+			if (m != NO_WAY && m != gw) {
+				if (store.getId(m) != store.getId(gw) && store.getMainType(m) == store.getMainType(gw)
+						&& compareRefs(gw, m)) {
+					return m;
+				}
+
+			}
+		} else {
+			double bestDiff = Math.PI / 2;
+			for (int k = 0; k < l.size(); k++) {
+				int m = l.getQuick(k);
+				if (store.getId(m) != store.getId(gw) && store.getMainType(m) == store.getMainType(gw)
+						&& compareRefs(gw, m)) {
+					double init = store.directionRoute(gw, ind, ind == 0);
+					double dir;
+					if (store.getLocation(m, 0) == loc) {
+						dir = store.directionRoute(m, 0, true);
+					} else if (store.getLocation(m, store.size(m) - 1) == loc) {
+						dir = store.directionRoute(m, store.size(m) - 1, false);
+					} else {
+						return NO_WAY;
+					}
+					double angleDiff = Math.abs(MapUtils.alignAngleDifference(Math.PI + dir - init));
+					if (angleDiff < bestDiff) {
+						bestDiff = angleDiff;
+						res = m;
+					}
+				}
+			}
+		}
+		return res;
+	}
+
+
+	private void attachWays(int gw, boolean first, long partition) {
+		GeneralizedCluster cluster = null;
+		while(true) {
+			int ind = first? 0 : store.size(gw) - 1;
+			cluster = getCluster(gw, ind, cluster);
+			int prev = selectBestWay(cluster, gw, ind);
+			if(prev == NO_WAY) {
+				break;
+			}
+			if (partition != BORDER_PARTITION && !isInPartition(prev, partition)) {
+				postponed[gw] = true;
+				break;
+			}
+			for (int i = 0; i < store.size(prev); i++) {
+				cluster = getCluster(prev, i, cluster);
+				cluster.replaceWayFromLocation(prev, store.getLocation(prev, i), gw);
+			}
+			// maxspeed could be merged better
+			store.retainAddTypes(gw, prev);
+			Map<MapRouteType, String> prevNames = store.getNames(prev);
+			Map<MapRouteType, String> names = new HashMap<MapRouteType, String>(store.getNames(gw));
+			for(MapRouteType rt : new ArrayList<MapRouteType>(names.keySet())) {
+				mergeName(rt, prevNames, names);
+			}
+			for(MapRouteType rt : prevNames.keySet()) {
+				if(!names.containsKey(rt)){
+					mergeName(rt, prevNames, names);
+				}
+			}
+			store.setNames(gw, names);
+			store.join(gw, prev, first);
+		}
+	}
+
+
+	/*private*/ static class GeneralizedCluster {
+		public final int x;
+		public final int y;
+		public final int zoom;
+
+		public GeneralizedCluster(int x, int y, int z){
+			this.x = x;
+			this.y = y;
+			this.zoom = z;
+		}
+
+		// indexes of ways in store, ordered by adding to get the same result on every run (removed are NO_WAY)
+		private final TIntArrayList ways = new TIntArrayList(4);
+		private int waysCount;
+		// way -> position in ways, created only for clusters with many ways
+		private TIntIntHashMap wayPositions;
+		// location -> the only way at location
+		private final TLongIntHashMap map = new TLongIntHashMap(Constants.DEFAULT_CAPACITY,
+				Constants.DEFAULT_LOAD_FACTOR, Constants.DEFAULT_LONG_NO_ENTRY_VALUE, NO_WAY);
+		// location -> ways at location, created only for crossings
+		private TLongObjectHashMap<TIntArrayList> multiMap;
+
+		public long getPartition() {
+			return RouteGeneralization.getPartition(x << (31 - zoom), y << (31 - zoom));
+		}
+
+		/**
+		 * @return ways of cluster in order of adding
+		 */
+		public int[] getClusterWays() {
+			compactWays();
+			return ways.toArray();
+		}
+
+		public boolean containsWay(int w) {
+			return indexOfWay(w) >= 0;
+		}
+
+		private int indexOfWay(int w) {
+			if (wayPositions != null) {
+				return wayPositions.get(w);
+			}
+			return ways.indexOf(w);
+		}
+
+		private void addClusterWay(int w) {
+			if (indexOfWay(w) >= 0) {
+				return;
+			}
+			ways.add(w);
+			waysCount++;
+			if (wayPositions != null) {
+				wayPositions.put(w, ways.size() - 1);
+			} else if (waysCount > WAY_POSITIONS_LIMIT) {
+				wayPositions = new TIntIntHashMap(Constants.DEFAULT_CAPACITY, Constants.DEFAULT_LOAD_FACTOR,
+						NO_WAY, NO_WAY);
+				compactWays();
+			}
+		}
+
+		private void removeClusterWay(int w) {
+			int p = indexOfWay(w);
+			if (p < 0) {
+				return;
+			}
+			waysCount--;
+			if (wayPositions == null) {
+				ways.removeAt(p);
+			} else {
+				// removed position is skipped till compaction
+				wayPositions.remove(w);
+				ways.setQuick(p, NO_WAY);
+				if (ways.size() > 2 * waysCount + WAY_POSITIONS_LIMIT) {
+					compactWays();
+				}
+			}
+		}
+
+		private void compactWays() {
+			if (waysCount == ways.size() && (wayPositions == null || wayPositions.size() == waysCount)) {
+				return;
+			}
+			int p = 0;
+			for (int i = 0; i < ways.size(); i++) {
+				int w = ways.getQuick(i);
+				if (w != NO_WAY) {
+					ways.setQuick(p, w);
+					if (wayPositions != null) {
+						wayPositions.put(w, p);
+					}
+					p++;
+				}
+			}
+			ways.remove(p, ways.size() - p);
+		}
+
+		/**
+		 * @return the only way at location or NO_WAY (there are no ways or several ways)
+		 */
+		public int getWay(long loc) {
+			return map.get(loc);
+		}
+
+		public TIntArrayList getWays(long loc) {
+			return multiMap == null ? null : multiMap.get(loc);
+		}
+
+		public boolean containsLocation(long loc) {
+			return map.containsKey(loc) || (multiMap != null && multiMap.containsKey(loc));
+		}
+
+		public void replaceWayFromLocation(int delete, long loc, int toReplace){
+			removeClusterWay(delete);
+			TIntArrayList l = getWays(loc);
+			if (l != null) {
+				l.remove(delete);
+				if (!l.contains(toReplace)) {
+					l.add(toReplace);
+				}
+			} else if (map.containsKey(loc)) {
+				int o = map.get(loc);
+				if (delete == o) {
+					map.put(loc, toReplace);
+				} else if (toReplace != o) {
+					addWay(toReplace, loc);
+				}
+			} else {
+				map.put(loc, toReplace);
+			}
+		}
+
+		public void removeWayFromLocation(GeneralizedWayStore store, int delete, int ind, boolean deleteAll) {
+			long loc = store.getLocation(delete, ind);
+			boolean ex = false;
+			if (!deleteAll) {
+				for (int t = 0; t < store.size(delete); t++) {
+					if (t != ind && containsLocation(store.getLocation(delete, t))) {
+						ex = true;
+						break;
+					}
+				}
+			}
+			if (!ex || deleteAll) {
+				removeClusterWay(delete);
+			}
+
+			TIntArrayList l = getWays(loc);
+			if (l != null) {
+				l.remove(delete);
+				if (l.size() == 1) {
+					multiMap.remove(loc);
+					map.put(loc, l.getQuick(0));
+				} else if (l.size() == 0) {
+					multiMap.remove(loc);
+				}
+			} else if (map.get(loc) == delete) {
+				map.remove(loc);
+			}
+		}
+
+		public void addWayFromLocation(int w, long loc) {
+			addClusterWay(w);
+			addWay(w, loc);
+		}
+
+		private void addWay(int w, long loc) {
+			TIntArrayList l = getWays(loc);
+			if (l != null) {
+				if (!l.contains(w)) {
+					l.add(w);
+				}
+			} else if (map.containsKey(loc)) {
+				int o = map.get(loc);
+				if (o != w) {
+					l = new TIntArrayList(2);
+					l.add(o);
+					l.add(w);
+					map.remove(loc);
+					if (multiMap == null) {
+						multiMap = new TLongObjectHashMap<TIntArrayList>();
+					}
+					multiMap.put(loc, l);
+				}
+			} else {
+				map.put(loc, w);
+			}
+		}
+	}
+}
@@ -37,6 +37,12 @@ public class MapRenderingTypesEncoder extends MapRenderingTypes {
 	// stored information to convert from osm tags to int type
 	private List<MapRouteTag> routeTags = new ArrayList<MapRouteTag>();
 	private Map<String, List<EntityConvert>> convertTags = new HashMap<String, List<EntityConvert>>();
+	// converts by tag for each convert type and apply type (index see getCompiledConverts), built once after init
+	private volatile Map<String, EntityConvert[]>[] compiledConverts;
+	// tags with verbose converts are processed with all checks logged
+	private Set<String> verboseConvertTags;
+	// could be disabled to compare results with not compiled converts
+	boolean useCompiledConverts = true;
 	private MapRulType coastlineRuleType;
 	private String regionName;
 	public static final String OSMAND_REGION_NAME_TAG = "osmand_region_name";
@@ -794,73 +800,168 @@ public class MapRenderingTypesEncoder extends MapRenderingTypes {
 
 	protected List<EntityConvert> getApplicableConverts(Map<String, String> tags, EntityType entity,
 			EntityConvertType filterTransform, EntityConvertApplyType filterProcessingType) {
+		if (!useCompiledConverts) {
+			List<EntityConvert> listToConvert = null;
+			for (Map.Entry<String, String> e : tags.entrySet()) {
+				listToConvert = addApplicableConverts(listToConvert, e, tags, entity, filterTransform,
+						filterProcessingType);
+			}
+			return listToConvert;
+		}
+		Map<String, EntityConvert[]> converts = getCompiledConverts(filterTransform, filterProcessingType);
 		List<EntityConvert> listToConvert = null;
 		for (Map.Entry<String, String> e : tags.entrySet()) {
-			List<EntityConvert> list = convertTags.get(e.getKey());
-			if (list != null) {
-				for (EntityConvert ec : list) {
-					String skipMsg = null;
-					if (skipMsg == null && ec.type != filterTransform) {
-						skipMsg = " transform " + filterTransform + "!= " + ec.type + ";";
-					}
-					if (skipMsg == null && !ec.applyToType.contains(filterProcessingType)) {
-						skipMsg = " appFilter " + ec.applyToType + ";";
-					}
-					if (skipMsg == null && !checkConvertValue(ec.fromTag, e.getValue())) {
-						skipMsg = " value mismatch " + e.getValue();
+			if (verboseConvertTags.contains(e.getKey())) {
+				listToConvert = addApplicableConverts(listToConvert, e, tags, entity, filterTransform,
+						filterProcessingType);
+				continue;
+			}
+			EntityConvert[] list = converts.get(e.getKey());
+			if (list == null) {
+				continue;
+			}
+			for (EntityConvert ec : list) {
+				if (!checkConvertValue(ec.fromTag, e.getValue())) {
+					continue;
+				}
+				if (ec.type == EntityConvertType.TAG_COMBINE && !containsAnyTag(tags, ec.fromTagList)) {
+					break;
+				}
+				if (checkConvert(tags, ec, entity)) {
+					if (listToConvert == null) {
+						listToConvert = new ArrayList<EntityConvert>();
 					}
-					if (skipMsg != null) {
-						if (ec.verbose) {
-							log.info("Skip entity convert from '" + ec.fromTag + "' to " + tags + " in " + filterProcessingType + skipMsg);
+					listToConvert.add(ec);
+				}
+			}
+		}
+		return listToConvert;
+	}
+
+	Map<String, List<EntityConvert>> getConvertTags() {
+		checkIfInitNeeded();
+		return convertTags;
+	}
+
+	private static boolean containsAnyTag(Map<String, String> tags, List<TagValuePattern> list) {
+		for (TagValuePattern ft : list) {
+			if (tags.containsKey(ft.tag)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private Map<String, EntityConvert[]> getCompiledConverts(EntityConvertType type, EntityConvertApplyType appType) {
+		Map<String, EntityConvert[]>[] compiled = compiledConverts;
+		if (compiled == null) {
+			compiled = compileConverts();
+		}
+		return compiled[type.ordinal() * EntityConvertApplyType.values().length + appType.ordinal()];
+	}
+
+	@SuppressWarnings("unchecked")
+	private synchronized Map<String, EntityConvert[]>[] compileConverts() {
+		if (compiledConverts != null) {
+			return compiledConverts;
+		}
+		checkIfInitNeeded();
+		int appTypes = EntityConvertApplyType.values().length;
+		Map<String, EntityConvert[]>[] compiled = new Map[EntityConvertType.values().length * appTypes];
+		Set<String> verbose = new HashSet<String>();
+		for (EntityConvertType type : EntityConvertType.values()) {
+			for (EntityConvertApplyType appType : EntityConvertApplyType.values()) {
+				Map<String, EntityConvert[]> converts = new HashMap<String, EntityConvert[]>();
+				for (Entry<String, List<EntityConvert>> e : convertTags.entrySet()) {
+					List<EntityConvert> list = new ArrayList<EntityConvert>();
+					for (EntityConvert ec : e.getValue()) {
+						// keep order of converts, it's important for results
+						if (ec.type == type && ec.applyToType.contains(appType)) {
+							list.add(ec);
 						}
-					} else {
-						String verbose = null;
 						if (ec.verbose) {
-							verbose = "Apply entity convert from '" + ec.fromTag + "' to " + tags + " in " + filterProcessingType;
+							verbose.add(e.getKey());
 						}
-						if (ec.type == EntityConvertType.TAG_COMBINE) {
-							if (ec.fromTagList.size() > 0) {
-								boolean tagPresent = false;
-								String tagListVerbose = "";
-								for (TagValuePattern ft : ec.fromTagList) {
-									tagListVerbose += ft.tag + " ";
-									if (tags.containsKey(ft.tag)) {
-										tagPresent = true;
-										break;
-									}
-								}
-								if (!tagPresent) {
-									if (verbose != null) {
-										verbose = " - has failed due to tags are not contain any +'" + tagListVerbose
-												+ "' for combine";
-										log.info(verbose);
-									}
+					}
+					if (!list.isEmpty()) {
+						converts.put(e.getKey(), list.toArray(new EntityConvert[list.size()]));
+					}
+				}
+				compiled[type.ordinal() * appTypes + appType.ordinal()] = converts;
+			}
+		}
+		verboseConvertTags = verbose;
+		compiledConverts = compiled;
+		return compiled;
+	}
+
+	private List<EntityConvert> addApplicableConverts(List<EntityConvert> listToConvert, Map.Entry<String, String> e,
+			Map<String, String> tags, EntityType entity, EntityConvertType filterTransform,
+			EntityConvertApplyType filterProcessingType) {
+		List<EntityConvert> list = convertTags.get(e.getKey());
+		if (list != null) {
+			for (EntityConvert ec : list) {
+				String skipMsg = null;
+				if (skipMsg == null && ec.type != filterTransform) {
+					skipMsg = " transform " + filterTransform + "!= " + ec.type + ";";
+				}
+				if (skipMsg == null && !ec.applyToType.contains(filterProcessingType)) {
+					skipMsg = " appFilter " + ec.applyToType + ";";
+				}
+				if (skipMsg == null && !checkConvertValue(ec.fromTag, e.getValue())) {
+					skipMsg = " value mismatch " + e.getValue();
+				}
+				if (skipMsg != null) {
+					if (ec.verbose) {
+						log.info("Skip entity convert from '" + ec.fromTag + "' to " + tags + " in " + filterProcessingType + skipMsg);
+					}
+				} else {
+					String verbose = null;
+					if (ec.verbose) {
+						verbose = "Apply entity convert from '" + ec.fromTag + "' to " + tags + " in " + filterProcessingType;
+					}
+					if (ec.type == EntityConvertType.TAG_COMBINE) {
+						if (ec.fromTagList.size() > 0) {
+							boolean tagPresent = false;
+							String tagListVerbose = "";
+							for (TagValuePattern ft : ec.fromTagList) {
+								tagListVerbose += ft.tag + " ";
+								if (tags.containsKey(ft.tag)) {
+									tagPresent = true;
 									break;
 								}
-							} else {
+							}
+							if (!tagPresent) {
 								if (verbose != null) {
-									verbose = " - has failed due to additional list of 'from_tag1, from_tag2, ...' for combine is empty";
+									verbose = " - has failed due to tags are not contain any +'" + tagListVerbose
+											+ "' for combine";
 									log.info(verbose);
 								}
 								break;
 							}
-						}
-						if (checkConvert(tags, ec, entity)) {
-							if (listToConvert == null) {
-								listToConvert = new ArrayList<EntityConvert>();
-							}
-							listToConvert.add(ec);
-							if (verbose != null) {
-								verbose += " - has succeeded";
-							}
 						} else {
 							if (verbose != null) {
-								verbose += " - has failed due to if conditions";
+								verbose = " - has failed due to additional list of 'from_tag1, from_tag2, ...' for combine is empty";
+								log.info(verbose);
 							}
+							break;
+						}
+					}
+					if (checkConvert(tags, ec, entity)) {
+						if (listToConvert == null) {
+							listToConvert = new ArrayList<EntityConvert>();
 						}
+						listToConvert.add(ec);
 						if (verbose != null) {
-							log.info(verbose);
+							verbose += " - has succeeded";
 						}
+					} else {
+						if (verbose != null) {
+							verbose += " - has failed due to if conditions";
+						}
+					}
+					if (verbose != null) {
+						log.info(verbose);
 					}
 				}
 			}
@@ -4,12 +4,17 @@ import java.io.File;
 import java.io.IOException;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.commons.logging.Log;
 import org.xmlpull.v1.XmlPullParserException;
@@ -23,6 +28,7 @@ import net.osmand.binary.MapZooms;
 import net.osmand.data.LatLon;
 import net.osmand.data.Multipolygon;
 import net.osmand.data.MultipolygonBuilder;
+import net.osmand.data.PreparedBoundary;
 import net.osmand.data.QuadRect;
 import net.osmand.data.Ring;
 import net.osmand.impl.ConsoleProgressImplementation;
@@ -39,15 +45,28 @@ public class CombineSRTMIntoFile {
 	private static final Log log = PlatformUtil.getLog(CombineSRTMIntoFile.class);
 	private static final int NUMBER_OF_FILES_TO_PROCESS_ON_DISK = 50;
 	private static final long SIZE_GB_TO_COMBINE_INRAM = 8l << 30; // 8GB
+	private static final String COUNTRY_ARG = "--country=";
 
-	public static void main(String[] args) throws IOException {
+	public static void main(String[] args) throws IOException, InterruptedException {
 		File directoryWithSRTMFiles = new File(args[0]);
 		File directoryWithTargetFiles = new File(args[1]);
 		boolean dryRun = false;
 		boolean feet = false;
 		String filter = null; // mauritius
 		int limit = 1000;
+		int threads = 1;
+		String country = null;
+		String childXmx = null;
+		File fragmentsDir = new File(directoryWithTargetFiles, "srtm-fragments");
+		// arguments of child jvms
+		List<String> childArgs = new ArrayList<String>();
+		childArgs.add(args[0]);
+		childArgs.add(args[1]);
 		for(int i = 2; i < args.length; i++ ){
+			if (!args[i].startsWith("--threads=") && !args[i].startsWith("--filter=")
+					&& !args[i].startsWith("--child-xmx=")) {
+				childArgs.add(args[i]);
+			}
 			if("--dry-run".equals(args[i])) {
 				dryRun = true;
 			} else if("--feet".equals(args[i])) {
@@ -59,6 +78,14 @@ public class CombineSRTMIntoFile {
 				}
 			} else if(args[i].startsWith("--limit=")) {
 				limit = Integer.parseInt(args[i].substring("--limit=".length())); 
+			} else if(args[i].startsWith("--threads=")) {
+				threads = Integer.parseInt(args[i].substring("--threads=".length()));
+			} else if(args[i].startsWith("--fragments=")) {
+				fragmentsDir = new File(args[i].substring("--fragments=".length()));
+			} else if(args[i].startsWith(COUNTRY_ARG)) {
+				country = args[i].substring(COUNTRY_ARG.length());
+			} else if(args[i].startsWith("--child-xmx=")) {
+				childXmx = args[i].substring("--child-xmx=".length());
 			}
 		}
 		OsmandRegions or = new OsmandRegions();
@@ -70,9 +97,12 @@ public class CombineSRTMIntoFile {
 		int boundary = mapIndex.getRule("osmand_region", "boundary");
 		int cnt = 1;
 		Set<String> failedCountries = new HashSet<String>();
+		List<String> parallelCountries = new ArrayList<String>();
+		SRTMTileFragmentCache fragmentCache = new SRTMTileFragmentCache(fragmentsDir);
 		for(String fullName : allCountries.keySet()) {
 			LinkedList<BinaryMapDataObject> lst = allCountries.get(fullName);
-			if (fullName == null || (filter != null && !fullName.contains(filter))) {
+			if (fullName == null || (filter != null && !fullName.contains(filter))
+					|| (country != null && !fullName.equals(country))) {
 				continue;
 			}
 			BinaryMapDataObject rc = null;
@@ -86,21 +116,105 @@ public class CombineSRTMIntoFile {
 			if(rc != null && rc.containsAdditionalType(srtm)) {
 				String dw = rc.getNameByType(downloadName);
 				System.out.println("Region " + fullName + " " + cnt++ + " out of " + allCountries.size());
+				if (threads > 1 && !dryRun) {
+					parallelCountries.add(fullName);
+					continue;
+				}
 				try {
-					process(rc, lst, dw, directoryWithSRTMFiles, directoryWithTargetFiles, dryRun, limit, feet);
+					process(rc, lst, dw, directoryWithSRTMFiles, directoryWithTargetFiles, fragmentCache, dryRun,
+							limit, feet);
 				} catch(Exception e) {
 					failedCountries.add(fullName);
 					e.printStackTrace();
 				}
 			}
 		}
+		if (!parallelCountries.isEmpty()) {
+			if (childXmx == null) {
+				// the same memory as for countries processed in one jvm
+				childXmx = Math.max(256, Runtime.getRuntime().maxMemory() / threads >> 20) + "m";
+			}
+			failedCountries.addAll(processInJvms(CombineSRTMIntoFile.class, childArgs, parallelCountries, threads,
+					childXmx, directoryWithTargetFiles));
+		}
 		if(!failedCountries.isEmpty()) {
 			throw new IllegalStateException("Failed countries " + failedCountries);
 		}
 	}
 
+	/**
+	 * Runs every country in a separate jvm (main class with args and --country=name). Index creators can't run in
+	 * parallel in one jvm: rtree keeps file headers and node cache in static fields. Jvms share only fragments cache
+	 * and .proc locks in target directory. Output of country is written to [country].log in log directory, log is
+	 * deleted if country succeeded.
+	 *
+	 * @return failed countries
+	 */
+	static Set<String> processInJvms(Class<?> mainClass, List<String> args, List<String> countries, int threads,
+			String xmx, File logDirectory) throws IOException, InterruptedException {
+		final Set<String> failedCountries = Collections.synchronizedSet(new TreeSet<String>());
+		logDirectory.mkdirs();
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<?>> futures = new ArrayList<Future<?>>();
+			for (final String country : countries) {
+				final List<String> cmd = new ArrayList<String>();
+				cmd.add(new File(System.getProperty("java.home"), "bin/java").getAbsolutePath());
+				cmd.add("-Xmx" + xmx);
+				cmd.add("-cp");
+				cmd.add(LocalGenerationScheduler.getAbsoluteClassPath());
+				cmd.add(mainClass.getName());
+				cmd.addAll(args);
+				cmd.add(COUNTRY_ARG + country);
+				final File logFile = new File(logDirectory, country + ".log");
+				futures.add(executor.submit(new Runnable() {
+
+					@Override
+					public void run() {
+						ProcessBuilder pb = new ProcessBuilder(cmd);
+						pb.redirectErrorStream(true);
+						pb.redirectOutput(logFile);
+						Process process = null;
+						try {
+							log.info("Start " + country);
+							process = pb.start();
+							int exitCode = process.waitFor();
+							if (exitCode == 0) {
+								log.info("Finished " + country);
+								logFile.delete();
+							} else {
+								log.error("! Failed " + country + " with exit code " + exitCode + " (see " + logFile
+										+ ")");
+								failedCountries.add(country);
+							}
+						} catch (IOException e) {
+							log.error("! Failed to start " + country, e);
+							failedCountries.add(country);
+						} catch (InterruptedException e) {
+							failedCountries.add(country);
+							Thread.currentThread().interrupt();
+						} finally {
+							if (process != null && process.isAlive()) {
+								process.destroy();
+							}
+						}
+					}
+				}));
+			}
+			for (Future<?> f : futures) {
+				f.get();
+			}
+		} catch (ExecutionException e) {
+			throw new IllegalStateException(e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+		return failedCountries;
+	}
+
 	private static void process(BinaryMapDataObject country, List<BinaryMapDataObject> boundaries,
-			String downloadName, File directoryWithSRTMFiles, File directoryWithTargetFiles, boolean dryRun, int limit, boolean feet) throws IOException, SQLException, InterruptedException, IllegalArgumentException, XmlPullParserException {
+			String downloadName, File directoryWithSRTMFiles, File directoryWithTargetFiles,
+			SRTMTileFragmentCache fragmentCache, boolean dryRun, int limit, boolean feet) throws IOException, SQLException, InterruptedException, IllegalArgumentException, XmlPullParserException {
 		final String suffix = "_" + IndexConstants.BINARY_MAP_VERSION + 
 				(feet ? IndexConstants.BINARY_SRTM_FEET_MAP_INDEX_EXT : IndexConstants.BINARY_SRTM_MAP_INDEX_EXT);
 		String name = country.getName();
@@ -200,27 +314,8 @@ public class CombineSRTMIntoFile {
 		if(files.isEmpty()) {
 			System.err.println("!!! WARNING " + name + " because no files are present to index !!!");
 		} else {
-			IndexCreatorSettings settings = new IndexCreatorSettings();
-			settings.indexMap = true;
-			settings.zoomWaySmoothness = 2;
-			settings.boundary = polygon;
-			IndexCreator ic = new IndexCreator(targetFile.getParentFile(), settings);
-
-//			if (srtmFileNames.size() > NUMBER_OF_FILES_TO_PROCESS_ON_DISK || length > SIZE_GB_TO_COMBINE_INRAM) {
-//				ic.setDialects(DBDialect.SQLITE, DBDialect.SQLITE);
-//				System.out.println("SQLITE on disk is used.");
-//			} else {
-				ic.setDialects(DBDialect.SQLITE, DBDialect.SQLITE_IN_MEMORY);
-//				System.out.println("SQLITE in memory used: be aware whole database is stored in memory.");
-//			}
-			ic.setRegionName(name + " contour lines");
-			ic.setMapFileName(targetFile.getName());
-			File nodesDB = new File(targetFile.getParentFile(), dwName + "." + IndexCreator.TEMP_NODES_DB);
-			ic.setNodesDBFile(nodesDB);
-			ic.generateIndexes(files.toArray(new File[files.size()]), new ConsoleProgressImplementation(1), null,
-					MapZooms.parseZooms("11-12;13-"), new MapRenderingTypesEncoder(targetFile.getName()), log, true);
-			nodesDB.delete();
-			RTree.clearCache();
+			indexCountry(fragmentCache, files, polygon, name + " contour lines", targetFile,
+					new File(targetFile.getParentFile(), dwName + "." + IndexCreator.TEMP_NODES_DB));
 		}
 		procFile.delete();
 //		if(length > Integer.MAX_VALUE) {
@@ -234,6 +329,43 @@ public class CombineSRTMIntoFile {
 //		}
 	}
 
+	/**
+	 * Indexes contour lines of srtm tiles inside polygon, rtree cache is cleared after indexing (see processInJvms).
+	 */
+	static void indexCountry(SRTMTileFragmentCache fragmentCache, List<File> files, Multipolygon polygon,
+			String regionName, File targetFile, File nodesDB) throws IOException, SQLException, InterruptedException,
+			XmlPullParserException {
+		// tiles are parsed once and shared by neighbour countries
+		List<File> fragments = new ArrayList<File>();
+		for (File fl : files) {
+			fragments.add(fragmentCache.getFragment(fl));
+		}
+		IndexCreatorSettings settings = new IndexCreatorSettings();
+		settings.indexMap = true;
+		settings.zoomWaySmoothness = 2;
+		settings.boundary = polygon;
+		IndexCreator ic = new IndexCreator(targetFile.getParentFile(), settings);
+
+//		if (srtmFileNames.size() > NUMBER_OF_FILES_TO_PROCESS_ON_DISK || length > SIZE_GB_TO_COMBINE_INRAM) {
+//			ic.setDialects(DBDialect.SQLITE, DBDialect.SQLITE);
+//			System.out.println("SQLITE on disk is used.");
+//		} else {
+			ic.setDialects(DBDialect.SQLITE, DBDialect.SQLITE_IN_MEMORY);
+//			System.out.println("SQLITE in memory used: be aware whole database is stored in memory.");
+//		}
+		ic.setRegionName(regionName);
+		ic.setMapFileName(targetFile.getName());
+		ic.setNodesDBFile(nodesDB);
+		try {
+			ic.generateIndexes(fragmentCache.createSource(fragments, new PreparedBoundary(polygon)),
+					new ConsoleProgressImplementation(1), null, MapZooms.parseZooms("11-12;13-"),
+					new MapRenderingTypesEncoder(targetFile.getName()), log);
+		} finally {
+			nodesDB.delete();
+			RTree.clearCache();
+		}
+	}
+
 	private static Way convertToWay(BinaryMapDataObject o) {
 		Way w = new Way(-1);
 		for(int i = 0; i < o.getPointsLength(); i++) {
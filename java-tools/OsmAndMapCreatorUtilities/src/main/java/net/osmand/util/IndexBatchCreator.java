@@ -56,6 +56,9 @@ import net.osmand.PlatformUtil;
 import net.osmand.binary.MapZooms;
 import net.osmand.impl.ConsoleProgressImplementation;
 import net.osmand.obf.preparation.DBDialect;
+import net.osmand.obf.preparation.IndexCreationMetrics;
+import net.osmand.obf.preparation.IndexCreationMetrics.PhaseSummary;
+import net.osmand.obf.preparation.IndexCreationMetrics.RunReport;
 import net.osmand.obf.preparation.IndexCreator;
 import net.osmand.obf.preparation.IndexCreatorSettings;
 import net.osmand.osm.MapRenderingTypesEncoder;
@@ -83,6 +86,10 @@ public class IndexBatchCreator {
 	protected static final Log log = PlatformUtil.getLog(IndexBatchCreator.class);
 
 	public static final String GEN_LOG_EXT = ".gen.log";
+	public static final String BATCH_REPORT_FILE = "generation.report.json";
+	private static final int SLOWEST_PHASES_TO_LOG = 5;
+	// child jvm of local scheduler: -local-job <batch.xml> <osm file> <region> <map file> <index flags> <work dir>
+	public static final String LOCAL_JOB_ARG = "-local-job";
 
 
 
@@ -154,9 +161,14 @@ public class IndexBatchCreator {
 	File indexDirFiles;
 	File workDir;
 	String srtmDir;
+	File configFile;
+	// parallel local generations in separate jvms (1 - sequentially in the same jvm)
+	int localJobs = 1;
+	long localJobsMemoryMB = -1;
 	
 
 	List<LocalPendingGeneration> localPendingGenerations = new ArrayList<>();
+	List<RunReport> runReports = new ArrayList<>();
 	List<ExternalJobDefinition> externalJobQueues = new ArrayList<>();
 	
 	
@@ -194,7 +206,12 @@ public class IndexBatchCreator {
 			throw new IllegalArgumentException(
 					"Please specify -local parameter or path to batch.xml configuration file as 1 argument.");
 		}
+		if (args[0].equals(LOCAL_JOB_ARG)) {
+			System.exit(runLocalJob(args) ? 0 : 1);
+			return;
+		}
 		String name = args[0];
+		creator.configFile = new File(name);
 		InputStream stream;
 		try {
 			stream = new FileInputStream(name);
@@ -215,8 +232,29 @@ public class IndexBatchCreator {
 		creator.runBatch(countriesToProcess);
 	}
 
+	private static boolean runLocalJob(String[] args) throws Exception {
+		IndexBatchCreator creator = new IndexBatchCreator();
+		InputStream stream = new FileInputStream(args[1]);
+		try {
+			creator.parseProcess(DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(stream));
+		} finally {
+			safeClose(stream, "Error closing stream for " + args[1]);
+		}
+		creator.workDir = new File(args[6]);
+		return creator.generateLocalIndex(new File(args[2]), args[3], args[4], decodeRegionData(args[5]),
+				new LinkedHashSet<String>());
+	}
+
 	public List<RegionCountries> setupProcess(Document doc)
 			throws SAXException, IOException, ParserConfigurationException, XmlPullParserException {
+		Element process = parseProcess(doc);
+		parseJobDefinitions(process.getElementsByTagName("external"), externalJobQueues);
+		List<RegionCountries> countriesToDownload = new ArrayList<RegionCountries>();
+		parseCountriesToDownload(doc, countriesToDownload);
+		return countriesToDownload;
+	}
+
+	private Element parseProcess(Document doc) {
 		NodeList list = doc.getElementsByTagName("process");
 		if (list.getLength() != 1) {
 			throw new IllegalArgumentException("You should specify exactly 1 process element!");
@@ -263,11 +301,13 @@ public class IndexBatchCreator {
 		if (dir != null && new File(dir).exists()) {
 			workDir = new File(dir);
 		}
-
-		parseJobDefinitions(process.getElementsByTagName("external"), externalJobQueues);
-		List<RegionCountries> countriesToDownload = new ArrayList<RegionCountries>();
-		parseCountriesToDownload(doc, countriesToDownload);
-		return countriesToDownload;
+		if (!Algorithms.isEmpty(process.getAttribute("localJobs"))) {
+			localJobs = Integer.parseInt(process.getAttribute("localJobs"));
+		}
+		if (!Algorithms.isEmpty(process.getAttribute("localJobsMemoryMB"))) {
+			localJobsMemoryMB = Long.parseLong(process.getAttribute("localJobsMemoryMB"));
+		}
+		return process;
 	}
 
 	private void parseJobDefinitions(NodeList nodeList, List<ExternalJobDefinition> jobQueues) {
@@ -440,9 +480,15 @@ public class IndexBatchCreator {
 			}
 		}).start();
 		log.info("Generate local " + localPendingGenerations.size() + " maps");
-		for (LocalPendingGeneration lp : localPendingGenerations) {
-			generateLocalIndex(lp.file, lp.regionName, lp.mapFileName, lp.rdata, alreadyGeneratedFiles);
+		int localFailed = 0;
+		if (localJobs > 1 && configFile != null) {
+			localFailed = generateLocalIndexesInParallel();
+		} else {
+			for (LocalPendingGeneration lp : localPendingGenerations) {
+				generateLocalIndex(lp.file, lp.regionName, lp.mapFileName, lp.rdata, alreadyGeneratedFiles);
+			}
 		}
+		writeRunReportsSummary();
 		waitAwsJobsToFinish(TIMEOUT_TO_CHECK_AWS);
 		waitDockerJobsToFinish(TIMEOUT_TO_CHECK_DOCKER);
 		log.info("GENERATING INDEXES FINISHED ");
@@ -452,8 +498,86 @@ public class IndexBatchCreator {
 		if (dockerFailedGenerations.size() > 0) {
 			throw new IllegalStateException("There are " + dockerFailedGenerations.size() + " docker  failed generations");
 		}
+		if (localFailed > 0) {
+			throw new IllegalStateException("There are " + localFailed + " local failed generations");
+		}
+	}
+
+	private int generateLocalIndexesInParallel() {
+		try {
+			LocalGenerationScheduler scheduler = new LocalGenerationScheduler(
+					new File(indexDirFiles, LocalGenerationScheduler.STATE_FILE), localJobs, localJobsMemoryMB);
+			for (LocalPendingGeneration lp : localPendingGenerations) {
+				List<String> args = Arrays.asList(IndexBatchCreator.class.getName(), LOCAL_JOB_ARG,
+						configFile.getAbsolutePath(), lp.file.getAbsolutePath(), lp.regionName, lp.mapFileName,
+						encodeRegionData(lp.rdata), new File(workDir, lp.mapFileName + ".work").getAbsolutePath());
+				scheduler.addJob(lp.mapFileName, lp.file, new File(indexDirFiles, lp.mapFileName),
+						new File(workDir, lp.mapFileName + ".work"), args);
+			}
+			runReports.addAll(scheduler.run());
+			return scheduler.getFailedJobs();
+		} catch (IOException e) {
+			throw new IllegalStateException("Error running local generations: " + e.getMessage(), e);
+		}
+	}
+
+	private static String encodeRegionData(RegionSpecificData rdata) {
+		if (rdata == null) {
+			return "all";
+		}
+		List<String> flags = new ArrayList<>();
+		if (rdata.indexSRTM) {
+			flags.add("srtm");
+		}
+		if (rdata.indexPOI) {
+			flags.add("poi");
+		}
+		if (rdata.indexTransport) {
+			flags.add("transport");
+		}
+		if (rdata.indexAddress) {
+			flags.add("address");
+		}
+		if (rdata.indexMap) {
+			flags.add("map");
+		}
+		if (rdata.indexRouting) {
+			flags.add("routing");
+		}
+		return flags.isEmpty() ? "none" : String.join(",", flags);
+	}
+
+	private static RegionSpecificData decodeRegionData(String flags) {
+		if (flags.equals("all")) {
+			return null;
+		}
+		List<String> l = Arrays.asList(flags.split(","));
+		RegionSpecificData rdata = new RegionSpecificData();
+		rdata.indexSRTM = l.contains("srtm");
+		rdata.indexPOI = l.contains("poi");
+		rdata.indexTransport = l.contains("transport");
+		rdata.indexAddress = l.contains("address");
+		rdata.indexMap = l.contains("map");
+		rdata.indexRouting = l.contains("routing");
+		return rdata;
 	}
 
+	private void writeRunReportsSummary() {
+		if (runReports.isEmpty() || indexDirFiles == null) {
+			return;
+		}
+		try {
+			List<PhaseSummary> phases = IndexCreationMetrics.writeSummary(runReports,
+					new File(indexDirFiles, BATCH_REPORT_FILE));
+			for (int i = 0; i < phases.size() && i < SLOWEST_PHASES_TO_LOG; i++) {
+				PhaseSummary p = phases.get(i);
+				log.info(String.format("Phase %s: total %d s in %d regions, max %d s (%s)", p.name,
+						p.totalWallMs / 1000, p.regions, p.maxWallMs / 1000, p.maxWallRegion));
+			}
+		} catch (IOException e) {
+			log.error("Error writing generation report", e); //$NON-NLS-1$
+		}
+	}
 
 	private void waitDockerJobsToFinish(long timeout) {
 		while (true) {
@@ -960,7 +1084,10 @@ public class IndexBatchCreator {
 		}
 	}
 
-	protected void generateLocalIndex(File file, String regionName, String mapFileName, RegionSpecificData rdata, Set<String> alreadyGeneratedFiles) {
+	/**
+	 * @return false if generation failed
+	 */
+	protected boolean generateLocalIndex(File file, String regionName, String mapFileName, RegionSpecificData rdata, Set<String> alreadyGeneratedFiles) {
 		try {
 			// be independent of previous results
 			RTree.clearCache();
@@ -977,7 +1104,7 @@ public class IndexBatchCreator {
 			final boolean indRouting = indexRouting && (rdata == null || rdata.indexRouting);
 			if(!indAddr && !indPoi && !indTransport && !indMap && !indRouting) {
 				log.warn("! Skip country " + file.getName() + " because nothing to index !");
-				return;
+				return true;
 			}
 			IndexCreatorSettings settings = new IndexCreatorSettings();
 			settings.indexMap = indMap;
@@ -985,13 +1112,14 @@ public class IndexBatchCreator {
 			settings.indexPOI = indPoi;
 			settings.indexTransport = indTransport;
 			settings.indexRouting = indRouting;
+			settings.writeRunReport = true;
 			if(zoomWaySmoothness != null){
 				settings.zoomWaySmoothness = zoomWaySmoothness;
 			}
 			boolean worldMaps = regionName.toLowerCase().contains("world") ;
 			if (worldMaps) {
 				if (regionName.toLowerCase().contains("basemap")) {
-					return;
+					return true;
 				}
 				if (regionName.toLowerCase().contains("seamarks")) {
 					settings.keepOnlySeaObjects = true;
@@ -1061,17 +1189,26 @@ public class IndexBatchCreator {
 				Algorithms.streamCopy(fin, fout);
 				fin.close();
 				fout.close();
+				File report = IndexCreationMetrics.getReportFile(generated);
+				if (report.exists()) {
+					report.renameTo(new File(indexDirFiles, report.getName()));
+				}
+				if (indexCreator.getMetrics() != null) {
+					runReports.add(indexCreator.getMetrics().getReport());
+				}
 				//	logFileName.renameTo(new File(indexDirFiles, logFileName.getName()));
 
 			} catch (Exception e) {
 				log.error("Exception generating indexes for " + file.getName(), e); //$NON-NLS-1$
+				return false;
 			}
 		} catch (OutOfMemoryError e) {
 			System.gc();
 			log.error("OutOfMemory", e);
-
+			return false;
 		}
 		System.gc();
+		return true;
 	}
 
 	protected File[] getSortedFiles(File dir){
@@ -7,7 +7,6 @@ import gnu.trove.map.hash.TLongObjectHashMap;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
@@ -21,8 +20,10 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
@@ -30,7 +31,6 @@ import java.util.regex.Pattern;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipException;
 import java.util.zip.ZipFile;
-import java.util.zip.ZipOutputStream;
 
 
 import net.osmand.IndexConstants;
@@ -54,6 +54,7 @@ import net.osmand.obf.preparation.AbstractIndexPartCreator;
 import net.osmand.obf.preparation.BinaryFileReference;
 import net.osmand.obf.preparation.BinaryMapIndexWriter;
 import net.osmand.obf.preparation.IndexVectorMapCreator;
+import net.osmand.util.ParallelZipWriter.ZipEntryInfo;
 
 import org.apache.commons.logging.Log;
 
@@ -89,6 +90,7 @@ import com.jcraft.jsch.Session;
 public class IndexUploader {
 
 	protected static final Log log = PlatformUtil.getLog(IndexUploader.class);
+	private static final String COMPRESSION_LEVEL_USAGE = "Usage: --zl=<level 0-9>, --zl-<file suffix>=<level 0-9> (f.e. --zl-srtm.obf=6)";
 	private final static double MIN_SIZE_TO_UPLOAD = 0.001d;
 
 	private final static int BUFFER_SIZE = 1 << 15;
@@ -141,6 +143,12 @@ public class IndexUploader {
 	private boolean depthProcess;
 	private boolean mapsProcess;
 	private int numberOfThreads = 2;
+	// threads to compress blocks of large files (shared by all files)
+	private int compressThreads = Runtime.getRuntime().availableProcessors();
+	private int compressionLevel = 9;
+	// compression level by file name suffix (longest matching suffix is used), f.e. --zl-srtm.obf=6
+	private Map<String, Integer> compressionLevels = new HashMap<String, Integer>();
+	private ExecutorService compressExecutor;
 
 	public IndexUploader(String path, String targetPath) throws IndexUploadException {
 		directory = new File(path);
@@ -220,6 +228,20 @@ public class IndexUploader {
 			} else if (args[start].startsWith("--nt=")) {
 				numberOfThreads = Integer.parseInt(args[start].substring("--nt=".length()));
 				start++;
+			} else if (args[start].startsWith("--zt=")) {
+				compressThreads = Integer.parseInt(args[start].substring("--zt=".length()));
+				start++;
+			} else if (args[start].startsWith("--zl=")) {
+				compressionLevel = parseCompressionLevel(args[start], args[start].substring("--zl=".length()));
+				start++;
+			} else if (args[start].startsWith("--zl-")) {
+				int eq = args[start].indexOf('=');
+				if (eq <= "--zl-".length()) {
+					throw new IndexUploadException("Wrong parameter " + args[start] + ". " + COMPRESSION_LEVEL_USAGE);
+				}
+				String suffix = args[start].substring("--zl-".length(), eq);
+				compressionLevels.put(suffix, parseCompressionLevel(args[start], args[start].substring(eq + 1)));
+				start++;
 			} else if (args[start].startsWith("--wiki")) {
 				wikiProcess = true;
 				start++;
@@ -339,6 +361,9 @@ public class IndexUploader {
 			uploadCredentials.connect();
 			File[] listFiles = directory.listFiles();
 			ExecutorService service = Executors.newFixedThreadPool(numberOfThreads);
+			if (compressThreads > 1) {
+				compressExecutor = Executors.newFixedThreadPool(compressThreads);
+			}
 			for (File f : listFiles) {
 				if (checkFileNeedToBeUploaded(f)) {
 					service.submit(new Runnable() {
@@ -360,6 +385,10 @@ public class IndexUploader {
 		} catch (InterruptedException e) {
 			log.error("Await failed: " + e.getMessage(), e);
 		} finally {
+			if (compressExecutor != null) {
+				compressExecutor.shutdownNow();
+				compressExecutor = null;
+			}
 			uploadCredentials.disconnect();
 		}
 	}
@@ -393,7 +422,8 @@ public class IndexUploader {
 					skip = true;
 				} else {
 					File zFile = new File(f.getParentFile(), unzippedFolder.getName() + ".zip");
-					zip(unzippedFolder, zFile, description, timestampCreated);
+					zip(unzippedFolder, zFile, description, timestampCreated, getCompressionLevel(fileName),
+							compressExecutor, compressThreads);
 					uploadIndex(f, zFile, description, uploadCredentials);
 				}
 			} finally {
@@ -439,16 +469,52 @@ public class IndexUploader {
 		return true;
 	}
 
+	private static int parseCompressionLevel(String arg, String value) throws IndexUploadException {
+		try {
+			int level = Integer.parseInt(value);
+			if (level >= 0 && level <= 9) {
+				return level;
+			}
+		} catch (NumberFormatException e) {
+			// usage is reported
+		}
+		throw new IndexUploadException("Wrong compression level " + arg + ". " + COMPRESSION_LEVEL_USAGE);
+	}
+
+	private int getCompressionLevel(String fileName) {
+		String name = fileName.endsWith(".zip") ? fileName.substring(0, fileName.length() - ".zip".length()) : fileName;
+		// longest suffix is more specific: srtm.obf over obf
+		int level = compressionLevel;
+		int matched = -1;
+		for (Map.Entry<String, Integer> e : compressionLevels.entrySet()) {
+			if (e.getKey().length() > matched && name.endsWith("." + e.getKey())) {
+				level = e.getValue();
+				matched = e.getKey().length();
+			}
+		}
+		return level;
+	}
+
 	public static File zip(File folder, File zFile, String description, long lastModifiedTime) throws OneFileException {
+		return zip(folder, zFile, description, lastModifiedTime, 9, null, 1);
+	}
+
+	/**
+	 * Zips file or all files of folder, large files are compressed by blocks on executor (if not null)
+	 */
+	public static File zip(File folder, File zFile, String description, long lastModifiedTime, int level,
+			ExecutorService executor, int threads) throws OneFileException {
 		try {
-			ZipOutputStream zout = new ZipOutputStream(new FileOutputStream(zFile));
-			zout.setLevel(9);
-			Collection<File> lfs = folder.isFile() ? Collections.singleton(folder) : Arrays.asList(folder.listFiles());
-			for (File f : lfs) {
-				log.info("Zipping to file:" + zFile.getName() + " with desc:" + description);
-				putZipEntry(description, "", lastModifiedTime, zout, f);
+			ParallelZipWriter zout = new ParallelZipWriter(zFile, level, executor, threads);
+			try {
+				Collection<File> lfs = folder.isFile() ? Collections.singleton(folder) : Arrays.asList(folder.listFiles());
+				for (File f : lfs) {
+					log.info("Zipping to file:" + zFile.getName() + " with desc:" + description);
+					putZipEntry(description, "", lastModifiedTime, zout, f);
+				}
+			} finally {
+				zout.close();
 			}
-			Algorithms.closeStream(zout);
 			zFile.setLastModified(lastModifiedTime);
 		} catch (IOException e) {
 			throw new OneFileException("cannot zip file:" + e.getMessage());
@@ -457,21 +523,16 @@ public class IndexUploader {
 	}
 
 	private static void putZipEntry(String description, String parentEntry, long lastModifiedTime,
-			ZipOutputStream zout, File f) throws IOException, FileNotFoundException {
+			ParallelZipWriter zout, File f) throws IOException {
 		if (f.isDirectory()) {
 			for (File lf : f.listFiles()) {
 				putZipEntry(description, parentEntry + f.getName() + "/", lastModifiedTime, zout, lf);
 			}
 		} else {
 			log.info("Zipping file:" + f.getName() + " with desc:" + description);
-			ZipEntry zEntry = new ZipEntry(parentEntry + f.getName());
-			zEntry.setSize(f.length());
-			zEntry.setComment(description);
-			zEntry.setTime(lastModifiedTime);
-			zout.putNextEntry(zEntry);
-			FileInputStream is = new FileInputStream(f);
-			Algorithms.streamCopy(is, zout);
-			Algorithms.closeStream(is);
+			ZipEntryInfo e = zout.putFile(parentEntry + f.getName(), f, lastModifiedTime, description);
+			log.info(MessageFormat.format("Zipped file {0}: {1,number,#} -> {2,number,#} bytes, crc32={3}, md5={4}",
+					f.getName(), e.getSize(), e.getCompressedSize(), Long.toHexString(e.getCrc()), e.getMd5()));
 		}
 	}
 
@@ -0,0 +1,397 @@
+package net.osmand.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import net.osmand.PlatformUtil;
+import net.osmand.obf.preparation.IndexCreationMetrics;
+import net.osmand.obf.preparation.IndexCreationMetrics.RunReport;
+
+/**
+ * Runs local generations in separate jvms, as many in parallel as fit into memory and jobs budget (largest first).
+ * Heap of a job is estimated from the size of osm file and heap peaks of previous runs. Statuses and history are
+ * persisted in the state file, so interrupted or partially failed batch could be resumed without regenerating
+ * finished regions.
+ */
+public class LocalGenerationScheduler {
+
+	private static final Log log = PlatformUtil.getLog(LocalGenerationScheduler.class);
+
+	public static final String STATE_FILE = "local-generation.state.json";
+	// jvm exit code with -XX:+ExitOnOutOfMemoryError
+	public static final int EXIT_CODE_OOM = 3;
+
+	private static final long MB = 1 << 20;
+	private static final long POLL_INTERVAL = 5000;
+	private static final int MAX_ATTEMPTS = 3;
+	private static final long MIN_JOB_HEAP_MB = 1024;
+	// sqlite caches, metaspace and thread stacks are outside of heap
+	private static final long JOB_NATIVE_MEMORY_MB = 512;
+	// used without any history: peak heap per mb of osm.pbf
+	private static final double DEFAULT_HEAP_PER_INPUT_MB = 4;
+	private static final double HEAP_RESERVE = 1.3;
+	private static final double OOM_HEAP_INCREASE = 1.5;
+
+	public enum JobStatus {
+		PENDING, RUNNING, DONE, FAILED
+	}
+
+	public static class JobState {
+		public String name;
+		public String inputFile;
+		public long inputSize;
+		public long inputModified;
+		public JobStatus status = JobStatus.PENDING;
+		public int attempts;
+		// -Xmx of the last attempt
+		public long heapMb;
+		public long started;
+		public long finished;
+		public long wallMs;
+		// history of the last successful run
+		public long peakHeapMb;
+		public long peakHeapInputSize;
+	}
+
+	private static class SchedulerState {
+		Map<String, JobState> jobs = new LinkedHashMap<>();
+	}
+
+	private static class LocalJob {
+		JobState state;
+		File result;
+		File jobDir;
+		List<String> args;
+		Process process;
+	}
+
+	private final File stateFile;
+	private final int maxJobs;
+	private final long memoryBudgetMb;
+	private final List<String> jvmArgs = new ArrayList<>();
+	private final SchedulerState state;
+	private final List<LocalJob> jobs = new ArrayList<>();
+	private final List<LocalJob> running = new ArrayList<>();
+
+	/**
+	 * @param maxJobs maximum number of parallel jvms (cpu budget)
+	 * @param memoryBudgetMb memory for all jobs, if <= 0 80% of physical memory is used
+	 */
+	public LocalGenerationScheduler(File stateFile, int maxJobs, long memoryBudgetMb) throws IOException {
+		this.stateFile = stateFile;
+		this.maxJobs = Math.max(1, maxJobs);
+		this.memoryBudgetMb = memoryBudgetMb > 0 ? memoryBudgetMb : getDefaultMemoryBudgetMb();
+		this.state = readState(stateFile);
+	}
+
+	public void addJvmArg(String arg) {
+		jvmArgs.add(arg);
+	}
+
+	/**
+	 * @param result file expected in the end of generation (to check finished jobs on resume)
+	 * @param jobDir separate working directory of the job (cleaned before start, deleted after success)
+	 * @param args main class and its arguments for child jvm
+	 * @return false if the job was already done in previous run with the same input
+	 */
+	public boolean addJob(String name, File input, File result, File jobDir, List<String> args) {
+		JobState js = state.jobs.get(name);
+		if (js == null) {
+			js = new JobState();
+			js.name = name;
+			state.jobs.put(name, js);
+		} else if (js.status == JobStatus.DONE && js.inputSize == input.length()
+				&& js.inputModified == input.lastModified() && result.exists()
+				&& result.lastModified() >= js.started) {
+			log.info("Skip " + name + " already generated at " + new Date(js.finished));
+			return false;
+		}
+		js.inputFile = input.getAbsolutePath();
+		js.inputSize = input.length();
+		js.inputModified = input.lastModified();
+		js.status = JobStatus.PENDING;
+		js.attempts = 0;
+		js.heapMb = estimateHeapMb(js);
+		LocalJob job = new LocalJob();
+		job.state = js;
+		job.result = result;
+		job.jobDir = jobDir;
+		job.args = args;
+		jobs.add(job);
+		return true;
+	}
+
+	/**
+	 * Runs all added jobs and waits for them. Returns run reports of successful jobs (if they were written).
+	 */
+	public List<RunReport> run() throws IOException {
+		List<RunReport> reports = new ArrayList<>();
+		List<LocalJob> queue = new ArrayList<>(jobs);
+		sortLargestFirst(queue);
+		writeState();
+		log.info(String.format("Run %d local jobs: max %d parallel jobs, memory budget %d MB", queue.size(), maxJobs,
+				memoryBudgetMb));
+		Thread destroyOnExit = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				synchronized (running) {
+					for (LocalJob j : running) {
+						j.process.destroy();
+					}
+				}
+			}
+		});
+		Runtime.getRuntime().addShutdownHook(destroyOnExit);
+		try {
+			while (!queue.isEmpty() || !running.isEmpty()) {
+				startJobs(queue);
+				try {
+					Thread.sleep(POLL_INTERVAL);
+				} catch (InterruptedException e) {
+				}
+				checkJobs(queue, reports);
+			}
+		} finally {
+			Runtime.getRuntime().removeShutdownHook(destroyOnExit);
+		}
+		for (LocalJob j : jobs) {
+			if (j.state.status == JobStatus.FAILED) {
+				log.error("! Failed local generation " + j.state.name + " (see " + j.jobDir + ")");
+			}
+		}
+		int failed = getFailedJobs();
+		log.info(String.format("Local jobs finished: %d succeeded, %d failed", jobs.size() - failed, failed));
+		return reports;
+	}
+
+	public int getFailedJobs() {
+		int failed = 0;
+		for (LocalJob j : jobs) {
+			if (j.state.status == JobStatus.FAILED) {
+				failed++;
+			}
+		}
+		return failed;
+	}
+
+	private void startJobs(List<LocalJob> queue) throws IOException {
+		long usedMemory = 0;
+		for (LocalJob j : running) {
+			usedMemory += j.state.heapMb + JOB_NATIVE_MEMORY_MB;
+		}
+		Iterator<LocalJob> it = queue.iterator();
+		while (it.hasNext() && running.size() < maxJobs) {
+			LocalJob j = it.next();
+			long memory = j.state.heapMb + JOB_NATIVE_MEMORY_MB;
+			// the largest job is started alone even if estimation exceeds the budget
+			if (running.isEmpty() || usedMemory + memory <= memoryBudgetMb) {
+				it.remove();
+				startJob(j);
+				usedMemory += memory;
+			}
+		}
+	}
+
+	private void startJob(LocalJob j) throws IOException {
+		if (j.jobDir.exists()) {
+			Algorithms.removeAllFiles(j.jobDir);
+		}
+		j.jobDir.mkdirs();
+		List<String> cmd = new ArrayList<>();
+		cmd.add(new File(System.getProperty("java.home"), "bin/java").getAbsolutePath());
+		cmd.add("-Xmx" + j.state.heapMb + "m");
+		cmd.add("-XX:+ExitOnOutOfMemoryError");
+		cmd.addAll(jvmArgs);
+		cmd.add("-cp");
+		cmd.add(getAbsoluteClassPath());
+		cmd.addAll(j.args);
+		ProcessBuilder pb = new ProcessBuilder(cmd);
+		pb.directory(j.jobDir);
+		pb.redirectErrorStream(true);
+		pb.redirectOutput(ProcessBuilder.Redirect.appendTo(new File(j.jobDir, "job.log")));
+		j.state.attempts++;
+		j.state.started = System.currentTimeMillis();
+		j.state.status = JobStatus.RUNNING;
+		log.info(String.format("Start local job %s (attempt %d, input %d MB, heap %d MB)", j.state.name,
+				j.state.attempts, j.state.inputSize / MB, j.state.heapMb));
+		synchronized (running) {
+			j.process = pb.start();
+			running.add(j);
+		}
+		writeState();
+	}
+
+	private void checkJobs(List<LocalJob> queue, List<RunReport> reports) throws IOException {
+		Iterator<LocalJob> it = running.iterator();
+		boolean changed = false;
+		while (it.hasNext()) {
+			LocalJob j = it.next();
+			if (j.process.isAlive()) {
+				continue;
+			}
+			synchronized (running) {
+				it.remove();
+			}
+			changed = true;
+			JobState js = j.state;
+			js.finished = System.currentTimeMillis();
+			js.wallMs = js.finished - js.started;
+			int exitCode = j.process.exitValue();
+			if (exitCode == 0) {
+				js.status = JobStatus.DONE;
+				RunReport report = readReport(j.result);
+				if (report != null) {
+					reports.add(report);
+					js.peakHeapMb = report.peakHeapMb;
+					js.peakHeapInputSize = js.inputSize;
+				}
+				log.info(String.format("Finished local job %s in %d s", js.name, js.wallMs / 1000));
+				Algorithms.removeAllFiles(j.jobDir);
+			} else if (exitCode == EXIT_CODE_OOM && js.attempts < MAX_ATTEMPTS && js.heapMb < memoryBudgetMb) {
+				js.heapMb = Math.min((long) (js.heapMb * OOM_HEAP_INCREASE), memoryBudgetMb);
+				js.status = JobStatus.PENDING;
+				log.warn(String.format("Local job %s is out of memory, retry with heap %d MB", js.name, js.heapMb));
+				queue.add(j);
+				sortLargestFirst(queue);
+			} else {
+				js.status = JobStatus.FAILED;
+				log.error(String.format("! Failed local job %s with exit code %d", js.name, exitCode));
+			}
+		}
+		if (changed) {
+			writeState();
+		}
+	}
+
+	// child jvm runs in job directory
+	static String getAbsoluteClassPath() {
+		StringBuilder cp = new StringBuilder();
+		for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+			if (cp.length() > 0) {
+				cp.append(File.pathSeparator);
+			}
+			cp.append(new File(entry).getAbsolutePath());
+		}
+		return cp.toString();
+	}
+
+	private long estimateHeapMb(JobState js) {
+		double heapPerInputMb;
+		if (js.peakHeapMb > 0 && js.peakHeapInputSize > 0) {
+			heapPerInputMb = js.peakHeapMb / toMb(js.peakHeapInputSize);
+		} else {
+			heapPerInputMb = getMedianHeapPerInputMb();
+		}
+		long heap = (long) (heapPerInputMb * toMb(js.inputSize) * HEAP_RESERVE);
+		return Math.max(MIN_JOB_HEAP_MB, Math.min(heap, memoryBudgetMb - JOB_NATIVE_MEMORY_MB));
+	}
+
+	private double getMedianHeapPerInputMb() {
+		List<Double> ratios = new ArrayList<>();
+		for (JobState js : state.jobs.values()) {
+			if (js.peakHeapMb > 0 && js.peakHeapInputSize > 0) {
+				ratios.add(js.peakHeapMb / toMb(js.peakHeapInputSize));
+			}
+		}
+		if (ratios.isEmpty()) {
+			return DEFAULT_HEAP_PER_INPUT_MB;
+		}
+		Collections.sort(ratios);
+		return ratios.get(ratios.size() / 2);
+	}
+
+	private static double toMb(long size) {
+		return Math.max(1, size / (double) MB);
+	}
+
+	private static void sortLargestFirst(List<LocalJob> queue) {
+		Collections.sort(queue, new Comparator<LocalJob>() {
+			@Override
+			public int compare(LocalJob o1, LocalJob o2) {
+				int c = Long.compare(o2.state.heapMb, o1.state.heapMb);
+				return c != 0 ? c : Long.compare(o2.state.inputSize, o1.state.inputSize);
+			}
+		});
+	}
+
+	private RunReport readReport(File result) {
+		File reportFile = IndexCreationMetrics.getReportFile(result);
+		if (!reportFile.exists()) {
+			return null;
+		}
+		try {
+			return IndexCreationMetrics.readReport(reportFile);
+		} catch (IOException | RuntimeException e) {
+			log.warn("Error reading run report " + reportFile + ": " + e.getMessage());
+			return null;
+		}
+	}
+
+	private static long getDefaultMemoryBudgetMb() {
+		OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+		long total = Runtime.getRuntime().maxMemory();
+		if (os instanceof com.sun.management.OperatingSystemMXBean) {
+			total = ((com.sun.management.OperatingSystemMXBean) os).getTotalPhysicalMemorySize();
+		}
+		return total / MB * 4 / 5;
+	}
+
+	private static SchedulerState readState(File stateFile) throws IOException {
+		SchedulerState st = null;
+		if (stateFile.exists()) {
+			Reader reader = new InputStreamReader(new FileInputStream(stateFile), StandardCharsets.UTF_8);
+			try {
+				st = new Gson().fromJson(reader, SchedulerState.class);
+			} finally {
+				reader.close();
+			}
+		}
+		if (st == null) {
+			st = new SchedulerState();
+		}
+		for (JobState js : st.jobs.values()) {
+			// batch was interrupted
+			if (js.status == JobStatus.RUNNING) {
+				js.status = JobStatus.PENDING;
+			}
+		}
+		return st;
+	}
+
+	private void writeState() throws IOException {
+		File tmp = new File(stateFile.getParentFile(), stateFile.getName() + ".tmp");
+		Gson gson = new GsonBuilder().setPrettyPrinting().create();
+		Writer writer = new OutputStreamWriter(new FileOutputStream(tmp), StandardCharsets.UTF_8);
+		try {
+			gson.toJson(state, writer);
+		} finally {
+			writer.close();
+		}
+		stateFile.delete();
+		if (!tmp.renameTo(stateFile)) {
+			throw new IOException("Can't write state file " + stateFile);
+		}
+	}
+}
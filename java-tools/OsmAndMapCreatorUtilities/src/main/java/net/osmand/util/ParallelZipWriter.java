@@ -0,0 +1,386 @@
+package net.osmand.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes zip file where large entries are deflated by independent blocks in parallel (like pigz).
+ * Every block is compressed with the last 32 KB of previous block as dictionary and ended with sync flush,
+ * so concatenated blocks form one deflate stream readable by any zip implementation.
+ * Crc32 and md5 of entries are calculated in the same pass while file is read.
+ */
+public class ParallelZipWriter implements Closeable {
+
+	public static final int DEFAULT_BLOCK_SIZE = 1 << 20;
+	// smaller files are compressed in the calling thread
+	private static final int PARALLEL_MIN_BLOCKS = 8;
+	private static final int DICTIONARY_SIZE = 32 * 1024;
+	private static final long ZIP64_LIMIT = 0xFFFFFFFFL;
+	private static final int ZIP64_EXTRA_ID = 0x0001;
+	private static final int FLAG_UTF8 = 0x0800;
+	private static final int METHOD_DEFLATED = 8;
+	private static final int VERSION = 20;
+	private static final int VERSION_ZIP64 = 45;
+
+	public static class ZipEntryInfo {
+		private final String name;
+		private final String comment;
+		private final long dosTime;
+		private long offset;
+		private long crc;
+		private long size;
+		private long compressedSize;
+		private String md5;
+
+		ZipEntryInfo(String name, String comment, long time) {
+			this.name = name;
+			this.comment = comment;
+			this.dosTime = toDosTime(time);
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public long getCrc() {
+			return crc;
+		}
+
+		public long getSize() {
+			return size;
+		}
+
+		public long getCompressedSize() {
+			return compressedSize;
+		}
+
+		public String getMd5() {
+			return md5;
+		}
+
+		boolean isZip64() {
+			return size >= ZIP64_LIMIT || compressedSize >= ZIP64_LIMIT || offset >= ZIP64_LIMIT;
+		}
+	}
+
+	private final RandomAccessFile raf;
+	private final int level;
+	private final ExecutorService executor;
+	private final int window;
+	private int blockSize = DEFAULT_BLOCK_SIZE;
+	private final List<ZipEntryInfo> entries = new ArrayList<ZipEntryInfo>();
+
+	/**
+	 * @param executor pool to compress blocks of large files (null to compress in calling thread)
+	 * @param threads number of threads of executor (limits blocks kept in memory)
+	 */
+	public ParallelZipWriter(File zFile, int level, ExecutorService executor, int threads) throws IOException {
+		this.raf = new RandomAccessFile(zFile, "rw");
+		this.raf.setLength(0);
+		this.level = level;
+		this.executor = executor;
+		this.window = 2 * Math.max(1, threads);
+	}
+
+	public void setBlockSize(int blockSize) {
+		this.blockSize = Math.max(2 * DICTIONARY_SIZE, blockSize);
+	}
+
+	public List<ZipEntryInfo> getEntries() {
+		return entries;
+	}
+
+	public ZipEntryInfo putFile(String name, File f, long time, String comment) throws IOException {
+		ZipEntryInfo e = new ZipEntryInfo(name, comment, time);
+		e.offset = raf.getFilePointer();
+		// deflate could slightly expand incompressible data
+		long length = f.length();
+		boolean zip64 = length + length / 1000 + blockSize >= ZIP64_LIMIT;
+		byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+		writeLocalHeader(e, nameBytes, zip64);
+		InputStream is = new FileInputStream(f);
+		try {
+			compress(e, is, executor != null && length >= (long) PARALLEL_MIN_BLOCKS * blockSize);
+		} finally {
+			is.close();
+		}
+		long end = raf.getFilePointer();
+		// write real sizes and crc to local header
+		raf.seek(e.offset + 14);
+		raf.write(ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN).putInt((int) e.crc)
+				.putInt(zip64 ? -1 : (int) e.compressedSize).putInt(zip64 ? -1 : (int) e.size).array());
+		if (zip64) {
+			raf.seek(e.offset + 30 + nameBytes.length + 4);
+			raf.write(ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN).putLong(e.size)
+					.putLong(e.compressedSize).array());
+		} else if (e.size >= ZIP64_LIMIT || e.compressedSize >= ZIP64_LIMIT) {
+			throw new IOException("Unexpected size of zip entry " + name);
+		}
+		raf.seek(end);
+		entries.add(e);
+		return e;
+	}
+
+	private void compress(ZipEntryInfo e, InputStream is, boolean parallel) throws IOException {
+		CRC32 crc = new CRC32();
+		MessageDigest md5;
+		try {
+			md5 = MessageDigest.getInstance("MD5");
+		} catch (NoSuchAlgorithmException ex) {
+			throw new IllegalStateException(ex);
+		}
+		LinkedList<Future<byte[]>> queue = new LinkedList<Future<byte[]>>();
+		try {
+			byte[] dictionary = null;
+			byte[] block = readBlock(is);
+			while (true) {
+				byte[] next = block.length < blockSize ? null : readBlock(is);
+				boolean last = next == null || next.length == 0;
+				crc.update(block);
+				md5.update(block);
+				e.size += block.length;
+				DeflateBlock task = new DeflateBlock(block, dictionary, level, last);
+				if (parallel) {
+					queue.add(executor.submit(task));
+					while (queue.size() > window) {
+						writeBlock(e, getResult(queue.poll()));
+					}
+				} else {
+					writeBlock(e, task.call());
+				}
+				if (last) {
+					break;
+				}
+				dictionary = Arrays.copyOfRange(block, Math.max(0, block.length - DICTIONARY_SIZE), block.length);
+				block = next;
+			}
+			while (!queue.isEmpty()) {
+				writeBlock(e, getResult(queue.poll()));
+			}
+		} finally {
+			for (Future<byte[]> f : queue) {
+				f.cancel(true);
+			}
+		}
+		e.crc = crc.getValue();
+		e.md5 = String.format("%032x", new BigInteger(1, md5.digest()));
+	}
+
+	private void writeBlock(ZipEntryInfo e, byte[] compressed) throws IOException {
+		raf.write(compressed);
+		e.compressedSize += compressed.length;
+	}
+
+	private byte[] readBlock(InputStream is) throws IOException {
+		byte[] block = new byte[blockSize];
+		int len = 0;
+		int read;
+		while (len < blockSize && (read = is.read(block, len, blockSize - len)) != -1) {
+			len += read;
+		}
+		return len == blockSize ? block : Arrays.copyOf(block, len);
+	}
+
+	private static byte[] getResult(Future<byte[]> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			throw new IOException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		}
+	}
+
+	private static class DeflateBlock implements Callable<byte[]> {
+		private final byte[] data;
+		private final byte[] dictionary;
+		private final int level;
+		private final boolean last;
+
+		DeflateBlock(byte[] data, byte[] dictionary, int level, boolean last) {
+			this.data = data;
+			this.dictionary = dictionary;
+			this.level = level;
+			this.last = last;
+		}
+
+		@Override
+		public byte[] call() {
+			Deflater def = new Deflater(level, true);
+			try {
+				if (dictionary != null) {
+					def.setDictionary(dictionary);
+				}
+				def.setInput(data);
+				ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + 64);
+				byte[] buf = new byte[64 * 1024];
+				if (last) {
+					def.finish();
+					while (!def.finished()) {
+						out.write(buf, 0, def.deflate(buf));
+					}
+				} else {
+					// sync flush aligns block to byte boundary without final bit
+					int n;
+					do {
+						n = def.deflate(buf, 0, buf.length, Deflater.SYNC_FLUSH);
+						out.write(buf, 0, n);
+					} while (n == buf.length);
+				}
+				return out.toByteArray();
+			} finally {
+				def.end();
+			}
+		}
+	}
+
+	private void writeLocalHeader(ZipEntryInfo e, byte[] nameBytes, boolean zip64) throws IOException {
+		ByteBuffer b = ByteBuffer.allocate(30 + nameBytes.length + (zip64 ? 20 : 0)).order(ByteOrder.LITTLE_ENDIAN);
+		b.putInt(0x04034b50);
+		b.putShort((short) (zip64 ? VERSION_ZIP64 : VERSION));
+		b.putShort((short) FLAG_UTF8);
+		b.putShort((short) METHOD_DEFLATED);
+		b.putInt((int) e.dosTime);
+		// crc and sizes are written after data
+		b.putInt(0);
+		b.putInt(zip64 ? -1 : 0);
+		b.putInt(zip64 ? -1 : 0);
+		b.putShort((short) nameBytes.length);
+		b.putShort((short) (zip64 ? 20 : 0));
+		b.put(nameBytes);
+		if (zip64) {
+			b.putShort((short) ZIP64_EXTRA_ID);
+			b.putShort((short) 16);
+			b.putLong(0);
+			b.putLong(0);
+		}
+		raf.write(b.array());
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			long cdOffset = raf.getFilePointer();
+			boolean zip64 = entries.size() >= 0xFFFF || cdOffset >= ZIP64_LIMIT;
+			for (ZipEntryInfo e : entries) {
+				writeCentralHeader(e);
+				zip64 |= e.isZip64();
+			}
+			long cdEnd = raf.getFilePointer();
+			long cdSize = cdEnd - cdOffset;
+			if (zip64) {
+				ByteBuffer b = ByteBuffer.allocate(56 + 20).order(ByteOrder.LITTLE_ENDIAN);
+				// zip64 end of central directory record
+				b.putInt(0x06064b50);
+				b.putLong(44);
+				b.putShort((short) VERSION_ZIP64);
+				b.putShort((short) VERSION_ZIP64);
+				b.putInt(0);
+				b.putInt(0);
+				b.putLong(entries.size());
+				b.putLong(entries.size());
+				b.putLong(cdSize);
+				b.putLong(cdOffset);
+				// locator
+				b.putInt(0x07064b50);
+				b.putInt(0);
+				b.putLong(cdEnd);
+				b.putInt(1);
+				raf.write(b.array());
+			}
+			ByteBuffer b = ByteBuffer.allocate(22).order(ByteOrder.LITTLE_ENDIAN);
+			b.putInt(0x06054b50);
+			b.putShort((short) 0);
+			b.putShort((short) 0);
+			b.putShort((short) Math.min(entries.size(), 0xFFFF));
+			b.putShort((short) Math.min(entries.size(), 0xFFFF));
+			b.putInt(cdSize >= ZIP64_LIMIT ? -1 : (int) cdSize);
+			b.putInt(cdOffset >= ZIP64_LIMIT ? -1 : (int) cdOffset);
+			b.putShort((short) 0);
+			raf.write(b.array());
+			raf.setLength(raf.getFilePointer());
+		} finally {
+			raf.close();
+		}
+	}
+
+	private void writeCentralHeader(ZipEntryInfo e) throws IOException {
+		byte[] nameBytes = e.name.getBytes(StandardCharsets.UTF_8);
+		byte[] commentBytes = e.comment == null ? new byte[0] : e.comment.getBytes(StandardCharsets.UTF_8);
+		ByteBuffer extra = ByteBuffer.allocate(28).order(ByteOrder.LITTLE_ENDIAN);
+		if (e.isZip64()) {
+			extra.putShort((short) ZIP64_EXTRA_ID);
+			extra.putShort((short) 0);
+			if (e.size >= ZIP64_LIMIT) {
+				extra.putLong(e.size);
+			}
+			if (e.compressedSize >= ZIP64_LIMIT) {
+				extra.putLong(e.compressedSize);
+			}
+			if (e.offset >= ZIP64_LIMIT) {
+				extra.putLong(e.offset);
+			}
+			extra.putShort(2, (short) (extra.position() - 4));
+		}
+		int extraLength = extra.position();
+		ByteBuffer b = ByteBuffer.allocate(46 + nameBytes.length + extraLength + commentBytes.length)
+				.order(ByteOrder.LITTLE_ENDIAN);
+		short version = (short) (e.isZip64() ? VERSION_ZIP64 : VERSION);
+		b.putInt(0x02014b50);
+		b.putShort(version);
+		b.putShort(version);
+		b.putShort((short) FLAG_UTF8);
+		b.putShort((short) METHOD_DEFLATED);
+		b.putInt((int) e.dosTime);
+		b.putInt((int) e.crc);
+		b.putInt(e.compressedSize >= ZIP64_LIMIT ? -1 : (int) e.compressedSize);
+		b.putInt(e.size >= ZIP64_LIMIT ? -1 : (int) e.size);
+		b.putShort((short) nameBytes.length);
+		b.putShort((short) extraLength);
+		b.putShort((short) commentBytes.length);
+		b.putShort((short) 0);
+		b.putShort((short) 0);
+		b.putInt(0);
+		b.putInt(e.offset >= ZIP64_LIMIT ? -1 : (int) e.offset);
+		b.put(nameBytes);
+		b.put(extra.array(), 0, extraLength);
+		b.put(commentBytes);
+		raf.write(b.array());
+	}
+
+	private static long toDosTime(long time) {
+		LocalDateTime d = LocalDateTime.ofInstant(Instant.ofEpochMilli(time), ZoneId.systemDefault());
+		if (d.getYear() < 1980) {
+			return (1 << 21) | (1 << 16);
+		}
+		return ((long) (d.getYear() - 1980) << 25) | (d.getMonthValue() << 21) | (d.getDayOfMonth() << 16)
+				| (d.getHour() << 11) | (d.getMinute() << 5) | (d.getSecond() >> 1);
+	}
+}
@@ -0,0 +1,301 @@
+package net.osmand.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.commons.logging.Log;
+import org.xmlpull.v1.XmlPullParserException;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.list.array.TLongArrayList;
+import gnu.trove.map.hash.TLongIntHashMap;
+import net.osmand.PlatformUtil;
+import net.osmand.data.PreparedBoundary;
+import net.osmand.impl.ConsoleProgressImplementation;
+import net.osmand.obf.preparation.OsmEntitySource;
+import net.osmand.osm.edit.Entity;
+import net.osmand.osm.edit.Entity.EntityId;
+import net.osmand.osm.edit.Node;
+import net.osmand.osm.edit.Relation;
+import net.osmand.osm.edit.Way;
+import net.osmand.osm.io.IOsmStorageFilter;
+import net.osmand.osm.io.OsmBaseStorage;
+
+/**
+ * Contour tiles (1x1 degree .osm.bz2) are parsed once into compact fragment files which are shared by all countries
+ * overlapping the tile. Ways are stored with coordinates of their nodes, so ways entirely outside of country boundary
+ * are skipped while reading fragments and don't get into nodes db.
+ */
+public class SRTMTileFragmentCache {
+
+	private static final Log log = PlatformUtil.getLog(SRTMTileFragmentCache.class);
+
+	private static final int FRAGMENT_VERSION = 1;
+	private static final String FRAGMENT_EXT = ".fragment.gz";
+	private static final byte END = 0;
+	private static final byte NODE = 1;
+	private static final byte WAY = 2;
+	// osm precision, coordinates are stored as int
+	private static final double COORDINATES_MULTIPLIER = 1e7;
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private final File directory;
+	private final Map<String, Object> locks = new ConcurrentHashMap<String, Object>();
+
+	public SRTMTileFragmentCache(File directory) {
+		this.directory = directory;
+	}
+
+	/**
+	 * Returns fragment of tile, fragment is created if it doesn't exist or older than tile. Tile is parsed once when
+	 * several threads request it, processes sharing directory could parse it concurrently but read only complete
+	 * fragments.
+	 */
+	public File getFragment(File tile) throws IOException, XmlPullParserException {
+		String name = tile.getName();
+		if (name.indexOf('.') != -1) {
+			name = name.substring(0, name.indexOf('.'));
+		}
+		File fragment = new File(directory, name + FRAGMENT_EXT);
+		Object lock = locks.get(name);
+		if (lock == null) {
+			locks.putIfAbsent(name, new Object());
+			lock = locks.get(name);
+		}
+		synchronized (lock) {
+			if (!fragment.exists() || fragment.lastModified() < tile.lastModified()) {
+				writeFragment(tile, fragment);
+			}
+		}
+		return fragment;
+	}
+
+	private void writeFragment(File tile, File fragment) throws IOException, XmlPullParserException {
+		long time = System.currentTimeMillis();
+		directory.mkdirs();
+		// other processes could create same fragment, fragment is replaced only when it's completely written
+		File tmp = File.createTempFile(fragment.getName(), ".tmp", directory);
+		try {
+			InputStream streamFile = new BufferedInputStream(new FileInputStream(tile), BUFFER_SIZE);
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+					new GZIPOutputStream(new FileOutputStream(tmp), BUFFER_SIZE), BUFFER_SIZE));
+			try {
+				InputStream stream = tile.getName().endsWith(".bz2") ? new BZip2CompressorInputStream(streamFile)
+						: streamFile;
+				FragmentWriter writer = new FragmentWriter(out);
+				OsmBaseStorage storage = new OsmBaseStorage();
+				storage.getFilters().add(writer);
+				storage.parseOSM(stream, new ConsoleProgressImplementation(1), streamFile, false);
+				writer.finish();
+				if (writer.skippedRelations > 0) {
+					log.warn("Relations are not supported in contour tiles, skipped " + writer.skippedRelations
+							+ " in " + tile.getName());
+				}
+			} finally {
+				out.close();
+				streamFile.close();
+			}
+			if (!tmp.renameTo(fragment)) {
+				fragment.delete();
+				if (!tmp.renameTo(fragment)) {
+					throw new IOException("Couldn't create fragment " + fragment.getAbsolutePath());
+				}
+			}
+			log.info("Fragment " + fragment.getName() + " created in " + (System.currentTimeMillis() - time) + " ms");
+		} finally {
+			tmp.delete();
+		}
+	}
+
+	/**
+	 * Writes entities of tile while it's parsed, parsed entities are not kept in storage.
+	 */
+	static class FragmentWriter implements IOsmStorageFilter {
+
+		private final DataOutputStream out;
+		private final TLongIntHashMap nodeIndexes = new TLongIntHashMap();
+		private final TIntArrayList lats = new TIntArrayList();
+		private final TIntArrayList lons = new TIntArrayList();
+		private final TIntArrayList wayNodes = new TIntArrayList();
+		private IOException error;
+		int skippedRelations;
+
+		FragmentWriter(DataOutputStream out) throws IOException {
+			this.out = out;
+			out.writeInt(FRAGMENT_VERSION);
+		}
+
+		@Override
+		public boolean acceptEntityToLoad(OsmBaseStorage storage, EntityId entityId, Entity entity) {
+			if (error == null) {
+				try {
+					write(entity);
+				} catch (IOException e) {
+					error = e;
+				}
+			}
+			return false;
+		}
+
+		private void write(Entity entity) throws IOException {
+			if (entity instanceof Node) {
+				// node ids are replaced with index in tile
+				int ind = lats.size();
+				int lat = (int) Math.round(((Node) entity).getLatitude() * COORDINATES_MULTIPLIER);
+				int lon = (int) Math.round(((Node) entity).getLongitude() * COORDINATES_MULTIPLIER);
+				nodeIndexes.put(entity.getId(), ind);
+				lats.add(lat);
+				lons.add(lon);
+				if (!entity.getTags().isEmpty()) {
+					out.writeByte(NODE);
+					writeNode(ind);
+					writeTags(entity);
+				}
+			} else if (entity instanceof Way) {
+				// nodes are parsed before ways in osm file
+				TLongArrayList ids = ((Way) entity).getNodeIds();
+				wayNodes.clear();
+				for (int i = 0; i < ids.size(); i++) {
+					if (nodeIndexes.containsKey(ids.get(i))) {
+						wayNodes.add(nodeIndexes.get(ids.get(i)));
+					}
+				}
+				if (wayNodes.isEmpty()) {
+					return;
+				}
+				out.writeByte(WAY);
+				writeTags(entity);
+				out.writeInt(wayNodes.size());
+				for (int i = 0; i < wayNodes.size(); i++) {
+					writeNode(wayNodes.get(i));
+				}
+			} else if (entity instanceof Relation) {
+				skippedRelations++;
+			}
+		}
+
+		private void writeNode(int ind) throws IOException {
+			out.writeInt(ind);
+			out.writeInt(lats.get(ind));
+			out.writeInt(lons.get(ind));
+		}
+
+		private void writeTags(Entity entity) throws IOException {
+			out.writeInt(entity.getTags().size());
+			for (Entry<String, String> t : entity.getTags().entrySet()) {
+				out.writeUTF(t.getKey());
+				out.writeUTF(t.getValue());
+			}
+		}
+
+		void finish() throws IOException {
+			if (error != null) {
+				throw error;
+			}
+			out.writeByte(END);
+		}
+	}
+
+	/**
+	 * Produces entities of fragments, ids are unique within produced entities. Nodes and ways which are entirely
+	 * outside of boundary are skipped (same as index creator does with boundary).
+	 */
+	public OsmEntitySource createSource(final List<File> fragments, final PreparedBoundary boundary) {
+		return new OsmEntitySource() {
+
+			@Override
+			public void produceEntities(OsmEntityConsumer consumer) throws IOException {
+				for (int i = 0; i < fragments.size(); i++) {
+					readFragment(fragments.get(i), ((long) i + 1) << 32, boundary, consumer);
+				}
+			}
+		};
+	}
+
+	static void readFragment(File fragment, long idBase, PreparedBoundary boundary,
+			OsmEntitySource.OsmEntityConsumer consumer) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new GZIPInputStream(new FileInputStream(fragment), BUFFER_SIZE), BUFFER_SIZE));
+		try {
+			if (in.readInt() != FRAGMENT_VERSION) {
+				throw new IOException("Unsupported fragment version " + fragment.getAbsolutePath());
+			}
+			// node could be shared by several ways
+			BitSet produced = new BitSet();
+			TIntArrayList nodes = new TIntArrayList();
+			TIntArrayList lats = new TIntArrayList();
+			TIntArrayList lons = new TIntArrayList();
+			long wayId = idBase;
+			byte type;
+			while ((type = in.readByte()) != END) {
+				if (type == NODE) {
+					int ind = in.readInt();
+					double lat = in.readInt() / COORDINATES_MULTIPLIER;
+					double lon = in.readInt() / COORDINATES_MULTIPLIER;
+					Node n = new Node(lat, lon, idBase + ind);
+					readTags(in, n);
+					if (boundary == null || boundary.containsPoint(lat, lon)) {
+						produced.set(ind);
+						consumer.acceptEntity(n);
+					}
+				} else if (type == WAY) {
+					Way w = new Way(wayId++);
+					readTags(in, w);
+					int size = in.readInt();
+					nodes.clear();
+					lats.clear();
+					lons.clear();
+					boolean inside = boundary == null;
+					for (int i = 0; i < size; i++) {
+						nodes.add(in.readInt());
+						lats.add(in.readInt());
+						lons.add(in.readInt());
+						if (!inside) {
+							inside = boundary.containsPoint(lats.get(i) / COORDINATES_MULTIPLIER,
+									lons.get(i) / COORDINATES_MULTIPLIER);
+						}
+					}
+					if (!inside) {
+						continue;
+					}
+					for (int i = 0; i < size; i++) {
+						int ind = nodes.get(i);
+						if (!produced.get(ind)) {
+							produced.set(ind);
+							consumer.acceptEntity(new Node(lats.get(i) / COORDINATES_MULTIPLIER,
+									lons.get(i) / COORDINATES_MULTIPLIER, idBase + ind));
+						}
+						w.addNode(idBase + ind);
+					}
+					consumer.acceptEntity(w);
+				} else {
+					throw new IOException("Broken fragment " + fragment.getAbsolutePath());
+				}
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	private static void readTags(DataInputStream in, Entity e) throws IOException {
+		int size = in.readInt();
+		for (int i = 0; i < size; i++) {
+			e.putTag(in.readUTF(), in.readUTF());
+		}
+	}
+}
@@ -0,0 +1,71 @@
+package net.osmand.data;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.osmand.osm.edit.Node;
+import net.osmand.osm.edit.Way;
+
+public class PreparedBoundaryTest {
+
+	private long nodeId = 1;
+	private long wayId = 1;
+
+	private Way createRing(Random rnd, double lat, double lon, double radius, int points) {
+		Way w = new Way(wayId++);
+		Node first = null;
+		for (int i = 0; i < points; i++) {
+			double angle = 2 * Math.PI * i / points;
+			// jagged ring
+			double r = radius * (0.6 + rnd.nextDouble() * 0.4);
+			Node n = new Node(lat + r * Math.sin(angle), lon + r * Math.cos(angle), nodeId++);
+			if (first == null) {
+				first = n;
+			}
+			w.addNode(n);
+		}
+		w.addNode(first);
+		return w;
+	}
+
+	private void assertSameAsMultipolygon(MultipolygonBuilder builder, Random rnd) {
+		Multipolygon multipolygon = builder.build();
+		PreparedBoundary prepared = new PreparedBoundary(multipolygon);
+		int inside = 0;
+		for (int i = 0; i < 20000; i++) {
+			double lat = 49 + rnd.nextDouble() * 2;
+			double lon = 9 + rnd.nextDouble() * 2;
+			boolean exact = multipolygon.containsPoint(lat, lon);
+			Assert.assertEquals("Point " + lat + " " + lon, exact, prepared.containsPoint(lat, lon));
+			if (exact) {
+				inside++;
+			}
+		}
+		Assert.assertTrue(inside > 0);
+	}
+
+	@Test
+	public void testRandomPoints() {
+		Random rnd = new Random(7);
+		MultipolygonBuilder builder = new MultipolygonBuilder();
+		builder.addOuterWay(createRing(rnd, 50, 10, 0.8, 2000));
+		// lake with island
+		builder.addInnerWay(createRing(rnd, 50.1, 10.1, 0.3, 300));
+		builder.addOuterWay(createRing(rnd, 50.1, 10.1, 0.1, 100));
+		// small hole within one grid cell
+		builder.addInnerWay(createRing(rnd, 49.6, 9.8, 0.002, 10));
+		// separate part
+		builder.addOuterWay(createRing(rnd, 50.8, 10.8, 0.1, 50));
+		assertSameAsMultipolygon(builder, rnd);
+	}
+
+	@Test
+	public void testSmallBoundary() {
+		Random rnd = new Random(8);
+		MultipolygonBuilder builder = new MultipolygonBuilder();
+		builder.addOuterWay(createRing(rnd, 50, 10, 0.5, 5));
+		assertSameAsMultipolygon(builder, rnd);
+	}
+}
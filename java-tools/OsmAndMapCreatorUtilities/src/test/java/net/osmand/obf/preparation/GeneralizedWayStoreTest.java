@@ -0,0 +1,77 @@
+package net.osmand.obf.preparation;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import gnu.trove.list.array.TIntArrayList;
+import net.osmand.osm.MapRoutingTypes.MapRouteType;
+
+public class GeneralizedWayStoreTest {
+
+	private int addWay(GeneralizedWayStore store, long id, Map<MapRouteType, String> names, int... xs) {
+		TIntArrayList px = new TIntArrayList();
+		TIntArrayList py = new TIntArrayList();
+		for (int x : xs) {
+			px.add(x);
+			py.add(x + 1000);
+		}
+		TIntArrayList types = new TIntArrayList();
+		types.add(1);
+		types.add(2);
+		types.add((int) id);
+		types.add(1);
+		return store.addWay(id, 7, types, names, px, py);
+	}
+
+	private String points(GeneralizedWayStore store, int w) {
+		StringBuilder b = new StringBuilder();
+		for (int i = 0; i < store.size(w); i++) {
+			Assert.assertEquals(store.getX(w, i) + 1000, store.getY(w, i));
+			b.append(store.getX(w, i)).append(' ');
+		}
+		return b.toString().trim();
+	}
+
+	@Test
+	public void testEditPoints() {
+		GeneralizedWayStore store = new GeneralizedWayStore();
+		int w1 = addWay(store, 10, new HashMap<MapRouteType, String>(), 1, 2, 3);
+		int w2 = addWay(store, 20, new HashMap<MapRouteType, String>(), 5, 4, 3);
+		store.addPoint(w1, 9, 1009);
+		store.insertPoint(w1, 0, 0, 1000);
+		Assert.assertEquals("0 1 2 3 9", points(store, w1));
+		store.removePoint(w1, 4);
+		Assert.assertEquals("0 1 2 3", points(store, w1));
+		Assert.assertEquals("5 4 3", points(store, w2));
+
+		// prev is reversed to continue way
+		store.join(w1, w2, false);
+		Assert.assertEquals("0 1 2 3 4 5", points(store, w1));
+		int w3 = addWay(store, 30, new HashMap<MapRouteType, String>(), 0, -1);
+		store.join(w1, w3, true);
+		Assert.assertEquals("-1 0 1 2 3 4 5", points(store, w1));
+		Assert.assertEquals("5 4 3", points(store, w2));
+	}
+
+	@Test
+	public void testTypesAndNames() {
+		GeneralizedWayStore store = new GeneralizedWayStore();
+		Map<MapRouteType, String> names = new HashMap<MapRouteType, String>();
+		names.put(null, "A");
+		int w1 = addWay(store, 10, names, 1, 2);
+		int w2 = addWay(store, 20, new HashMap<MapRouteType, String>(names), 2, 3);
+		TIntArrayList types = new TIntArrayList();
+		store.getAddTypes(w1, types);
+		Assert.assertEquals(3, types.size());
+		store.retainAddTypes(w1, w2);
+		Assert.assertTrue(store.hasAddType(w1, 1));
+		Assert.assertTrue(store.hasAddType(w1, 2));
+		Assert.assertFalse(store.hasAddType(w1, 10));
+		Assert.assertTrue(store.hasAddType(w2, 20));
+		Assert.assertSame(store.getNames(w1), store.getNames(w2));
+		Assert.assertEquals("A", store.getNames(w2).get(null));
+	}
+}
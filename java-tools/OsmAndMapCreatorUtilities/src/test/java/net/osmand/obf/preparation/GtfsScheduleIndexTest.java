@@ -0,0 +1,116 @@
+package net.osmand.obf.preparation;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.osmand.data.TransportSchedule;
+import net.osmand.data.TransportStop;
+
+public class GtfsScheduleIndexTest {
+
+	private static final Log log = LogFactory.getLog(GtfsScheduleIndexTest.class);
+
+	private List<File> files = new ArrayList<File>();
+	private IndexTransportCreator queryCreator;
+	private IndexTransportCreator inMemoryCreator;
+
+	@Before
+	public void setUp() throws IOException, SQLException {
+		queryCreator = createTransportCreator(false);
+		inMemoryCreator = createTransportCreator(true);
+	}
+
+	@After
+	public void tearDown() {
+		for (File f : files) {
+			f.delete();
+		}
+	}
+
+	private IndexTransportCreator createTransportCreator(boolean inMemory) throws IOException, SQLException {
+		File db = File.createTempFile("gtfs", ".sqlite");
+		files.add(db);
+		Connection conn = DBDialect.SQLITE.getDatabaseConnection(db.getAbsolutePath(), log);
+		Statement stat = conn.createStatement();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(
+				GtfsScheduleIndexTest.class.getResourceAsStream("/gtfs_sample.sql"), StandardCharsets.UTF_8));
+		String line;
+		while ((line = reader.readLine()) != null) {
+			if (line.trim().length() > 0) {
+				stat.execute(line);
+			}
+		}
+		reader.close();
+		stat.close();
+		conn.close();
+		IndexCreatorSettings settings = new IndexCreatorSettings();
+		settings.gtfsData = db;
+		settings.gtfsScheduleInMemory = inMemory;
+		return new IndexTransportCreator(settings);
+	}
+
+	private List<TransportStop> stops(double lat, double lon, int count) {
+		List<TransportStop> stops = new ArrayList<TransportStop>();
+		for (int i = 0; i < count; i++) {
+			TransportStop st = new TransportStop();
+			st.setLocation(lat + i * 0.01, lon);
+			stops.add(st);
+		}
+		return stops;
+	}
+
+	private TransportSchedule compareSchedules(String ref, List<TransportStop> stops) throws SQLException {
+		TransportSchedule expected = queryCreator.readSchedule(ref, stops);
+		TransportSchedule actual = inMemoryCreator.readSchedule(ref, stops);
+		if (expected == null) {
+			Assert.assertNull(actual);
+			return null;
+		}
+		Assert.assertNotNull(actual);
+		Assert.assertArrayEquals(expected.tripIntervals.toArray(), actual.tripIntervals.toArray());
+		Assert.assertArrayEquals(expected.avgStopIntervals.toArray(), actual.avgStopIntervals.toArray());
+		Assert.assertArrayEquals(expected.avgWaitIntervals.toArray(), actual.avgWaitIntervals.toArray());
+		Assert.assertEquals(queryCreator.getGtfsStats().toString(), inMemoryCreator.getGtfsStats().toString());
+		return actual;
+	}
+
+	@Test
+	public void testSameSchedulesAsQueries() throws SQLException {
+		TransportSchedule route5 = compareSchedules("5", stops(52.0, 4.0, 3));
+		// 5 trips from 2 gtfs routes (far, short and trip without times are skipped)
+		Assert.assertArrayEquals(new int[] { 2790, 90, 90, 90, 900 }, route5.tripIntervals.toArray());
+		Assert.assertArrayEquals(new int[] { 0, 3, 0 }, route5.avgWaitIntervals.toArray());
+		compareSchedules("5", stops(52.0, 4.0, 2));
+		compareSchedules("5", stops(52.1, 4.1, 3));
+		compareSchedules("5", stops(48.0, 2.0, 3));
+		compareSchedules("7", stops(51.5, 3.5, 2));
+		compareSchedules("9", stops(52.0, 4.0, 3));
+		compareSchedules("99", stops(52.0, 4.0, 3));
+		compareSchedules("", stops(52.0, 4.0, 3));
+		compareSchedules("5", stops(52.0, 4.0, 3));
+	}
+
+	@Test
+	public void testParseTime() {
+		Assert.assertEquals(8 * 360 + 5 * 6 + 3, GtfsScheduleIndex.parseTime("08:05:30"));
+		Assert.assertEquals(25 * 360, GtfsScheduleIndex.parseTime("25:00:00"));
+		Assert.assertEquals(-1, GtfsScheduleIndex.parseTime("08:05"));
+		Assert.assertEquals(-1, GtfsScheduleIndex.parseTime("8:xx:00"));
+		Assert.assertEquals(-1, GtfsScheduleIndex.parseTime(null));
+	}
+}
@@ -0,0 +1,168 @@
+package net.osmand.obf.preparation;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import gnu.trove.set.hash.TLongHashSet;
+import net.osmand.obf.preparation.LowLevelWayIndex.LowLevelWay;
+
+public class LowLevelWayIndexTest {
+
+	private static final Log log = LogFactory.getLog(LowLevelWayIndexTest.class);
+
+	private static final int NODES = 30;
+	private static final int LEVELS = 3;
+	// types with equal values and common prefixes to check order of blobs
+	private static final byte[][] TYPES = new byte[][] { { 1 }, { 1, 0 }, { 1, 2 }, { 2 }, { (byte) 0x80 },
+			{ (byte) 0xff, 1 } };
+
+	private File db;
+	private Connection conn;
+
+	@Before
+	public void setUp() throws IOException, SQLException {
+		db = File.createTempFile("lowlevel", ".tmp.odb");
+		conn = DBDialect.SQLITE.getDatabaseConnection(db.getAbsolutePath(), log);
+		Statement stat = conn.createStatement();
+		// same structure as IndexVectorMapCreator
+		stat.executeUpdate("create table low_level_map_objects (id bigint primary key, start_node bigint, "
+				+ "end_node bigint, name varchar(1024), nodes binary, type binary, addType binary, level smallint)");
+		stat.close();
+	}
+
+	@After
+	public void tearDown() throws SQLException {
+		conn.close();
+		db.delete();
+	}
+
+	private void insertRandomWays(int count, Random rnd) throws SQLException {
+		List<Long> ids = new ArrayList<Long>();
+		for (long i = 1; i <= count; i++) {
+			ids.add(i * 64);
+		}
+		// rows are not ordered by id
+		Collections.shuffle(ids, rnd);
+		conn.setAutoCommit(false);
+		PreparedStatement ps = conn.prepareStatement("insert into low_level_map_objects(id, start_node, end_node, "
+				+ "name, nodes, type, addType, level) values(?, ?, ?, ?, ?, ?, ?, ?)");
+		for (long id : ids) {
+			// 4 bytes per lat / lon
+			byte[] nodes = new byte[8 * (2 + rnd.nextInt(4))];
+			rnd.nextBytes(nodes);
+			ps.setLong(1, id);
+			ps.setLong(2, rnd.nextInt(NODES));
+			ps.setLong(3, rnd.nextInt(NODES));
+			ps.setString(4, rnd.nextBoolean() ? null : "Way " + rnd.nextInt(5));
+			ps.setBytes(5, nodes);
+			ps.setBytes(6, TYPES[rnd.nextInt(TYPES.length)]);
+			ps.setBytes(7, rnd.nextBoolean() ? null : TYPES[rnd.nextInt(TYPES.length)]);
+			ps.setShort(8, (short) rnd.nextInt(LEVELS));
+			ps.addBatch();
+		}
+		ps.executeBatch();
+		ps.close();
+		Statement stat = conn.createStatement();
+		// same indexes as IndexVectorMapCreator
+		stat.executeUpdate("create index low_level_map_objects_ind on low_level_map_objects (id)");
+		stat.executeUpdate("create index low_level_map_objects_ind_st on low_level_map_objects (start_node, type)");
+		stat.executeUpdate("create index low_level_map_objects_ind_end on low_level_map_objects (end_node, type)");
+		stat.close();
+		conn.commit();
+	}
+
+	private static String toString(LowLevelWay w) {
+		return w.id + " " + w.startNode + "-" + w.endNode + " level " + w.level + " " + w.name + " "
+				+ Arrays.toString(w.types) + " " + Arrays.toString(w.addTypes) + " " + Arrays.toString(w.nodes);
+	}
+
+	private static List<LowLevelWay> readWays(LowLevelWayIndex index, long node, int level, boolean byStartNode,
+			TLongHashSet visited) throws SQLException {
+		List<LowLevelWay> ways = new ArrayList<LowLevelWay>();
+		// previous result should be cleared
+		ways.add(new LowLevelWay());
+		index.readWays(node, level, byStartNode, visited, ways);
+		return ways;
+	}
+
+	private static List<String> toString(List<LowLevelWay> ways) {
+		List<String> res = new ArrayList<String>();
+		for (LowLevelWay w : ways) {
+			res.add(toString(w));
+		}
+		return res;
+	}
+
+	@Test
+	public void testInMemoryIndexEqualsQueryIndex() throws SQLException {
+		Random rnd = new Random(44);
+		insertRandomWays(400, rnd);
+		LowLevelWayIndex memory = LowLevelWayIndex.loadInMemory(conn);
+		LowLevelWayIndex query = LowLevelWayIndex.createQueryIndex(conn);
+		try {
+			// ways in order of table
+			LowLevelWay m = new LowLevelWay();
+			LowLevelWay q = new LowLevelWay();
+			int count = 0;
+			TLongHashSet visited = new TLongHashSet();
+			while (query.next(q)) {
+				Assert.assertTrue(memory.next(m));
+				Assert.assertEquals(toString(q), toString(m));
+				if (rnd.nextInt(4) == 0) {
+					visited.add(q.id);
+				}
+				count++;
+			}
+			Assert.assertFalse(memory.next(m));
+			Assert.assertEquals(400, count);
+
+			int ties = 0;
+			for (TLongHashSet v : Arrays.asList(new TLongHashSet(), visited)) {
+				for (long node = -1; node <= NODES; node++) {
+					// level without ways is checked too
+					for (int level = 0; level <= LEVELS; level++) {
+						for (boolean byStart : new boolean[] { true, false }) {
+							List<LowLevelWay> expected = readWays(query, node, level, byStart, v);
+							Assert.assertEquals("Node " + node + " level " + level + " start " + byStart,
+									toString(expected), toString(readWays(memory, node, level, byStart, v)));
+							for (int i = 1; i < expected.size(); i++) {
+								if (Arrays.equals(expected.get(i).types, expected.get(i - 1).types)) {
+									ties++;
+								}
+							}
+						}
+					}
+				}
+			}
+			// ways with same node and type are ordered by row
+			Assert.assertTrue(ties > 0);
+		} finally {
+			memory.close();
+			query.close();
+		}
+	}
+
+	@Test
+	public void testCompareBytesAsSqlite() {
+		Assert.assertTrue(LowLevelWayIndex.compareBytes(new byte[] { 1 }, new byte[] { 1, 0 }) < 0);
+		Assert.assertTrue(LowLevelWayIndex.compareBytes(new byte[] { 2 }, new byte[] { 1, 2 }) > 0);
+		Assert.assertTrue(LowLevelWayIndex.compareBytes(new byte[] { (byte) 0x80 }, new byte[] { 2 }) > 0);
+		Assert.assertEquals(0, LowLevelWayIndex.compareBytes(null, new byte[0]));
+	}
+}
@@ -0,0 +1,164 @@
+package net.osmand.obf.preparation;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.commons.logging.LogFactory;
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.osmand.data.MultipolygonBuilder;
+import net.osmand.obf.preparation.MultipolygonAssembler.AssembledMultipolygon;
+import net.osmand.obf.preparation.MultipolygonAssembler.MultipolygonConsumer;
+import net.osmand.obf.preparation.MultipolygonAssembler.MultipolygonTask;
+import net.osmand.obf.preparation.MultipolygonAssembler.PolygonGeometry;
+import net.osmand.osm.edit.Node;
+import net.osmand.osm.edit.Relation;
+import net.osmand.osm.edit.Way;
+
+public class MultipolygonAssemblerTest {
+
+	private static final int[] LEVEL_MAX_ZOOMS = { 6, 11, 13, 17 };
+	private static final int RELATIONS = 60;
+
+	private long nodeId;
+	private long wayId;
+
+	private Way createRing(Random rnd, double lat, double lon, double radius) {
+		Way w = new Way(wayId++);
+		int points = 20 + rnd.nextInt(200);
+		Node first = null;
+		for (int i = 0; i < points; i++) {
+			double angle = 2 * Math.PI * i / points;
+			double r = radius * (1 + rnd.nextDouble() * 0.05);
+			Node n = new Node(lat + r * Math.sin(angle), lon + r * Math.cos(angle), nodeId++);
+			if (first == null) {
+				first = n;
+			}
+			w.addNode(n);
+		}
+		w.addNode(first);
+		return w;
+	}
+
+	private List<MultipolygonTask<String>> createTasks() {
+		Random rnd = new Random(11);
+		nodeId = 1;
+		wayId = 1;
+		List<MultipolygonTask<String>> tasks = new ArrayList<MultipolygonTask<String>>();
+		for (int k = 0; k < RELATIONS; k++) {
+			MultipolygonBuilder builder = new MultipolygonBuilder();
+			builder.setId(k);
+			double lat = 40 + rnd.nextDouble();
+			double lon = 10 + rnd.nextDouble();
+			double radius = 0.001 + rnd.nextDouble() * 0.05;
+			builder.addOuterWay(createRing(rnd, lat, lon, radius));
+			builder.addInnerWay(createRing(rnd, lat, lon, radius / 3));
+			if (k % 3 == 0) {
+				// second outer ring
+				builder.addOuterWay(createRing(rnd, lat + radius * 4, lon, radius));
+			}
+			List<List<String>> objects = new ArrayList<List<String>>();
+			for (int s = 0; s < 1 + k % 2; s++) {
+				List<String> levels = new ArrayList<String>();
+				for (int level = 0; level < LEVEL_MAX_ZOOMS.length; level++) {
+					// object is always created on the last level
+					boolean skip = level < LEVEL_MAX_ZOOMS.length - 1 && rnd.nextInt(4) == 0;
+					levels.add(skip ? null : "type" + s);
+				}
+				objects.add(levels);
+			}
+			tasks.add(new MultipolygonTask<String>(new Relation(k), builder, objects));
+		}
+		return tasks;
+	}
+
+	private String nodeIds(List<Node> nodes) {
+		long[] ids = new long[nodes.size()];
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = nodes.get(i).getId();
+		}
+		return Arrays.toString(ids);
+	}
+
+	private List<String> assemble(int threads) throws SQLException {
+		final List<String> res = new ArrayList<String>();
+		MultipolygonAssembler<String> assembler = new MultipolygonAssembler<String>(threads, LEVEL_MAX_ZOOMS, 2,
+				LogFactory.getLog(MultipolygonAssemblerTest.class), new MultipolygonConsumer<String>() {
+
+					private long id = 0;
+
+					@Override
+					public void consume(MultipolygonTask<String> task) {
+						for (AssembledMultipolygon m : task.multipolygons) {
+							for (int s = 0; s < m.objects.size(); s++) {
+								id++;
+								for (int level = 0; level < m.objects.get(s).size(); level++) {
+									PolygonGeometry g = m.objects.get(s).get(level);
+									if (g == null) {
+										Assert.assertTrue(task.objects.get(s).get(level) == null || level < 3);
+										continue;
+									}
+									StringBuilder b = new StringBuilder();
+									b.append(task.relation.getId()).append(' ').append(id).append(' ')
+											.append(task.objects.get(s).get(level)).append(' ').append(level)
+											.append(' ').append(nodeIds(g.outer)).append(' ').append(g.label);
+									for (List<Node> inner : g.inner) {
+										b.append(' ').append(nodeIds(inner));
+									}
+									res.add(b.toString());
+								}
+							}
+						}
+					}
+				});
+		for (MultipolygonTask<String> task : createTasks()) {
+			assembler.submit(task);
+		}
+		assembler.flush();
+		return res;
+	}
+
+	@Test
+	public void testSameResultAsSequential() throws SQLException {
+		List<String> sequential = assemble(1);
+		Assert.assertFalse(sequential.isEmpty());
+		Assert.assertEquals(sequential, assemble(2));
+		Assert.assertEquals(sequential, assemble(8));
+		// relations are consumed in order of submission
+		long prev = -1;
+		for (String s : sequential) {
+			long relation = Long.parseLong(s.substring(0, s.indexOf(' ')));
+			Assert.assertTrue(relation >= prev);
+			prev = relation;
+		}
+	}
+
+	@Test
+	public void testSimplifiedLevels() throws SQLException {
+		MultipolygonTask<String> task = createTasks().get(0);
+		MultipolygonAssembler<String> assembler = new MultipolygonAssembler<String>(1, LEVEL_MAX_ZOOMS, 2,
+				LogFactory.getLog(MultipolygonAssemblerTest.class), null);
+		assembler.assemble(task);
+		// relation 0 has 2 outer rings and 1 inner ring
+		Assert.assertEquals(2, task.multipolygons.size());
+		int inner = 0;
+		for (AssembledMultipolygon m : task.multipolygons) {
+			List<PolygonGeometry> levels = m.objects.get(0);
+			Assert.assertEquals(LEVEL_MAX_ZOOMS.length, levels.size());
+			// not simplified on zoom 17
+			PolygonGeometry last = levels.get(LEVEL_MAX_ZOOMS.length - 1);
+			inner += last.inner.size();
+			for (int level = 0; level < LEVEL_MAX_ZOOMS.length - 1; level++) {
+				if (levels.get(level) != null) {
+					Assert.assertTrue(levels.get(level).outer.size() <= last.outer.size());
+				}
+			}
+		}
+		// inner rings are simplified from previous level and could be removed as small areas
+		Assert.assertTrue(inner <= 1);
+	}
+}
@@ -0,0 +1,198 @@
+package net.osmand.obf.preparation;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.osmand.obf.preparation.OsmEntitySource.OsmEntityConsumer;
+import net.osmand.osm.edit.Entity;
+import net.osmand.osm.edit.Entity.EntityId;
+import net.osmand.osm.edit.Node;
+import net.osmand.osm.edit.Way;
+
+public class OsmDbCreatorChangesTest {
+
+	private static final Log log = LogFactory.getLog(OsmDbCreatorChangesTest.class);
+
+	private static final String CHANGES = "<?xml version='1.0' encoding='UTF-8'?>\n"
+			+ "<osmChange version='0.6'>\n"
+			+ "<modify>\n"
+			// node is moved
+			+ " <node id='2' lat='50.2' lon='10.25'/>\n"
+			+ " <way id='10'><nd ref='1'/><nd ref='2'/><nd ref='3'/><tag k='highway' v='primary'/></way>\n"
+			+ "</modify>\n"
+			+ "<create>\n"
+			+ " <node id='5' lat='50.5' lon='10.5'><tag k='amenity' v='cafe'/></node>\n"
+			+ " <way id='12'><nd ref='1'/><nd ref='5'/><tag k='highway' v='service'/></way>\n"
+			+ "</create>\n"
+			// same way is modified twice in one file, way becomes shorter
+			+ "<modify>\n"
+			+ " <way id='10'><nd ref='1'/><nd ref='2'/><tag k='highway' v='secondary'/></way>\n"
+			+ "</modify>\n"
+			+ "<delete>\n"
+			+ " <way id='11'/>\n"
+			+ " <node id='4'/>\n"
+			+ "</delete>\n"
+			+ "</osmChange>\n";
+
+	private List<File> files = new ArrayList<File>();
+	private Connection conn;
+
+	@Before
+	public void setUp() throws IOException, SQLException {
+		File db = File.createTempFile("nodes", ".tmp.odb");
+		files.add(db);
+		conn = DBDialect.SQLITE.getDatabaseConnection(db.getAbsolutePath(), log);
+	}
+
+	@After
+	public void tearDown() throws SQLException {
+		conn.close();
+		for (File f : files) {
+			f.delete();
+		}
+	}
+
+	private Node node(long id, double lat, double lon) {
+		return new Node(lat, lon, id);
+	}
+
+	private Way way(long id, String highway, long... nodes) {
+		Way w = new Way(id);
+		w.putTag("highway", highway);
+		for (long n : nodes) {
+			w.addNode(n);
+		}
+		return w;
+	}
+
+	private void load(final OsmDbCreator creator, boolean create, OsmEntitySource source)
+			throws IOException, SQLException {
+		creator.initDatabase(DBDialect.SQLITE, conn, create, null);
+		source.produceEntities(new OsmEntityConsumer() {
+
+			@Override
+			public void acceptEntity(Entity entity) {
+				creator.acceptEntityToLoad(null, EntityId.valueOf(entity), entity);
+			}
+		});
+		creator.finishLoading();
+		conn.commit();
+	}
+
+	// osm id -> stored id
+	private Map<Long, Long> storedIds(String table) throws SQLException {
+		Map<Long, Long> ids = new LinkedHashMap<Long, Long>();
+		Statement stat = conn.createStatement();
+		ResultSet rs = stat.executeQuery("select distinct id from " + table + " order by id");
+		while (rs.next()) {
+			Assert.assertNull("Entity is stored once", ids.put(rs.getLong(1) >> OsmDbCreator.SHIFT_ID, rs.getLong(1)));
+		}
+		rs.close();
+		stat.close();
+		return ids;
+	}
+
+	private List<Long> wayNodes(long storedId) throws SQLException {
+		List<Long> nodes = new ArrayList<Long>();
+		Statement stat = conn.createStatement();
+		ResultSet rs = stat.executeQuery("select node from ways where id = " + storedId + " order by ord");
+		while (rs.next()) {
+			nodes.add(rs.getLong(1));
+		}
+		rs.close();
+		stat.close();
+		return nodes;
+	}
+
+	private double[] location(long storedId) throws SQLException {
+		Statement stat = conn.createStatement();
+		ResultSet rs = stat.executeQuery("select latitude, longitude from node where id = " + storedId);
+		Assert.assertTrue(rs.next());
+		double[] res = new double[] { rs.getDouble(1), rs.getDouble(2) };
+		rs.close();
+		stat.close();
+		return res;
+	}
+
+	private String wayTags(long storedId) throws SQLException {
+		Statement stat = conn.createStatement();
+		ResultSet rs = stat.executeQuery("select tags from ways where id = " + storedId + " and ord = 0");
+		Assert.assertTrue(rs.next());
+		String tags = new String(rs.getBytes(1), StandardCharsets.UTF_8);
+		rs.close();
+		stat.close();
+		return tags;
+	}
+
+	@Test
+	public void testApplyOsmChange() throws IOException, SQLException {
+		final List<Entity> initial = new ArrayList<Entity>();
+		initial.add(node(1, 50.1, 10.1));
+		initial.add(node(2, 50.2, 10.2));
+		initial.add(node(3, 50.3, 10.3));
+		initial.add(node(4, 50.4, 10.4));
+		initial.add(way(10, "primary", 1, 2, 3));
+		initial.add(way(11, "residential", 3, 4));
+		load(new OsmDbCreator(), true, new OsmEntitySource() {
+
+			@Override
+			public void produceEntities(OsmEntityConsumer consumer) {
+				for (Entity e : initial) {
+					consumer.acceptEntity(e);
+				}
+			}
+		});
+		Map<Long, Long> nodes = storedIds("node");
+		Map<Long, Long> ways = storedIds("ways");
+		Assert.assertEquals(4, nodes.size());
+		Assert.assertEquals(2, ways.size());
+
+		File osc = File.createTempFile("changes", ".osc");
+		files.add(osc);
+		Writer w = new OutputStreamWriter(new FileOutputStream(osc), StandardCharsets.UTF_8);
+		w.write(CHANGES);
+		w.close();
+		OsmDbCreator changes = new OsmDbCreator();
+		changes.setApplyChanges(true);
+		load(changes, false, new OsmChangeSource(osc));
+		Assert.assertEquals(2, changes.getDeletedEntities());
+
+		Map<Long, Long> updatedNodes = storedIds("node");
+		Map<Long, Long> updatedWays = storedIds("ways");
+		Assert.assertEquals("[1, 2, 3, 5]", updatedNodes.keySet().toString());
+		Assert.assertEquals("[10, 12]", updatedWays.keySet().toString());
+		// stored ids of existing entities are kept, as unchanged entities reference them
+		Assert.assertEquals(nodes.get(2l), updatedNodes.get(2l));
+		Assert.assertEquals(ways.get(10l), updatedWays.get(10l));
+		double[] moved = location(updatedNodes.get(2l));
+		Assert.assertEquals(50.2, moved[0], 1e-9);
+		Assert.assertEquals(10.25, moved[1], 1e-9);
+
+		List<Long> expected = new ArrayList<Long>();
+		expected.add(updatedNodes.get(1l));
+		expected.add(updatedNodes.get(2l));
+		Assert.assertEquals(expected, wayNodes(updatedWays.get(10l)));
+		Assert.assertTrue(wayTags(updatedWays.get(10l)).contains("secondary"));
+		expected.set(1, updatedNodes.get(5l));
+		Assert.assertEquals(expected, wayNodes(updatedWays.get(12l)));
+	}
+}
@@ -0,0 +1,54 @@
+package net.osmand.obf.preparation;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.osmand.obf.preparation.IndexPoiCreator.PoiTileBox;
+
+public class PoiNamePrefixIndexTest {
+
+	@Test
+	public void testSameOrderAsTreeMapOfSets() {
+		Random rnd = new Random(7);
+		String[] words = { "caf", "cafe", "bar", "b\u00e4ck", "Bar", "\u0430\u043f\u0442\u0435", "zoo", "a", "ab", "ba", "\u6771\u4eac" };
+		List<PoiTileBox> boxes = new ArrayList<PoiTileBox>();
+		for (int i = 0; i < 50; i++) {
+			boxes.add(new PoiTileBox());
+		}
+		Map<String, Set<PoiTileBox>> expected = new TreeMap<String, Set<PoiTileBox>>();
+		PoiNamePrefixIndex index = new PoiNamePrefixIndex();
+		for (int i = 0; i < 2000; i++) {
+			String prefix = words[rnd.nextInt(words.length)];
+			PoiTileBox box = boxes.get(rnd.nextInt(boxes.size()));
+			if (!expected.containsKey(prefix)) {
+				expected.put(prefix, new LinkedHashSet<PoiTileBox>());
+			}
+			expected.get(prefix).add(box);
+			index.add(prefix, box);
+		}
+		index.build();
+		Assert.assertEquals(new ArrayList<String>(expected.keySet()), index.getPrefixes());
+		int k = 0;
+		for (Map.Entry<String, Set<PoiTileBox>> e : expected.entrySet()) {
+			Assert.assertEquals(e.getKey(), index.getPrefix(k));
+			Assert.assertEquals(new ArrayList<PoiTileBox>(e.getValue()), index.getBoxes(k));
+			k++;
+		}
+	}
+
+	@Test
+	public void testEmptyIndex() {
+		PoiNamePrefixIndex index = new PoiNamePrefixIndex();
+		index.build();
+		Assert.assertEquals(0, index.size());
+		Assert.assertTrue(index.getPrefixes().isEmpty());
+	}
+}
@@ -0,0 +1,176 @@
+package net.osmand.obf.preparation;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.xmlpull.v1.XmlPullParserException;
+
+import net.osmand.IProgress;
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.data.Amenity;
+import net.osmand.obf.preparation.OsmEntitySource.OsmEntityConsumer;
+import net.osmand.osm.MapRenderingTypesEncoder;
+import net.osmand.osm.edit.Entity;
+import net.osmand.osm.edit.Node;
+import net.osmand.util.MapUtils;
+
+/**
+ * Poi index written from poi table ordered by tiles (poiInMemory = false) should be the same as written from memory.
+ */
+public class PoiTilesWriterTest {
+
+	private static final int TILE_ZOOM = 16;
+	private static final int TILE_SHIFT = 31 - TILE_ZOOM;
+	private static final String[][] TYPES = new String[][] {
+		{ "amenity", "cafe" }, { "amenity", "restaurant" }, { "amenity", "pharmacy" },
+		{ "shop", "bakery" }, { "shop", "supermarket" }, { "tourism", "hotel" } };
+
+	private final TemporaryFolder folder = new TemporaryFolder();
+	private final List<BinaryMapIndexReader> readers = new ArrayList<BinaryMapIndexReader>();
+
+	@Before
+	public void setUp() throws IOException {
+		folder.create();
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		for (BinaryMapIndexReader r : readers) {
+			r.close();
+		}
+		folder.delete();
+	}
+
+	private static List<Entity> createPois() {
+		List<Entity> pois = new ArrayList<Entity>();
+		Random rnd = new Random(43);
+		long id = 1;
+		// ~ 10 x 10 tiles of zoom 16
+		for (int i = 0; i < 600; i++) {
+			Node n = new Node(50 + rnd.nextDouble() * 0.05, 10 + rnd.nextDouble() * 0.05, id++);
+			String[] type = TYPES[rnd.nextInt(TYPES.length)];
+			n.putTag(type[0], type[1]);
+			if (rnd.nextBoolean()) {
+				n.putTag("name", "Poi " + i);
+			}
+			if (rnd.nextInt(3) == 0) {
+				n.putTag("opening_hours", "Mo-Fr " + (7 + rnd.nextInt(3)) + ":00-18:00");
+			}
+			pois.add(n);
+		}
+		// several pois in one point and pois on the borders of the same tile
+		int tx = MapUtils.get31TileNumberX(10.025) >> TILE_SHIFT;
+		int ty = MapUtils.get31TileNumberY(50.025) >> TILE_SHIFT;
+		double[][] points = new double[][] {
+			{ MapUtils.get31LatitudeY(ty << TILE_SHIFT), MapUtils.get31LongitudeX(tx << TILE_SHIFT) },
+			{ MapUtils.get31LatitudeY(((ty + 1) << TILE_SHIFT) - 1), MapUtils.get31LongitudeX(((tx + 1) << TILE_SHIFT) - 1) },
+			{ 50.0251, 10.0251 }, { 50.0251, 10.0251 }, { 50.0251, 10.0251 } };
+		for (double[] p : points) {
+			Node n = new Node(p[0], p[1], id++);
+			n.putTag("amenity", "cafe");
+			n.putTag("name", "Edge " + n.getId());
+			pois.add(n);
+		}
+		return pois;
+	}
+
+	private BinaryMapIndexReader generate(final List<Entity> pois, boolean poiInMemory) throws IOException,
+			SQLException, InterruptedException, XmlPullParserException {
+		IndexCreatorSettings settings = new IndexCreatorSettings();
+		settings.indexMap = false;
+		settings.indexAddress = false;
+		settings.indexPOI = true;
+		settings.indexTransport = false;
+		settings.indexRouting = false;
+		settings.poiInMemory = poiInMemory;
+		String name = poiInMemory ? "Memory_poi.obf" : "Tiles_poi.obf";
+		File dir = folder.newFolder(poiInMemory ? "memory" : "tiles");
+		IndexCreator ic = new IndexCreator(dir, settings);
+		ic.setMapFileName(name);
+		ic.setRegionName("Test");
+		ic.generateIndexes(new OsmEntitySource() {
+
+			@Override
+			public void produceEntities(OsmEntityConsumer consumer) {
+				for (Entity e : pois) {
+					consumer.acceptEntity(e);
+				}
+			}
+		}, IProgress.EMPTY_PROGRESS, null, MapZooms.getDefault(), new MapRenderingTypesEncoder(null, name), null);
+		File obf = new File(dir, ic.getMapFileName());
+		BinaryMapIndexReader reader = new BinaryMapIndexReader(new RandomAccessFile(obf, "r"), obf);
+		readers.add(reader);
+		return reader;
+	}
+
+	private static List<Amenity> searchPoi(BinaryMapIndexReader reader, int left, int right, int top, int bottom)
+			throws IOException {
+		return reader.searchPoi(BinaryMapIndexReader.buildSearchPoiRequest(left, right, top, bottom, -1,
+				BinaryMapIndexReader.ACCEPT_ALL_POI_TYPE_FILTER, null));
+	}
+
+	private static String tile(Amenity a) {
+		return (MapUtils.get31TileNumberX(a.getLocation().getLongitude()) >> TILE_SHIFT) + "/"
+				+ (MapUtils.get31TileNumberY(a.getLocation().getLatitude()) >> TILE_SHIFT);
+	}
+
+	// id -> decoded poi
+	private static Map<Long, String> decode(List<Amenity> amenities) {
+		Map<Long, String> res = new TreeMap<Long, String>();
+		for (Amenity a : amenities) {
+			StringBuilder s = new StringBuilder();
+			s.append(tile(a)).append(' ').append(a.getType().getKeyName()).append(':').append(a.getSubType());
+			s.append(' ').append(a.getName()).append(' ');
+			s.append((float) a.getLocation().getLatitude()).append(',').append((float) a.getLocation().getLongitude());
+			for (String key : new TreeSet<String>(a.getAdditionalInfoKeys())) {
+				s.append(' ').append(key).append('=').append(a.getAdditionalInfo(key));
+			}
+			Assert.assertNull("Poi is read once " + a, res.put(a.getId(), s.toString()));
+		}
+		return res;
+	}
+
+	@Test
+	public void testPoiWrittenByTilesEqualsInMemory() throws Exception {
+		List<Entity> pois = createPois();
+		BinaryMapIndexReader memory = generate(pois, true);
+		BinaryMapIndexReader tiles = generate(pois, false);
+
+		Map<Long, String> expected = decode(searchPoi(memory, 0, Integer.MAX_VALUE, 0, Integer.MAX_VALUE));
+		Map<Long, String> actual = decode(searchPoi(tiles, 0, Integer.MAX_VALUE, 0, Integer.MAX_VALUE));
+		Assert.assertEquals(pois.size(), expected.size());
+		Assert.assertEquals(expected, actual);
+
+		// every tile returns the same pois
+		TreeSet<String> tileKeys = new TreeSet<String>();
+		for (String s : expected.values()) {
+			tileKeys.add(s.substring(0, s.indexOf(' ')));
+		}
+		Assert.assertTrue(tileKeys.size() > 50);
+		for (String t : tileKeys) {
+			int x = Integer.parseInt(t.substring(0, t.indexOf('/')));
+			int y = Integer.parseInt(t.substring(t.indexOf('/') + 1));
+			int left = x << TILE_SHIFT;
+			int top = y << TILE_SHIFT;
+			Map<Long, String> memoryTile = decode(searchPoi(memory, left, left + (1 << TILE_SHIFT) - 1, top,
+					top + (1 << TILE_SHIFT) - 1));
+			Map<Long, String> tilesTile = decode(searchPoi(tiles, left, left + (1 << TILE_SHIFT) - 1, top,
+					top + (1 << TILE_SHIFT) - 1));
+			Assert.assertFalse("Tile " + t, memoryTile.isEmpty());
+			Assert.assertEquals("Tile " + t, memoryTile, tilesTile);
+		}
+	}
+}
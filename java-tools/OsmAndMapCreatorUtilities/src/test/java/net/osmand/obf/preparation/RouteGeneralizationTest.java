@@ -0,0 +1,176 @@
+package net.osmand.obf.preparation;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.set.hash.TLongHashSet;
+import net.osmand.obf.preparation.RouteGeneralization.GeneralizedCluster;
+import net.osmand.osm.MapRoutingTypes.MapRouteType;
+
+public class RouteGeneralizationTest {
+
+	private static final int PARTITION_SIZE = 1 << (31 - RouteGeneralization.PARTITION_ZOOM);
+	private static final int STEP = 1 << 14;
+	private static final int GRID = 24;
+
+	private long id = 1;
+
+	private RouteGeneralization createRoadNetwork(long seed) {
+		Random rnd = new Random(seed);
+		RouteGeneralization gen = new RouteGeneralization();
+		// grid of roads around corner of 4 partitions
+		int x0 = 5 * PARTITION_SIZE - GRID / 2 * STEP;
+		int y0 = 7 * PARTITION_SIZE - GRID / 2 * STEP;
+		id = 1;
+		for (int dir = 0; dir < 2; dir++) {
+			for (int line = 0; line < GRID; line++) {
+				int i = 0;
+				while (i < GRID - 1) {
+					int len = 1 + rnd.nextInt(4);
+					TIntArrayList addTypes = new TIntArrayList();
+					addTypes.add(10 + rnd.nextInt(2));
+					TIntArrayList px = new TIntArrayList();
+					TIntArrayList py = new TIntArrayList();
+					for (int j = i; j <= Math.min(i + len, GRID - 1); j++) {
+						// intermediate points to simplify
+						if (j > i) {
+							addPoint(px, py, x0, y0, dir, line, j - 1, STEP / 2, rnd.nextInt(100));
+						}
+						addPoint(px, py, x0, y0, dir, line, j, 0, 0);
+					}
+					gen.addWay(id++, dir, addTypes, Collections.<MapRouteType, String>emptyMap(), px, py);
+					i += len;
+				}
+			}
+		}
+		for (int k = 0; k < 40; k++) {
+			int cx = x0 + rnd.nextInt(GRID) * STEP;
+			int cy = y0 + rnd.nextInt(GRID) * STEP;
+			int[] dx = { 0, 300, 300, 0, 0 };
+			int[] dy = { 0, 0, 300, 300, 0 };
+			TIntArrayList px = new TIntArrayList();
+			TIntArrayList py = new TIntArrayList();
+			for (int j = 0; j < dx.length; j++) {
+				px.add(cx + dx[j]);
+				py.add(cy + dy[j]);
+			}
+			gen.addWay(id++, 0, new TIntArrayList(), Collections.<MapRouteType, String>emptyMap(), px, py);
+		}
+		return gen;
+	}
+
+	private void addPoint(TIntArrayList px, TIntArrayList py, int x0, int y0, int dir, int line, int pos, int shift,
+			int noise) {
+		int along = pos * STEP + shift;
+		int across = line * STEP + noise;
+		px.add(x0 + (dir == 0 ? along : across));
+		py.add(y0 + (dir == 0 ? across : along));
+	}
+
+	private List<String> generalize(int threads) {
+		RouteGeneralization gen = createRoadNetwork(17);
+		List<GeneralizedCluster> clusters = gen.generalize(null, null, threads);
+		GeneralizedWayStore store = gen.getStore();
+		List<String> res = new ArrayList<String>();
+		TLongHashSet ids = new TLongHashSet();
+		for (GeneralizedCluster cluster : clusters) {
+			for (int gw : cluster.getClusterWays()) {
+				if (ids.add(store.getId(gw))) {
+					TIntArrayList addTypes = new TIntArrayList();
+					store.getAddTypes(gw, addTypes);
+					addTypes.sort();
+					StringBuilder b = new StringBuilder();
+					b.append(store.getId(gw)).append(' ').append(store.getMainType(gw)).append(' ');
+					b.append(Arrays.toString(addTypes.toArray()));
+					for (int i = 0; i < store.size(gw); i++) {
+						b.append(' ').append(store.getX(gw, i)).append(',').append(store.getY(gw, i));
+					}
+					res.add(b.toString());
+				}
+			}
+		}
+		return res;
+	}
+
+	@Test
+	public void testSameResultAsSequential() {
+		List<String> sequential = generalize(1);
+		Assert.assertEquals(sequential, generalize(1));
+		Assert.assertEquals(sequential, generalize(2));
+		Assert.assertEquals(sequential, generalize(8));
+		// ways are combined and roundabouts are removed
+		Assert.assertTrue(sequential.size() > 0);
+		Assert.assertTrue(sequential.size() < id - 40);
+	}
+
+	@Test
+	public void testExpectedResult() throws IOException {
+		// result of generalization before ways were moved to columnar store
+		List<String> expected = new ArrayList<String>();
+		BufferedReader r = new BufferedReader(new InputStreamReader(
+				RouteGeneralizationTest.class.getResourceAsStream("/route_generalization_expected.txt"),
+				StandardCharsets.UTF_8));
+		try {
+			String s;
+			while ((s = r.readLine()) != null) {
+				if (s.length() > 0) {
+					expected.add(s);
+				}
+			}
+		} finally {
+			r.close();
+		}
+		Assert.assertEquals(48, expected.size());
+		Assert.assertEquals(expected, generalize(1));
+		Assert.assertEquals(expected, generalize(4));
+	}
+
+	@Test
+	public void testClusterWaysOrder() {
+		GeneralizedCluster cluster = new GeneralizedCluster(0, 0, RouteGeneralization.CLUSTER_ZOOM);
+		// more ways than searched in list
+		for (int w = 0; w < 100; w++) {
+			cluster.addWayFromLocation(w, w);
+			cluster.addWayFromLocation(w, w + 1000);
+		}
+		for (int w = 0; w < 100; w += 2) {
+			cluster.replaceWayFromLocation(w, w, w + 1);
+		}
+		Assert.assertFalse(cluster.containsWay(0));
+		Assert.assertTrue(cluster.containsWay(1));
+		// removed way is added to the end
+		cluster.addWayFromLocation(0, 0);
+		int[] ways = cluster.getClusterWays();
+		Assert.assertEquals(51, ways.length);
+		for (int i = 0; i < 50; i++) {
+			Assert.assertEquals(2 * i + 1, ways[i]);
+		}
+		Assert.assertEquals(0, ways[50]);
+		Assert.assertTrue(cluster.containsWay(0));
+		Assert.assertFalse(cluster.containsWay(98));
+	}
+
+	@Test
+	public void testPartitions() {
+		Assert.assertEquals(RouteGeneralization.getPartition(5 * PARTITION_SIZE, 7 * PARTITION_SIZE),
+				RouteGeneralization.getPartition(6 * PARTITION_SIZE - 1, 8 * PARTITION_SIZE - 1));
+		Assert.assertNotEquals(RouteGeneralization.getPartition(5 * PARTITION_SIZE, 7 * PARTITION_SIZE),
+				RouteGeneralization.getPartition(5 * PARTITION_SIZE - 1, 7 * PARTITION_SIZE));
+		GeneralizedCluster cluster = new GeneralizedCluster(5 << (RouteGeneralization.CLUSTER_ZOOM
+				- RouteGeneralization.PARTITION_ZOOM), 7 << (RouteGeneralization.CLUSTER_ZOOM
+				- RouteGeneralization.PARTITION_ZOOM), RouteGeneralization.CLUSTER_ZOOM);
+		Assert.assertEquals(RouteGeneralization.getPartition(5 * PARTITION_SIZE, 7 * PARTITION_SIZE),
+				cluster.getPartition());
+	}
+}
@@ -4,9 +4,15 @@ import org.junit.Before;
 import org.junit.Test;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
+import net.osmand.osm.MapRenderingTypes.TagValuePattern;
+import net.osmand.osm.MapRenderingTypesEncoder.EntityConvert;
+import net.osmand.osm.MapRenderingTypesEncoder.EntityConvertApplyType;
+import net.osmand.osm.edit.Entity.EntityType;
+
 import static org.junit.Assert.assertEquals;
 
 public class MapRenderingTypesEncoderTest {
@@ -31,6 +37,44 @@ public class MapRenderingTypesEncoderTest {
         }
     }
 
+    @Test
+    public void testCompiledConvertsGiveSameResult() {
+        MapRenderingTypesEncoder notCompiled = new MapRenderingTypesEncoder("");
+        notCompiled.useCompiledConverts = false;
+        List<Map<String, String>> cases = new ArrayList<>();
+        Map<String, String> allTags = new LinkedHashMap<>();
+        for (List<EntityConvert> converts : mapRenderingTypesEncoder.getConvertTags().values()) {
+            for (EntityConvert ec : converts) {
+                Map<String, String> tags = new LinkedHashMap<>();
+                putPattern(tags, ec.fromTag);
+                for (TagValuePattern p : ec.fromTagList) {
+                    putPattern(tags, p);
+                }
+                cases.add(tags);
+                allTags.putAll(tags);
+            }
+        }
+        cases.add(allTags);
+        for (Map<String, String> tags : cases) {
+            for (EntityType entity : new EntityType[] { EntityType.NODE, EntityType.WAY, EntityType.RELATION }) {
+                for (EntityConvertApplyType appType : EntityConvertApplyType.values()) {
+                    assertEquals(tags + " " + entity + " " + appType,
+                            notCompiled.transformTags(new LinkedHashMap<>(tags), entity, appType),
+                            mapRenderingTypesEncoder.transformTags(new LinkedHashMap<>(tags), entity, appType));
+                }
+                assertEquals(tags + " " + entity,
+                        notCompiled.splitTags(new LinkedHashMap<>(tags), entity),
+                        mapRenderingTypesEncoder.splitTags(new LinkedHashMap<>(tags), entity));
+            }
+        }
+    }
+
+    private void putPattern(Map<String, String> tags, TagValuePattern p) {
+        if (p != null && p.tag != null) {
+            tags.put(p.tag, p.value == null ? "yes" : p.value);
+        }
+    }
+
     private void createTransformOsmcCaseList() {
         String OSMC_TAG = "osmc:symbol";
 
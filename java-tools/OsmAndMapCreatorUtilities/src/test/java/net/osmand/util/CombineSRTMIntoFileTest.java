@@ -0,0 +1,162 @@
+package net.osmand.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.data.Multipolygon;
+import net.osmand.data.MultipolygonBuilder;
+import net.osmand.osm.edit.Node;
+import net.osmand.osm.edit.Way;
+
+/**
+ * Countries sharing tiles are indexed in parallel jvms.
+ */
+public class CombineSRTMIntoFileTest {
+
+	private static final String BROKEN = "Broken";
+	// name, bottom, left, top, right
+	private static final Object[][] COUNTRIES = new Object[][] {
+		{ "West", 45.1, 6.1, 45.9, 6.9 },
+		{ "Middle", 45.2, 6.5, 45.8, 7.5 },
+		{ "East", 45.1, 7.1, 45.9, 7.9 },
+		{ "South", 45.05, 6.2, 45.5, 7.8 },
+		{ BROKEN, 45.1, 6.1, 45.9, 7.9 } };
+
+	private final TemporaryFolder folder = new TemporaryFolder();
+
+	@Before
+	public void setUp() throws IOException {
+		folder.create();
+	}
+
+	@After
+	public void tearDown() {
+		folder.delete();
+	}
+
+	/**
+	 * Child jvm: srtm directory, fragments directory, target directory, --country=name.
+	 */
+	public static class CountryMain {
+
+		public static void main(String[] args) throws Exception {
+			String country = args[3].substring("--country=".length());
+			if (BROKEN.equals(country)) {
+				throw new IllegalStateException("Country is broken");
+			}
+			Object[] c = null;
+			for (Object[] o : COUNTRIES) {
+				if (o[0].equals(country)) {
+					c = o;
+				}
+			}
+			List<File> files = new ArrayList<File>();
+			for (File f : new File(args[0]).listFiles()) {
+				files.add(f);
+			}
+			File targetFile = new File(args[2], country + ".obf");
+			CombineSRTMIntoFile.indexCountry(new SRTMTileFragmentCache(new File(args[1])), files,
+					square((Double) c[1], (Double) c[2], (Double) c[3], (Double) c[4]), country + " contour lines",
+					targetFile, new File(args[2], country + ".tmp.odb"));
+		}
+	}
+
+	private static Multipolygon square(double bottom, double left, double top, double right) {
+		Way w = new Way(-1);
+		w.addNode(new Node(bottom, left, -1));
+		w.addNode(new Node(bottom, right, -2));
+		w.addNode(new Node(top, right, -3));
+		w.addNode(new Node(top, left, -4));
+		w.addNode(new Node(bottom, left, -1));
+		MultipolygonBuilder bld = new MultipolygonBuilder();
+		bld.addOuterWay(w);
+		return bld.build();
+	}
+
+	// horizontal contour lines every 0.05 degree
+	private static void writeTile(File dir, int lat, int lon) throws IOException {
+		Writer w = new OutputStreamWriter(new BZip2CompressorOutputStream(new FileOutputStream(
+				new File(dir, "N" + lat + "E00" + lon + ".osm.bz2"))), "UTF-8");
+		try {
+			w.write("<?xml version='1.0' encoding='UTF-8'?>\n<osm version=\"0.6\">\n");
+			long id = 1;
+			List<long[]> ways = new ArrayList<long[]>();
+			for (int i = 1; i < 20; i++) {
+				long[] nodes = new long[21];
+				for (int j = 0; j <= 20; j++) {
+					nodes[j] = id;
+					w.write("<node id=\"" + id++ + "\" lat=\"" + (lat + i * 0.05) + "\" lon=\""
+							+ (lon + j * 0.05) + "\"/>\n");
+				}
+				ways.add(nodes);
+			}
+			for (int i = 0; i < ways.size(); i++) {
+				w.write("<way id=\"" + id++ + "\">\n");
+				for (long n : ways.get(i)) {
+					w.write("<nd ref=\"" + n + "\"/>\n");
+				}
+				w.write("<tag k=\"contour\" v=\"elevation\"/>\n<tag k=\"ele\" v=\"" + (100 + i * 20) + "\"/>\n");
+				w.write("</way>\n");
+			}
+			w.write("</osm>\n");
+		} finally {
+			w.close();
+		}
+	}
+
+	@Test
+	public void testCountriesInParallelJvms() throws Exception {
+		File srtm = folder.newFolder("srtm");
+		File fragments = folder.newFolder("fragments");
+		File target = folder.newFolder("target");
+		writeTile(srtm, 45, 6);
+		writeTile(srtm, 45, 7);
+		List<String> countries = new ArrayList<String>();
+		for (Object[] c : COUNTRIES) {
+			countries.add((String) c[0]);
+		}
+		List<String> args = Arrays.asList(srtm.getAbsolutePath(), fragments.getAbsolutePath(),
+				target.getAbsolutePath());
+		Set<String> failed = CombineSRTMIntoFile.processInJvms(CountryMain.class, args, countries,
+				countries.size(), "256m", target);
+		Assert.assertEquals(Arrays.asList(BROKEN), new ArrayList<String>(failed));
+		// log is kept only for failed country
+		Assert.assertTrue(new File(target, BROKEN + ".log").exists());
+		for (String c : countries) {
+			if (c.equals(BROKEN)) {
+				continue;
+			}
+			Assert.assertFalse(new File(target, c + ".log").exists());
+			Assert.assertFalse(new File(target, c + ".tmp.odb").exists());
+			File obf = new File(target, c + ".obf");
+			Assert.assertTrue(c, obf.exists());
+			BinaryMapIndexReader reader = new BinaryMapIndexReader(new RandomAccessFile(obf, "r"), obf);
+			try {
+				Assert.assertEquals(c, 1, reader.getMapIndexes().size());
+			} finally {
+				reader.close();
+			}
+		}
+		// tiles are shared by countries, fragments are replaced only completely
+		List<String> names = Arrays.asList(fragments.list());
+		Assert.assertEquals(2, names.size());
+		Assert.assertTrue(names.contains("N45E006.fragment.gz"));
+		Assert.assertTrue(names.contains("N45E007.fragment.gz"));
+	}
+}
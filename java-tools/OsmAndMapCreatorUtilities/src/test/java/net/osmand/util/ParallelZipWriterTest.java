@@ -0,0 +1,119 @@
+package net.osmand.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.osmand.util.ParallelZipWriter.ZipEntryInfo;
+
+public class ParallelZipWriterTest {
+
+	private static final int BLOCK_SIZE = 64 * 1024;
+
+	private File dir;
+	private ExecutorService executor;
+
+	@Before
+	public void setUp() throws IOException {
+		dir = File.createTempFile("zipwriter", "");
+		dir.delete();
+		dir.mkdirs();
+		executor = Executors.newFixedThreadPool(4);
+	}
+
+	@After
+	public void tearDown() {
+		executor.shutdownNow();
+		Algorithms.removeAllFiles(dir);
+	}
+
+	private byte[] createData(int length) {
+		// compressible data with repeats across blocks
+		Random rnd = new Random(length);
+		byte[] data = new byte[length];
+		for (int i = 0; i < length; i++) {
+			data[i] = i > 1000 && rnd.nextInt(4) == 0 ? data[i - 1000] : (byte) ('a' + rnd.nextInt(16));
+		}
+		return data;
+	}
+
+	private File writeFile(String name, byte[] data) throws IOException {
+		File f = new File(dir, name);
+		FileOutputStream fout = new FileOutputStream(f);
+		fout.write(data);
+		fout.close();
+		return f;
+	}
+
+	private static byte[] readAll(InputStream is) throws IOException {
+		return Algorithms.readBytesFromInputStream(is);
+	}
+
+	@Test
+	public void testBlocksAreReadableByZipReaders() throws IOException {
+		byte[] large = createData(20 * BLOCK_SIZE + 123);
+		byte[] exact = createData(10 * BLOCK_SIZE);
+		File zFile = new File(dir, "test.zip");
+		ParallelZipWriter writer = new ParallelZipWriter(zFile, 9, executor, 4);
+		writer.setBlockSize(BLOCK_SIZE);
+		ZipEntryInfo info = writer.putFile("large.obf", writeFile("large.obf", large), 1600000000000L, "description");
+		writer.putFile("exact.obf", writeFile("exact.obf", exact), 1600000000000L, null);
+		writer.putFile("empty.obf", writeFile("empty.obf", new byte[0]), 1600000000000L, null);
+		writer.close();
+
+		CRC32 crc = new CRC32();
+		crc.update(large);
+		Assert.assertEquals(crc.getValue(), info.getCrc());
+		Assert.assertEquals(large.length, info.getSize());
+		Assert.assertTrue(info.getCompressedSize() < large.length);
+		Assert.assertEquals(32, info.getMd5().length());
+
+		ZipFile zf = new ZipFile(zFile);
+		ZipEntry ze = zf.getEntry("large.obf");
+		Assert.assertEquals("description", ze.getComment());
+		Assert.assertArrayEquals(large, readAll(zf.getInputStream(ze)));
+		Assert.assertArrayEquals(exact, readAll(zf.getInputStream(zf.getEntry("exact.obf"))));
+		Assert.assertEquals(0, readAll(zf.getInputStream(zf.getEntry("empty.obf"))).length);
+		zf.close();
+
+		// sequential reading relies on sizes in local headers
+		ZipInputStream zis = new ZipInputStream(new FileInputStream(zFile));
+		Assert.assertEquals("large.obf", zis.getNextEntry().getName());
+		Assert.assertArrayEquals(large, readAll(zis));
+		Assert.assertEquals("exact.obf", zis.getNextEntry().getName());
+		Assert.assertArrayEquals(exact, readAll(zis));
+		Assert.assertEquals("empty.obf", zis.getNextEntry().getName());
+		Assert.assertNull(zis.getNextEntry());
+		zis.close();
+	}
+
+	@Test
+	public void testParallelAndSequentialGiveSameCompressedData() throws IOException {
+		File src = writeFile("src.obf", createData(12 * BLOCK_SIZE + 7));
+		File parallel = new File(dir, "parallel.zip");
+		File sequential = new File(dir, "sequential.zip");
+		ParallelZipWriter writer = new ParallelZipWriter(parallel, 6, executor, 4);
+		writer.setBlockSize(BLOCK_SIZE);
+		writer.putFile("src.obf", src, 1600000000000L, null);
+		writer.close();
+		writer = new ParallelZipWriter(sequential, 6, null, 1);
+		writer.setBlockSize(BLOCK_SIZE);
+		writer.putFile("src.obf", src, 1600000000000L, null);
+		writer.close();
+		Assert.assertArrayEquals(readAll(new FileInputStream(sequential)), readAll(new FileInputStream(parallel)));
+	}
+}
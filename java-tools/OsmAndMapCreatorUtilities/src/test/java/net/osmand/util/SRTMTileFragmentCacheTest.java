@@ -0,0 +1,133 @@
+package net.osmand.util;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.osmand.data.MultipolygonBuilder;
+import net.osmand.data.PreparedBoundary;
+import net.osmand.obf.preparation.OsmEntitySource.OsmEntityConsumer;
+import net.osmand.osm.edit.Entity;
+import net.osmand.osm.edit.Node;
+import net.osmand.osm.edit.Way;
+import net.osmand.util.SRTMTileFragmentCache.FragmentWriter;
+
+public class SRTMTileFragmentCacheTest {
+
+	private static final long ID_BASE = 1l << 32;
+
+	private Node node(long id, double lat, double lon) {
+		return new Node(lat, lon, id);
+	}
+
+	private Way way(long id, String ele, long... nodes) {
+		Way w = new Way(id);
+		w.putTag("contour", "elevation");
+		w.putTag("ele", ele);
+		for (long n : nodes) {
+			w.addNode(n);
+		}
+		return w;
+	}
+
+	private File writeFragment(Entity... entities) throws IOException {
+		File fragment = File.createTempFile("N45E006", ".fragment.gz");
+		fragment.deleteOnExit();
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new GZIPOutputStream(new FileOutputStream(fragment))));
+		try {
+			FragmentWriter writer = new FragmentWriter(out);
+			for (Entity e : entities) {
+				writer.acceptEntityToLoad(null, null, e);
+			}
+			writer.finish();
+		} finally {
+			out.close();
+		}
+		return fragment;
+	}
+
+	private PreparedBoundary square(double bottom, double left, double top, double right) {
+		Way w = new Way(-1);
+		w.addNode(node(-1, bottom, left));
+		w.addNode(node(-2, bottom, right));
+		w.addNode(node(-3, top, right));
+		w.addNode(node(-4, top, left));
+		w.addNode(node(-1, bottom, left));
+		MultipolygonBuilder bld = new MultipolygonBuilder();
+		bld.addOuterWay(w);
+		return new PreparedBoundary(bld.build());
+	}
+
+	private List<Entity> read(File fragment, PreparedBoundary boundary) throws IOException {
+		final List<Entity> res = new ArrayList<Entity>();
+		SRTMTileFragmentCache.readFragment(fragment, ID_BASE, boundary, new OsmEntityConsumer() {
+
+			@Override
+			public void acceptEntity(Entity entity) {
+				res.add(entity);
+			}
+		});
+		return res;
+	}
+
+	@Test
+	public void testClipByBoundary() throws IOException {
+		Node peak = node(500, 45.4, 6.4);
+		peak.putTag("natural", "peak");
+		File fragment = writeFragment(
+				node(100, 45.1, 6.1), node(101, 45.2, 6.2), node(102, 45.3, 6.3),
+				node(103, 45.9, 6.9), node(104, 45.95, 6.95), node(105, 45.99, 6.99),
+				peak,
+				// missing node 999 is skipped
+				way(10, "100", 100, 101, 999, 102),
+				// shares node with previous way and partly inside
+				way(11, "120", 102, 103),
+				// outside
+				way(12, "140", 104, 105));
+		List<Entity> entities = read(fragment, square(45, 6, 45.5, 6.5));
+		Map<Long, Node> nodes = new HashMap<Long, Node>();
+		List<Way> ways = new ArrayList<Way>();
+		for (Entity e : entities) {
+			if (e instanceof Node) {
+				Assert.assertNull("Node is produced once", nodes.put(e.getId(), (Node) e));
+			} else {
+				ways.add((Way) e);
+				// nodes are produced before way
+				for (int i = 0; i < ((Way) e).getNodeIds().size(); i++) {
+					Assert.assertTrue(nodes.containsKey(((Way) e).getNodeIds().get(i)));
+				}
+			}
+		}
+		Assert.assertEquals(2, ways.size());
+		Assert.assertEquals("100", ways.get(0).getTag("ele"));
+		Assert.assertEquals(3, ways.get(0).getNodeIds().size());
+		Assert.assertEquals("120", ways.get(1).getTag("ele"));
+		Assert.assertEquals(ways.get(0).getNodeIds().get(2), ways.get(1).getNodeIds().get(0));
+		// peak and nodes of 2 ways
+		Assert.assertEquals(5, nodes.size());
+		Node n = nodes.get(ways.get(1).getNodeIds().get(1));
+		Assert.assertEquals(45.9, n.getLatitude(), 1e-9);
+		Assert.assertEquals(6.9, n.getLongitude(), 1e-9);
+		int peaks = 0;
+		for (Node p : nodes.values()) {
+			Assert.assertTrue(p.getId() >= ID_BASE);
+			if ("peak".equals(p.getTag("natural"))) {
+				peaks++;
+			}
+		}
+		Assert.assertEquals(1, peaks);
+
+		Assert.assertEquals(entities.size() + 3, read(fragment, null).size());
+	}
+}
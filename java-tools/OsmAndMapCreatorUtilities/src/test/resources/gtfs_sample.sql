@@ -0,0 +1,49 @@
+CREATE TABLE routes (route_id text, agency_id text, route_short_name text, route_long_name text, route_type int)
+CREATE TABLE trips (route_id text, service_id text, trip_id text, shape_id text, firstStopLat double, firstStopLon double, minLat double, maxLat double, minLon double, maxLon double)
+CREATE TABLE stop_times (trip_id text, arrival_time text, departure_time text, stop_id text, stop_sequence int)
+INSERT INTO routes VALUES ('r5b', 'a', '5', 'Centraal - Zuid', 3)
+INSERT INTO routes VALUES ('r5a', 'a', '5', 'Zuid - Centraal', 3)
+INSERT INTO routes VALUES ('r7', 'a', '7', 'Ring', 3)
+INSERT INTO routes VALUES ('r9', 'a', '9', 'Night', 3)
+INSERT INTO routes VALUES ('r0', 'a', NULL, 'No ref', 3)
+INSERT INTO trips VALUES ('r5a', 'wd', 't5a-2', NULL, 52.0, 4.0, NULL, NULL, NULL, NULL)
+INSERT INTO trips VALUES ('r5a', 'wd', 't5a-1', NULL, 52.0, 4.0, NULL, NULL, NULL, NULL)
+INSERT INTO trips VALUES ('r5a', 'wd', 't5a-3', NULL, 52.0001, 4.0001, NULL, NULL, NULL, NULL)
+INSERT INTO trips VALUES ('r5b', 'wd', 't5b-1', NULL, 52.0, 4.0, NULL, NULL, NULL, NULL)
+INSERT INTO trips VALUES ('r5b', 'wd', 't5b-far', NULL, 52.1, 4.1, NULL, NULL, NULL, NULL)
+INSERT INTO trips VALUES ('r5b', 'wd', 't5b-short', NULL, 52.0, 4.0, NULL, NULL, NULL, NULL)
+INSERT INTO trips VALUES ('r5b', 'wd', 't5b-bad', NULL, 52.0, 4.0, NULL, NULL, NULL, NULL)
+INSERT INTO trips VALUES ('r5b', 'we', 't5b-notimes', NULL, 52.0, 4.0, NULL, NULL, NULL, NULL)
+INSERT INTO trips VALUES ('r7', 'wd', 't7-1', NULL, 51.5, 3.5, NULL, NULL, NULL, NULL)
+INSERT INTO trips VALUES ('r7', 'wd', 't7-2', NULL, 51.5, 3.5, NULL, NULL, NULL, NULL)
+INSERT INTO trips VALUES ('r9', 'wd', 't9-1', NULL, 52.0, 4.0, NULL, NULL, NULL, NULL)
+INSERT INTO trips VALUES ('r0', 'wd', 't0-1', NULL, 52.0, 4.0, NULL, NULL, NULL, NULL)
+INSERT INTO stop_times VALUES ('t5a-1', '08:00:00', '08:00:00', 's1', 1)
+INSERT INTO stop_times VALUES ('t5a-1', '08:05:00', '08:05:30', 's2', 2)
+INSERT INTO stop_times VALUES ('t5a-1', '08:12:00', '08:12:00', 's3', 3)
+INSERT INTO stop_times VALUES ('t5a-2', '08:27:00', '08:27:00', 's3', 3)
+INSERT INTO stop_times VALUES ('t5a-2', '08:15:00', '08:15:00', 's1', 1)
+INSERT INTO stop_times VALUES ('t5a-2', '08:20:00', '08:21:00', 's2', 2)
+INSERT INTO stop_times VALUES ('t5a-3', '08:30:00', '08:30:00', 's1', 1)
+INSERT INTO stop_times VALUES ('t5a-3', '08:35:00', '08:35:30', 's2', 2)
+INSERT INTO stop_times VALUES ('t5a-3', '08:42:00', '08:42:00', 's3', 3)
+INSERT INTO stop_times VALUES ('t5b-1', '07:45:00', '07:45:00', 's1', 1)
+INSERT INTO stop_times VALUES ('t5b-1', '07:50:00', '07:50:30', 's2', 2)
+INSERT INTO stop_times VALUES ('t5b-1', '07:57:00', '07:57:00', 's3', 3)
+INSERT INTO stop_times VALUES ('t5b-far', '09:00:00', '09:00:00', 's7', 1)
+INSERT INTO stop_times VALUES ('t5b-far', '09:05:00', '09:05:00', 's8', 2)
+INSERT INTO stop_times VALUES ('t5b-far', '09:10:00', '09:10:00', 's9', 3)
+INSERT INTO stop_times VALUES ('t5b-short', '10:00:00', '10:00:00', 's1', 1)
+INSERT INTO stop_times VALUES ('t5b-short', '10:05:00', '10:05:00', 's2', 2)
+INSERT INTO stop_times VALUES ('t5b-bad', '11:00:00', '11:00:00', 's1', 1)
+INSERT INTO stop_times VALUES ('t5b-bad', '11:05', '11:05:00', 's2', 2)
+INSERT INTO stop_times VALUES ('t5b-bad', '11:10:00', '11:10:00', 's3', 3)
+INSERT INTO stop_times VALUES ('t5b-bad', '11:15:00', '11:15:00', 's4', 4)
+INSERT INTO stop_times VALUES ('t7-1', '06:00:00', '06:00:00', 's5', 1)
+INSERT INTO stop_times VALUES ('t7-1', '06:10:00', '06:10:00', 's6', 2)
+INSERT INTO stop_times VALUES ('t7-2', '06:00:00', '06:00:00', 's5', 1)
+INSERT INTO stop_times VALUES ('t7-2', '06:10:00', '06:10:00', 's6', 2)
+INSERT INTO stop_times VALUES ('t9-1', '00:00:00', '00:00:00', 's1', 1)
+INSERT INTO stop_times VALUES ('t9-1', '00:05:00', '00:05:00', 's2', 2)
+INSERT INTO stop_times VALUES ('t9-1', '00:10:00', '00:10:00', 's3', 3)
+INSERT INTO stop_times VALUES ('t0-1', '05:00:00', '05:00:00', 's1', 1)
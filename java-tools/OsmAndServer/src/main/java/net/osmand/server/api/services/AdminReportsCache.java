@@ -0,0 +1,129 @@
+package net.osmand.server.api.services;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+import javax.annotation.PreDestroy;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/**
+ * Keeps last computed snapshots of admin reports, so admin page doesn't run heavy aggregations on request thread.
+ * Reports are recomputed in parallel in background while admin page is in use.
+ */
+@Service
+public class AdminReportsCache {
+
+	private static final Log LOG = LogFactory.getLog(AdminReportsCache.class);
+
+	private static final long MINUTE = 60 * 1000;
+	private static final long REFRESH_INTERVAL = 15 * MINUTE;
+	// don't refresh reports when admin page wasn't opened for a while
+	private static final long ACCESS_TIMEOUT = 24 * 60 * MINUTE;
+	private static final int REFRESH_THREADS = 4;
+
+	private final Map<String, Supplier<?>> reports = Collections.synchronizedMap(new LinkedHashMap<>());
+	private final Map<String, ReportSnapshot> snapshots = new ConcurrentHashMap<>();
+	private final ExecutorService executor = Executors.newFixedThreadPool(REFRESH_THREADS);
+	private CompletableFuture<Void> refreshing;
+	private CompletableFuture<Void> firstRefresh;
+	private volatile long lastAccess;
+
+	public static class ReportSnapshot {
+		public final Object value;
+		public final long timestamp;
+		public final long duration;
+
+		ReportSnapshot(Object value, long timestamp, long duration) {
+			this.value = value;
+			this.timestamp = timestamp;
+			this.duration = duration;
+		}
+	}
+
+	public void registerReport(String name, Supplier<?> supplier) {
+		reports.put(name, supplier);
+	}
+
+	/**
+	 * Returns last snapshot of report, only the first computation of reports is awaited. Report which has never been
+	 * computed successfully is null, it doesn't fail the page and is retried by the next refresh.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T getReport(String name) {
+		lastAccess = System.currentTimeMillis();
+		ReportSnapshot snapshot = snapshots.get(name);
+		if (snapshot == null) {
+			// waits only while reports are computed the first time
+			getFirstRefresh().join();
+			snapshot = snapshots.get(name);
+		}
+		return snapshot == null ? null : (T) snapshot.value;
+	}
+
+	private synchronized CompletableFuture<Void> getFirstRefresh() {
+		// the first refresh could be started by scheduler or admin
+		return firstRefresh != null ? firstRefresh : refresh();
+	}
+
+	public Map<String, ReportSnapshot> getSnapshots() {
+		return Collections.unmodifiableMap(snapshots);
+	}
+
+	/**
+	 * Starts recomputing of all reports, concurrent requests share the same refresh.
+	 */
+	public synchronized CompletableFuture<Void> refresh() {
+		if (refreshing != null && !refreshing.isDone()) {
+			return refreshing;
+		}
+		Map<String, Supplier<?>> toCompute;
+		synchronized (reports) {
+			toCompute = new LinkedHashMap<>(reports);
+		}
+		CompletableFuture<?>[] tasks = new CompletableFuture<?>[toCompute.size()];
+		int i = 0;
+		for (Map.Entry<String, Supplier<?>> e : toCompute.entrySet()) {
+			tasks[i++] = CompletableFuture.runAsync(() -> computeReport(e.getKey(), e.getValue()), executor);
+		}
+		refreshing = CompletableFuture.allOf(tasks);
+		if (firstRefresh == null) {
+			firstRefresh = refreshing;
+		}
+		return refreshing;
+	}
+
+	private void computeReport(String name, Supplier<?> supplier) {
+		long start = System.currentTimeMillis();
+		try {
+			Object value = supplier.get();
+			long end = System.currentTimeMillis();
+			snapshots.put(name, new ReportSnapshot(value, end, end - start));
+			LOG.info(String.format("Admin report %s is computed in %d ms", name, end - start));
+		} catch (RuntimeException e) {
+			// keep previous snapshot
+			LOG.error(String.format("Admin report %s failed: %s", name, e.getMessage()), e);
+		}
+	}
+
+	@Scheduled(fixedDelay = REFRESH_INTERVAL)
+	public void refreshReports() {
+		if (System.currentTimeMillis() - lastAccess < ACCESS_TIMEOUT) {
+			refresh();
+		}
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+}
@@ -0,0 +1,298 @@
+package net.osmand.server.api.services;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import javax.annotation.PostConstruct;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import net.osmand.server.api.services.DownloadIndexesService.ServerCommonFile;
+import net.osmand.util.Algorithms;
+
+/**
+ * Local mirror of server maps which are not stored on this server but hosted by url. File is addressed by name and
+ * version of download index (not by url, download host is chosen randomly), so new version of map is a new entry.
+ * Content (extracted from zip) is stored together with gzipped variant to serve both kinds of requests from disk.
+ *
+ * Concurrent requests of the same missing file wait for one download. Least recently used files are deleted when
+ * total size exceeds limit, files which are being sent are not deleted.
+ */
+@Service
+public class ObfMirrorCache {
+
+	private static final Log LOG = LogFactory.getLog(ObfMirrorCache.class);
+
+	private static final long MB = 1024 * 1024;
+	private static final String CONTENT_EXT = ".data";
+	private static final String GZIP_EXT = ".data.gz";
+	private static final String PART_EXT = ".part";
+
+	@Value("${osmand.obf-mirror.location}")
+	private String location;
+
+	@Value("${osmand.obf-mirror.max-size-mb}")
+	private long maxSizeMb;
+
+	private File dir;
+	private long maxSize;
+	// access ordered (least recently used first), guarded by this
+	private final LinkedHashMap<String, CachedFile> files = new LinkedHashMap<>(16, 0.75f, true);
+	private long totalSize;
+	private final Map<String, CompletableFuture<CachedFile>> downloads = new ConcurrentHashMap<>();
+
+	public static class CachedFile {
+		public final String key;
+		public final File file;
+		public final File gzipFile;
+		final long size;
+		// number of requests reading file, guarded by cache
+		int readers;
+
+		CachedFile(String key, File file, File gzipFile) {
+			this.key = key;
+			this.file = file;
+			this.gzipFile = gzipFile;
+			this.size = file.length() + gzipFile.length();
+		}
+	}
+
+	@PostConstruct
+	public void init() {
+		init(new File(location), maxSizeMb * MB);
+	}
+
+	synchronized void init(File dir, long maxSize) {
+		this.dir = dir;
+		this.maxSize = maxSize;
+		files.clear();
+		totalSize = 0;
+		dir.mkdirs();
+		File[] list = dir.listFiles();
+		if (list == null) {
+			return;
+		}
+		// restore files of previous run, oldest are first to evict
+		Arrays.sort(list, Comparator.comparingLong(File::lastModified));
+		for (File f : list) {
+			String name = f.getName();
+			if (name.endsWith(PART_EXT)) {
+				f.delete();
+			} else if (name.endsWith(GZIP_EXT)) {
+				String key = name.substring(0, name.length() - GZIP_EXT.length());
+				File content = new File(dir, key + CONTENT_EXT);
+				if (content.exists()) {
+					add(new CachedFile(key, content, f));
+				} else {
+					f.delete();
+				}
+			}
+		}
+		evict();
+		LOG.info(String.format("Obf mirror %s: %d files, %d MB", dir.getAbsolutePath(), files.size(),
+				totalSize / MB));
+	}
+
+	/**
+	 * @return cached file which should be released after reading
+	 */
+	public CachedFile acquire(ServerCommonFile scf, String ext) throws IOException {
+		String name = scf.di == null ? getFileName(scf.url) : scf.di.getName();
+		String version = scf.di == null ? "" : scf.di.getTimestamp() + "-" + scf.di.getContentSize();
+		return acquire(scf.url, name, version, ext);
+	}
+
+	/**
+	 * @param url download source, any host serving the file
+	 */
+	CachedFile acquire(URL url, String name, String version, String ext) throws IOException {
+		String key = getKey(name, version);
+		while (true) {
+			CachedFile f = get(key);
+			if (f != null) {
+				return f;
+			}
+			CompletableFuture<CachedFile> download = new CompletableFuture<>();
+			CompletableFuture<CachedFile> running = downloads.putIfAbsent(key, download);
+			if (running == null) {
+				try {
+					// could be downloaded before this download was registered
+					f = get(key);
+					if (f == null) {
+						f = download(key, url, name, ext);
+						synchronized (this) {
+							add(f);
+							f.readers++;
+							evict();
+						}
+					}
+					download.complete(f);
+					return f;
+				} catch (IOException | RuntimeException e) {
+					download.completeExceptionally(e);
+					throw e;
+				} finally {
+					downloads.remove(key);
+				}
+			}
+			try {
+				running.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException(e);
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof IOException) {
+					throw (IOException) e.getCause();
+				}
+				throw new IllegalStateException(e.getCause());
+			}
+			// file is downloaded by another request, acquire it (or download again if it's already evicted)
+		}
+	}
+
+	public synchronized void release(CachedFile f) {
+		f.readers--;
+		evict();
+	}
+
+	synchronized long getTotalSize() {
+		return totalSize;
+	}
+
+	synchronized boolean contains(CachedFile f) {
+		return files.get(f.key) == f;
+	}
+
+	private synchronized CachedFile get(String key) {
+		CachedFile f = files.get(key);
+		if (f != null) {
+			f.readers++;
+		}
+		return f;
+	}
+
+	private void add(CachedFile f) {
+		files.put(f.key, f);
+		totalSize += f.size;
+	}
+
+	private void evict() {
+		Iterator<CachedFile> it = files.values().iterator();
+		while (totalSize > maxSize && it.hasNext()) {
+			CachedFile f = it.next();
+			if (f.readers > 0) {
+				continue;
+			}
+			it.remove();
+			totalSize -= f.size;
+			delete(f);
+		}
+	}
+
+	private void delete(CachedFile f) {
+		f.file.delete();
+		f.gzipFile.delete();
+	}
+
+	private CachedFile download(String key, URL url, String name, String ext) throws IOException {
+		long time = System.currentTimeMillis();
+		File downloaded = new File(dir, key + PART_EXT);
+		File content = new File(dir, key + CONTENT_EXT + PART_EXT);
+		File gzip = new File(dir, key + GZIP_EXT + PART_EXT);
+		try {
+			try (InputStream is = url.openStream(); OutputStream ous = new FileOutputStream(downloaded)) {
+				Algorithms.streamCopy(is, ous);
+			}
+			byte[] buf = new byte[UserdataService.BUFFER_SIZE];
+			try (InputStream is = openContent(downloaded, name, ext);
+					OutputStream ous = new FileOutputStream(content);
+					OutputStream gzous = new GZIPOutputStream(new FileOutputStream(gzip), UserdataService.BUFFER_SIZE)) {
+				int r;
+				while ((r = is.read(buf)) != -1) {
+					ous.write(buf, 0, r);
+					gzous.write(buf, 0, r);
+				}
+			}
+			// gzip is moved last, it marks complete entry on restart
+			File contentFile = new File(dir, key + CONTENT_EXT);
+			File gzipFile = new File(dir, key + GZIP_EXT);
+			Files.move(content.toPath(), contentFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			Files.move(gzip.toPath(), gzipFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			CachedFile f = new CachedFile(key, contentFile, gzipFile);
+			LOG.info(String.format("Obf mirror downloaded %s (%d MB) in %d ms", url, f.size / MB,
+					System.currentTimeMillis() - time));
+			return f;
+		} finally {
+			downloaded.delete();
+			content.delete();
+			gzip.delete();
+		}
+	}
+
+	// zip archive is replaced with entry of requested type, other files are stored as is
+	private InputStream openContent(File downloaded, String name, String ext) throws IOException {
+		if (name.endsWith(".zip")) {
+			ZipInputStream zis = new ZipInputStream(new FileInputStream(downloaded));
+			ZipEntry ze = zis.getNextEntry();
+			while (ze != null && !ze.getName().endsWith(ext)) {
+				ze = zis.getNextEntry();
+			}
+			if (ze != null) {
+				return zis;
+			}
+			zis.close();
+		}
+		return new FileInputStream(downloaded);
+	}
+
+	// download urls are https://host/download?file=name...
+	static String getFileName(URL url) {
+		String query = url.getQuery();
+		if (query != null) {
+			for (String param : query.split("&")) {
+				if (param.startsWith("file=")) {
+					return param.substring("file=".length());
+				}
+			}
+		}
+		return url.getPath().substring(url.getPath().lastIndexOf('/') + 1);
+	}
+
+	static String getKey(String name, String version) {
+		try {
+			MessageDigest md = MessageDigest.getInstance("SHA-256");
+			byte[] hash = md.digest((name + "\n" + version).getBytes(StandardCharsets.UTF_8));
+			StringBuilder key = new StringBuilder();
+			for (byte b : hash) {
+				key.append(String.format("%02x", b & 0xff));
+			}
+			return key.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
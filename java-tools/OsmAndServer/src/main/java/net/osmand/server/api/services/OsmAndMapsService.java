@@ -1083,20 +1083,13 @@ public class OsmAndMapsService {
 	
 	public File getObf(Map<String, GPXFile> files)
 			throws IOException, SQLException, XmlPullParserException, InterruptedException {
-		File tmpOsm = File.createTempFile("gpx_obf", ".osm.gz");
-		File tmpFolder = new File(tmpOsm.getParentFile(), String.valueOf(System.currentTimeMillis()));
+		File tmpFolder = new File(System.getProperty("java.io.tmpdir"), String.valueOf(System.currentTimeMillis()));
 		String fileName = "gpx_" + System.currentTimeMillis();
 		OsmGpxWriteContext.QueryParams qp = new OsmGpxWriteContext.QueryParams();
-		qp.osmFile = tmpOsm;
 		qp.details = OsmGpxWriteContext.QueryParams.DETAILS_ELE_SPEED;
 		OsmGpxWriteContext writeCtx = new OsmGpxWriteContext(qp);
 		File targetObf = new File(tmpFolder.getParentFile(), fileName + IndexConstants.BINARY_MAP_INDEX_EXT);
 		writeCtx.writeObf(files, null, tmpFolder, fileName, targetObf);
-		
-		if (!qp.osmFile.delete()) {
-			qp.osmFile.deleteOnExit();
-		}
-		
 		return targetObf;
 	}
 }
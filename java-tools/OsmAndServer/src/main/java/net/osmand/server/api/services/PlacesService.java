@@ -11,10 +11,15 @@ import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.stream.Collectors;
 
 import javax.servlet.AsyncContext;
@@ -28,6 +33,7 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.web.client.RestTemplateBuilder;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
@@ -62,10 +68,20 @@ public class PlacesService {
 	private static final long MAPILLARY_GC_TIMEOUT = TimeUnit.MINUTES.toMillis(15);
 	private static final double MAPILLARY_RADIUS = 40.0;
 	private static final int MAPILLARY_IMAGES_LIMIT = 20;
+	private static final int MAPILLARY_MEMORY_CACHE_TILES = 10000;
 	
 	private final RestTemplate restTemplate;
 	
-	private long lastMapillaryGCTimestamp = 0; 
+	// decoded tiles, future is shared by concurrent requests of the same tile while it's loading
+	private final Map<Long, CompletableFuture<MapillaryTile>> mapillaryTiles = new LinkedHashMap<Long, CompletableFuture<MapillaryTile>>(
+			16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Long, CompletableFuture<MapillaryTile>> eldest) {
+			return size() > MAPILLARY_MEMORY_CACHE_TILES;
+		}
+	};
 	
 
 	@Value("${mapillary.accesstoken}")
@@ -298,84 +314,157 @@ public class PlacesService {
 			return lst;
 		}
 
-	@SuppressWarnings("unchecked")
 	public List<CameraPlace> parseMapillaryPlacesApi(double lat, double lon, String host, String proto) {
 		List<CameraPlace> lst = new ArrayList<>();
 		if (Algorithms.isEmpty(mapillaryAccessToken)) {
 			return lst;
 		}
-		String url = "";
+		int x = (int) MapUtils.getTileNumberX(MapillaryApiConstants.ZOOM_QUERY, lon);
+		int y = (int) MapUtils.getTileNumberY(MapillaryApiConstants.ZOOM_QUERY, lat);
+		MapillaryTile tile;
+		try {
+			tile = getMapillaryTile(x, y);
+		} catch (IOException ex) {
+			LOGGER.error("Error Mappillary api (tile " + x + " " + y + "): " + ex.getMessage());
+			return lst;
+		}
+		for (MapillaryPoint pnt : tile.points) {
+			CameraPlace cameraPlace = new CameraPlace();
+			cameraPlace.setType("mapillary-photo");
+			cameraPlace.setTimestamp(pnt.capturedAt);
+			cameraPlace.setKey(pnt.key);
+			cameraPlace.setCa(pnt.ca);
+			cameraPlace.setImageUrl(buildOsmandImageUrl(false, pnt.key, host, proto));
+			cameraPlace.setImageHiresUrl(buildOsmandImageUrl(true, pnt.key, host, proto));
+			cameraPlace.setUrl(buildOsmandPhotoViewerUrl(pnt.key, host, proto));
+			cameraPlace.setExternalLink(false);
+			cameraPlace.setUsername(pnt.username);
+			if (pnt.is360 != null) {
+				cameraPlace.setIs360(pnt.is360);
+			}
+			cameraPlace.setLat(pnt.lat);
+			cameraPlace.setLon(pnt.lon);
+			cameraPlace.setTopIcon("ic_logo_mapillary");
+			double bearing = computeInitialBearing(pnt.lat, pnt.lon, lat, lon);
+			cameraPlace.setBearing(bearing);
+			cameraPlace.setDistance(computeDistance(pnt.lat, pnt.lon, lat, lon));
+			lst.add(cameraPlace);
+		}
+		return lst;
+	}
+
+	private MapillaryTile getMapillaryTile(int x, int y) throws IOException {
+		long key = (((long) x) << 32) | y;
+		CompletableFuture<MapillaryTile> future;
+		boolean load = false;
+		synchronized (mapillaryTiles) {
+			future = mapillaryTiles.get(key);
+			if (future == null || future.isCompletedExceptionally() || isExpired(future.getNow(null))) {
+				future = new CompletableFuture<>();
+				mapillaryTiles.put(key, future);
+				load = true;
+			}
+		}
+		if (load) {
+			try {
+				future.complete(loadMapillaryTile(x, y));
+			} catch (IOException | RuntimeException e) {
+				future.completeExceptionally(e);
+				synchronized (mapillaryTiles) {
+					mapillaryTiles.remove(key, future);
+				}
+				throw e instanceof IOException ? (IOException) e : new IOException(e);
+			}
+		}
 		try {
-			int x = (int) MapUtils.getTileNumberX(MapillaryApiConstants.ZOOM_QUERY, lon);
-			int y = (int) MapUtils.getTileNumberY(MapillaryApiConstants.ZOOM_QUERY, lat);
-			File f = new File(TEMP_MAPILLARY_FOLDER, FILE_MAPILLARY_PREFIX + x + "_" + y + ".mvt");
-			gcMapillaryCache();
-			if (!f.exists() || System.currentTimeMillis() - f.lastModified() > MAPILLARY_CACHE_TIMEOUT) {
-				String accessTokenParam = MapillaryApiConstants.MAPILLARY_PARAM_ACCESS_TOKEN + "="
-						+ URLEncoder.encode(mapillaryAccessToken, "UTF-8");
-				url = MapillaryApiConstants.MAPILLARY_VECTOR_TILE_URL + "/" + MapillaryApiConstants.ZOOM_QUERY + "/" + x
-						+ "/" + y + "?" + accessTokenParam;
-				InputStream is = new URL(url).openConnection().getInputStream();
-				FileOutputStream fous = new FileOutputStream(f);
+			return future.get(TIMEOUT, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException | TimeoutException e) {
+			throw new IOException(e);
+		} catch (ExecutionException e) {
+			throw new IOException(e.getCause());
+		}
+	}
+
+	private boolean isExpired(MapillaryTile tile) {
+		return tile != null && System.currentTimeMillis() - tile.timestamp > MAPILLARY_CACHE_TIMEOUT;
+	}
+
+	@SuppressWarnings("unchecked")
+	private MapillaryTile loadMapillaryTile(int x, int y) throws IOException {
+		File f = new File(TEMP_MAPILLARY_FOLDER, FILE_MAPILLARY_PREFIX + x + "_" + y + ".mvt");
+		long timestamp = f.lastModified();
+		if (!f.exists() || System.currentTimeMillis() - timestamp > MAPILLARY_CACHE_TIMEOUT) {
+			String accessTokenParam = MapillaryApiConstants.MAPILLARY_PARAM_ACCESS_TOKEN + "="
+					+ URLEncoder.encode(mapillaryAccessToken, "UTF-8");
+			String url = MapillaryApiConstants.MAPILLARY_VECTOR_TILE_URL + "/" + MapillaryApiConstants.ZOOM_QUERY + "/"
+					+ x + "/" + y + "?" + accessTokenParam;
+			// download to temp file, so concurrent readers never see partially written tile
+			File tmp = new File(TEMP_MAPILLARY_FOLDER, f.getName() + "." + Thread.currentThread().getId() + ".tmp");
+			tmp.getParentFile().mkdirs();
+			InputStream is = new URL(url).openConnection().getInputStream();
+			FileOutputStream fous = new FileOutputStream(tmp);
+			try {
 				Algorithms.streamCopy(is, fous);
+			} finally {
 				fous.close();
 				is.close();
 			}
-			
-			GeometryTile tl = BinaryVectorTileReader.readTile(f);
-			for (Geometry g : tl.getData()) {
-				if (!"Point".equals(g.getGeometryType())) {
-					continue;
+			if (!tmp.renameTo(f)) {
+				f.delete();
+				if (!tmp.renameTo(f)) {
+					tmp.delete();
+					throw new IOException("Can't store mapillary tile " + f.getName());
 				}
-				// compass_angle, captured_at, is_pano, sequence_id, id (image_id)
-				Map<String, Object> data = (Map<String, Object>) g.getUserData();
-				int cx = (int) g.getCentroid().getX();
-				int cy = (int) g.getCentroid().getY();
-				double clat = MapUtils.getLatitudeFromTile(MapillaryApiConstants.ZOOM_POINT_MAX,
-						cy + (y << MapillaryApiConstants.ZOOM_SHIFT));
-				double clon = MapUtils.getLongitudeFromTile(MapillaryApiConstants.ZOOM_POINT_MAX,
-						cx + (x << MapillaryApiConstants.ZOOM_SHIFT));
-				CameraPlace cameraPlace = new CameraPlace();
-				cameraPlace.setType("mapillary-photo");
-				cameraPlace.setTimestamp(String.valueOf(data.get("captured_at")));
-				String key = data.get("id").toString();
-				cameraPlace.setKey(key);
-				cameraPlace.setCa(parseCameraAngle(data.get("compass_angle")));
-				cameraPlace.setImageUrl(buildOsmandImageUrl(false, key, host, proto));
-				cameraPlace.setImageHiresUrl(buildOsmandImageUrl(true, key, host, proto));
-				cameraPlace.setUrl(buildOsmandPhotoViewerUrl(key, host, proto));
-				cameraPlace.setExternalLink(false);
-				cameraPlace.setUsername((String) data.get("username"));
-				if (data.get("is_pano") instanceof Boolean) {
-					cameraPlace.setIs360((Boolean) data.get("is_pano"));
-				}
-				cameraPlace.setLat(clat);
-				cameraPlace.setLon(clon);
-				cameraPlace.setTopIcon("ic_logo_mapillary");
-				double bearing = computeInitialBearing(clat, clon, lat, lon);
-				cameraPlace.setBearing(bearing);
-				cameraPlace.setDistance(computeDistance(clat, clon, lat, lon));
-				lst.add(cameraPlace);
 			}
-		} catch (IOException ex) {
-			LOGGER.error("Error Mappillary api (" + url + "): " + ex.getMessage());
+			timestamp = System.currentTimeMillis();
 		}
-		return lst;
+		GeometryTile tl = BinaryVectorTileReader.readTile(f);
+		List<MapillaryPoint> points = new ArrayList<>();
+		for (Geometry g : tl.getData()) {
+			if (!"Point".equals(g.getGeometryType())) {
+				continue;
+			}
+			// compass_angle, captured_at, is_pano, sequence_id, id (image_id)
+			Map<String, Object> data = (Map<String, Object>) g.getUserData();
+			int cx = (int) g.getCentroid().getX();
+			int cy = (int) g.getCentroid().getY();
+			MapillaryPoint pnt = new MapillaryPoint();
+			pnt.lat = MapUtils.getLatitudeFromTile(MapillaryApiConstants.ZOOM_POINT_MAX,
+					cy + (y << MapillaryApiConstants.ZOOM_SHIFT));
+			pnt.lon = MapUtils.getLongitudeFromTile(MapillaryApiConstants.ZOOM_POINT_MAX,
+					cx + (x << MapillaryApiConstants.ZOOM_SHIFT));
+			pnt.capturedAt = String.valueOf(data.get("captured_at"));
+			pnt.key = data.get("id").toString();
+			pnt.ca = parseCameraAngle(data.get("compass_angle"));
+			pnt.username = (String) data.get("username");
+			if (data.get("is_pano") instanceof Boolean) {
+				pnt.is360 = (Boolean) data.get("is_pano");
+			}
+			points.add(pnt);
+		}
+		return new MapillaryTile(timestamp, points);
 	}
-	
-	private void gcMapillaryCache() {
+
+	@Scheduled(fixedRate = MAPILLARY_GC_TIMEOUT)
+	public void gcMapillaryCache() {
 		long tm = System.currentTimeMillis();
-		if (tm - lastMapillaryGCTimestamp > MAPILLARY_GC_TIMEOUT) {
-			lastMapillaryGCTimestamp = tm;
-			File fld = new File(TEMP_MAPILLARY_FOLDER);
-			fld.mkdirs();
-			File[] lf = fld.listFiles();
-			if (lf != null) {
-				for (File f : lf) {
-					if (f.getName().startsWith(FILE_MAPILLARY_PREFIX)
-							&& tm - f.lastModified() > MAPILLARY_CACHE_TIMEOUT) {
-						f.delete();
-					}
+		synchronized (mapillaryTiles) {
+			Iterator<CompletableFuture<MapillaryTile>> it = mapillaryTiles.values().iterator();
+			while (it.hasNext()) {
+				CompletableFuture<MapillaryTile> f = it.next();
+				if (f.isCompletedExceptionally() || isExpired(f.getNow(null))) {
+					it.remove();
+				}
+			}
+		}
+		File fld = new File(TEMP_MAPILLARY_FOLDER);
+		fld.mkdirs();
+		File[] lf = fld.listFiles();
+		if (lf != null) {
+			for (File f : lf) {
+				if (f.getName().startsWith(FILE_MAPILLARY_PREFIX)
+						&& tm - f.lastModified() > MAPILLARY_CACHE_TIMEOUT) {
+					f.delete();
 				}
 			}
 		}
@@ -517,6 +606,26 @@ public class PlacesService {
 		static final int ZOOM_POINT_MAX = ZOOM_QUERY + ZOOM_SHIFT; // 4096 max 
 	}
 
+	private static class MapillaryTile {
+		final long timestamp;
+		final List<MapillaryPoint> points;
+
+		MapillaryTile(long timestamp, List<MapillaryPoint> points) {
+			this.timestamp = timestamp;
+			this.points = Collections.unmodifiableList(points);
+		}
+	}
+
+	private static class MapillaryPoint {
+		String key;
+		double lat;
+		double lon;
+		double ca;
+		String capturedAt;
+		String username;
+		Boolean is360;
+	}
+
 	private static class WikimediaApiConstants {
 		static final String WIKIMEDIA_API_URL = "https://commons.wikimedia.org/w/api.php?format=json&formatversion=2&action=query&prop=imageinfo"
 				+ "&iiprop=timestamp|user|url&iiurlwidth=576";
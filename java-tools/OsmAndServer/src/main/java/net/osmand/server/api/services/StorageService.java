@@ -2,13 +2,18 @@ package net.osmand.server.api.services;
 
 import java.io.*;
 import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Base64;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
+import javax.annotation.PreDestroy;
+
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -24,7 +29,11 @@ import com.amazonaws.services.s3.AmazonS3ClientBuilder;
 import com.amazonaws.services.s3.model.CopyObjectResult;
 import com.amazonaws.services.s3.model.GetObjectRequest;
 import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PutObjectRequest;
 import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.transfer.TransferManager;
+import com.amazonaws.services.s3.transfer.TransferManagerBuilder;
+import com.amazonaws.services.s3.transfer.Upload;
 
 import net.osmand.server.api.services.DownloadIndexesService.ServerCommonFile;
 import net.osmand.util.Algorithms;
@@ -45,6 +54,12 @@ public class StorageService {
 
 	protected static final String LOCAL_STORAGE = "local";
 
+	// bigger files are uploaded to s3 by parts in parallel
+	private static final long MULTIPART_UPLOAD_THRESHOLD = 16 * 1024 * 1024;
+	// uploaded files bigger than that are kept in temp file instead of memory
+	private static final int IN_MEMORY_THRESHOLD = 1024 * 1024;
+	private static final int BUFFER_SIZE = 8192;
+
 	@Value("${storage.default}")
 	private String defaultStorage;
 
@@ -108,15 +123,26 @@ public class StorageService {
 			}
 			LOGGER.info(String.format("Configure %s with %s in %s bucket=%s: accesskey=%s, secretKeyLength=%d", id, endpointUrl,
 					region, bucket, accessKey, secretKey == null ? 0 : secretKey.length()));
-			AmazonS3 s3 = builder.build();
-			st = new StorageType();
-			st.bucket = bucket;
-			st.s3Conn = s3;
+			st = createS3StorageType(builder.build(), bucket);
 		}
 		storageProviders.put(id, st);
 		return st;
 	}
 
+	private static StorageType createS3StorageType(AmazonS3 s3, String bucket) {
+		StorageType st = new StorageType();
+		st.bucket = bucket;
+		st.s3Conn = s3;
+		st.transferManager = TransferManagerBuilder.standard().withS3Client(s3)
+				.withMultipartUploadThreshold(MULTIPART_UPLOAD_THRESHOLD).build();
+		return st;
+	}
+
+	// storage with already configured client (s3 compatible stand-in)
+	void addStorageProvider(String id, AmazonS3 s3, String bucket) {
+		storageProviders.put(id, createS3StorageType(s3, bucket));
+	}
+
 	private void checkNotNull(String vl, String name, String id) {
 		if (Algorithms.isEmpty(vl)) {
 			String msg = String.format("For storage configuration '%s' %s was not specified in application properties",
@@ -161,25 +187,32 @@ public class StorageService {
 			}
 		}
 		StorageType toStore = getStorageProviderById(storageId);
-		InputStream is = null;
+		InternalZipFile file = null;
 		if (data != null && data.length > 0) {
-			is = new ByteArrayInputStream(data);
+			file = InternalZipFile.buildFromData(data);
 		}
-		if (!Algorithms.isEmpty(storage) && is == null) {
+		if (!Algorithms.isEmpty(storage) && file == null) {
 			for (String id : storage.split(",")) {
 				if (!storageId.equals(id)) {
-					is = getFileInputStream(id, fld, storageFileName);
+					InputStream is = getFileInputStream(id, fld, storageFileName);
 					if (is != null) {
+						// size of stored object is not known in advance
+						file = InternalZipFile.buildFromStream(is, false);
 						break;
 					}
 				}
 			}
 		}
-		if(is == null) {
+		if (file == null) {
 			throw new IllegalStateException(String.format("Impossible to retrieve file %s/%s", fld, storageFileName));
 		}
-		saveFile(fld, storageFileName, toStore, is, data.length);
-		is.close();
+		try {
+			if (!toStore.local) {
+				waitForUpload(startUpload(fld, storageFileName, toStore, file));
+			}
+		} finally {
+			file.close();
+		}
 		String nstorage = storage == null ? LOCAL_STORAGE : storage;
 		nstorage += "," + storageId;
 		return nstorage; 
@@ -187,20 +220,65 @@ public class StorageService {
 	
 	
 	public String save(String fld, String fileName, @Valid @NotNull @NotEmpty InternalZipFile file) throws IOException {
+		// upload to all storages at the same time
+		List<Upload> uploads = new ArrayList<>();
 		for (StorageType s : getAndInitDefaultStorageProviders()) {
-			InputStream is = file.getInputStream();
-			saveFile(fld, fileName, s, is, file.getSize());
-			is.close();
+			if (!s.local) {
+				uploads.add(startUpload(fld, fileName, s, file));
+			}
+		}
+		// file could be deleted after return, so wait for all uploads even if one fails
+		RuntimeException error = null;
+		for (Upload upload : uploads) {
+			try {
+				waitForUpload(upload);
+			} catch (RuntimeException e) {
+				LOGGER.error(String.format("Upload failed %s: %s", upload.getDescription(), e.getMessage()));
+				if (error == null) {
+					error = e;
+				}
+			}
+		}
+		if (error != null) {
+			throw error;
 		}
 		return defaultStorage;
 	}
 	
 
-	private void saveFile(String fld, String fileName, StorageType s, InputStream is, long fileSize) {
-		if (!s.local) {
-			ObjectMetadata om = new ObjectMetadata();
-			om.setContentLength(fileSize);
-			s.s3Conn.putObject(s.bucket, fld + FILE_SEPARATOR + fileName, is, om);
+	private Upload startUpload(String fld, String fileName, StorageType s, InternalZipFile file) throws IOException {
+		ObjectMetadata om = new ObjectMetadata();
+		om.setContentLength(file.getSize());
+		if (file.contentMD5 != null && file.getSize() < MULTIPART_UPLOAD_THRESHOLD) {
+			// s3 verifies single part uploads
+			om.setContentMD5(file.contentMD5);
+		}
+		String key = fld + FILE_SEPARATOR + fileName;
+		PutObjectRequest request;
+		if (file.tempzipfile != null) {
+			// parts of file are uploaded in parallel
+			request = new PutObjectRequest(s.bucket, key, file.tempzipfile).withMetadata(om);
+		} else {
+			request = new PutObjectRequest(s.bucket, key, file.getInputStream(), om);
+		}
+		return s.transferManager.upload(request);
+	}
+
+	private void waitForUpload(Upload upload) throws IOException {
+		try {
+			upload.waitForCompletion();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Upload was interrupted: " + upload.getDescription(), e);
+		}
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		for (StorageType st : storageProviders.values()) {
+			if (st.transferManager != null) {
+				st.transferManager.shutdownNow(false);
+			}
 		}
 	}
 	
@@ -235,10 +313,90 @@ public class StorageService {
 
 	static class StorageType {
 		AmazonS3 s3Conn;
+		TransferManager transferManager;
 		String bucket;
 		boolean local;
 	}
 
+	// copies everything read from stream to output and digest
+	private static class TeeInputStream extends FilterInputStream {
+
+		private final OutputStream out;
+		private final MessageDigest digest;
+
+		TeeInputStream(InputStream in, OutputStream out, MessageDigest digest) {
+			super(in);
+			this.out = out;
+			this.digest = digest;
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if (b >= 0) {
+				out.write(b);
+				digest.update((byte) b);
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int cnt = super.read(b, off, len);
+			if (cnt > 0) {
+				out.write(b, off, cnt);
+				digest.update(b, off, cnt);
+			}
+			return cnt;
+		}
+	}
+
+	// keeps data in memory until threshold and then switches to temp file
+	private static class SpillOutputStream extends OutputStream {
+
+		private ByteArrayOutputStream memory = new ByteArrayOutputStream();
+		private File file;
+		private OutputStream fileOut;
+
+		@Override
+		public void write(int b) throws IOException {
+			getOut(1).write(b);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			getOut(len).write(b, off, len);
+		}
+
+		private OutputStream getOut(int len) throws IOException {
+			if (fileOut == null && memory.size() + len > IN_MEMORY_THRESHOLD) {
+				file = File.createTempFile("userdata", ".gz");
+				fileOut = new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE);
+				memory.writeTo(fileOut);
+				memory = null;
+			}
+			return fileOut != null ? fileOut : memory;
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (fileOut != null) {
+				fileOut.close();
+			}
+		}
+
+		void discard() {
+			try {
+				close();
+			} catch (IOException e) {
+				// ignore
+			}
+			if (file != null) {
+				file.delete();
+			}
+		}
+	}
+
 	
 	public static class InternalZipFile {
     	
@@ -247,10 +405,20 @@ public class StorageService {
     	private byte[] data;
 		private MultipartFile multipartfile;
 		private File tempzipfile;
+		private boolean deleteTempFile;
+		private String contentMD5;
 		
 		public long getContentSize() {
 			return contentSize;
 		}
+
+		String getContentMD5() {
+			return contentMD5;
+		}
+
+		File getTempFile() {
+			return deleteTempFile ? tempzipfile : null;
+		}
 		
 		public byte[] getBytes() throws IOException {
 			if (data != null) {
@@ -291,6 +459,15 @@ public class StorageService {
 			throw new IllegalStateException();
         }
 		
+		/**
+		 * Deletes temp file created for uploaded data.
+		 */
+		public void close() {
+			if (deleteTempFile && tempzipfile != null) {
+				tempzipfile.delete();
+			}
+		}
+
 		public static InternalZipFile buildFromFile(File file) throws IOException {
 			InternalZipFile zipfile = new InternalZipFile();
 			byte[] buffer = new byte[1024];
@@ -320,15 +497,52 @@ public class StorageService {
     	}
 		
     	public static InternalZipFile buildFromMultipartFile(MultipartFile file) throws IOException {
+			return buildFromStream(file.getInputStream(), true);
+		}
+
+		static InternalZipFile buildFromData(byte[] data) {
 			InternalZipFile zipfile = new InternalZipFile();
-			zipfile.contentSize = 0;
-			zipfile.multipartfile = file;
-			int cnt;
-			GZIPInputStream gzis = new GZIPInputStream(file.getInputStream());
-			byte[] buf = new byte[1024];
-			while ((cnt = gzis.read(buf)) >= 0) {
-				zipfile.contentSize += cnt;
+			zipfile.data = data;
+			return zipfile;
+		}
+
+		/**
+		 * Reads stream once: copies it to memory or temp file, calculates md5 and (if gunzip) unzipped content size,
+		 * throws IOException if stream is not gzip.
+		 */
+		static InternalZipFile buildFromStream(InputStream is, boolean gunzip) throws IOException {
+			InternalZipFile zipfile = new InternalZipFile();
+			MessageDigest md5;
+			try {
+				md5 = MessageDigest.getInstance("MD5");
+			} catch (NoSuchAlgorithmException e) {
+				throw new IllegalStateException(e);
+			}
+			SpillOutputStream out = new SpillOutputStream();
+			try (InputStream tee = new TeeInputStream(is, out, md5)) {
+				byte[] buf = new byte[BUFFER_SIZE];
+				int cnt;
+				if (gunzip) {
+					GZIPInputStream gzis = new GZIPInputStream(tee, BUFFER_SIZE);
+					while ((cnt = gzis.read(buf)) >= 0) {
+						zipfile.contentSize += cnt;
+					}
+				}
+				// copy the rest which wasn't read by gzip
+				while (tee.read(buf) >= 0) {
+				}
+				out.close();
+			} catch (IOException | RuntimeException e) {
+				out.discard();
+				throw e;
+			}
+			if (out.file != null) {
+				zipfile.tempzipfile = out.file;
+				zipfile.deleteTempFile = true;
+			} else {
+				zipfile.data = out.memory.toByteArray();
 			}
+			zipfile.contentMD5 = Base64.getEncoder().encodeToString(md5.digest());
 			return zipfile;
 		}
     }
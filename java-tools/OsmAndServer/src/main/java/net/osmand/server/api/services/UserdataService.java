@@ -86,6 +86,9 @@ public class UserdataService {
     @Autowired
     protected GpxService gpxService;
     
+    @Autowired
+    protected ObfMirrorCache obfMirrorCache;
+    
     Gson gson = new Gson();
     
     public static final String ERROR_MESSAGE_FILE_IS_NOT_AVAILABLE = "File is not available";
@@ -240,8 +243,12 @@ public class UserdataService {
                 throw new OsmAndPublicApiException(ERROR_CODE_GZIP_ONLY_SUPPORTED_UPLOAD, "File is submitted not in gzip format");
 			}
 		}
-		validateUserForUpload(dev, type, zipfile.getSize());
-		return uploadFile(zipfile, dev, name, type, clienttime);
+		try {
+			validateUserForUpload(dev, type, zipfile.getSize());
+			return uploadFile(zipfile, dev, name, type, clienttime);
+		} finally {
+			zipfile.close();
+		}
 	}
     
     
@@ -384,27 +391,21 @@ public class UserdataService {
     public void getFile(HttpServletResponse response, HttpServletRequest request, String name, String type,
                         Long updatetime, PremiumUserDevicesRepository.PremiumUserDevice dev) throws IOException {
         InputStream bin = null;
-        File fileToDelete = null;
+        ObfMirrorCache.CachedFile mirrorFile = null;
         try {
 			PremiumUserFilesRepository.UserFile userFile = getUserFile(name, type, updatetime, dev);
 			ServerCommonFile scf = checkThatObfFileisOnServer(name, type); 
-			boolean gzin = true, gzout;
+			String acceptEncoding = request.getHeader("Accept-Encoding");
+			boolean gzin = true, gzout = acceptEncoding != null && acceptEncoding.contains("gzip");
 			if (scf != null) {
 				// file is not stored here
 				File fp = scf.file;
 				if (scf.url != null) {
-					String bname = name;
-					if (bname.lastIndexOf('/') != -1) {
-						bname = bname.substring(bname.lastIndexOf('/') + 1);
-					}
-					fp = File.createTempFile("backup_", bname);
-					fileToDelete = fp;
-					FileOutputStream fous = new FileOutputStream(fp);
-					InputStream is = scf.url.openStream();
-					Algorithms.streamCopy(is, fous);
-					fous.close();
-				}
-				if (fp != null) {
+					// served from local mirror, gzipped variant is stored next to file
+					mirrorFile = obfMirrorCache.acquire(scf, ".obf");
+					gzin = gzout;
+					bin = new FileInputStream(gzout ? mirrorFile.gzipFile : mirrorFile.file);
+				} else if (fp != null) {
 					gzin = false;
 					bin = getGzipInputStreamFromFile(fp, ".obf");
 				}
@@ -415,15 +416,10 @@ public class UserdataService {
             response.setHeader("Content-Disposition", "attachment; filename=" + userFile.name);
             // InputStream bin = fl.data.getBinaryStream();
             
-            String acceptEncoding = request.getHeader("Accept-Encoding");
-            if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+            if (gzout) {
                 response.setHeader("Content-Encoding", "gzip");
-                gzout = true;
-            } else {
-                if (gzin) {
-                    bin = new GZIPInputStream(bin);
-                }
-                gzout = false;
+            } else if (gzin) {
+                bin = new GZIPInputStream(bin);
             }
             response.setContentType(APPLICATION_OCTET_STREAM.getType());
             byte[] buf = new byte[BUFFER_SIZE];
@@ -439,8 +435,8 @@ public class UserdataService {
 			if (bin != null) {
 				bin.close();
 			}
-			if (fileToDelete != null) {
-				fileToDelete.delete();
+			if (mirrorFile != null) {
+				obfMirrorCache.release(mirrorFile);
 			}
 		}
     }
@@ -12,6 +12,7 @@ import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.zip.GZIPOutputStream;
 
+import javax.annotation.PostConstruct;
 import javax.servlet.http.HttpServletResponse;
 
 import net.osmand.server.api.repo.*;
@@ -132,6 +133,9 @@ public class AdminController {
 
 	@Autowired
 	private LogsAccessService logsAccessService;
+
+	@Autowired
+	private AdminReportsCache reportsCache;
 	
 	private Gson gson = new Gson();
 	
@@ -398,6 +402,25 @@ public class AdminController {
 
 	
 	
+	@PostConstruct
+	public void registerReports() {
+		reportsCache.registerReport("reports", this::getReports);
+		reportsCache.registerReport("surveyReport", this::getSurveyReport);
+		reportsCache.registerReport("subRevenueReports", this::getRevenueReports);
+		reportsCache.registerReport("yearSubscriptionsReport", this::getYearSubscriptionsRetentionReport);
+		reportsCache.registerReport("emailsReport", emailService::getEmailsDBReport);
+	}
+
+	@PostMapping(path = { "/refresh-reports" })
+	public String refreshReports(final RedirectAttributes redirectAttrs) {
+		// concurrent requests wait for the same refresh
+		reportsCache.refresh().join();
+		redirectAttrs.addFlashAttribute("update_status", "OK");
+		redirectAttrs.addFlashAttribute("update_errors", "");
+		redirectAttrs.addFlashAttribute("update_message", "Reports are recalculated");
+		return "redirect:info";
+	}
+
 	@RequestMapping("/info")
 	public String index(Model model) throws SQLException {
 		model.addAttribute("server_startup", String.format("%1$tF %1$tR", new Date(appContext.getStartupDate())));
@@ -421,16 +444,20 @@ public class AdminController {
 		model.addAttribute("promos", promoCampaignRepository.findAllByOrderByStartTimeDesc());
 		model.addAttribute("giveaways", seriesRepo.findAllByOrderByUpdateTimeDesc());
 		model.addAttribute("downloadServers", getDownloadSettings());
-		model.addAttribute("reports", getReports());
-		model.addAttribute("surveyReport", getSurveyReport());
-		List<Subscription> allSubs = parseSubscriptions();
-		model.addAttribute("subRevenueReportYear", getRevenueReport(allSubs, AdminGenericSubReport.YEAR));
-		model.addAttribute("subRevenueReportMonth", getRevenueReport(allSubs, AdminGenericSubReport.MONTH));
-		model.addAttribute("subRevenueReportDay", getRevenueReport(allSubs, AdminGenericSubReport.DAY));
+		model.addAttribute("reports", reportsCache.getReport("reports"));
+		model.addAttribute("surveyReport", reportsCache.getReport("surveyReport"));
+		AdminGenericSubReport[] revenueReports = reportsCache.getReport("subRevenueReports");
+		if (revenueReports != null) {
+			model.addAttribute("subRevenueReportYear", revenueReports[0]);
+			model.addAttribute("subRevenueReportMonth", revenueReports[1]);
+			model.addAttribute("subRevenueReportDay", revenueReports[2]);
+		}
 		
 		
-		model.addAttribute("yearSubscriptionsReport", getYearSubscriptionsRetentionReport());
-		model.addAttribute("emailsReport", emailService.getEmailsDBReport());
+		model.addAttribute("yearSubscriptionsReport", reportsCache.getReport("yearSubscriptionsReport"));
+		model.addAttribute("emailsReport", reportsCache.getReport("emailsReport"));
+		// time and duration of last computation of every report
+		model.addAttribute("reportsSnapshots", reportsCache.getSnapshots());
 		model.addAttribute("btc", getBitcoinReport());
 		model.addAttribute("polls", pollsService.getPollsConfig(false));
 		return "admin/info";
@@ -811,8 +838,15 @@ public class AdminController {
 			}
 		});
 		public List<Subscription> subs;
+		// report is cached and rendered many times, so values are calculated once for the limit
+		private int valuesLimit = -1;
 		
-		public Map<String, List<AdminGenericSubReportColumnValue>> getValues(int limit) {
+		public synchronized Map<String, List<AdminGenericSubReportColumnValue>> getValues(int limit) {
+			if (valuesLimit == limit) {
+				return values;
+			}
+			values.clear();
+			valuesLimit = limit;
 			SimpleDateFormat dateFormat = period == MONTH ? Subscription.monthFormat
 					: (period == YEAR ? Subscription.yearFormat : Subscription.dayFormat);
 			
@@ -894,6 +928,13 @@ public class AdminController {
 	}
 	
 	
+	private AdminGenericSubReport[] getRevenueReports() {
+		List<Subscription> allSubs = parseSubscriptions();
+		return new AdminGenericSubReport[] { getRevenueReport(allSubs, AdminGenericSubReport.YEAR),
+				getRevenueReport(allSubs, AdminGenericSubReport.MONTH),
+				getRevenueReport(allSubs, AdminGenericSubReport.DAY) };
+	}
+
 	private AdminGenericSubReport getRevenueReport(List<Subscription> subs, int period) {
 		AdminGenericSubReport report = new AdminGenericSubReport();
 		report.period = period;
@@ -0,0 +1,131 @@
+package net.osmand.server.api.services;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import net.osmand.server.api.services.AdminReportsCache.ReportSnapshot;
+
+public class AdminReportsCacheTest {
+
+	private EmbeddedDatabase db;
+	private JdbcTemplate jdbcTemplate;
+	private AdminReportsCache cache;
+
+	@Before
+	public void setUp() {
+		db = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).generateUniqueName(true).build();
+		jdbcTemplate = new JdbcTemplate(db);
+		jdbcTemplate.execute("create table supporters_device_sub (sku varchar(255), orderid varchar(255))");
+		addSubscription("osmand_pro_monthly", "1");
+		addSubscription("osmand_pro_annual", "2");
+		cache = new AdminReportsCache();
+		cache.registerReport("subscriptions", () -> jdbcTemplate.queryForObject(
+				"select count(*) from supporters_device_sub", Integer.class));
+		cache.registerReport("skus", () -> jdbcTemplate.queryForList(
+				"select distinct sku from supporters_device_sub order by sku", String.class));
+	}
+
+	@After
+	public void tearDown() {
+		cache.shutdown();
+		db.shutdown();
+	}
+
+	private void addSubscription(String sku, String orderId) {
+		jdbcTemplate.update("insert into supporters_device_sub (sku, orderid) values (?, ?)", sku, orderId);
+	}
+
+	@Test
+	public void testFirstAccessComputesReports() {
+		Assert.assertEquals(Integer.valueOf(2), cache.getReport("subscriptions"));
+		List<String> skus = cache.getReport("skus");
+		Assert.assertEquals(2, skus.size());
+		Assert.assertEquals(2, cache.getSnapshots().size());
+		ReportSnapshot snapshot = cache.getSnapshots().get("subscriptions");
+		Assert.assertTrue(snapshot.timestamp > 0);
+		Assert.assertTrue(snapshot.duration >= 0);
+	}
+
+	@Test
+	public void testReportsAreServedFromSnapshot() {
+		Assert.assertEquals(Integer.valueOf(2), cache.getReport("subscriptions"));
+		long timestamp = cache.getSnapshots().get("subscriptions").timestamp;
+		addSubscription("osmand_maps_annual", "3");
+		// snapshot is not changed until refresh
+		Assert.assertEquals(Integer.valueOf(2), cache.getReport("subscriptions"));
+		cache.refresh().join();
+		Assert.assertEquals(Integer.valueOf(3), cache.getReport("subscriptions"));
+		List<String> skus = cache.getReport("skus");
+		Assert.assertEquals(3, skus.size());
+		Assert.assertTrue(cache.getSnapshots().get("subscriptions").timestamp >= timestamp);
+	}
+
+	@Test
+	public void testFailedReportKeepsSnapshot() {
+		Assert.assertEquals(Integer.valueOf(2), cache.getReport("subscriptions"));
+		ReportSnapshot snapshot = cache.getSnapshots().get("subscriptions");
+		jdbcTemplate.execute("drop table supporters_device_sub");
+		cache.refresh().join();
+		Assert.assertSame(snapshot, cache.getSnapshots().get("subscriptions"));
+		Assert.assertEquals(Integer.valueOf(2), cache.getReport("subscriptions"));
+	}
+
+	@Test
+	public void testReportWithoutSnapshotDoesntBlock() {
+		AtomicInteger computed = new AtomicInteger();
+		cache.registerReport("broken", () -> {
+			computed.incrementAndGet();
+			return jdbcTemplate.queryForObject("select count(*) from missing_table", Integer.class);
+		});
+		Assert.assertNull(cache.getReport("broken"));
+		Assert.assertEquals(Integer.valueOf(2), cache.getReport("subscriptions"));
+		Assert.assertEquals(1, computed.get());
+		// reports are not recomputed on request after the first computation
+		Assert.assertNull(cache.getReport("broken"));
+		Assert.assertEquals(1, computed.get());
+		cache.refresh().join();
+		Assert.assertEquals(2, computed.get());
+		Assert.assertNull(cache.getReport("broken"));
+		Assert.assertEquals(2, computed.get());
+	}
+
+	@Test
+	public void testConcurrentRefreshIsShared() throws InterruptedException {
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		AtomicInteger computed = new AtomicInteger();
+		cache.registerReport("slow", () -> {
+			computed.incrementAndGet();
+			started.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return jdbcTemplate.queryForObject("select count(*) from supporters_device_sub", Integer.class);
+		});
+		CompletableFuture<Void> first = cache.refresh();
+		started.await();
+		CompletableFuture<Void> second = cache.refresh();
+		Assert.assertSame(first, second);
+		release.countDown();
+		second.join();
+		Assert.assertEquals(1, computed.get());
+		Assert.assertEquals(Integer.valueOf(2), cache.getReport("slow"));
+
+		// next refresh after finished one computes reports again
+		cache.refresh().join();
+		Assert.assertEquals(2, computed.get());
+	}
+}
@@ -0,0 +1,205 @@
+package net.osmand.server.api.services;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+
+import net.osmand.server.api.services.ObfMirrorCache.CachedFile;
+import net.osmand.util.Algorithms;
+
+public class ObfMirrorCacheTest {
+
+	private static final int FILE_SIZE = 100 * 1024;
+
+	private final TemporaryFolder folder = new TemporaryFolder();
+	private WireMockServer server;
+	private ObfMirrorCache cache;
+
+	@Before
+	public void setUp() throws IOException {
+		folder.create();
+		server = new WireMockServer(options().dynamicPort());
+		server.start();
+		cache = new ObfMirrorCache();
+	}
+
+	@After
+	public void tearDown() {
+		server.stop();
+		folder.delete();
+	}
+
+	// same as download url of DownloadIndexesService
+	private static String path(String name) {
+		return "/download?file=" + name;
+	}
+
+	private byte[] stub(String name, int seed, int delay) {
+		byte[] data = new byte[FILE_SIZE];
+		new Random(seed).nextBytes(data);
+		server.stubFor(get(urlEqualTo(path(name))).willReturn(aResponse().withBody(data).withFixedDelay(delay)));
+		return data;
+	}
+
+	private CachedFile acquire(ObfMirrorCache cache, String name, String version) throws IOException {
+		return cache.acquire(new URL(server.baseUrl() + path(name)), name, version, ".obf");
+	}
+
+	private byte[] read(InputStream is) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try {
+			Algorithms.streamCopy(is, out);
+		} finally {
+			is.close();
+		}
+		return out.toByteArray();
+	}
+
+	private void assertContent(byte[] expected, CachedFile f) throws IOException {
+		Assert.assertArrayEquals(expected, read(new FileInputStream(f.file)));
+		Assert.assertArrayEquals(expected, read(new GZIPInputStream(new FileInputStream(f.gzipFile))));
+	}
+
+	@Test
+	public void testSingleDownload() throws Exception {
+		cache.init(folder.newFolder("mirror"), 10 * FILE_SIZE);
+		final byte[] data = stub("a.obf", 1, 300);
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<CachedFile>> futures = new ArrayList<>();
+			for (int i = 0; i < 8; i++) {
+				futures.add(executor.submit(new Callable<CachedFile>() {
+
+					@Override
+					public CachedFile call() throws Exception {
+						return acquire(cache, "a.obf", "1");
+					}
+				}));
+			}
+			CachedFile first = futures.get(0).get();
+			for (Future<CachedFile> f : futures) {
+				Assert.assertSame(first, f.get());
+				cache.release(f.get());
+			}
+			assertContent(data, first);
+		} finally {
+			executor.shutdownNow();
+		}
+		server.verify(1, getRequestedFor(urlEqualTo(path("a.obf"))));
+
+		// new version of index is downloaded again
+		cache.release(acquire(cache, "a.obf", "2"));
+		server.verify(2, getRequestedFor(urlEqualTo(path("a.obf"))));
+	}
+
+	@Test
+	public void testZipEntry() throws Exception {
+		cache.init(folder.newFolder("mirror"), 10 * FILE_SIZE);
+		byte[] data = new byte[FILE_SIZE];
+		new Random(2).nextBytes(data);
+		ByteArrayOutputStream zip = new ByteArrayOutputStream();
+		try (ZipOutputStream zous = new ZipOutputStream(zip)) {
+			zous.putNextEntry(new ZipEntry("readme.txt"));
+			zous.write(new byte[] { 1, 2, 3 });
+			zous.putNextEntry(new ZipEntry("A.obf"));
+			zous.write(data);
+		}
+		// zip is detected by file name, path of download url is always /download
+		String path = "/download?file=A.obf.zip&standard=yes";
+		server.stubFor(get(urlEqualTo(path)).willReturn(aResponse().withBody(zip.toByteArray())));
+		URL url = new URL(server.baseUrl() + path);
+		Assert.assertEquals("A.obf.zip", ObfMirrorCache.getFileName(url));
+		CachedFile f = cache.acquire(url, ObfMirrorCache.getFileName(url), "1", ".obf");
+		assertContent(data, f);
+		cache.release(f);
+	}
+
+	@Test
+	public void testSameFileFromDifferentHosts() throws Exception {
+		cache.init(folder.newFolder("mirror"), 10 * FILE_SIZE);
+		byte[] data = stub("a.obf", 1, 0);
+		CachedFile f = cache.acquire(new URL("http://localhost:" + server.port() + path("a.obf")), "a.obf", "1",
+				".obf");
+		cache.release(f);
+		CachedFile other = cache.acquire(new URL("http://127.0.0.1:" + server.port() + path("a.obf")), "a.obf",
+				"1", ".obf");
+		cache.release(other);
+		Assert.assertSame(f, other);
+		assertContent(data, other);
+		server.verify(1, getRequestedFor(urlEqualTo(path("a.obf"))));
+	}
+
+	@Test
+	public void testEvictLeastRecentlyUsed() throws Exception {
+		File dir = folder.newFolder("mirror");
+		// random data is not compressed, so every entry is about 2 file sizes
+		cache.init(dir, 5 * FILE_SIZE);
+		stub("a.obf", 1, 0);
+		stub("b.obf", 2, 0);
+		stub("c.obf", 3, 0);
+		CachedFile a = acquire(cache, "a.obf", "1");
+		cache.release(a);
+		CachedFile b = acquire(cache, "b.obf", "1");
+		cache.release(b);
+		// a becomes recently used
+		cache.release(acquire(cache, "a.obf", "1"));
+		CachedFile c = acquire(cache, "c.obf", "1");
+		Assert.assertTrue(cache.contains(a));
+		Assert.assertFalse(cache.contains(b));
+		Assert.assertFalse(b.file.exists());
+		Assert.assertFalse(b.gzipFile.exists());
+		Assert.assertTrue(cache.getTotalSize() <= 5 * FILE_SIZE);
+		server.verify(1, getRequestedFor(urlEqualTo(path("a.obf"))));
+
+		// files which are being read are not evicted
+		b = acquire(cache, "b.obf", "1");
+		Assert.assertFalse(cache.contains(a));
+		Assert.assertFalse(a.file.exists());
+		Assert.assertTrue(cache.contains(c));
+		cache.release(c);
+		cache.release(b);
+		server.verify(2, getRequestedFor(urlEqualTo(path("b.obf"))));
+
+		ObfMirrorCache small = new ObfMirrorCache();
+		small.init(folder.newFolder("small"), FILE_SIZE);
+		CachedFile s = acquire(small, "a.obf", "1");
+		Assert.assertTrue(s.file.exists());
+		small.release(s);
+		Assert.assertFalse(s.file.exists());
+		Assert.assertEquals(0, small.getTotalSize());
+
+		// entries are restored after restart
+		ObfMirrorCache restarted = new ObfMirrorCache();
+		restarted.init(dir, 5 * FILE_SIZE);
+		restarted.release(acquire(restarted, "b.obf", "1"));
+		server.verify(2, getRequestedFor(urlEqualTo(path("b.obf"))));
+		Assert.assertEquals(cache.getTotalSize(), restarted.getTotalSize());
+	}
+}
@@ -0,0 +1,321 @@
+package net.osmand.server.api.services;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.s3.AbstractAmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadResult;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadResult;
+import com.amazonaws.services.s3.model.ListPartsRequest;
+import com.amazonaws.services.s3.model.PartListing;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.PutObjectResult;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.amazonaws.services.s3.model.UploadPartResult;
+
+import net.osmand.server.api.services.StorageService.InternalZipFile;
+import net.osmand.util.Algorithms;
+
+public class StorageServiceTest {
+
+	private static final String BUCKET = "userdata";
+
+	private final TemporaryFolder folder = new TemporaryFolder();
+	private StorageService storageService;
+
+	/**
+	 * S3 stand-in which keeps objects in local folder.
+	 */
+	private static class FileS3 extends AbstractAmazonS3 {
+
+		final File dir;
+		final Map<String, String> contentMD5 = new ConcurrentHashMap<>();
+		final Map<String, Map<Integer, byte[]>> multipartUploads = new ConcurrentHashMap<>();
+		final AtomicInteger multipartCount = new AtomicInteger();
+		// all storages should start upload before any of them continues
+		CyclicBarrier started;
+		long delay;
+		boolean fail;
+
+		FileS3(File dir) {
+			this.dir = dir;
+		}
+
+		private void startUpload() {
+			try {
+				if (started != null) {
+					started.await(10, TimeUnit.SECONDS);
+				}
+				Thread.sleep(delay);
+			} catch (Exception e) {
+				throw new IllegalStateException("Uploads are not started in parallel", e);
+			}
+			if (fail) {
+				AmazonServiceException e = new AmazonServiceException("Storage is not available");
+				e.setStatusCode(503);
+				throw e;
+			}
+		}
+
+		private void store(String bucket, String key, byte[] data) throws IOException {
+			File f = new File(dir, bucket + "/" + key);
+			f.getParentFile().mkdirs();
+			Files.write(f.toPath(), data);
+		}
+
+		@Override
+		public PutObjectResult putObject(PutObjectRequest request) {
+			startUpload();
+			try {
+				byte[] data = request.getFile() != null ? Files.readAllBytes(request.getFile().toPath())
+						: read(request.getInputStream());
+				store(request.getBucketName(), request.getKey(), data);
+				if (request.getMetadata().getContentMD5() != null) {
+					contentMD5.put(request.getKey(), request.getMetadata().getContentMD5());
+				}
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+			return new PutObjectResult();
+		}
+
+		@Override
+		public InitiateMultipartUploadResult initiateMultipartUpload(InitiateMultipartUploadRequest request) {
+			startUpload();
+			InitiateMultipartUploadResult res = new InitiateMultipartUploadResult();
+			res.setBucketName(request.getBucketName());
+			res.setKey(request.getKey());
+			res.setUploadId("upload" + multipartCount.incrementAndGet());
+			multipartUploads.put(res.getUploadId(), new TreeMap<>());
+			return res;
+		}
+
+		@Override
+		public PartListing listParts(ListPartsRequest request) {
+			// new upload, no parts to resume
+			PartListing listing = new PartListing();
+			listing.setUploadId(request.getUploadId());
+			return listing;
+		}
+
+		@Override
+		public UploadPartResult uploadPart(UploadPartRequest request) {
+			byte[] part = new byte[(int) request.getPartSize()];
+			try {
+				if (request.getFile() != null) {
+					try (RandomAccessFile raf = new RandomAccessFile(request.getFile(), "r")) {
+						raf.seek(request.getFileOffset());
+						raf.readFully(part);
+					}
+				} else {
+					int read = 0;
+					while (read < part.length) {
+						read += request.getInputStream().read(part, read, part.length - read);
+					}
+				}
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+			Map<Integer, byte[]> parts = multipartUploads.get(request.getUploadId());
+			synchronized (parts) {
+				parts.put(request.getPartNumber(), part);
+			}
+			UploadPartResult res = new UploadPartResult();
+			res.setPartNumber(request.getPartNumber());
+			res.setETag("etag" + request.getPartNumber());
+			return res;
+		}
+
+		@Override
+		public CompleteMultipartUploadResult completeMultipartUpload(CompleteMultipartUploadRequest request) {
+			Map<Integer, byte[]> parts = multipartUploads.remove(request.getUploadId());
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			synchronized (parts) {
+				Assert.assertEquals(request.getPartETags().size(), parts.size());
+				for (byte[] p : parts.values()) {
+					out.write(p, 0, p.length);
+				}
+			}
+			try {
+				store(request.getBucketName(), request.getKey(), out.toByteArray());
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+			CompleteMultipartUploadResult res = new CompleteMultipartUploadResult();
+			res.setBucketName(request.getBucketName());
+			res.setKey(request.getKey());
+			return res;
+		}
+
+		@Override
+		public void abortMultipartUpload(AbortMultipartUploadRequest request) {
+			multipartUploads.remove(request.getUploadId());
+		}
+
+		byte[] getObject(String key) throws IOException {
+			File f = new File(dir, BUCKET + "/" + key);
+			return f.exists() ? Files.readAllBytes(f.toPath()) : null;
+		}
+	}
+
+	@Before
+	public void setUp() throws IOException {
+		folder.create();
+		storageService = new StorageService();
+	}
+
+	@After
+	public void tearDown() {
+		storageService.shutdown();
+		folder.delete();
+	}
+
+	private static byte[] read(InputStream is) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try {
+			Algorithms.streamCopy(is, out);
+		} finally {
+			is.close();
+		}
+		return out.toByteArray();
+	}
+
+	private static byte[] gzip(byte[] data) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (GZIPOutputStream gz = new GZIPOutputStream(out)) {
+			gz.write(data);
+		}
+		return out.toByteArray();
+	}
+
+	private static byte[] random(int size, int seed) {
+		byte[] data = new byte[size];
+		new Random(seed).nextBytes(data);
+		return data;
+	}
+
+	private static String md5(byte[] data) throws Exception {
+		return Base64.getEncoder().encodeToString(MessageDigest.getInstance("MD5").digest(data));
+	}
+
+	private FileS3[] configureStorages(String... ids) throws IOException {
+		FileS3[] storages = new FileS3[ids.length];
+		for (int i = 0; i < ids.length; i++) {
+			storages[i] = new FileS3(folder.newFolder(ids[i]));
+			storageService.addStorageProvider(ids[i], storages[i], BUCKET);
+		}
+		ReflectionTestUtils.setField(storageService, "defaultStorage", String.join(",", ids));
+		return storages;
+	}
+
+	private InternalZipFile upload(byte[] gz) throws IOException {
+		return InternalZipFile.buildFromMultipartFile(new MockMultipartFile("file", "file.gpx.gz", null, gz));
+	}
+
+	@Test
+	public void testSmallFileInMemory() throws Exception {
+		byte[] content = "<gpx>small track</gpx>".getBytes();
+		byte[] gz = gzip(content);
+		InternalZipFile file = upload(gz);
+		Assert.assertNull(file.getTempFile());
+		Assert.assertEquals(content.length, file.getContentSize());
+		Assert.assertEquals(gz.length, file.getSize());
+		Assert.assertEquals(md5(gz), file.getContentMD5());
+		Assert.assertArrayEquals(gz, read(file.getInputStream()));
+	}
+
+	@Test
+	public void testBigFileIsSpilledToTempFile() throws Exception {
+		byte[] content = random(3 * 1024 * 1024, 1);
+		byte[] gz = gzip(content);
+		InternalZipFile file = upload(gz);
+		File tmp = file.getTempFile();
+		Assert.assertNotNull(tmp);
+		Assert.assertTrue(tmp.exists());
+		Assert.assertEquals(content.length, file.getContentSize());
+		Assert.assertEquals(gz.length, file.getSize());
+		Assert.assertEquals(md5(gz), file.getContentMD5());
+		Assert.assertArrayEquals(gz, read(new FileInputStream(tmp)));
+		file.close();
+		Assert.assertFalse(tmp.exists());
+	}
+
+	@Test(expected = IOException.class)
+	public void testNotGzipIsRejected() throws IOException {
+		upload(random(2 * 1024 * 1024, 2));
+	}
+
+	@Test
+	public void testParallelUploads() throws Exception {
+		FileS3[] storages = configureStorages("s1", "s2");
+		CyclicBarrier started = new CyclicBarrier(storages.length);
+		for (FileS3 s : storages) {
+			s.started = started;
+		}
+		byte[] small = gzip("<gpx>small track</gpx>".getBytes());
+		InternalZipFile file = upload(small);
+		Assert.assertEquals("s1,s2", storageService.save("user1", "small.gpx.gz", file));
+		// big file is uploaded by parts from temp file
+		byte[] big = gzip(random(17 * 1024 * 1024, 3));
+		InternalZipFile bigFile = upload(big);
+		try {
+			storageService.save("user1", "big.gpx.gz", bigFile);
+		} finally {
+			bigFile.close();
+		}
+		for (FileS3 s : storages) {
+			Assert.assertArrayEquals(small, s.getObject("user1/small.gpx.gz"));
+			Assert.assertEquals(md5(small), s.contentMD5.get("user1/small.gpx.gz"));
+			Assert.assertArrayEquals(big, s.getObject("user1/big.gpx.gz"));
+			Assert.assertEquals(1, s.multipartCount.get());
+			Assert.assertTrue(s.multipartUploads.isEmpty());
+		}
+	}
+
+	@Test
+	public void testFailedUpload() throws Exception {
+		FileS3[] storages = configureStorages("s1", "s2");
+		storages[0].fail = true;
+		storages[1].delay = 500;
+		byte[] gz = gzip(random(2 * 1024 * 1024, 4));
+		InternalZipFile file = upload(gz);
+		try {
+			storageService.save("user1", "track.gpx.gz", file);
+			Assert.fail("Failed upload is not reported");
+		} catch (AmazonServiceException e) {
+			Assert.assertEquals(503, e.getStatusCode());
+		} finally {
+			file.close();
+		}
+		Assert.assertNull(storages[0].getObject("user1/track.gpx.gz"));
+		// temp file is deleted only after other uploads are finished
+		Assert.assertArrayEquals(gz, storages[1].getObject("user1/track.gpx.gz"));
+	}
+}
@@ -62,6 +62,7 @@ import net.osmand.obf.OsmGpxWriteContext.OsmGpxFile;
 import net.osmand.obf.OsmGpxWriteContext.QueryParams;
 import net.osmand.obf.preparation.IndexCreator;
 import net.osmand.obf.preparation.IndexCreatorSettings;
+import net.osmand.obf.preparation.OsmEntitySource;
 import net.osmand.osm.MapRenderingTypesEncoder;
 import net.osmand.osm.RouteActivityType;
 import net.osmand.osm.io.Base64;
@@ -167,9 +168,8 @@ public class DownloadOsmGPX {
 					break;
 				case "--out":
 					if (val.endsWith(".obf")) {
+						// obf is generated directly from tracks without intermediate osm file
 						qp.obfFile = new File(val);
-						File dir = qp.obfFile.getParentFile();
-						qp.osmFile = new File(dir, Algorithms.getFileNameWithoutExtension(qp.obfFile) + ".osm.gz");
 					} else {
 						qp.osmFile = new File(val);
 					}
@@ -191,10 +191,14 @@ public class DownloadOsmGPX {
 					break;
 				}
 			}
-			if("query".equals(main)) {
+			if ("query".equals(main)) {
 				utility.queryGPXForBBOX(qp);
 			} else {
-				utility.generateObfFile(qp);
+				if (qp.osmFile == null && qp.obfFile != null) {
+					qp.osmFile = new File(qp.obfFile.getParentFile(),
+							Algorithms.getFileNameWithoutExtension(qp.obfFile) + ".osm.gz");
+				}
+				utility.generateObfFile(qp, null);
 			}
 		} else if ("redownload_tags_and_description".equals(main)) {
 			utility.redownloadTagsDescription();
@@ -250,8 +254,25 @@ public class DownloadOsmGPX {
 			query += " limit " + qp.limit;
 		}
 		System.out.println(query);
+		final String sql = query;
+		final OsmGpxWriteContext ctx = new OsmGpxWriteContext(qp);
+		if (qp.obfFile != null) {
+			generateObfFile(qp, new OsmEntitySource() {
+
+				@Override
+				public void produceEntities(OsmEntityConsumer consumer) throws IOException, SQLException {
+					ctx.setEntityConsumer(consumer);
+					writeTracks(ctx, sql, qp);
+					ctx.setEntityConsumer(null);
+				}
+			});
+		} else {
+			writeTracks(ctx, sql, qp);
+		}
+	}
+
+	private void writeTracks(OsmGpxWriteContext ctx, String query, QueryParams qp) throws SQLException, IOException {
 		ResultSet rs = dbConn.createStatement().executeQuery(query);
-		OsmGpxWriteContext ctx = new OsmGpxWriteContext(qp);
 		ctx.startDocument();
 		Date lastTimestamp = null; 
 		while (rs.next()) {
@@ -298,10 +319,9 @@ public class DownloadOsmGPX {
 		ctx.endDocument();
 		
 		System.out.println(String.format("Fetched %d tracks %d segments", ctx.tracks, ctx.segments));
-		generateObfFile(qp);
 	}
 
-	private void generateObfFile(QueryParams qp)
+	private void generateObfFile(QueryParams qp, OsmEntitySource source)
 			throws IOException, SQLException, InterruptedException, XmlPullParserException {
 		if(qp.obfFile != null) {
 			IndexCreatorSettings settings = new IndexCreatorSettings();
@@ -321,7 +341,13 @@ public class DownloadOsmGPX {
 				ic.setMapFileName(fileName);
 				IProgress prog = IProgress.EMPTY_PROGRESS;
 				prog = new ConsoleProgressImplementation();
-				ic.generateIndexes(qp.osmFile, prog, null, MapZooms.getDefault(), types, null);
+				if (source != null) {
+					// same region name as obf generated from osm file
+					ic.setRegionName(IndexCreator.getRegionName(qp.osmFile != null ? qp.osmFile.getName() : fileName));
+					ic.generateIndexes(source, prog, null, MapZooms.getDefault(), types, null);
+				} else {
+					ic.generateIndexes(qp.osmFile, prog, null, MapZooms.getDefault(), types, null);
+				}
 				new File(folder, ic.getMapFileName()).renameTo(targetObf);
 			} finally {
 				Algorithms.removeAllFiles(folder);